@@ -21,6 +21,7 @@ package com.devicehive.application;
  */
 
 import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.RequestClass;
 import com.devicehive.shim.api.client.RpcClient;
 import com.devicehive.shim.config.KafkaRpcConfig;
 import com.devicehive.shim.kafka.client.KafkaRpcClient;
@@ -85,7 +86,7 @@ public class AuthRpcClientConfig {
             RESPONSE_TOPIC = responseTopicPrefix + UUID.randomUUID().toString();
         }
 
-        kafkaTopicService.createTopic(REQUEST_TOPIC);
+        RequestClass.topics(REQUEST_TOPIC).forEach(kafkaTopicService::createTopic);
         kafkaTopicService.createTopic(RESPONSE_TOPIC);
     }
 
@@ -29,6 +29,7 @@ import com.devicehive.messages.handler.dao.count.*;
 import com.devicehive.messages.handler.dao.list.*;
 import com.devicehive.messages.handler.notification.NotificationSubscribeRequestHandler;
 import com.devicehive.messages.handler.command.CommandUnsubscribeRequestHandler;
+import com.devicehive.messages.handler.notification.NotificationInsertBatchHandler;
 import com.devicehive.messages.handler.notification.NotificationInsertHandler;
 import com.devicehive.messages.handler.notification.NotificationSearchHandler;
 import com.devicehive.messages.handler.notification.NotificationUnsubscribeRequestHandler;
@@ -46,9 +47,11 @@ public class RequestHandlersMapper implements HandlersMapper {
 
     private final NotificationSearchHandler notificationSearchHandler;
     private final NotificationInsertHandler notificationInsertHandler;
+    private final NotificationInsertBatchHandler notificationInsertBatchHandler;
     private final NotificationSubscribeRequestHandler notificationSubscribeRequestHandler;
     private final NotificationUnsubscribeRequestHandler notificationUnsubscribeRequestHandler;
     private final CommandInsertHandler commandInsertHandler;
+    private final CommandInsertBatchHandler commandInsertBatchHandler;
     private final CommandSearchHandler commandSearchHandler;
     private final CommandUpdateHandler commandUpdateHandler;
     private final CommandsUpdateHandler commandsUpdateHandler;
@@ -96,7 +99,9 @@ public class RequestHandlersMapper implements HandlersMapper {
                                  PluginSubscribeRequestHandler pluginSubscribeRequestHandler,
                                  PluginUnsubscribeRequestHandler pluginUnsubscribeRequestHandler,
                                  ListPluginHandler listPluginHandler,
-                                 CountPluginHandler countPluginHandler) {
+                                 CountPluginHandler countPluginHandler,
+                                 NotificationInsertBatchHandler notificationInsertBatchHandler,
+                                 CommandInsertBatchHandler commandInsertBatchHandler) {
         this.commandUpdateHandler = commandUpdateHandler;
         this.notificationSearchHandler = notificationSearchHandler;
         this.notificationInsertHandler = notificationInsertHandler;
@@ -121,6 +126,8 @@ public class RequestHandlersMapper implements HandlersMapper {
         this.pluginUnsubscribeRequestHandler = pluginUnsubscribeRequestHandler;
         this.listPluginHandler = listPluginHandler;
         this.countPluginHandler = countPluginHandler;
+        this.notificationInsertBatchHandler = notificationInsertBatchHandler;
+        this.commandInsertBatchHandler = commandInsertBatchHandler;
     }
 
     @PostConstruct
@@ -128,9 +135,11 @@ public class RequestHandlersMapper implements HandlersMapper {
         requestHandlerMap = ImmutableMap.<Action, RequestHandler>builder()
                 .put(Action.NOTIFICATION_SEARCH_REQUEST, notificationSearchHandler)
                 .put(Action.NOTIFICATION_INSERT_REQUEST, notificationInsertHandler)
+                .put(Action.NOTIFICATION_INSERT_BATCH_REQUEST, notificationInsertBatchHandler)
                 .put(Action.NOTIFICATION_SUBSCRIBE_REQUEST, notificationSubscribeRequestHandler)
                 .put(Action.NOTIFICATION_UNSUBSCRIBE_REQUEST, notificationUnsubscribeRequestHandler)
                 .put(Action.COMMAND_INSERT_REQUEST, commandInsertHandler)
+                .put(Action.COMMAND_INSERT_BATCH_REQUEST, commandInsertBatchHandler)
                 .put(Action.COMMAND_SEARCH_REQUEST, commandSearchHandler)
                 .put(Action.COMMAND_UPDATE_REQUEST, commandUpdateHandler)
                 .put(Action.COMMANDS_UPDATE_REQUEST, commandsUpdateHandler)
@@ -28,6 +28,8 @@ import com.devicehive.shim.api.Response;
 import com.devicehive.shim.api.server.MessageDispatcher;
 import com.devicehive.vo.DeviceVO;
 
+import java.util.Collection;
+
 /**
  * Central class for interaction with devicehive-backend subscription mechanism.
  * Provides basic interfaces and operations for subscription, unsubscription and publishing of events.
@@ -54,6 +56,10 @@ public class EventBus {
         registry.unregister(subscriber);
     }
 
+    public void unsubscribe(Collection<Subscriber> subscribers) {
+        registry.unregisterAll(subscribers);
+    }
+
     public void publish(Event event) {
         event.getApplicableFilters()
                 .stream()
@@ -24,16 +24,22 @@ import com.devicehive.application.RequestHandlersMapper;
 import com.devicehive.shim.api.Action;
 import com.devicehive.model.rpc.ErrorResponse;
 import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.RequestClass;
 import com.devicehive.shim.api.Response;
 import com.devicehive.shim.api.server.RequestHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Semaphore;
 
 @Component("request-dispatcher")
 public class RequestDispatcher implements RequestHandler {
@@ -42,16 +48,65 @@ public class RequestDispatcher implements RequestHandler {
 
     private final RequestHandlersMapper requestHandlersMapper;
 
+    // off by default: with Kafka priority lanes the worker count of a class already bounds its concurrency, the
+    // limits are meant for the in-JVM and TCP transports, which run requests without per-class worker pools
+    @Value("${rpc.server.dispatch.realtime.max-concurrency:0}")
+    private int realtimeMaxConcurrency;
+
+    @Value("${rpc.server.dispatch.query.max-concurrency:0}")
+    private int queryMaxConcurrency;
+
+    @Value("${rpc.server.dispatch.admin.max-concurrency:0}")
+    private int adminMaxConcurrency;
+
+    /**
+     * Permits per request class, classes without a limit are absent.
+     */
+    private final Map<RequestClass, Semaphore> permits = new EnumMap<>(RequestClass.class);
+
     @Autowired
     @Lazy
     public RequestDispatcher(RequestHandlersMapper requestHandlersMapper) {
         this.requestHandlersMapper = requestHandlersMapper;
     }
 
+    @PostConstruct
+    private void initPermits() {
+        addLimit(RequestClass.REALTIME, realtimeMaxConcurrency);
+        addLimit(RequestClass.QUERY, queryMaxConcurrency);
+        addLimit(RequestClass.ADMIN, adminMaxConcurrency);
+    }
+
+    private void addLimit(RequestClass requestClass, int maxConcurrency) {
+        if (maxConcurrency > 0) {
+            permits.put(requestClass, new Semaphore(maxConcurrency));
+            logger.info("Max concurrency of {} requests: {}", requestClass, maxConcurrency);
+        }
+    }
+
     @Override
-    @SuppressWarnings("unchecked")
     public Response handle(Request request) {
         final Action action = request.getBody().getAction();
+        final Semaphore semaphore = permits.get(RequestClass.of(action));
+        if (semaphore == null) {
+            return dispatch(request, action);
+        }
+        if (!semaphore.tryAcquire()) {
+            logger.warn("Rejecting request {}, too many concurrent {} requests", action, RequestClass.of(action));
+            return Response.newBuilder()
+                    .withBody(new ErrorResponse("Too many concurrent requests, try again later."))
+                    .withLast(true)
+                    .buildFailed(HttpStatus.SERVICE_UNAVAILABLE.value());
+        }
+        try {
+            return dispatch(request, action);
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Response dispatch(Request request, Action action) {
         try {
             return Optional.ofNullable(requestHandlersMapper.requestHandlerMap().get(action))
                     .map(handler -> handler.handle(request))
@@ -31,6 +31,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 
+import java.util.stream.Collectors;
+
 @Component
 public class CommandUnsubscribeRequestHandler implements RequestHandler {
 
@@ -47,10 +49,9 @@ public class CommandUnsubscribeRequestHandler implements RequestHandler {
         validate(body);
 
         if (body.getSubscriptionIds() != null) {
-            for (Long subId : body.getSubscriptionIds()) {
-                Subscriber subscriber = new Subscriber(subId, request.getReplyTo(), request.getCorrelationId());
-                eventBus.unsubscribe(subscriber);
-            }
+            eventBus.unsubscribe(body.getSubscriptionIds().stream()
+                    .map(subId -> new Subscriber(subId, request.getReplyTo(), request.getCorrelationId()))
+                    .collect(Collectors.toList()));
 
             CommandUnsubscribeResponse unsubscribeResponse = new CommandUnsubscribeResponse(body.getSubscriptionIds());
 
@@ -30,6 +30,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 
+import java.util.stream.Collectors;
+
 @Component
 public class NotificationUnsubscribeRequestHandler implements RequestHandler {
 
@@ -46,10 +48,9 @@ public class NotificationUnsubscribeRequestHandler implements RequestHandler {
         validate(body);
 
         if (body.getSubscriptionIds() != null) {
-            for (Long subId : body.getSubscriptionIds()) {
-                Subscriber subscriber = new Subscriber(subId, request.getReplyTo(), request.getCorrelationId());
-                eventBus.unsubscribe(subscriber);
-            }
+            eventBus.unsubscribe(body.getSubscriptionIds().stream()
+                    .map(subId -> new Subscriber(subId, request.getReplyTo(), request.getCorrelationId()))
+                    .collect(Collectors.toList()));
 
             NotificationUnsubscribeResponse unsubscribeResponse =
                     new NotificationUnsubscribeResponse(body.getSubscriptionIds());
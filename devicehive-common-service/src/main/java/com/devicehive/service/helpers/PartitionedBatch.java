@@ -0,0 +1,89 @@
+package com.devicehive.service.helpers;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Splits a batch by route, so that every part goes where single-item requests with the partition keys of its items
+ * would go. Items whose keys share a route (for Kafka the partition) travel in one request.
+ */
+public final class PartitionedBatch {
+
+    private PartitionedBatch() {
+    }
+
+    /**
+     * Calls {@code call} once per distinct route with the items of that route, routes in order of first appearance.
+     * The call gets the partition key of the first item of its part and must return one result per item, in item
+     * order.
+     *
+     * @param routeOf route of a partition key, asked once per distinct key
+     * @return one future per item, in item order; a failed call fails only the futures of its own items
+     */
+    public static <T, R> List<CompletableFuture<R>> callPerRoute(List<T> items, Function<T, String> keyOf,
+                                                                 Function<String, Object> routeOf,
+                                                                 BiFunction<String, List<T>, CompletableFuture<List<R>>> call) {
+        Map<String, Object> routes = new HashMap<>();
+        Map<Object, List<Integer>> positions = new LinkedHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            Object route = routes.computeIfAbsent(keyOf.apply(items.get(i)), routeOf);
+            positions.computeIfAbsent(route, r -> new ArrayList<>()).add(i);
+        }
+        List<CompletableFuture<R>> results = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            results.add(new CompletableFuture<>());
+        }
+        positions.values().forEach(indexes -> {
+            List<T> part = new ArrayList<>(indexes.size());
+            indexes.forEach(index -> part.add(items.get(index)));
+            CompletableFuture<List<R>> partResults;
+            try {
+                partResults = call.apply(keyOf.apply(part.get(0)), part);
+            } catch (RuntimeException e) {
+                partResults = new CompletableFuture<>();
+                partResults.completeExceptionally(e);
+            }
+            partResults.whenComplete((values, ex) -> {
+                Throwable failure = ex;
+                if (failure == null && values.size() != indexes.size()) {
+                    failure = new IllegalStateException("Expected " + indexes.size() + " results for partition key "
+                            + keyOf.apply(part.get(0)) + ", got " + values.size());
+                }
+                for (int i = 0; i < indexes.size(); i++) {
+                    if (failure != null) {
+                        results.get(indexes.get(i)).completeExceptionally(failure);
+                    } else {
+                        results.get(indexes.get(i)).complete(values.get(i));
+                    }
+                }
+            });
+        });
+        return results;
+    }
+}
@@ -0,0 +1,135 @@
+package com.devicehive.api;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrency limit that adapts to observed latency (AIMD). Every completed call whose latency stays within
+ * {@code tolerance} times the best latency of the previous window grows the limit by roughly one per limit-sized
+ * batch of calls, while a slow or dropped call shrinks it by {@code backoffRatio}, at most once per observed round
+ * trip. Callers that do not get a permit are expected to fail fast instead of queueing.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final int WINDOW_SIZE = 500;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double backoffRatio;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private volatile double limit;
+
+    // guarded by this
+    private long baselineNanos = Long.MAX_VALUE;
+    private long windowMinNanos = Long.MAX_VALUE;
+    private int windowSamples;
+    private long lastDecreaseAt;
+
+    public AdaptiveConcurrencyLimiter(int minLimit, int maxLimit, double tolerance, double backoffRatio) {
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 0 < min <= max");
+        }
+        if (tolerance < 1 || backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Tolerance must be >= 1 and backoff ratio must be within (0, 1)");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.backoffRatio = backoffRatio;
+        this.limit = maxLimit;
+        this.lastDecreaseAt = System.nanoTime();
+    }
+
+    /**
+     * @return true if the call may proceed; in that case {@link #onComplete} or {@link #onDropped} must follow
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void onComplete(long latencyNanos) {
+        final int current = inFlight.getAndDecrement();
+        synchronized (this) {
+            windowMinNanos = Math.min(windowMinNanos, latencyNanos);
+            if (++windowSamples >= WINDOW_SIZE) {
+                baselineNanos = windowMinNanos;
+                windowMinNanos = Long.MAX_VALUE;
+                windowSamples = 0;
+            }
+            if (baselineNanos != Long.MAX_VALUE && latencyNanos > baselineNanos * tolerance) {
+                decrease(latencyNanos);
+            } else if (current * 2 >= limit) {
+                // grow only while the limit is actually in use, otherwise idle periods would inflate it to max
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        }
+    }
+
+    /**
+     * Releases the permit of a call that failed or timed out without a usable latency sample.
+     */
+    public void onDropped(long elapsedNanos) {
+        inFlight.decrementAndGet();
+        synchronized (this) {
+            decrease(elapsedNanos);
+        }
+    }
+
+    private void decrease(long latencyNanos) {
+        final long now = System.nanoTime();
+        if (now - lastDecreaseAt >= latencyNanos) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+            lastDecreaseAt = now;
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public synchronized long getBaselineMicros() {
+        return baselineNanos == Long.MAX_VALUE ? 0 : TimeUnit.NANOSECONDS.toMicros(baselineNanos);
+    }
+}
@@ -0,0 +1,133 @@
+package com.devicehive.api;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.configuration.Messages;
+import com.devicehive.exceptions.ServiceOverloadedException;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.RequestClass;
+import com.devicehive.shim.api.Response;
+import com.devicehive.shim.api.client.RpcClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * {@link RpcClient} decorator that admits calls through an {@link AdaptiveConcurrencyLimiter} of the request class.
+ * A call over the limit is rejected right away with {@link ServiceOverloadedException}, so neither a callback in
+ * the response matcher nor a suspended client request is kept for it. Calls that got no response within the
+ * timeout release their permit and count as dropped.
+ */
+public class AdmissionControlRpcClient implements RpcClient {
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControlRpcClient.class);
+
+    private static final int SERVER_ERROR = 500;
+
+    private final RpcClient delegate;
+    private final Map<RequestClass, AdaptiveConcurrencyLimiter> limiters;
+    private final long timeoutMillis;
+    private final ScheduledThreadPoolExecutor timeouts;
+
+    public AdmissionControlRpcClient(RpcClient delegate, Map<RequestClass, AdaptiveConcurrencyLimiter> limiters,
+                                     long timeoutMillis) {
+        for (RequestClass requestClass : RequestClass.values()) {
+            if (!limiters.containsKey(requestClass)) {
+                throw new IllegalArgumentException("No limiter for request class " + requestClass);
+            }
+        }
+        this.delegate = delegate;
+        this.limiters = limiters;
+        this.timeoutMillis = timeoutMillis;
+        this.timeouts = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "rpc-admission-timeouts");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timeouts.setRemoveOnCancelPolicy(true);
+    }
+
+    @Override
+    public void call(Request request, Consumer<Response> callback) {
+        final RequestClass requestClass = RequestClass.of(request);
+        final AdaptiveConcurrencyLimiter limiter = limiters.get(requestClass);
+        if (!limiter.tryAcquire()) {
+            logger.warn("Rejecting {} request, {} of {} permits in use", requestClass, limiter.getInFlight(), limiter.getLimit());
+            throw new ServiceOverloadedException(Messages.SERVICE_OVERLOADED);
+        }
+        final long startedAt = System.nanoTime();
+        final AtomicBoolean released = new AtomicBoolean();
+        final ScheduledFuture<?> timeout = timeouts.schedule(() -> {
+            if (released.compareAndSet(false, true)) {
+                limiter.onDropped(System.nanoTime() - startedAt);
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        try {
+            delegate.call(request, response -> {
+                if (released.compareAndSet(false, true)) {
+                    timeout.cancel(false);
+                    if (response.isFailed() && response.getErrorCode() >= SERVER_ERROR) {
+                        limiter.onDropped(System.nanoTime() - startedAt);
+                    } else {
+                        limiter.onComplete(System.nanoTime() - startedAt);
+                    }
+                }
+                callback.accept(response);
+            });
+        } catch (RuntimeException e) {
+            if (released.compareAndSet(false, true)) {
+                timeout.cancel(false);
+                limiter.onDropped(System.nanoTime() - startedAt);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void push(Request request) {
+        delegate.push(request);
+    }
+
+    @Override
+    public Object routeOf(Request request) {
+        return delegate.routeOf(request);
+    }
+
+    @Override
+    public void start() {
+        delegate.start();
+    }
+
+    @Override
+    public void shutdown() {
+        timeouts.shutdownNow();
+        delegate.shutdown();
+    }
+
+    public Map<RequestClass, AdaptiveConcurrencyLimiter> getLimiters() {
+        return limiters;
+    }
+}
@@ -20,6 +20,7 @@ package com.devicehive.api;
  * #L%
  */
 
+import com.devicehive.model.rpc.ErrorResponse;
 import com.devicehive.shim.api.Response;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimaps;
@@ -27,18 +28,37 @@ import com.google.common.collect.SetMultimap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 public class RequestResponseMatcher {
     private static final Logger logger = LoggerFactory.getLogger(RequestResponseMatcher.class);
 
+    private static final int DEFAULT_LANE_CAPACITY = 1024;
+    private static final int SC_SERVICE_UNAVAILABLE = 503;
+
     private final ConcurrentHashMap<String, Consumer<Response>> correlationMap = new ConcurrentHashMap<>();
     private final SetMultimap<Long, String> subscriptionMap = Multimaps.synchronizedSetMultimap(HashMultimap.create());
 
-    //TODO [rafa] we do not really need FJP, but rather some other pool implementation. Though FJP looks good, it might be over kill for our use case.
-    private final ForkJoinPool executionPool = new ForkJoinPool();
+    /**
+     * Callbacks are striped by correlationId, so responses of a single request or subscription are delivered
+     * in order on one lane, while different subscriptions are delivered in parallel. Responses are offered from
+     * threads that must not block (consumer poll loops, I/O event loops), so a full lane refuses the response
+     * instead of holding the whole node up.
+     */
+    private final StripedExecutor executionPool;
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final AtomicLong failedRequests = new AtomicLong();
+
+    public RequestResponseMatcher() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_LANE_CAPACITY);
+    }
+
+    public RequestResponseMatcher(int callbackLanes, int callbackLaneCapacity) {
+        this.executionPool = new StripedExecutor("rpc-callback", callbackLanes, callbackLaneCapacity);
+    }
 
     public void addRequestCallback(String correlationId, Consumer<Response> callback) {
         correlationMap.put(correlationId, callback);
@@ -48,10 +68,17 @@ public class RequestResponseMatcher {
         correlationMap.remove(correlationId);
     }
 
+    /**
+     * @return true while responses for the request are still awaited, for subscriptions until they are removed
+     */
+    public boolean hasRequestCallback(String correlationId) {
+        return correlationMap.containsKey(correlationId);
+    }
+
     public void offerResponse(Response response) {
         Consumer<Response> callback = correlationMap.get(response.getCorrelationId());
         if (callback != null) {
-            executionPool.execute(() -> {
+            boolean accepted = executionPool.tryExecute(response.getCorrelationId(), () -> {
                 try {
                     callback.accept(response);
                 } finally {
@@ -60,6 +87,9 @@ public class RequestResponseMatcher {
                     }
                 }
             });
+            if (!accepted) {
+                refuse(response, callback);
+            }
         } else {
             logger.warn("Callback was not found for {}. Map size: {}, response: {}", response.getCorrelationId(), correlationMap.size(), response.getBody());
         }
@@ -70,6 +100,55 @@ public class RequestResponseMatcher {
     }
 
     public void removeSubscription(Long subscriptionId) {
-        subscriptionMap.removeAll(subscriptionId);
+        // the subscription is over, and so are the requests that opened it
+        subscriptionMap.removeAll(subscriptionId).forEach(correlationMap::remove);
+    }
+
+    /**
+     * A subscription event that finds its lane full is dropped, the subscription goes on. A final response can't be
+     * dropped without leaving its caller waiting, so that request alone fails with 503; the failure is completed off
+     * the offering thread, which must not run callbacks.
+     */
+    private void refuse(Response response, Consumer<Response> callback) {
+        if (!response.isLast()) {
+            long dropped = droppedEvents.incrementAndGet();
+            logger.warn("Callback lane of {} is full, event dropped. Dropped so far: {}", response.getCorrelationId(), dropped);
+            return;
+        }
+        failedRequests.incrementAndGet();
+        correlationMap.remove(response.getCorrelationId(), callback);
+        logger.warn("Callback lane of {} is full, request failed", response.getCorrelationId());
+        Response failed = Response.newBuilder()
+                .withBody(new ErrorResponse("Too many pending responses, try again later."))
+                .withCorrelationId(response.getCorrelationId())
+                .withLast(true)
+                .buildFailed(SC_SERVICE_UNAVAILABLE);
+        CompletableFuture.runAsync(() -> callback.accept(failed));
+    }
+
+    /**
+     * @return number of subscription events dropped because their callback lane was full
+     */
+    public long getDroppedEventCount() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * @return number of requests failed because the callback lane of their response was full
+     */
+    public long getFailedRequestCount() {
+        return failedRequests.get();
+    }
+
+    public int getCorrelationMapSize() {
+        return correlationMap.size();
+    }
+
+    public StripedExecutor getCallbackExecutor() {
+        return executionPool;
+    }
+
+    public void shutdown() {
+        executionPool.shutdown();
     }
 }
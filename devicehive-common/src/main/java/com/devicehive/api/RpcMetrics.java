@@ -0,0 +1,131 @@
+package com.devicehive.api;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import com.devicehive.shim.api.Action;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.Response;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Per-action latency histograms of rpc stages and gauges of rpc queues, shared by rpc client and rpc server of
+ * the current process.
+ */
+@Component
+@ManagedResource(objectName = "com.devicehive:type=Rpc,name=RpcMetrics", description = "RPC latencies and queue gauges")
+public class RpcMetrics {
+
+    /**
+     * Deserialization of a request consumed from the broker.
+     */
+    public static final String DECODE = "server.decode";
+    /**
+     * Time a request spent in the ring buffer before a worker took it.
+     */
+    public static final String QUEUE_WAIT = "server.queueWait";
+    public static final String HANDLE = "server.handle";
+    /**
+     * Synchronous part of sending a response, which includes its serialization. Measured on the response encoder
+     * thread, so it does not add to the time workers spend per request.
+     */
+    public static final String SERIALIZE = "server.serialize";
+    /**
+     * Time until the response was acknowledged by the broker.
+     */
+    public static final String PRODUCE = "server.produce";
+    public static final String ROUND_TRIP = "client.roundTrip";
+
+    private final ConcurrentMap<String, ConcurrentMap<Action, LatencyHistogram>> timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+    public void record(String stage, Action action, long durationNanos) {
+        if (action == null) {
+            return;
+        }
+        timers.computeIfAbsent(stage, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(action, key -> new LatencyHistogram())
+                .record(durationNanos);
+    }
+
+    public void record(String stage, Request request, long durationNanos) {
+        if (request.getBody() != null) {
+            record(stage, request.getBody().getAction(), durationNanos);
+        }
+    }
+
+    /**
+     * Wraps the callback of a call so that the time until the first response is recorded as round trip.
+     */
+    public Consumer<Response> timeRoundTrip(Request request, Consumer<Response> callback) {
+        final long start = System.nanoTime();
+        return new Consumer<Response>() {
+            // callbacks of one request are delivered on a single lane, see RequestResponseMatcher
+            private boolean answered;
+
+            @Override
+            public void accept(Response response) {
+                if (!answered) {
+                    answered = true;
+                    record(ROUND_TRIP, request, System.nanoTime() - start);
+                }
+                callback.accept(response);
+            }
+        };
+    }
+
+    public void registerGauge(String name, Supplier<? extends Number> gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public Map<String, Number> getGauges() {
+        Map<String, Number> values = new TreeMap<>();
+        gauges.forEach((name, gauge) -> values.put(name, gauge.get()));
+        return values;
+    }
+
+    public Map<String, Map<String, Map<String, Number>>> getTimers() {
+        Map<String, Map<String, Map<String, Number>>> values = new TreeMap<>();
+        timers.forEach((stage, histograms) -> {
+            Map<String, Map<String, Number>> byAction = new TreeMap<>();
+            histograms.forEach((action, histogram) -> byAction.put(action.name(), histogram.snapshot()));
+            values.put(stage, byAction);
+        });
+        return values;
+    }
+
+    @ManagedAttribute(description = "Gauges and per-action latency percentiles in microseconds")
+    public Map<String, Object> getSnapshot() {
+        Map<String, Object> snapshot = new TreeMap<>();
+        snapshot.put("gauges", getGauges());
+        snapshot.put("timers", getTimers());
+        return snapshot;
+    }
+}
@@ -0,0 +1,143 @@
+package com.devicehive.api;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor with a fixed number of single-threaded lanes. Tasks submitted with the same key always land on the same
+ * lane and therefore run one after another in submission order, while tasks with different keys run in parallel.
+ * Every lane has a bounded queue. {@link #execute(Object, Runnable)} makes the submitting thread wait for a free slot
+ * when the lane is full, so it must not be called from threads that may not block (I/O event loops, consumer poll
+ * loops); those use {@link #tryExecute(Object, Runnable)}, which refuses the task instead.
+ */
+public class StripedExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(StripedExecutor.class);
+
+    private final ThreadPoolExecutor[] lanes;
+    private final AtomicLong blockedSubmits = new AtomicLong();
+
+    public StripedExecutor(String name, int laneCount, int laneCapacity) {
+        if (laneCount <= 0 || laneCapacity <= 0) {
+            throw new IllegalArgumentException("Lane count and lane capacity must be positive");
+        }
+        this.lanes = new ThreadPoolExecutor[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                    .setNameFormat(name + "-lane-" + i)
+                    .setDaemon(true)
+                    .build();
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(laneCapacity), threadFactory, this::waitForSlot);
+            // tryExecute enqueues directly, so the lane thread has to be running before the first task arrives
+            lanes[i].prestartAllCoreThreads();
+        }
+    }
+
+    /**
+     * Runs the task on the lane of the key. Blocks the calling thread while that lane is full.
+     */
+    public void execute(Object key, Runnable task) {
+        lanes[laneOf(key)].execute(guard(key, task));
+    }
+
+    /**
+     * Runs the task on the lane of the key if that lane has a free slot; never blocks.
+     *
+     * @return false if the lane is full or the executor has been shut down, the task is not run then
+     */
+    public boolean tryExecute(Object key, Runnable task) {
+        ThreadPoolExecutor lane = lanes[laneOf(key)];
+        return !lane.isShutdown() && lane.getQueue().offer(guard(key, task));
+    }
+
+    /**
+     * @return number of tasks the lane of the key can still take without blocking
+     */
+    public int getRemainingCapacity(Object key) {
+        return lanes[laneOf(key)].getQueue().remainingCapacity();
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    public int[] getLaneQueueDepths() {
+        return Arrays.stream(lanes).mapToInt(lane -> lane.getQueue().size()).toArray();
+    }
+
+    public int getQueueDepth() {
+        return Arrays.stream(getLaneQueueDepths()).sum();
+    }
+
+    public int getMaxLaneQueueDepth() {
+        return Arrays.stream(getLaneQueueDepths()).max().orElse(0);
+    }
+
+    public long getCompletedTaskCount() {
+        return Arrays.stream(lanes).mapToLong(ThreadPoolExecutor::getCompletedTaskCount).sum();
+    }
+
+    /**
+     * @return number of submissions that found their lane full and had to wait for a free slot
+     */
+    public long getBlockedSubmitCount() {
+        return blockedSubmits.get();
+    }
+
+    public void shutdown() {
+        Arrays.stream(lanes).forEach(ThreadPoolExecutor::shutdown);
+    }
+
+    private Runnable guard(Object key, Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.error("Unexpected exception in task for key {}", key, e);
+            }
+        };
+    }
+
+    private int laneOf(Object key) {
+        return (Objects.hashCode(key) & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    private void waitForSlot(Runnable task, ThreadPoolExecutor lane) {
+        if (lane.isShutdown()) {
+            throw new RejectedExecutionException("Executor lane has been shut down");
+        }
+        blockedSubmits.incrementAndGet();
+        try {
+            lane.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for a free slot in executor lane", e);
+        }
+    }
+}
@@ -90,6 +90,9 @@ public class Constants {
     public static final String PAYLOAD = "payload";
     public static final String SUBSCRIPTION_ID = "subscriptionId";
     public static final String SUBSCRIPTIONS = "subscriptions";
+    public static final String RESUME_TOKEN = "resumeToken";
+    public static final String REPLAYED = "replayed";
+    public static final String MISSED = "missed";
     public static final String ID = "id";
     public static final String NAME = "name";
     public static final String NAME_PATTERN = "namePattern";
@@ -92,6 +92,7 @@ public class Messages {
     public static final String PASSWORD_REQUIRED = BidBundle.get("PASSWORD_REQUIRED");
     public static final String PASSWORD_VALIDATION_FAILED = BidBundle.get("PASSWORD_VALIDATION_FAILED");
     public static final String INTERNAL_SERVER_ERROR = BidBundle.get("INTERNAL_SERVER_ERROR");
+    public static final String SERVICE_OVERLOADED = BidBundle.get("SERVICE_OVERLOADED");
     public static final String INCORRECT_ACCESS_TYPE = BidBundle.get("INCORRECT_ACCESS_TYPE");
     public static final String PARSING_MICROSECONDS_ERROR = BidBundle.get("PARSING_MICROSECONDS_ERROR");
     public static final String INVALID_USER_ROLE = BidBundle.get("INVALID_USER_ROLE");
@@ -132,6 +133,7 @@ public class Messages {
     public static final String NOTIFICATION_INSERT_FAILED = BidBundle.get("NOTIFICATION_INSERT_FAILED");
     public static final String PAYLOAD_NOT_FOUND = BidBundle.get("PAYLOAD_NOT_FOUND");
     public static final String SUBSCRIPTION_NOT_FOUND = BidBundle.get("SUBSCRIPTION_NOT_FOUND");
+    public static final String RESUME_TOKEN_NOT_FOUND = BidBundle.get("RESUME_TOKEN_NOT_FOUND");
     public static final String DEVICE_ID_CONTAINS_INVALID_CHARACTERS = BidBundle.get("DEVICE_ID_CONTAINS_INVALID_CHARACTERS");
     public static final String INVALID_TOKEN = BidBundle.get("INVALID_TOKEN");
     public static final String INVALID_TOKEN_TYPE = BidBundle.get("INVALID_TOKEN_TYPE");
@@ -0,0 +1,33 @@
+package com.devicehive.exceptions;
+
+/*
+ * #%L
+ * DeviceHive Common Dao Interfaces
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Thrown when a call is refused right away because too many calls of its kind are already in flight. The caller may
+ * retry later; the frontend answers it with 503.
+ */
+public class ServiceOverloadedException extends RuntimeException {
+    private static final long serialVersionUID = -2748105934212650817L;
+
+    public ServiceOverloadedException(String message) {
+        super(message);
+    }
+}
@@ -69,6 +69,8 @@ public class GsonFactory {
 
                 .registerSubtype(CommandInsertRequest.class, Action.COMMAND_INSERT_REQUEST.ordinal())
                 .registerSubtype(CommandInsertResponse.class, Action.COMMAND_INSERT_RESPONSE.ordinal())
+                .registerSubtype(CommandInsertBatchRequest.class, Action.COMMAND_INSERT_BATCH_REQUEST.ordinal())
+                .registerSubtype(CommandInsertBatchResponse.class, Action.COMMAND_INSERT_BATCH_RESPONSE.ordinal())
                 .registerSubtype(CommandSearchRequest.class, Action.COMMAND_SEARCH_REQUEST.ordinal())
                 .registerSubtype(CommandSearchResponse.class, Action.COMMAND_SEARCH_RESPONSE.ordinal())
                 .registerSubtype(CommandSubscribeRequest.class, Action.COMMAND_SUBSCRIBE_REQUEST.ordinal())
@@ -84,6 +86,8 @@ public class GsonFactory {
                 .registerSubtype(NotificationSearchResponse.class, Action.NOTIFICATION_SEARCH_RESPONSE.ordinal())
                 .registerSubtype(NotificationInsertRequest.class, Action.NOTIFICATION_INSERT_REQUEST.ordinal())
                 .registerSubtype(NotificationInsertResponse.class, Action.NOTIFICATION_INSERT_RESPONSE.ordinal())
+                .registerSubtype(NotificationInsertBatchRequest.class, Action.NOTIFICATION_INSERT_BATCH_REQUEST.ordinal())
+                .registerSubtype(NotificationInsertBatchResponse.class, Action.NOTIFICATION_INSERT_BATCH_RESPONSE.ordinal())
                 .registerSubtype(NotificationSubscribeRequest.class, Action.NOTIFICATION_SUBSCRIBE_REQUEST.ordinal())
                 .registerSubtype(NotificationSubscribeResponse.class, Action.NOTIFICATION_SUBSCRIBE_RESPONSE.ordinal())
                 .registerSubtype(NotificationUnsubscribeRequest.class, Action.NOTIFICATION_UNSUBSCRIBE_REQUEST.ordinal())
@@ -25,12 +25,26 @@ import com.devicehive.shim.api.Request;
 public class ServerEvent {
 
     private Request request;
+    private long publishedAt;
 
     public void set(Request request) {
         this.request = request;
+        this.publishedAt = 0;
+    }
+
+    public void set(Request request, long publishedAt) {
+        this.request = request;
+        this.publishedAt = publishedAt;
     }
 
     public Request get() {
         return request;
     }
+
+    /**
+     * @return {@link System#nanoTime()} at which the request was published to the ring buffer, or 0 if unknown
+     */
+    public long getPublishedAt() {
+        return publishedAt;
+    }
 }
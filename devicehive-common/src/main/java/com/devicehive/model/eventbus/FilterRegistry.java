@@ -43,6 +43,8 @@ public abstract class FilterRegistry {
 
     public abstract void unregister(Subscriber subscriber);
 
+    public abstract void unregisterAll(Collection<Subscriber> subscribers);
+
     protected synchronized void processRegister(Filter filter, Subscriber subscriber) {
         Set<Subscriber> subscribers = subscriberTable.get(filter.getFirstKey(), filter.getSecondKey());
         if (subscribers == null) {
@@ -55,18 +57,45 @@ public abstract class FilterRegistry {
     }
 
     protected synchronized void processUnregister(Subscriber subscriber) {
-        subscriberTable.values().forEach(subscribers -> {
-            Iterator iterator = subscribers.iterator();
-
-            while (iterator.hasNext()) {
-                Object element = iterator.next();
-                if (element.equals(subscriber)) {
-                    iterator.remove();
-                }
-            }
+        processUnregisterAll(Collections.singleton(subscriber));
+    }
+
+    /**
+     * Removes all given subscribers in a single pass over the table and drops cells that become empty.
+     */
+    protected synchronized void processUnregisterAll(Collection<Subscriber> subscribers) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        Set<Long> ids = new HashSet<>();
+        subscribers.forEach(subscriber -> ids.add(subscriber.getId()));
+        subscriberTable.cellSet().removeIf(cell -> {
+            Set<Subscriber> cellSubscribers = cell.getValue();
+            cellSubscribers.removeIf(subscriber -> ids.contains(subscriber.getId()));
+            return cellSubscribers.isEmpty();
         });
     }
 
+    /**
+     * Unregisters every subscriber whose events are sent to the given reply address, e.g. when its client is gone.
+     */
+    public void unregisterReplyTo(String replyTo) {
+        Collection<Subscriber> subscribers = findSubscribers(replyTo);
+        if (!subscribers.isEmpty()) {
+            unregisterAll(subscribers);
+        }
+    }
+
+    private synchronized Collection<Subscriber> findSubscribers(String replyTo) {
+        Set<Subscriber> subscribers = new HashSet<>();
+        subscriberTable.values().forEach(cellSubscribers -> cellSubscribers.forEach(subscriber -> {
+            if (Objects.equals(replyTo, subscriber.getReplyTo())) {
+                subscribers.add(subscriber);
+            }
+        }));
+        return subscribers;
+    }
+
     public Collection<Subscriber> getSubscribers(Filter filter) {
         Set<Subscriber> subscribers = new HashSet<>();
         Set<Subscriber> globalFilterSubscribers = subscriberTable.get("*,*,*", filter.getSecondKey());
@@ -99,6 +128,9 @@ public abstract class FilterRegistry {
             case UNREGISTER:
                 processUnregister(subscribeMessage.getSubscriber());
                 break;
+            case UNREGISTER_ALL:
+                processUnregisterAll(subscribeMessage.getSubscribers());
+                break;
         }
     }
 }
@@ -0,0 +1,44 @@
+package com.devicehive.model.eventbus;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Collection;
+
+/**
+ * Filter registry that keeps subscriptions in memory of the current process only and does not notify other nodes.
+ */
+public class LocalFilterRegistry extends FilterRegistry {
+
+    @Override
+    public void register(Filter filter, Subscriber subscriber) {
+        processRegister(filter, subscriber);
+    }
+
+    @Override
+    public void unregister(Subscriber subscriber) {
+        processUnregister(subscriber);
+    }
+
+    @Override
+    public void unregisterAll(Collection<Subscriber> subscribers) {
+        processUnregisterAll(subscribers);
+    }
+}
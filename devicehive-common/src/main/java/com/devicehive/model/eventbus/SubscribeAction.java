@@ -22,7 +22,8 @@ package com.devicehive.model.eventbus;
 
 public enum SubscribeAction {
     REGISTER(0),
-    UNREGISTER(1);
+    UNREGISTER(1),
+    UNREGISTER_ALL(2);
 
     private int value;
 
@@ -22,6 +22,8 @@ package com.devicehive.model.eventbus;
 
 import com.google.gson.annotations.SerializedName;
 
+import java.util.Collection;
+
 public class SubscribeMessage {
 
     @SerializedName("a")
@@ -33,6 +35,9 @@ public class SubscribeMessage {
     @SerializedName("s")
     private Subscriber subscriber;
 
+    @SerializedName("ss")
+    private Collection<Subscriber> subscribers;
+
     public SubscribeMessage(SubscribeAction action, Filter filter, Subscriber subscriber) {
         this.action = action.getValue();
         this.filter = filter;
@@ -44,6 +49,11 @@ public class SubscribeMessage {
         this.subscriber = subscriber;
     }
 
+    public SubscribeMessage(SubscribeAction action, Collection<Subscriber> subscribers) {
+        this.action = action.getValue();
+        this.subscribers = subscribers;
+    }
+
     public SubscribeAction getAction() {
         return SubscribeAction.getValueForIndex(action);
     }
@@ -67,4 +77,12 @@ public class SubscribeMessage {
     public void setSubscriber(Subscriber subscriber) {
         this.subscriber = subscriber;
     }
+
+    public Collection<Subscriber> getSubscribers() {
+        return subscribers;
+    }
+
+    public void setSubscribers(Collection<Subscriber> subscribers) {
+        this.subscribers = subscribers;
+    }
 }
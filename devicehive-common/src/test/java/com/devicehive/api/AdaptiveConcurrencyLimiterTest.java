@@ -0,0 +1,148 @@
+package com.devicehive.api;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    public void shouldRejectOverLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 3, 2.0, 0.5);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(3, limiter.getInFlight());
+        assertEquals(1, limiter.getRejectedCount());
+
+        limiter.onComplete(TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void shouldDecreaseMultiplicativelyDownToMinLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 10, 2.0, 0.5);
+
+        drop(limiter);
+        assertEquals(5, limiter.getLimit());
+        drop(limiter);
+        assertEquals(2, limiter.getLimit());
+        drop(limiter);
+        assertEquals(2, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void shouldDecreaseAtMostOncePerRoundTrip() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 10, 2.0, 0.5);
+
+        drop(limiter);
+        assertEquals(5, limiter.getLimit());
+        // a burst of failures observed within one round trip of the last decrease counts once
+        assertTrue(limiter.tryAcquire());
+        limiter.onDropped(TimeUnit.HOURS.toNanos(1));
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    public void shouldIncreaseAdditivelyOnlyWhileLimitIsInUse() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 4, 2.0, 0.5);
+        drop(limiter);
+        assertEquals(2, limiter.getLimit());
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        // 2 of 2 permits in use: grows by 1 / limit
+        limiter.onComplete(1000);
+        assertEquals(2, limiter.getLimit());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        // 2.5 + 1 / 2.5
+        limiter.onComplete(1000);
+        // one of 2.9 permits in use
+        limiter.onComplete(1000);
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(2, limiter.getLimit());
+
+        // a single call in flight does not use the limit, idle traffic must not inflate it
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.onComplete(1000);
+        }
+        assertEquals(2, limiter.getLimit());
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        limiter.onComplete(1000);
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    public void shouldNotGrowBeyondMaxLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 2, 2.0, 0.5);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire());
+            assertTrue(limiter.tryAcquire());
+            limiter.onComplete(1000);
+            limiter.onComplete(1000);
+        }
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void shouldDecreaseWhenLatencyExceedsBaselineTolerance() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 8, 2.0, 0.5);
+        // one full window of samples sets the baseline to its fastest call
+        for (int i = 0; i < 500; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.onComplete(TimeUnit.MICROSECONDS.toNanos(i == 0 ? 100 : 150));
+        }
+        assertEquals(100, limiter.getBaselineMicros());
+        assertEquals(8, limiter.getLimit());
+
+        assertTrue(limiter.tryAcquire());
+        limiter.onComplete(TimeUnit.MICROSECONDS.toNanos(200));
+        assertEquals("Within tolerance", 8, limiter.getLimit());
+
+        Thread.sleep(1);
+        assertTrue(limiter.tryAcquire());
+        limiter.onComplete(TimeUnit.MICROSECONDS.toNanos(201));
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldValidateBackoffRatio() {
+        new AdaptiveConcurrencyLimiter(1, 2, 2.0, 1.0);
+    }
+
+    /**
+     * Drops a call with zero elapsed time, so the decrease is never suppressed as being within the same round trip.
+     */
+    private static void drop(AdaptiveConcurrencyLimiter limiter) {
+        assertTrue(limiter.tryAcquire());
+        limiter.onDropped(0);
+    }
+}
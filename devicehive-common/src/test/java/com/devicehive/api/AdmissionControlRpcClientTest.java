@@ -0,0 +1,161 @@
+package com.devicehive.api;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.exceptions.ServiceOverloadedException;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.RequestClass;
+import com.devicehive.shim.api.Response;
+import com.devicehive.shim.api.client.RpcClient;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class AdmissionControlRpcClientTest {
+
+    private final RpcClient delegate = Mockito.mock(RpcClient.class);
+    private final List<Consumer<Response>> pending = new ArrayList<>();
+    private final List<Response> delivered = new ArrayList<>();
+    private final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 4, 2.0, 0.5);
+
+    private AdmissionControlRpcClient client = client(60000);
+
+    @After
+    public void tearDown() {
+        client.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldRejectWithoutCallingDelegateWhenLimitIsReached() {
+        capturePending();
+        for (int i = 0; i < 4; i++) {
+            client.call(request(), delivered::add);
+        }
+        try {
+            client.call(request(), delivered::add);
+            fail("Call over the limit must be rejected");
+        } catch (ServiceOverloadedException e) {
+            // expected
+        }
+        Mockito.verify(delegate, Mockito.times(4)).call(Matchers.any(Request.class), Matchers.any(Consumer.class));
+        assertEquals(4, limiter.getInFlight());
+        assertEquals(1, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void shouldReleasePermitOnResponse() {
+        capturePending();
+        client.call(request(), delivered::add);
+        assertEquals(1, limiter.getInFlight());
+
+        pending.get(0).accept(Response.newBuilder().buildSuccess());
+
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(4, limiter.getLimit());
+        assertEquals(1, delivered.size());
+    }
+
+    @Test
+    public void shouldReleasePermitAndBackOffOnServerError() {
+        capturePending();
+        client.call(request(), delivered::add);
+
+        pending.get(0).accept(Response.newBuilder().buildFailed(503));
+
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(2, limiter.getLimit());
+        assertEquals(1, delivered.size());
+    }
+
+    @Test
+    public void shouldNotBackOffOnClientError() {
+        capturePending();
+        client.call(request(), delivered::add);
+
+        pending.get(0).accept(Response.newBuilder().buildFailed(404));
+
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldReleasePermitWhenDelegateThrows() {
+        Mockito.doThrow(new IllegalStateException("Producer closed"))
+                .when(delegate).call(Matchers.any(Request.class), Matchers.any(Consumer.class));
+        try {
+            client.call(request(), delivered::add);
+            fail("Exception of the delegate must be rethrown");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test(timeout = 10000)
+    public void shouldReleasePermitOnceOnTimeout() throws Exception {
+        client.shutdown();
+        client = client(50);
+        capturePending();
+        client.call(request(), delivered::add);
+
+        while (limiter.getInFlight() > 0) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, limiter.getLimit());
+
+        // a late response still reaches the caller but does not release the permit again
+        pending.get(0).accept(Response.newBuilder().buildSuccess());
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(1, delivered.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void capturePending() {
+        Mockito.doAnswer(invocation -> {
+            pending.add((Consumer<Response>) invocation.getArguments()[1]);
+            return null;
+        }).when(delegate).call(Matchers.any(Request.class), Matchers.any(Consumer.class));
+    }
+
+    private AdmissionControlRpcClient client(long timeoutMillis) {
+        Map<RequestClass, AdaptiveConcurrencyLimiter> limiters = new EnumMap<>(RequestClass.class);
+        for (RequestClass requestClass : RequestClass.values()) {
+            limiters.put(requestClass, limiter);
+        }
+        return new AdmissionControlRpcClient(delegate, limiters, timeoutMillis);
+    }
+
+    private static Request request() {
+        return Request.newBuilder().build();
+    }
+}
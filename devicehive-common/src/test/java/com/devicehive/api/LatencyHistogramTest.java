@@ -0,0 +1,146 @@
+package com.devicehive.api;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void shouldKeepSmallValuesExact() {
+        for (long micros = 0; micros < 16; micros++) {
+            assertEquals(micros, LatencyHistogram.upperBoundOf(LatencyHistogram.indexOf(micros)));
+        }
+    }
+
+    @Test
+    public void shouldCoverValuesWithContiguousBuckets() {
+        int previous = LatencyHistogram.indexOf(0);
+        for (long micros = 1; micros < 1 << 20; micros++) {
+            int index = LatencyHistogram.indexOf(micros);
+            assertTrue("Index of " + micros, index == previous || index == previous + 1);
+            if (index == previous + 1) {
+                assertEquals("Bucket before " + micros, micros - 1, LatencyHistogram.upperBoundOf(previous));
+            }
+            previous = index;
+        }
+    }
+
+    @Test
+    public void shouldBoundRelativeError() {
+        for (long micros : new long[]{16, 17, 31, 32, 100, 999, 1000, 1024, 123456, 1L << 40, (1L << 40) + 1,
+                Long.MAX_VALUE / 3}) {
+            long upperBound = LatencyHistogram.upperBoundOf(LatencyHistogram.indexOf(micros));
+            assertTrue("Upper bound of " + micros, upperBound >= micros);
+            assertTrue("Error at " + micros, (upperBound - micros) <= micros / 8);
+        }
+    }
+
+    @Test
+    public void shouldFitLargestValue() {
+        int index = LatencyHistogram.indexOf(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBoundOf(index));
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(TimeUnit.NANOSECONDS.toMicros(Long.MAX_VALUE), histogram.getPercentileMicros(100));
+    }
+
+    @Test
+    public void shouldReportPercentilesWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10000; micros++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+
+        assertEquals(10000, histogram.getCount());
+        for (double percentile : new double[]{1, 50, 90, 99, 99.9}) {
+            long exact = (long) Math.ceil(10000 * percentile / 100);
+            long reported = histogram.getPercentileMicros(percentile);
+            assertTrue("p" + percentile + " " + reported, reported >= exact && reported <= exact + exact / 8);
+        }
+        assertEquals(10000, histogram.getPercentileMicros(100));
+    }
+
+    @Test
+    public void shouldNotReportPercentileAboveMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(1000));
+
+        // 1000 falls into the bucket of 960..1023
+        assertEquals(1000, histogram.getPercentileMicros(50));
+        assertEquals(1000, histogram.getPercentileMicros(99.9));
+    }
+
+    @Test
+    public void shouldSnapshotEmptyHistogram() {
+        Map<String, Number> snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals(0L, snapshot.get("count"));
+        assertEquals(0L, snapshot.get("meanUs"));
+        assertEquals(0L, snapshot.get("p50Us"));
+        assertEquals(0L, snapshot.get("maxUs"));
+    }
+
+    @Test
+    public void shouldSnapshotCountMeanPercentilesAndMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(10));
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(20));
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(30));
+        // clock skew must not produce a negative bucket
+        histogram.record(-5);
+
+        Map<String, Number> snapshot = histogram.snapshot();
+        assertArrayEquals(new String[]{"count", "meanUs", "p50Us", "p90Us", "p99Us", "p999Us", "maxUs"},
+                snapshot.keySet().toArray());
+        assertEquals(4L, snapshot.get("count"));
+        assertEquals(15L, snapshot.get("meanUs"));
+        assertEquals(10L, snapshot.get("p50Us"));
+        assertEquals(30L, snapshot.get("p99Us"));
+        assertEquals(30L, snapshot.get("maxUs"));
+    }
+
+    @Test(timeout = 30000)
+    public void shouldCountConcurrentRecords() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread < 4; thread++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    histogram.record(TimeUnit.MICROSECONDS.toNanos(i % 100));
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(20, TimeUnit.SECONDS));
+
+        assertEquals(40000, histogram.getCount());
+        assertEquals(99, histogram.getPercentileMicros(100));
+    }
+}
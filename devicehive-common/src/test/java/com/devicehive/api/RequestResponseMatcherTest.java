@@ -0,0 +1,115 @@
+package com.devicehive.api;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.shim.api.Response;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RequestResponseMatcherTest {
+
+    private final RequestResponseMatcher matcher = new RequestResponseMatcher(1, 1);
+
+    @After
+    public void tearDown() {
+        matcher.shutdown();
+    }
+
+    @Test
+    public void shouldNotBlockOfferingThreadWhenLaneIsFull() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger events = new AtomicInteger();
+        matcher.addRequestCallback("subscription", response -> {
+            running.countDown();
+            await(release);
+            events.incrementAndGet();
+        });
+        CompletableFuture<Response> request = new CompletableFuture<>();
+        matcher.addRequestCallback("request", request::complete);
+
+        matcher.offerResponse(response("subscription", false));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        matcher.offerResponse(response("subscription", false));
+        // the lane is busy and its only slot is taken, none of these may wait for it
+        matcher.offerResponse(response("subscription", false));
+        matcher.offerResponse(response("request", true));
+
+        Response failed = request.get(5, TimeUnit.SECONDS);
+        assertTrue(failed.isFailed());
+        assertEquals(503, failed.getErrorCode());
+        assertFalse(matcher.hasRequestCallback("request"));
+        assertEquals(1, matcher.getDroppedEventCount());
+        assertEquals(1, matcher.getFailedRequestCount());
+
+        // the subscription itself goes on
+        assertTrue(matcher.hasRequestCallback("subscription"));
+        release.countDown();
+    }
+
+    @Test(timeout = 10000)
+    public void shouldDeliverResponsesInOrderAndForgetFinishedRequest() throws Exception {
+        CountDownLatch delivered = new CountDownLatch(1);
+        StringBuilder order = new StringBuilder();
+        RequestResponseMatcher roomy = new RequestResponseMatcher(2, 16);
+        try {
+            roomy.addRequestCallback("request", response -> {
+                order.append(response.isLast() ? "last" : "next,");
+                if (response.isLast()) {
+                    delivered.countDown();
+                }
+            });
+            roomy.offerResponse(response("request", false));
+            roomy.offerResponse(response("request", true));
+
+            assertTrue(delivered.await(5, TimeUnit.SECONDS));
+            assertEquals("next,last", order.toString());
+            assertEquals(0, roomy.getDroppedEventCount());
+            while (roomy.hasRequestCallback("request")) {
+                Thread.sleep(10);
+            }
+        } finally {
+            roomy.shutdown();
+        }
+    }
+
+    private static Response response(String correlationId, boolean last) {
+        return Response.newBuilder()
+                .withCorrelationId(correlationId)
+                .withLast(last)
+                .buildSuccess();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.devicehive.api;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StripedExecutorTest {
+
+    private StripedExecutor executor;
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldRunTasksOfOneKeyInSubmissionOrder() throws Exception {
+        executor = new StripedExecutor("test", 4, 1024);
+        List<List<Integer>> seen = new ArrayList<>();
+        for (int key = 0; key < 8; key++) {
+            seen.add(Collections.synchronizedList(new ArrayList<>()));
+        }
+        CountDownLatch done = new CountDownLatch(8 * 100);
+        for (int i = 0; i < 100; i++) {
+            for (int key = 0; key < 8; key++) {
+                int value = i;
+                List<Integer> values = seen.get(key);
+                executor.execute(key, () -> {
+                    values.add(value);
+                    done.countDown();
+                });
+            }
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (List<Integer> values : seen) {
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i, values.get(i).intValue());
+            }
+        }
+    }
+
+    @Test
+    public void shouldRefuseTaskWhenLaneIsFull() throws Exception {
+        executor = new StripedExecutor("test", 1, 2);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        assertTrue(executor.tryExecute("key", () -> {
+            running.countDown();
+            await(release);
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        assertTrue(executor.tryExecute("key", () -> {}));
+        assertTrue(executor.tryExecute("key", () -> {}));
+        assertEquals(0, executor.getRemainingCapacity("key"));
+        assertFalse(executor.tryExecute("other", () -> {}));
+        assertEquals(2, executor.getQueueDepth());
+
+        release.countDown();
+    }
+
+    @Test(timeout = 10000)
+    public void shouldBlockExecuteUntilLaneHasRoom() throws Exception {
+        executor = new StripedExecutor("test", 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute("key", () -> await(release));
+        executor.execute("key", () -> {});
+
+        CountDownLatch ran = new CountDownLatch(1);
+        ExecutorService submitter = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> blocked = submitter.submit(() -> executor.execute("key", ran::countDown));
+            while (executor.getBlockedSubmitCount() == 0) {
+                Thread.sleep(10);
+            }
+            assertFalse(blocked.isDone());
+
+            release.countDown();
+            blocked.get(5, TimeUnit.SECONDS);
+            assertTrue(ran.await(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            submitter.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldKeepLaneRunningAfterFailedTask() throws Exception {
+        executor = new StripedExecutor("test", 1, 16);
+        CountDownLatch ran = new CountDownLatch(1);
+        executor.execute("key", () -> {
+            throw new IllegalStateException("expected");
+        });
+        executor.execute("key", ran::countDown);
+
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shouldRefuseTasksAfterShutdown() throws Exception {
+        executor = new StripedExecutor("test", 2, 16);
+        CountDownLatch ran = new CountDownLatch(1);
+        executor.execute("key", ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+
+        executor.shutdown();
+
+        assertFalse(executor.tryExecute("key", () -> {}));
+        try {
+            executor.execute("key", () -> {});
+            fail("Shut down executor must not take tasks");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEmptyLanes() {
+        new StripedExecutor("test", 0, 16);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
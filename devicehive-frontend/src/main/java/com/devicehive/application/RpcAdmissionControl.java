@@ -0,0 +1,107 @@
+package com.devicehive.application;
+
+/*
+ * #%L
+ * DeviceHive Java Server Common business logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.AdaptiveConcurrencyLimiter;
+import com.devicehive.api.AdmissionControlRpcClient;
+import com.devicehive.api.RpcMetrics;
+import com.devicehive.shim.api.RequestClass;
+import com.devicehive.shim.api.client.RpcClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Puts admission control in front of the rpc client, so the frontend sheds load with 503 once the backend slows
+ * down instead of accumulating pending calls until it runs out of memory. Limits are tracked per
+ * {@link RequestClass}. Off unless {@code rpc.client.admission.enabled} is set.
+ */
+@Component
+public class RpcAdmissionControl implements BeanPostProcessor {
+    private static final Logger logger = LoggerFactory.getLogger(RpcAdmissionControl.class);
+
+    private final RpcMetrics rpcMetrics;
+
+    @Value("${rpc.client.admission.enabled:false}")
+    private boolean enabled;
+
+    @Value("${rpc.client.admission.min-limit:8}")
+    private int minLimit;
+
+    @Value("${rpc.client.admission.realtime.max-limit:2000}")
+    private int realtimeMaxLimit;
+
+    @Value("${rpc.client.admission.query.max-limit:200}")
+    private int queryMaxLimit;
+
+    @Value("${rpc.client.admission.admin.max-limit:50}")
+    private int adminMaxLimit;
+
+    @Value("${rpc.client.admission.latency-tolerance:2.0}")
+    private double latencyTolerance;
+
+    @Value("${rpc.client.admission.backoff-ratio:0.9}")
+    private double backoffRatio;
+
+    @Value("${rpc.client.admission.timeout-ms:30000}")
+    private long timeoutMillis;
+
+    @Autowired
+    public RpcAdmissionControl(RpcMetrics rpcMetrics) {
+        this.rpcMetrics = rpcMetrics;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if (!enabled || !(bean instanceof RpcClient) || bean instanceof AdmissionControlRpcClient) {
+            return bean;
+        }
+        final Map<RequestClass, AdaptiveConcurrencyLimiter> limiters = new EnumMap<>(RequestClass.class);
+        limiters.put(RequestClass.REALTIME, limiter(realtimeMaxLimit));
+        limiters.put(RequestClass.QUERY, limiter(queryMaxLimit));
+        limiters.put(RequestClass.ADMIN, limiter(adminMaxLimit));
+        limiters.forEach((requestClass, limiter) -> {
+            String prefix = "client.admission." + requestClass.name().toLowerCase() + ".";
+            rpcMetrics.registerGauge(prefix + "limit", limiter::getLimit);
+            rpcMetrics.registerGauge(prefix + "inFlight", limiter::getInFlight);
+            rpcMetrics.registerGauge(prefix + "rejected", limiter::getRejectedCount);
+            rpcMetrics.registerGauge(prefix + "baselineUs", limiter::getBaselineMicros);
+        });
+        logger.info("Admission control enabled for rpc client '{}'", beanName);
+        return new AdmissionControlRpcClient((RpcClient) bean, limiters, timeoutMillis);
+    }
+
+    private AdaptiveConcurrencyLimiter limiter(int maxLimit) {
+        return new AdaptiveConcurrencyLimiter(Math.min(minLimit, maxLimit), maxLimit, latencyTolerance, backoffRatio);
+    }
+}
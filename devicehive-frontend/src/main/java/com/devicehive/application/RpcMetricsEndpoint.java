@@ -0,0 +1,48 @@
+package com.devicehive.application;
+
+/*
+ * #%L
+ * DeviceHive Java Server Common business logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RpcMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Actuator endpoint with rpc gauges and per-action latency percentiles of every rpc stage.
+ */
+@Component
+public class RpcMetricsEndpoint extends AbstractEndpoint<Map<String, Object>> {
+
+    private final RpcMetrics rpcMetrics;
+
+    @Autowired
+    public RpcMetricsEndpoint(RpcMetrics rpcMetrics) {
+        super("rpc");
+        this.rpcMetrics = rpcMetrics;
+    }
+
+    @Override
+    public Map<String, Object> invoke() {
+        return rpcMetrics.getSnapshot();
+    }
+}
@@ -0,0 +1,71 @@
+package com.devicehive.application;
+
+/*
+ * #%L
+ * DeviceHive Java Server Common business logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RequestResponseMatcher;
+import com.devicehive.api.RpcMetrics;
+import com.devicehive.api.StripedExecutor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Exposes rpc gauges, state of the rpc client callback lanes and per-action latency percentiles through
+ * the actuator metrics endpoint. Full histograms are available from {@link RpcMetricsEndpoint}.
+ */
+@Component
+public class RpcPublicMetrics implements PublicMetrics {
+
+    private final RequestResponseMatcher requestResponseMatcher;
+    private final RpcMetrics rpcMetrics;
+
+    @Autowired
+    public RpcPublicMetrics(RequestResponseMatcher requestResponseMatcher, RpcMetrics rpcMetrics) {
+        this.requestResponseMatcher = requestResponseMatcher;
+        this.rpcMetrics = rpcMetrics;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        StripedExecutor callbackExecutor = requestResponseMatcher.getCallbackExecutor();
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("rpc.correlation.map.size", requestResponseMatcher.getCorrelationMapSize()));
+        metrics.add(new Metric<>("rpc.callback.lanes", callbackExecutor.getLaneCount()));
+        metrics.add(new Metric<>("rpc.callback.queue.depth", callbackExecutor.getQueueDepth()));
+        metrics.add(new Metric<>("rpc.callback.queue.depth.max", callbackExecutor.getMaxLaneQueueDepth()));
+        metrics.add(new Metric<>("rpc.callback.completed", callbackExecutor.getCompletedTaskCount()));
+        metrics.add(new Metric<>("rpc.callback.blocked", callbackExecutor.getBlockedSubmitCount()));
+        metrics.add(new Metric<>("rpc.callback.dropped", requestResponseMatcher.getDroppedEventCount()));
+        metrics.add(new Metric<>("rpc.callback.failed", requestResponseMatcher.getFailedRequestCount()));
+        rpcMetrics.getGauges().forEach((name, value) -> metrics.add(new Metric<>("rpc." + name, value)));
+        rpcMetrics.getTimers().forEach((stage, byAction) -> byAction.forEach((action, histogram) -> {
+            String prefix = "rpc." + stage + "." + action + ".";
+            metrics.add(new Metric<>(prefix + "count", histogram.get("count")));
+            metrics.add(new Metric<>(prefix + "p99Us", histogram.get("p99Us")));
+        }));
+        return metrics;
+    }
+}
@@ -0,0 +1,76 @@
+package com.devicehive.application;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import io.undertow.servlet.api.DeploymentInfo;
+import io.undertow.websockets.extensions.PerMessageDeflateHandshake;
+import io.undertow.websockets.jsr.WebSocketDeploymentInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.embedded.ConfigurableEmbeddedServletContainer;
+import org.springframework.boot.context.embedded.EmbeddedServletContainerCustomizer;
+import org.springframework.boot.context.embedded.undertow.UndertowEmbeddedServletContainerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+
+/**
+ * Offers the permessage-deflate extension (RFC 7692) on the /websocket endpoint. Clients that do not ask for it
+ * during the handshake keep getting uncompressed frames. Runs after Spring Boot's own WebSocket customizer, which
+ * creates the deployment info the extension is registered on.
+ */
+@Component
+public class WebSocketCompressionCustomizer implements EmbeddedServletContainerCustomizer, Ordered {
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketCompressionCustomizer.class);
+
+    @Value("${websocket.compression.enabled:false}")
+    private boolean enabled;
+
+    @Value("${websocket.compression.level:" + PerMessageDeflateHandshake.DEFAULT_DEFLATER + "}")
+    private int level;
+
+    @Value("${websocket.compression.context-takeover:true}")
+    private boolean contextTakeover;
+
+    @Override
+    public void customize(ConfigurableEmbeddedServletContainer container) {
+        if (!enabled || !(container instanceof UndertowEmbeddedServletContainerFactory)) {
+            return;
+        }
+        ((UndertowEmbeddedServletContainerFactory) container).addDeploymentInfoCustomizers(this::addDeflateExtension);
+    }
+
+    private void addDeflateExtension(DeploymentInfo deploymentInfo) {
+        WebSocketDeploymentInfo webSocketInfo = (WebSocketDeploymentInfo) deploymentInfo.getServletContextAttributes()
+                .get(WebSocketDeploymentInfo.ATTRIBUTE_NAME);
+        if (webSocketInfo == null) {
+            webSocketInfo = new WebSocketDeploymentInfo();
+            deploymentInfo.addServletContextAttribute(WebSocketDeploymentInfo.ATTRIBUTE_NAME, webSocketInfo);
+        }
+        webSocketInfo.addExtension(new PerMessageDeflateHandshake(false, level, contextTakeover, contextTakeover));
+        logger.info("WebSocket permessage-deflate enabled, level {}, context takeover {}", level, contextTakeover);
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+}
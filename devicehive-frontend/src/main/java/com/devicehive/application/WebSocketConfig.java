@@ -22,6 +22,7 @@ package com.devicehive.application;
 
 import com.devicehive.configuration.Constants;
 import com.devicehive.websockets.DeviceHiveWebSocketHandler;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.WebSocketHandler;
@@ -35,6 +36,12 @@ import org.springframework.web.socket.server.standard.ServletServerContainerFact
 @EnableWebSocket
 public class WebSocketConfig implements WebSocketConfigurer {
 
+    @Value("${websocket.max-text-message-size:" + Constants.WEBSOCKET_MAX_BUFFER_SIZE + "}")
+    private int maxTextMessageSize;
+
+    @Value("${websocket.max-binary-message-size:" + Constants.WEBSOCKET_MAX_BUFFER_SIZE + "}")
+    private int maxBinaryMessageSize;
+
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry webSocketHandlerRegistry) {
         webSocketHandlerRegistry
@@ -49,8 +56,8 @@ public class WebSocketConfig implements WebSocketConfigurer {
     @Bean
     public ServletServerContainerFactoryBean createWebSocketContainer() {
         ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
-        container.setMaxBinaryMessageBufferSize(Constants.WEBSOCKET_MAX_BUFFER_SIZE);
-        container.setMaxTextMessageBufferSize(Constants.WEBSOCKET_MAX_BUFFER_SIZE);
+        container.setMaxBinaryMessageBufferSize(maxBinaryMessageSize);
+        container.setMaxTextMessageBufferSize(maxTextMessageSize);
         container.setMaxSessionIdleTimeout(Constants.WEBSOCKET_TIMEOUT);
         return container;
     }
@@ -0,0 +1,143 @@
+package com.devicehive.messages.handler;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+/**
+ * Collects event frames of a session that opted in to coalescing. Frames queued within the flush window, or until
+ * the byte budget is reached, are sent as one JSON array frame; a lone frame is sent as is. Frames are cut in the
+ * order their events were added and sent one at a time by a single sender task per session, so a budget flush
+ * never overtakes a window flush. Neither the adding thread nor the scheduler thread sends.
+ */
+class CoalescingEventBuffer {
+
+    private final WebSocketSession session;
+    private final long windowMillis;
+    private final int maxBytes;
+    private final ScheduledExecutorService scheduler;
+    private final Executor senders;
+    private final BiConsumer<String, WebSocketSession> sender;
+
+    private List<String> pending = new ArrayList<>();
+    private int pendingBytes;
+    private final Queue<String> outgoing = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean sending = new AtomicBoolean();
+
+    CoalescingEventBuffer(WebSocketSession session, long windowMillis, int maxBytes, ScheduledExecutorService scheduler,
+                          Executor senders, BiConsumer<String, WebSocketSession> sender) {
+        this.session = session;
+        this.windowMillis = windowMillis;
+        this.maxBytes = maxBytes;
+        this.scheduler = scheduler;
+        this.senders = senders;
+        this.sender = sender;
+    }
+
+    long getWindowMillis() {
+        return windowMillis;
+    }
+
+    void add(String frame) {
+        boolean full = false;
+        synchronized (this) {
+            pending.add(frame);
+            pendingBytes += frame.length();
+            if (pendingBytes >= maxBytes) {
+                cut();
+                full = true;
+            } else if (pending.size() == 1) {
+                scheduler.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full) {
+            dispatch();
+        }
+    }
+
+    void flush() {
+        synchronized (this) {
+            cut();
+        }
+        dispatch();
+    }
+
+    // called under the lock, so frames enter the outgoing queue in event order
+    private void cut() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<String> frames = pending;
+        pending = new ArrayList<>();
+        pendingBytes = 0;
+        outgoing.add(encode(frames));
+    }
+
+    private void dispatch() {
+        if (outgoing.isEmpty() || !sending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            senders.execute(this::sendOutgoing);
+        } catch (RejectedExecutionException e) {
+            sending.set(false);
+        }
+    }
+
+    private void sendOutgoing() {
+        try {
+            String frame;
+            while ((frame = outgoing.poll()) != null) {
+                sender.accept(frame, session);
+            }
+        } finally {
+            sending.set(false);
+        }
+        // a frame may have been queued after the last poll but before the flag was cleared
+        dispatch();
+    }
+
+    private static String encode(List<String> frames) {
+        if (frames.size() == 1) {
+            return frames.get(0);
+        }
+        StringBuilder array = new StringBuilder(frames.stream().mapToInt(String::length).sum() + frames.size() + 1);
+        array.append('[');
+        for (int i = 0; i < frames.size(); i++) {
+            if (i > 0) {
+                array.append(',');
+            }
+            array.append(frames.get(i));
+        }
+        return array.append(']').toString();
+    }
+}
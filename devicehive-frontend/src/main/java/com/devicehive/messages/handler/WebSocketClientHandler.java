@@ -20,35 +20,145 @@ package com.devicehive.messages.handler;
  * #L%
  */
 
+import com.devicehive.configuration.Messages;
+import com.devicehive.exceptions.HiveException;
 import com.devicehive.websockets.converters.JsonMessageBuilder;
 import com.devicehive.websockets.converters.WebSocketResponse;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import static com.devicehive.websockets.converters.JsonMessageBuilder.ACTION;
 import static com.devicehive.websockets.converters.JsonMessageBuilder.REQUEST_ID;
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 
 @Component
 public class WebSocketClientHandler {
     private static final Logger logger = LoggerFactory.getLogger(WebSocketClientHandler.class);
 
+    /**
+     * Request field a client uses to opt in to coalesced event frames: {@code true} for the default flush window, or
+     * the window in milliseconds.
+     */
+    public static final String COALESCE = "coalesce";
+
+    private static final String EVENT_BUFFER = CoalescingEventBuffer.class.getName();
+
+    @Value("${websocket.coalesce.default-window-ms:10}")
+    private long defaultCoalesceWindowMillis;
+
+    @Value("${websocket.coalesce.max-window-ms:1000}")
+    private long maxCoalesceWindowMillis;
+
+    @Value("${websocket.coalesce.max-bytes:65536}")
+    private int maxCoalesceBytes;
+
+    @Value("${websocket.coalesce.sender-threads:4}")
+    private int coalesceSenderThreads;
+
+    // only fires flush windows; coalesced frames are sent on the sender pool
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "websocket-event-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ExecutorService senders;
+
+    @PostConstruct
+    public void start() {
+        senders = Executors.newFixedThreadPool(Math.max(1, coalesceSenderThreads), r -> {
+            Thread thread = new Thread(r, "websocket-event-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
     public void sendMessage(JsonObject json, WebSocketSession session) {
+        sendMessage(json.toString(), session);
+    }
+
+    /**
+     * Sends an already encoded message, e.g. an event frame whose body is shared by all recipients.
+     */
+    public void sendMessage(String message, WebSocketSession session) {
         if (!session.isOpen()) {
             return;
         }
         try {
-            session.sendMessage(new TextMessage(json.toString()));
+            session.sendMessage(new TextMessage(message));
         } catch (IOException e) {
             logger.error("Exception while sending message", e);
         }
     }
 
+    /**
+     * Sends a subscription event. Events of a session that opted in to coalescing are queued and go out together
+     * as one array frame.
+     */
+    public void sendEvent(String frame, WebSocketSession session) {
+        CoalescingEventBuffer buffer = (CoalescingEventBuffer) session.getAttributes().get(EVENT_BUFFER);
+        if (buffer != null) {
+            buffer.add(frame);
+        } else {
+            sendMessage(frame, session);
+        }
+    }
+
+    /**
+     * Turns on event coalescing for the session if the request asks for it. The requested window is capped by
+     * {@code websocket.coalesce.max-window-ms}; a later request may change it, {@code false} or 0 turns it off.
+     * Any other value fails the request with 400.
+     */
+    public void negotiateCoalescing(JsonObject request, WebSocketSession session) {
+        JsonElement coalesce = request.get(COALESCE);
+        if (coalesce == null || coalesce.isJsonNull()) {
+            return;
+        }
+        long windowMillis;
+        try {
+            if (coalesce.isJsonPrimitive() && coalesce.getAsJsonPrimitive().isBoolean()) {
+                windowMillis = coalesce.getAsBoolean() ? defaultCoalesceWindowMillis : 0;
+            } else {
+                windowMillis = Math.min(coalesce.getAsLong(), maxCoalesceWindowMillis);
+            }
+        } catch (NumberFormatException | UnsupportedOperationException | IllegalStateException e) {
+            throw new HiveException(Messages.INVALID_REQUEST_PARAMETERS, SC_BAD_REQUEST);
+        }
+        CoalescingEventBuffer previous = (CoalescingEventBuffer) session.getAttributes().get(EVENT_BUFFER);
+        if (previous != null && previous.getWindowMillis() == windowMillis) {
+            return;
+        }
+        if (windowMillis > 0) {
+            session.getAttributes().put(EVENT_BUFFER,
+                    new CoalescingEventBuffer(session, windowMillis, maxCoalesceBytes, flusher, senders, this::sendMessage));
+        } else {
+            session.getAttributes().remove(EVENT_BUFFER);
+        }
+        if (previous != null) {
+            previous.flush();
+        }
+        logger.debug("Event coalescing window for session {} set to {} ms", session.getId(), windowMillis);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        senders.shutdown();
+    }
+
     public void sendMessage(JsonObject request, JsonObject response, WebSocketSession session) {
         JsonObject message = new JsonMessageBuilder()
                 .addAction(request.get(ACTION))
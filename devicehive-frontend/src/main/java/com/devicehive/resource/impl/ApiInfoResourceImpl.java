@@ -21,6 +21,7 @@ package com.devicehive.resource.impl;
  */
 
 
+import com.devicehive.api.RpcMetrics;
 import com.devicehive.configuration.Constants;
 import com.devicehive.json.strategies.JsonPolicyDef;
 import com.devicehive.resource.ApiInfoResource;
@@ -53,16 +54,19 @@ public class ApiInfoResourceImpl implements ApiInfoResource {
     private final LocalContainerEntityManagerFactoryBean entityManagerFactory;
     private final TimestampService timestampService;
     private final BaseApiInfoResource baseApiInfoResource;
+    private final RpcMetrics rpcMetrics;
 
     @Autowired
     public ApiInfoResourceImpl(TimestampService timestampService,
             Environment env,
             LocalContainerEntityManagerFactoryBean entityManagerFactory,
-            BaseApiInfoResource baseApiInfoResource) {
+            BaseApiInfoResource baseApiInfoResource,
+            RpcMetrics rpcMetrics) {
         this.timestampService = timestampService;
         this.env = env;
         this.entityManagerFactory = entityManagerFactory;
         this.baseApiInfoResource = baseApiInfoResource;
+        this.rpcMetrics = rpcMetrics;
     }
 
     @Override
@@ -76,6 +80,7 @@ public class ApiInfoResourceImpl implements ApiInfoResource {
         CacheInfoVO cacheInfoVO = new CacheInfoVO();
         cacheInfoVO.setServerTimestamp(timestampService.getDate());
         cacheInfoVO.setCacheStats(getCacheStats());
+        cacheInfoVO.setRpcStats(rpcMetrics.getSnapshot());
 
         return ResponseFactory.response(Response.Status.OK, cacheInfoVO, JsonPolicyDef.Policy.REST_SERVER_INFO);
     }
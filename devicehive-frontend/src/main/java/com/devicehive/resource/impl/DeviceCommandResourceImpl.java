@@ -20,6 +20,7 @@ package com.devicehive.resource.impl;
  * #L%
  */
 
+import com.devicehive.api.RpcMetrics;
 import com.devicehive.auth.HiveAuthentication;
 import com.devicehive.auth.HivePrincipal;
 import com.devicehive.configuration.Messages;
@@ -36,6 +37,7 @@ import com.devicehive.resource.util.ResponseFactory;
 import com.devicehive.service.BaseFilterService;
 import com.devicehive.service.DeviceCommandService;
 import com.devicehive.service.DeviceService;
+import com.devicehive.service.LongPollSubscriptionCache;
 import com.devicehive.service.time.TimestampService;
 import com.devicehive.util.HiveValidator;
 import com.devicehive.vo.DeviceVO;
@@ -46,9 +48,12 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.container.CompletionCallback;
 import javax.ws.rs.container.Suspended;
@@ -80,6 +85,15 @@ public class DeviceCommandResourceImpl implements DeviceCommandResource {
     private final TimestampService timestampService;
     private final BaseFilterService filterService;
     private final HiveValidator hiveValidator;
+    private final RpcMetrics rpcMetrics;
+
+    @Value("${rest.poll.subscription-ttl-ms:60000}")
+    private long pollSubscriptionTtlMillis;
+
+    @Value("${rest.poll.buffer-size:256}")
+    private int pollBufferSize;
+
+    private LongPollSubscriptionCache<DeviceCommand> pollCache;
 
     @Autowired
     public DeviceCommandResourceImpl(Gson gson,
@@ -87,13 +101,26 @@ public class DeviceCommandResourceImpl implements DeviceCommandResource {
                                      DeviceService deviceService,
                                      TimestampService timestampService,
                                      BaseFilterService filterService,
-                                     HiveValidator hiveValidator) {
+                                     HiveValidator hiveValidator,
+                                     RpcMetrics rpcMetrics) {
         this.gson = gson;
         this.commandService = commandService;
         this.deviceService = deviceService;
         this.timestampService = timestampService;
         this.filterService = filterService;
         this.hiveValidator = hiveValidator;
+        this.rpcMetrics = rpcMetrics;
+    }
+
+    @PostConstruct
+    public void init() {
+        pollCache = new LongPollSubscriptionCache<>("command", pollSubscriptionTtlMillis, pollBufferSize,
+                DeviceCommand::getTimestamp, commandService::sendUnsubscribeRequest, rpcMetrics);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pollCache.shutdown();
     }
 
     /**
@@ -124,8 +151,8 @@ public class DeviceCommandResourceImpl implements DeviceCommandResource {
                       final AsyncResponse asyncResponse) throws InterruptedException {
         final HiveAuthentication authentication = (HiveAuthentication) SecurityContextHolder.getContext().getAuthentication();
 
-        final Date ts = Optional.ofNullable(timestamp).map(TimestampQueryParamParser::parse)
-                .orElse(timestampService.getDate());
+        final Date since = Optional.ofNullable(timestamp).map(TimestampQueryParamParser::parse).orElse(null);
+        final Date ts = Optional.ofNullable(since).orElse(timestampService.getDate());
 
         final Response response = ResponseFactory.response(
                 OK,
@@ -151,46 +178,18 @@ public class DeviceCommandResourceImpl implements DeviceCommandResource {
                         .collect(Collectors.toSet())
                 ).orElse(null);
 
-        BiConsumer<DeviceCommand, Long> callback = (command, subscriptionId) -> {
-            if (!asyncResponse.isDone()) {
-                asyncResponse.resume(ResponseFactory.response(
-                        OK,
-                        Collections.singleton(command),
-                        Policy.COMMAND_LISTED));
-            }
-        };
-
-        Set<Filter> filters = filterService.getFilterList(deviceId, networks, deviceTypes, COMMAND_EVENT.name(), names, authentication);
-
-        if (!filters.isEmpty()) {
-            Pair<Long, CompletableFuture<List<DeviceCommand>>> pair = commandService
-                    .sendSubscribeRequest(filters, names, ts, returnUpdated, limit, callback);
-            pair.getRight().thenAccept(collection -> {
-                if (!collection.isEmpty() && !asyncResponse.isDone()) {
-                    asyncResponse.resume(ResponseFactory.response(
-                            OK,
-                            collection,
-                            Policy.COMMAND_LISTED));
-                }
-
-                if (timeout == 0) {
-                    asyncResponse.setTimeout(1, TimeUnit.MILLISECONDS); // setting timeout to 0 would cause
-                    // the thread to suspend indefinitely, see AsyncResponse docs
-                } else {
-                    asyncResponse.setTimeout(timeout, TimeUnit.SECONDS);
-                }
-            });
-
-            asyncResponse.register((CompletionCallback) throwable -> commandService.sendUnsubscribeRequest(Collections.singleton(pair.getLeft())));
-        } else {
-            if (!asyncResponse.isDone()) {
-                asyncResponse.resume(response);
-            }
-        }
+        final List<Object> key = Arrays.asList(LongPollSubscriptionCache.clientKey(authentication),
+                deviceId, networks, deviceTypes, names, returnUpdated, limit);
 
+        pollCache.poll(key, since, limit, timeout, asyncResponse, callback -> {
+            Set<Filter> filters = filterService.getFilterList(deviceId, networks, deviceTypes, COMMAND_EVENT.name(), names, authentication);
+            return filters.isEmpty() ? null : commandService.sendSubscribeRequest(filters, names, ts, returnUpdated, limit, callback);
+        }, commands -> ResponseFactory.response(
+                OK,
+                commands,
+                Policy.COMMAND_LISTED));
     }
 
-
     /**
      * Implementation of <a href="http://www.devicehive.com/restful#Reference/DeviceCommand/wait">DeviceHive RESTful
      * API: DeviceCommand: wait</a>
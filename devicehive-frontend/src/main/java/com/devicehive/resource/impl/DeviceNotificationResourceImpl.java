@@ -20,6 +20,7 @@ package com.devicehive.resource.impl;
  * #L%
  */
 
+import com.devicehive.api.RpcMetrics;
 import com.devicehive.auth.HiveAuthentication;
 import com.devicehive.configuration.Messages;
 import com.devicehive.json.strategies.JsonPolicyDef;
@@ -35,26 +36,25 @@ import com.devicehive.resource.util.ResponseFactory;
 import com.devicehive.service.BaseFilterService;
 import com.devicehive.service.DeviceNotificationService;
 import com.devicehive.service.DeviceService;
+import com.devicehive.service.LongPollSubscriptionCache;
 import com.devicehive.service.time.TimestampService;
 import com.devicehive.util.HiveValidator;
 import com.devicehive.vo.DeviceVO;
 import com.google.gson.Gson;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.ws.rs.container.AsyncResponse;
-import javax.ws.rs.container.CompletionCallback;
 import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Response;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
-import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 import static com.devicehive.shim.api.Action.NOTIFICATION_EVENT;
@@ -74,6 +74,15 @@ public class DeviceNotificationResourceImpl implements DeviceNotificationResourc
     private final TimestampService timestampService;
     private final BaseFilterService filterService;
     private final HiveValidator hiveValidator;
+    private final RpcMetrics rpcMetrics;
+
+    @Value("${rest.poll.subscription-ttl-ms:60000}")
+    private long pollSubscriptionTtlMillis;
+
+    @Value("${rest.poll.buffer-size:256}")
+    private int pollBufferSize;
+
+    private LongPollSubscriptionCache<DeviceNotification> pollCache;
 
     @Autowired
     public DeviceNotificationResourceImpl(Gson gson,
@@ -81,13 +90,26 @@ public class DeviceNotificationResourceImpl implements DeviceNotificationResourc
                                           DeviceService deviceService,
                                           TimestampService timestampService,
                                           BaseFilterService filterService,
-                                          HiveValidator hiveValidator) {
+                                          HiveValidator hiveValidator,
+                                          RpcMetrics rpcMetrics) {
         this.gson = gson;
         this.notificationService = notificationService;
         this.deviceService = deviceService;
         this.timestampService = timestampService;
         this.filterService = filterService;
         this.hiveValidator = hiveValidator;
+        this.rpcMetrics = rpcMetrics;
+    }
+
+    @PostConstruct
+    public void init() {
+        pollCache = new LongPollSubscriptionCache<>("notification", pollSubscriptionTtlMillis, pollBufferSize,
+                DeviceNotification::getTimestamp, notificationService::unsubscribe, rpcMetrics);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pollCache.shutdown();
     }
 
     /**
@@ -177,8 +199,8 @@ public class DeviceNotificationResourceImpl implements DeviceNotificationResourc
                       final AsyncResponse asyncResponse) throws InterruptedException {
         final HiveAuthentication authentication = (HiveAuthentication) SecurityContextHolder.getContext().getAuthentication();
 
-        final Date ts = Optional.ofNullable(timestamp).map(TimestampQueryParamParser::parse)
-                .orElse(timestampService.getDate());
+        final Date since = Optional.ofNullable(timestamp).map(TimestampQueryParamParser::parse).orElse(null);
+        final Date ts = Optional.ofNullable(since).orElse(timestampService.getDate());
         
         final Response response = ResponseFactory.response(
                 Response.Status.OK,
@@ -204,42 +226,16 @@ public class DeviceNotificationResourceImpl implements DeviceNotificationResourc
                         .collect(Collectors.toSet())
                 ).orElse(null);
 
-        BiConsumer<DeviceNotification, Long> callback = (notification, subscriptionId) -> {
-            if (!asyncResponse.isDone()) {
-                asyncResponse.resume(ResponseFactory.response(
-                        Response.Status.OK,
-                        Collections.singleton(notification),
-                        JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT));
-            }
-        };
+        final List<Object> key = Arrays.asList(LongPollSubscriptionCache.clientKey(authentication),
+                deviceId, networks, deviceTypes, names);
 
-        Set<Filter> filters = filterService.getFilterList(deviceId, networks, deviceTypes, NOTIFICATION_EVENT.name(), names, authentication);
-
-        if (!filters.isEmpty()) {
-            Pair<Long, CompletableFuture<List<DeviceNotification>>> pair = notificationService
-                    .subscribe(filters, names, ts, callback);
-            pair.getRight().thenAccept(collection -> {
-                if (!collection.isEmpty() && !asyncResponse.isDone()) {
-                    asyncResponse.resume(ResponseFactory.response(
-                            Response.Status.OK,
-                            collection,
-                            JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT));
-                }
-
-                if (timeout == 0) {
-                    asyncResponse.setTimeout(1, TimeUnit.MILLISECONDS); // setting timeout to 0 would cause
-                    // the thread to suspend indefinitely, see AsyncResponse docs
-                } else {
-                    asyncResponse.setTimeout(timeout, TimeUnit.SECONDS);
-                }
-            });
-
-            asyncResponse.register((CompletionCallback) throwable -> notificationService.unsubscribe(Collections.singleton(pair.getLeft())));
-        } else {
-            if (!asyncResponse.isDone()) {
-                asyncResponse.resume(response);
-            }
-        }
+        pollCache.poll(key, since, null, timeout, asyncResponse, callback -> {
+            Set<Filter> filters = filterService.getFilterList(deviceId, networks, deviceTypes, NOTIFICATION_EVENT.name(), names, authentication);
+            return filters.isEmpty() ? null : notificationService.subscribe(filters, names, ts, callback);
+        }, notifications -> ResponseFactory.response(
+                Response.Status.OK,
+                notifications,
+                JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT));
     }
 
     /**
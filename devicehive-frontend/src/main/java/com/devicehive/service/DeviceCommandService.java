@@ -30,6 +30,7 @@ import com.devicehive.model.rpc.*;
 import com.devicehive.model.updates.DeviceCommandUpdate;
 import com.devicehive.model.wrappers.DeviceCommandWrapper;
 import com.devicehive.service.helpers.LongIdGenerator;
+import com.devicehive.service.helpers.PartitionedBatch;
 import com.devicehive.service.helpers.ResponseConsumer;
 import com.devicehive.service.time.TimestampService;
 import com.devicehive.shim.api.Action;
@@ -141,13 +142,42 @@ public class DeviceCommandService {
         return future.thenApply(r -> ((CommandInsertResponse) r.getBody()).getDeviceCommand());
     }
 
+    /**
+     * Inserts commands of several devices with one backend request per route: commands whose device ids are routed to
+     * the same partition as single inserts of them would be go together. Commands are expected to come from
+     * {@link #prepareForInsert(DeviceCommandWrapper, DeviceVO, UserVO)}.
+     *
+     * @return one future per command, in the same order; a failed request fails only the commands it carried
+     */
+    public List<CompletableFuture<DeviceCommand>> insertAll(List<DeviceCommand> commands) {
+        return PartitionedBatch.callPerRoute(commands, DeviceCommand::getDeviceId, deviceId -> rpcClient.routeOf(Request.newBuilder()
+                .withBody(new CommandInsertBatchRequest(Collections.emptyList()))
+                .withPartitionKey(deviceId)
+                .build()), (deviceId, deviceCommands) -> {
+            CompletableFuture<Response> future = new CompletableFuture<>();
+            rpcClient.call(Request.newBuilder()
+                    .withBody(new CommandInsertBatchRequest(deviceCommands))
+                    .withPartitionKey(deviceId)
+                    .build(), new ResponseConsumer(future));
+            return future.thenApply(r -> r.getBody().cast(CommandInsertBatchResponse.class).getDeviceCommands());
+        });
+    }
+
+    /**
+     * Validates and converts one command of a batch, so that a bad item fails alone.
+     */
+    public DeviceCommand prepareForInsert(DeviceCommandWrapper commandWrapper, DeviceVO device, UserVO user) {
+        hiveValidator.validate(commandWrapper);
+        return convertWrapperToCommand(commandWrapper, device, user);
+    }
+
     public Pair<Long, CompletableFuture<List<DeviceCommand>>> sendSubscribeRequest(
             final Set<Filter> filters,
             final Set<String> names,
             final Date timestamp,
             final boolean returnUpdated,
             final Integer limit,
-            final BiConsumer<DeviceCommand, Long> callback) throws InterruptedException {
+            final BiConsumer<DeviceCommand, Long> callback) {
 
         final Long subscriptionId = idGenerator.generate();
         Collection<CompletableFuture<Collection<DeviceCommand>>> futures = filters.stream()
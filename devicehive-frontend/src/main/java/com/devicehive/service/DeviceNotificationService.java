@@ -21,6 +21,7 @@ package com.devicehive.service;
  */
 
 import com.devicehive.api.RequestResponseMatcher;
+import com.devicehive.api.RpcMetrics;
 import com.devicehive.model.DeviceNotification;
 import com.devicehive.model.SpecialNotifications;
 import com.devicehive.model.eventbus.Filter;
@@ -28,6 +29,7 @@ import com.devicehive.model.eventbus.events.NotificationEvent;
 import com.devicehive.model.rpc.*;
 import com.devicehive.model.wrappers.DeviceNotificationWrapper;
 import com.devicehive.service.helpers.LongIdGenerator;
+import com.devicehive.service.helpers.PartitionedBatch;
 import com.devicehive.service.helpers.ResponseConsumer;
 import com.devicehive.service.time.TimestampService;
 import com.devicehive.shim.api.Action;
@@ -58,18 +60,23 @@ public class DeviceNotificationService {
     private final HiveValidator hiveValidator;
     private final LongIdGenerator idGenerator;
     private final RequestResponseMatcher requestResponseMatcher;
+    private final SubscriptionMultiplexer<Pair<Set<Filter>, Set<String>>, DeviceNotification> multiplexer;
 
     @Autowired
     public DeviceNotificationService(TimestampService timestampService,
                                      RpcClient rpcClient,
                                      HiveValidator hiveValidator,
                                      LongIdGenerator idGenerator,
-                                     RequestResponseMatcher requestResponseMatcher) {
+                                     RequestResponseMatcher requestResponseMatcher,
+                                     RpcMetrics rpcMetrics) {
         this.timestampService = timestampService;
         this.rpcClient = rpcClient;
         this.hiveValidator = hiveValidator;
         this.idGenerator = idGenerator;
         this.requestResponseMatcher = requestResponseMatcher;
+        this.multiplexer = new SubscriptionMultiplexer<>(idGenerator);
+        rpcMetrics.registerGauge("subscriptions.notification.upstream", multiplexer::getUpstreamCount);
+        rpcMetrics.registerGauge("subscriptions.notification.local", multiplexer::getConsumerCount);
     }
 
     public CompletableFuture<Optional<DeviceNotification>> findOne(Long id, String deviceId) {
@@ -126,13 +133,63 @@ public class DeviceNotificationService {
         return future.thenApply(r -> r.getBody().cast(NotificationInsertResponse.class).getDeviceNotification());
     }
 
+    /**
+     * Inserts notifications of several devices with one backend request per route: notifications whose device ids
+     * are routed to the same partition as single inserts of them would be go together. Notifications are expected to
+     * come from {@link #prepareForInsert(DeviceNotificationWrapper, DeviceVO)}.
+     *
+     * @return one future per notification, in the same order; a failed request fails only the notifications it carried
+     */
+    public List<CompletableFuture<DeviceNotification>> insertAll(final List<DeviceNotification> notifications) {
+        return PartitionedBatch.callPerRoute(notifications, DeviceNotification::getDeviceId, deviceId -> rpcClient.routeOf(Request.newBuilder()
+                .withBody(new NotificationInsertBatchRequest(Collections.emptyList()))
+                .withPartitionKey(deviceId)
+                .build()), (deviceId, deviceNotifications) -> {
+            CompletableFuture<Response> future = new CompletableFuture<>();
+            rpcClient.call(Request.newBuilder()
+                    .withBody(new NotificationInsertBatchRequest(deviceNotifications))
+                    .withPartitionKey(deviceId)
+                    .build(), new ResponseConsumer(future));
+
+            return future.thenApply(r -> r.getBody().cast(NotificationInsertBatchResponse.class).getDeviceNotifications());
+        });
+    }
+
+    /**
+     * Converts and validates one notification of a batch, so that a bad item fails alone.
+     */
+    public DeviceNotification prepareForInsert(DeviceNotificationWrapper notificationSubmit, DeviceVO device) {
+        DeviceNotification notification = convertWrapperToNotification(notificationSubmit, device);
+        hiveValidator.validate(notification);
+        return notification;
+    }
+
+    /**
+     * Subscribes to notifications matching the filters. Live subscriptions with identical filters and names share one
+     * backend subscription; subscriptions with a timestamp carry their own history back-fill and always get a
+     * dedicated one.
+     */
     public Pair<Long, CompletableFuture<List<DeviceNotification>>> subscribe(
             final Set<Filter> filters,
             final Set<String> names,
             final Date timestamp,
             final BiConsumer<DeviceNotification, Long> callback) {
 
-        final Long subscriptionId = idGenerator.generate();
+        if (timestamp != null) {
+            final Long subscriptionId = idGenerator.generate();
+            return Pair.of(subscriptionId, sendSubscribeRequest(subscriptionId, filters, names, timestamp, callback));
+        }
+        return multiplexer.attach(Pair.of(filters, names), callback,
+                (subscriptionId, fanOut) -> sendSubscribeRequest(subscriptionId, filters, names, null, fanOut));
+    }
+
+    private CompletableFuture<List<DeviceNotification>> sendSubscribeRequest(
+            final Long subscriptionId,
+            final Set<Filter> filters,
+            final Set<String> names,
+            final Date timestamp,
+            final BiConsumer<DeviceNotification, Long> callback) {
+
         Set<NotificationSubscribeRequest> subscribeRequests = filters.stream()
                 .map(filter -> new NotificationSubscribeRequest(subscriptionId, filter, names, timestamp))
                 .collect(Collectors.toSet());
@@ -161,17 +218,36 @@ public class DeviceNotificationService {
             rpcClient.call(request, responseConsumer);
         }
 
-        CompletableFuture<List<DeviceNotification>> future = CompletableFuture
+        return CompletableFuture
                 .allOf(futures.toArray(new CompletableFuture[futures.size()]))
                 .thenApply(v -> futures.stream()
                         .map(CompletableFuture::join)
                         .flatMap(Collection::stream)
                         .collect(Collectors.toList()));
-        return Pair.of(subscriptionId, future);
     }
 
     public CompletableFuture<Set<Long>> unsubscribe(Set<Long> subIds) {
-        NotificationUnsubscribeRequest unsubscribeRequest = new NotificationUnsubscribeRequest(subIds);
+        return multiplexer.detach(subIds).thenCompose(upstreamIds -> sendUnsubscribeRequest(subIds, upstreamIds));
+    }
+
+    /**
+     * Detaches the subscriptions from their shared upstream subscriptions without contacting backend.
+     *
+     * @return future of the ids that have to be closed in backend with {@link #sendUnsubscribeRequest(Set)}
+     */
+    public CompletableFuture<Set<Long>> detach(Set<Long> subIds) {
+        return multiplexer.detach(subIds);
+    }
+
+    public CompletableFuture<Set<Long>> sendUnsubscribeRequest(Set<Long> upstreamIds) {
+        return sendUnsubscribeRequest(upstreamIds, upstreamIds);
+    }
+
+    private CompletableFuture<Set<Long>> sendUnsubscribeRequest(Set<Long> subIds, Set<Long> upstreamIds) {
+        if (upstreamIds.isEmpty()) {
+            return CompletableFuture.completedFuture(subIds);
+        }
+        NotificationUnsubscribeRequest unsubscribeRequest = new NotificationUnsubscribeRequest(upstreamIds);
         Request request = Request.newBuilder()
                 .withBody(unsubscribeRequest)
                 .build();
@@ -179,8 +255,8 @@ public class DeviceNotificationService {
         Consumer<Response> responseConsumer = response -> {
             Action resAction = response.getBody().getAction();
             if (resAction.equals(Action.NOTIFICATION_UNSUBSCRIBE_RESPONSE)) {
-                future.complete(response.getBody().cast(NotificationUnsubscribeResponse.class).getSubscriptionIds());
-                subIds.forEach(requestResponseMatcher::removeSubscription);
+                future.complete(subIds);
+                upstreamIds.forEach(requestResponseMatcher::removeSubscription);
             } else {
                 logger.warn("Unknown action received from backend {}", resAction);
             }
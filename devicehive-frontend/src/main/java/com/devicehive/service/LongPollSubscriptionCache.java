@@ -0,0 +1,392 @@
+package com.devicehive.service;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RpcMetrics;
+import com.devicehive.auth.HiveAuthentication;
+import com.devicehive.auth.HivePrincipal;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.core.Response;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Keeps backend subscriptions of REST long-polls alive between polls. A poll of the same client with the same
+ * parameters as an earlier one reuses its subscription: events are kept in a bounded buffer (the oldest are dropped
+ * first) and answer later polls at once, without filter expansion or backend round trip. Buffered events are not
+ * consumed by a response; every poll picks the ones newer than its own timestamp, or the ones arriving after it if it
+ * has none, and applies its own limit and response. A subscription nobody has polled for the TTL is closed. Polls
+ * asking for history older than what the buffer covers get a subscription of their own, which is closed as soon as
+ * the poll completes.
+ */
+public class LongPollSubscriptionCache<E> {
+
+    private static final Logger logger = LoggerFactory.getLogger(LongPollSubscriptionCache.class);
+
+    private final long ttlMillis;
+    private final int bufferSize;
+    private final Function<E, Date> timestampOf;
+    private final Consumer<Set<Long>> closer;
+    private final Map<Object, Entry> entries = new HashMap<>();
+    private final ScheduledExecutorService sweeper;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param name        name used for metrics and the sweeper thread
+     * @param ttlMillis   how long an unpolled subscription is kept, 0 turns caching off
+     * @param bufferSize  maximum number of events kept between polls, the oldest are dropped first
+     * @param timestampOf event timestamp accessor
+     * @param closer      closes backend subscriptions by their ids
+     */
+    public LongPollSubscriptionCache(String name, long ttlMillis, int bufferSize, Function<E, Date> timestampOf,
+                                     Consumer<Set<Long>> closer, RpcMetrics rpcMetrics) {
+        this.ttlMillis = ttlMillis;
+        this.bufferSize = Math.max(1, bufferSize);
+        this.timestampOf = timestampOf;
+        this.closer = closer;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("long-poll-" + name + "-sweeper")
+                .setDaemon(true)
+                .build());
+        if (ttlMillis > 0) {
+            long period = Math.max(ttlMillis / 2, 1000);
+            sweeper.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.MILLISECONDS);
+        }
+
+        rpcMetrics.registerGauge("poll." + name + ".subscriptions", this::getSize);
+        rpcMetrics.registerGauge("poll." + name + ".hits", hits::get);
+        rpcMetrics.registerGauge("poll." + name + ".misses", misses::get);
+    }
+
+    /**
+     * Answers a long-poll from the cached subscription of {@code key}, or opens a new one with {@code opener}.
+     *
+     * @param since     timestamp given by the client, or null if it only wants new events
+     * @param limit     maximum number of events in one response, or null
+     * @param opener    opens a backend subscription delivering events to the given callback; returns null if there is
+     *                  nothing to subscribe to
+     * @param responder builds the response for a list of events
+     */
+    public void poll(Object key, Date since, Integer limit, long timeout, AsyncResponse asyncResponse,
+                     Function<BiConsumer<E, Long>, Pair<Long, CompletableFuture<List<E>>>> opener,
+                     Function<Collection<E>, Response> responder) {
+        Entry entry;
+        boolean created = false;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (ttlMillis <= 0 || entry != null && since != null && since.before(entry.coveredSince)) {
+                entry = new Entry(null, since);
+                created = true;
+            } else if (entry == null) {
+                entry = new Entry(key, since);
+                entries.put(key, entry);
+                created = true;
+            }
+        }
+        if (created) {
+            misses.incrementAndGet();
+            open(entry, new Waiter(asyncResponse, since, 0, limit, responder), timeout, opener);
+            return;
+        }
+
+        boolean swept;
+        synchronized (entry) {
+            swept = entry.closed;
+            if (!swept) {
+                hits.incrementAndGet();
+                // without a timestamp the client only wants what arrives from now on
+                Waiter waiter = new Waiter(asyncResponse, since, since != null ? 0 : entry.nextSeq(), limit, responder);
+                List<E> ready = take(entry, waiter);
+                if (!ready.isEmpty()) {
+                    entry.idleSince = System.nanoTime();
+                    asyncResponse.resume(responder.apply(ready));
+                    return;
+                }
+                await(entry, waiter);
+            }
+        }
+        if (swept) {
+            // closed by the sweeper meanwhile, start over with a new subscription
+            poll(key, since, limit, timeout, asyncResponse, opener, responder);
+        } else {
+            setTimeout(asyncResponse, timeout);
+        }
+    }
+
+    public void shutdown() {
+        sweeper.shutdown();
+        Set<Long> ids = new HashSet<>();
+        synchronized (entries) {
+            entries.values().forEach(entry -> {
+                if (entry.subscriptionId != null) {
+                    ids.add(entry.subscriptionId);
+                }
+            });
+            entries.clear();
+        }
+        if (!ids.isEmpty()) {
+            closer.accept(ids);
+        }
+    }
+
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Builds the client part of a cache key; polls share a subscription only if they come with the same credentials
+     * from the same address and their principals have the same identity and access.
+     */
+    public static List<Object> clientKey(HiveAuthentication authentication) {
+        HivePrincipal principal = (HivePrincipal) authentication.getPrincipal();
+        Object details = authentication.getDetails();
+        HiveAuthentication.HiveAuthDetails client = details instanceof HiveAuthentication.HiveAuthDetails
+                ? (HiveAuthentication.HiveAuthDetails) details : null;
+        return Arrays.asList(
+                client != null ? client.getAuthorization() : null,
+                client != null ? client.getClientInetAddress() : null,
+                principal.getUser() != null ? principal.getUser().getId() : null,
+                principal.getPlugin() != null ? principal.getPlugin().getId() : null,
+                principal.getActions(),
+                principal.getNetworkIds(),
+                principal.getDeviceTypeIds(),
+                principal.areAllNetworksAvailable(),
+                principal.areAllDeviceTypesAvailable());
+    }
+
+    private void open(Entry entry, Waiter waiter, long timeout,
+                      Function<BiConsumer<E, Long>, Pair<Long, CompletableFuture<List<E>>>> opener) {
+        Pair<Long, CompletableFuture<List<E>>> subscription;
+        try {
+            subscription = opener.apply((event, subscriptionId) -> deliver(entry, Collections.singletonList(event)));
+        } catch (RuntimeException e) {
+            discard(entry);
+            throw e;
+        }
+        if (subscription == null) {
+            discard(entry);
+            waiter.asyncResponse.resume(waiter.responder.apply(Collections.emptyList()));
+            return;
+        }
+        synchronized (entry) {
+            entry.subscriptionId = subscription.getLeft();
+            // events delivered while the subscription was opening are already buffered
+            List<E> ready = take(entry, waiter);
+            if (!ready.isEmpty()) {
+                entry.idleSince = System.nanoTime();
+                waiter.asyncResponse.resume(waiter.responder.apply(ready));
+            } else {
+                await(entry, waiter);
+            }
+        }
+        subscription.getRight()
+                .thenAccept(events -> {
+                    deliver(entry, events);
+                    setTimeout(waiter.asyncResponse, timeout);
+                })
+                .exceptionally(ex -> {
+                    logger.warn("Unable to subscribe for long-poll", ex);
+                    discard(entry);
+                    return null;
+                });
+    }
+
+    private void await(Entry entry, Waiter waiter) {
+        entry.waiters.add(waiter);
+        waiter.asyncResponse.register((CompletionCallback) throwable -> {
+            boolean oneOffDone;
+            synchronized (entry) {
+                entry.waiters.remove(waiter);
+                entry.idleSince = System.nanoTime();
+                oneOffDone = entry.key == null && entry.waiters.isEmpty() && entry.subscriptionId != null;
+            }
+            if (oneOffDone) {
+                discard(entry);
+            }
+        });
+    }
+
+    private void deliver(Entry entry, List<E> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        synchronized (entry) {
+            if (entry.closed) {
+                return;
+            }
+            events.forEach(event -> {
+                if (entry.buffer.size() >= bufferSize) {
+                    E dropped = entry.buffer.pollFirst();
+                    entry.firstSeq++;
+                    Date droppedAt = timestampOf.apply(dropped);
+                    if (droppedAt != null && droppedAt.after(entry.coveredSince)) {
+                        entry.coveredSince = droppedAt;
+                    }
+                }
+                entry.buffer.addLast(event);
+            });
+            new ArrayList<>(entry.waiters).forEach(waiter -> {
+                if (waiter.asyncResponse.isDone()) {
+                    return;
+                }
+                List<E> ready = take(entry, waiter);
+                if (!ready.isEmpty()) {
+                    entry.idleSince = System.nanoTime();
+                    waiter.asyncResponse.resume(waiter.responder.apply(ready));
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns buffered events the poll has not seen yet, at most its limit of them. The buffer is left as it is, other
+     * polls of the same subscription may still need the events.
+     */
+    private List<E> take(Entry entry, Waiter waiter) {
+        List<E> ready = new ArrayList<>();
+        long seq = entry.firstSeq;
+        for (E event : entry.buffer) {
+            if (waiter.limit != null && ready.size() >= waiter.limit) {
+                break;
+            }
+            if (seq++ < waiter.afterSeq) {
+                continue;
+            }
+            Date timestamp = timestampOf.apply(event);
+            if (waiter.since == null || timestamp == null || timestamp.after(waiter.since)) {
+                ready.add(event);
+            }
+        }
+        return ready;
+    }
+
+    private void sweep() {
+        long now = System.nanoTime();
+        Set<Long> ids = new HashSet<>();
+        synchronized (entries) {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                synchronized (entry) {
+                    if (entry.waiters.isEmpty() && entry.subscriptionId != null
+                            && TimeUnit.NANOSECONDS.toMillis(now - entry.idleSince) > ttlMillis) {
+                        entry.closed = true;
+                        ids.add(entry.subscriptionId);
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+        if (!ids.isEmpty()) {
+            logger.debug("Closing {} idle long-poll subscriptions", ids.size());
+            closer.accept(ids);
+        }
+    }
+
+    private void discard(Entry entry) {
+        Long subscriptionId;
+        if (entry.key != null) {
+            synchronized (entries) {
+                entries.remove(entry.key, entry);
+            }
+        }
+        synchronized (entry) {
+            if (entry.closed) {
+                return;
+            }
+            entry.closed = true;
+            subscriptionId = entry.subscriptionId;
+            new ArrayList<>(entry.waiters).forEach(waiter -> {
+                if (!waiter.asyncResponse.isDone()) {
+                    waiter.asyncResponse.resume(waiter.responder.apply(Collections.emptyList()));
+                }
+            });
+        }
+        if (subscriptionId != null) {
+            closer.accept(Collections.singleton(subscriptionId));
+        }
+    }
+
+    private static void setTimeout(AsyncResponse asyncResponse, long timeout) {
+        if (timeout == 0) {
+            asyncResponse.setTimeout(1, TimeUnit.MILLISECONDS); // setting timeout to 0 would cause
+            // the thread to suspend indefinitely, see AsyncResponse docs
+        } else {
+            asyncResponse.setTimeout(timeout, TimeUnit.SECONDS);
+        }
+    }
+
+    private class Entry {
+        private final Object key;
+        private final Deque<E> buffer = new ArrayDeque<>();
+        private final List<Waiter> waiters = new ArrayList<>();
+        private long firstSeq;
+        private Date coveredSince;
+        private Long subscriptionId;
+        private long idleSince = System.nanoTime();
+        private boolean closed;
+
+        private Entry(Object key, Date since) {
+            this.key = key;
+            this.coveredSince = since != null ? since : new Date();
+        }
+
+        /**
+         * @return sequence number the next buffered event will get
+         */
+        private long nextSeq() {
+            return firstSeq + buffer.size();
+        }
+    }
+
+    /**
+     * A pending poll: its response, which of the buffered events it wants and how to answer with them.
+     */
+    private class Waiter {
+        private final AsyncResponse asyncResponse;
+        private final Date since;
+        private final long afterSeq;
+        private final Integer limit;
+        private final Function<Collection<E>, Response> responder;
+
+        private Waiter(AsyncResponse asyncResponse, Date since, long afterSeq, Integer limit,
+                       Function<Collection<E>, Response> responder) {
+            this.asyncResponse = asyncResponse;
+            this.since = since;
+            this.afterSeq = afterSeq;
+            this.limit = limit;
+            this.responder = responder;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.devicehive.service;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.service.helpers.LongIdGenerator;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * Shares backend subscriptions between local consumers (WebSocket sessions and long-polls) with the same key. The
+ * first consumer of a key opens the upstream subscription, later ones only attach to it. Every event is fanned out to
+ * all attached consumers under their own local subscription id, and the upstream subscription is closed only when the
+ * last consumer detaches. The opener runs outside the multiplexer lock; while it runs, the upstream is already
+ * registered, so consumers of the same key join it instead of opening a second one.
+ */
+class SubscriptionMultiplexer<K, E> {
+
+    private final LongIdGenerator idGenerator;
+    private final Map<K, Upstream<K, E>> upstreams = new HashMap<>();
+    private final Map<Long, Upstream<K, E>> byLocalId = new HashMap<>();
+
+    SubscriptionMultiplexer(LongIdGenerator idGenerator) {
+        this.idGenerator = idGenerator;
+    }
+
+    /**
+     * Attaches a consumer to the upstream subscription of the key, opening it with {@code opener} if there is none.
+     * The opener receives the upstream subscription id and the fan-out callback and returns the future of the initial
+     * events; consumers that join an already open subscription get an empty initial list.
+     *
+     * @return local subscription id of the consumer and the future of its initial events
+     */
+    Pair<Long, CompletableFuture<List<E>>> attach(K key, BiConsumer<E, Long> callback,
+            BiFunction<Long, BiConsumer<E, Long>, CompletableFuture<List<E>>> opener) {
+        final Long localId = idGenerator.generate();
+        final Upstream<K, E> opened;
+        synchronized (this) {
+            Upstream<K, E> upstream = upstreams.get(key);
+            if (upstream != null) {
+                upstream.consumers.put(localId, callback);
+                byLocalId.put(localId, upstream);
+                return Pair.of(localId, upstream.ready.thenApply(events -> Collections.emptyList()));
+            }
+            opened = new Upstream<>(key, idGenerator.generate());
+            opened.consumers.put(localId, callback);
+            upstreams.put(key, opened);
+            byLocalId.put(localId, opened);
+        }
+
+        final CompletableFuture<List<E>> initial;
+        try {
+            initial = opener.apply(opened.id, opened::dispatch);
+        } catch (RuntimeException e) {
+            drop(opened);
+            opened.ready.completeExceptionally(e);
+            throw e;
+        }
+        initial.whenComplete((events, ex) -> {
+            if (ex != null) {
+                drop(opened);
+                opened.ready.completeExceptionally(ex);
+            } else {
+                opened.ready.complete(events);
+            }
+        });
+        return Pair.of(localId, opened.ready);
+    }
+
+    /**
+     * Detaches consumers by their local subscription ids. Ids this multiplexer does not know are returned unchanged,
+     * so subscriptions opened directly against backend can be closed through the same path. An upstream that loses
+     * its last consumer while it is still being opened is reported once opening is over, so that backend never gets
+     * the unsubscribe before the subscribe; if opening failed there is nothing to close and it is left out.
+     *
+     * @return future of the ids of upstream subscriptions that lost their last consumer and have to be closed in
+     * backend
+     */
+    CompletableFuture<Set<Long>> detach(Set<Long> localIds) {
+        final Set<Long> upstreamIds = new HashSet<>();
+        final List<Upstream<K, E>> emptied = new ArrayList<>();
+        synchronized (this) {
+            for (Long localId : localIds) {
+                Upstream<K, E> upstream = byLocalId.remove(localId);
+                if (upstream == null) {
+                    upstreamIds.add(localId);
+                    continue;
+                }
+                upstream.consumers.remove(localId);
+                if (upstream.consumers.isEmpty() && upstreams.remove(upstream.key, upstream)) {
+                    emptied.add(upstream);
+                }
+            }
+        }
+        CompletableFuture<?>[] opening = emptied.stream()
+                .map(upstream -> upstream.ready.handle((events, ex) -> null))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(opening).thenApply(v -> {
+            emptied.stream()
+                    .filter(upstream -> !upstream.ready.isCompletedExceptionally())
+                    .forEach(upstream -> upstreamIds.add(upstream.id));
+            return upstreamIds;
+        });
+    }
+
+    synchronized int getUpstreamCount() {
+        return upstreams.size();
+    }
+
+    synchronized int getConsumerCount() {
+        return byLocalId.size();
+    }
+
+    private synchronized void drop(Upstream<K, E> upstream) {
+        upstreams.remove(upstream.key, upstream);
+        upstream.consumers.keySet().forEach(byLocalId::remove);
+    }
+
+    private static class Upstream<K, E> {
+        private final K key;
+        private final Long id;
+        private final Map<Long, BiConsumer<E, Long>> consumers = new ConcurrentHashMap<>();
+        private final CompletableFuture<List<E>> ready = new CompletableFuture<>();
+
+        private Upstream(K key, Long id) {
+            this.key = key;
+            this.id = id;
+        }
+
+        private void dispatch(E event, Long upstreamId) {
+            consumers.forEach((localId, consumer) -> consumer.accept(event, localId));
+        }
+    }
+}
@@ -23,16 +23,15 @@ package com.devicehive.service;
 import com.devicehive.auth.HiveAction;
 import com.devicehive.auth.HivePrincipal;
 import com.devicehive.model.SubscriptionInfo;
-import com.devicehive.websockets.handlers.CommandHandlers;
-import com.devicehive.websockets.handlers.NotificationHandlers;
+import com.devicehive.websockets.util.SubscriptionRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.WebSocketSession;
 
 import java.util.HashSet;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
 
 import static com.devicehive.configuration.Constants.COMMAND;
 import static com.devicehive.configuration.Constants.NOTIFICATION;
@@ -42,23 +41,25 @@ public class SubscriptionService {
 
     private static final Logger logger = LoggerFactory.getLogger(SubscriptionService.class);
 
-    @SuppressWarnings("unchecked")
+    private final SubscriptionRegistry subscriptionRegistry;
+
+    @Autowired
+    public SubscriptionService(SubscriptionRegistry subscriptionRegistry) {
+        this.subscriptionRegistry = subscriptionRegistry;
+    }
+
     public Set<SubscriptionInfo> list(String type, HivePrincipal principal, WebSocketSession session) {
         logger.debug("subscribe/list action. Session {} ", session.getId());
 
         Set<SubscriptionInfo> subscriptions = new HashSet<>();
         if (principal.getActions().contains(HiveAction.GET_DEVICE_COMMAND)) {
             if (type == null || type.equals(COMMAND)) {
-                subscriptions.addAll(((CopyOnWriteArraySet<SubscriptionInfo>) session
-                        .getAttributes()
-                        .get(CommandHandlers.SUBSCRIPTION_SET_NAME)));
+                subscriptions.addAll(subscriptionRegistry.list(session.getId(), COMMAND));
             }
         }
         if (principal.getActions().contains(HiveAction.GET_DEVICE_NOTIFICATION)) {
             if (type == null || type.equals(NOTIFICATION)) {
-                subscriptions.addAll(((CopyOnWriteArraySet<SubscriptionInfo>) session
-                        .getAttributes()
-                        .get(NotificationHandlers.SUBSCRIPTION_SET_NAME)));
+                subscriptions.addAll(subscriptionRegistry.list(session.getId(), NOTIFICATION));
             }
         }
 
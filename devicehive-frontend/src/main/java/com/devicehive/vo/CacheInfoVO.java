@@ -27,6 +27,7 @@ import org.apache.commons.lang3.ObjectUtils;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 import java.util.Date;
+import java.util.Map;
 
 import static com.devicehive.json.strategies.JsonPolicyDef.Policy.REST_SERVER_INFO;
 import static com.devicehive.json.strategies.JsonPolicyDef.Policy.WEBSOCKET_SERVER_INFO;
@@ -45,6 +46,9 @@ public class CacheInfoVO implements HiveEntity {
     @JsonPolicyDef({WEBSOCKET_SERVER_INFO, REST_SERVER_INFO})
     private String cacheStats;
 
+    @JsonPolicyDef({WEBSOCKET_SERVER_INFO, REST_SERVER_INFO})
+    private Map<String, Object> rpcStats;
+
     public CacheInfoVO() {
     }
 
@@ -63,5 +67,13 @@ public class CacheInfoVO implements HiveEntity {
     public void setCacheStats(String cacheStats) {
         this.cacheStats = cacheStats;
     }
+
+    public Map<String, Object> getRpcStats() {
+        return rpcStats;
+    }
+
+    public void setRpcStats(Map<String, Object> rpcStats) {
+        this.rpcStats = rpcStats;
+    }
     
 }
\ No newline at end of file
@@ -20,18 +20,17 @@ package com.devicehive.websockets;
  * #L%
  */
 
+import com.devicehive.api.StripedExecutor;
 import com.devicehive.configuration.Messages;
 import com.devicehive.exceptions.*;
 import com.devicehive.json.GsonFactory;
 import com.devicehive.messages.handler.WebSocketClientHandler;
-import com.devicehive.model.SubscriptionInfo;
 import com.devicehive.resource.exceptions.ExpiredTokenException;
-import com.devicehive.service.DeviceCommandService;
-import com.devicehive.service.DeviceNotificationService;
 import com.devicehive.websockets.converters.JsonMessageBuilder;
-import com.devicehive.websockets.handlers.CommandHandlers;
-import com.devicehive.websockets.handlers.NotificationHandlers;
 import com.devicehive.websockets.util.SessionMonitor;
+import com.devicehive.websockets.util.SessionResumer;
+import com.devicehive.websockets.util.SubscriptionRegistry;
+import com.devicehive.websockets.util.UnsubscribeAggregator;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
@@ -39,9 +38,11 @@ import com.google.gson.JsonSyntaxException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.authentication.AuthenticationCredentialsNotFoundException;
 import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.PongMessage;
@@ -50,6 +51,8 @@ import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.persistence.OptimisticLockException;
 import javax.persistence.PersistenceException;
 import javax.servlet.http.HttpServletResponse;
@@ -59,8 +62,9 @@ import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
 import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component
 public class DeviceHiveWebSocketHandler extends TextWebSocketHandler {
@@ -69,13 +73,30 @@ public class DeviceHiveWebSocketHandler extends TextWebSocketHandler {
 
     private SessionMonitor sessionMonitor;
     private WebSocketRequestProcessor requestProcessor;
-    private DeviceCommandService commandService;
-    private DeviceNotificationService notificationService;
+    private UnsubscribeAggregator unsubscribeAggregator;
+    private SubscriptionRegistry subscriptionRegistry;
+    private SessionResumer sessionResumer;
     private WebSocketClientHandler webSocketClientHandler;
 
     private int sendTimeLimit = 10 * 1000;
     private int sendBufferSizeLimit = 512 * 1024;
 
+    private static final JsonParser parser = new JsonParser();
+
+    private static final String TASKS = SessionTasks.class.getName();
+
+    @Value("${websocket.request.threads:16}")
+    private int requestThreads;
+
+    @Value("${websocket.request.session-in-flight:64}")
+    private int sessionInFlightLimit;
+
+    @Value("${websocket.request.ordered:true}")
+    private boolean orderedRequests;
+
+    private StripedExecutor requestExecutor;
+    private final AtomicLong requestCounter = new AtomicLong();
+
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         logger.debug("Opening session id {} ", session.getId());
@@ -83,29 +104,79 @@ public class DeviceHiveWebSocketHandler extends TextWebSocketHandler {
         session = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimit, sendBufferSizeLimit);
         HiveWebsocketSessionState state = new HiveWebsocketSessionState();
         session.getAttributes().put(HiveWebsocketSessionState.KEY, state);
+        session.getAttributes().put(TASKS, new SessionTasks());
 
-        session.getAttributes().put(CommandHandlers.SUBSCRIPTION_SET_NAME, new CopyOnWriteArraySet<SubscriptionInfo>());
-        session.getAttributes().put(NotificationHandlers.SUBSCRIPTION_SET_NAME, new CopyOnWriteArraySet<SubscriptionInfo>());
         session.getAttributes().put(WebSocketAuthenticationManager.SESSION_ATTR_AUTHENTICATION, session.getPrincipal());
 
         sessionMonitor.registerSession(session);
     }
 
+    @PostConstruct
+    public void startRequestExecutor() {
+        // admission is per session, see handleTextMessage, so lanes only ever hold what the sessions were allowed
+        requestExecutor = new StripedExecutor("websocket-request", requestThreads, Integer.MAX_VALUE);
+    }
+
+    @PreDestroy
+    public void stopRequestExecutor() {
+        requestExecutor.shutdown();
+    }
+
+    /**
+     * Hands the message over to the request executor, so the container thread is free to read the next one and a
+     * client may pipeline requests. With ordered execution all requests of a session run one after another in
+     * arrival order; otherwise they are spread over all lanes. Every session may have at most
+     * {@code websocket.request.session-in-flight} requests queued or running; a session that sends more is closed
+     * with 1013 (try again later), while the sessions sharing its lane go on.
+     */
     @Override
-    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws IOException, InterruptedException {
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws IOException {
         logger.debug("Session id {} ", session.getId());
-        session = sessionMonitor.getSession(session.getId());
+        sessionMonitor.touch(session.getId());
+        final WebSocketSession monitoredSession = sessionMonitor.getSession(session.getId());
+        final SessionTasks tasks = (SessionTasks) session.getAttributes().get(TASKS);
+        if (monitoredSession == null || tasks == null) {
+            return;
+        }
+        switch (tasks.acquire(sessionInFlightLimit)) {
+            case CLOSED:
+                return;
+            case OVER_BUDGET:
+                logger.warn("Session {} has {} requests in flight, closing it", session.getId(), sessionInFlightLimit);
+                session.close(CloseStatus.SERVICE_OVERLOAD);
+                return;
+            default:
+                break;
+        }
+        final Object lane = orderedRequests ? session.getId() : requestCounter.getAndIncrement();
+        final boolean accepted = requestExecutor.tryExecute(lane, () -> {
+            try {
+                if (monitoredSession.isOpen()) {
+                    processMessage(monitoredSession, message);
+                }
+            } finally {
+                SecurityContextHolder.clearContext();
+                tasks.release();
+            }
+        });
+        if (!accepted) {
+            // the executor is shutting down
+            tasks.release();
+        }
+    }
+
+    private void processMessage(WebSocketSession session, TextMessage message) {
         JsonObject request = null;
         JsonObject response = null;
         try {
-            request = new JsonParser().parse(message.getPayload()).getAsJsonObject();
+            request = parser.parse(message.getPayload()).getAsJsonObject();
             requestProcessor.process(request, session);
         } catch (JsonSyntaxException | IllegalStateException ex) {
             String errorMessage = "Malformed Json received.";
             logger.error("Error executing the request: {}", errorMessage);
             response = webSocketClientHandler.buildErrorResponse(HttpServletResponse.SC_BAD_REQUEST, errorMessage);
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            Thread.currentThread().interrupt();
         } catch (BadCredentialsException ex) {
             logger.error("Unauthorized access: {}", ex.getMessage());
             response = webSocketClientHandler.buildErrorResponse(HttpServletResponse.SC_UNAUTHORIZED, "Invalid credentials");
@@ -118,6 +189,9 @@ public class DeviceHiveWebSocketHandler extends TextWebSocketHandler {
         } catch (InvalidPrincipalException ex) {
             logger.error("Unauthorized access", ex.getMessage());
             response = webSocketClientHandler.buildErrorResponse(HttpServletResponse.SC_UNAUTHORIZED, ex.getMessage());
+        } catch (ServiceOverloadedException ex) {
+            logger.warn("Error executing the request: {}", ex.getMessage());
+            response = webSocketClientHandler.buildErrorResponse(HttpServletResponse.SC_SERVICE_UNAVAILABLE, ex.getMessage());
         } catch (HiveException ex) {
             logger.error("Error executing the request: {}", ex.getMessage());
             response = webSocketClientHandler.buildErrorResponse(ex.getCode(), ex.getMessage());
@@ -166,25 +240,33 @@ public class DeviceHiveWebSocketHandler extends TextWebSocketHandler {
     @Override
     protected void handlePongMessage(WebSocketSession session, PongMessage message) throws Exception {
         logger.debug("Pong received for session {}", session.getId());
+        sessionMonitor.onPong(session.getId());
     }
 
+    /**
+     * Releases subscriptions of the session once the requests it has already handed to the request executor are
+     * done, so a subscribe request still in the queue cannot register a subscription after the cleanup.
+     */
     @Override
-    @SuppressWarnings("unchecked")
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        CopyOnWriteArraySet<SubscriptionInfo> commandSubscriptions = (CopyOnWriteArraySet)
-                session.getAttributes().get(CommandHandlers.SUBSCRIPTION_SET_NAME);
-        commandService.sendUnsubscribeRequest(commandSubscriptions.stream()
-                .map(SubscriptionInfo::getSubscriptionId).collect(Collectors.toSet()));
-
-        CopyOnWriteArraySet<SubscriptionInfo> notificationSubscriptions = (CopyOnWriteArraySet)
-                session.getAttributes().get(NotificationHandlers.SUBSCRIPTION_SET_NAME);
-        notificationService.unsubscribe(notificationSubscriptions.stream()
-                .map(SubscriptionInfo::getSubscriptionId).collect(Collectors.toSet()));
-
-        sessionMonitor.removeSession(session.getId());
-
-        if(session.isOpen()) {
-            session.close();
+        final SessionTasks tasks = (SessionTasks) session.getAttributes().get(TASKS);
+        final Runnable cleanup = () -> {
+            if (!sessionResumer.park(session)) {
+                unsubscribeAggregator.add(subscriptionRegistry.removeSession(session.getId()));
+            }
+            try {
+                sessionMonitor.removeSession(session.getId());
+                if (session.isOpen()) {
+                    session.close();
+                }
+            } catch (IOException e) {
+                logger.error("Error closing session", e);
+            }
+        };
+        if (tasks == null) {
+            cleanup.run();
+        } else {
+            tasks.close(cleanup);
         }
         logger.info("Websocket Connection Closed: session id {}, close status is {} ", session.getId(), status);
     }
@@ -214,6 +296,47 @@ public class DeviceHiveWebSocketHandler extends TextWebSocketHandler {
         }
     }
 
+    private enum Admission {
+        ACCEPTED, CLOSED, OVER_BUDGET
+    }
+
+    /**
+     * Counts requests of a session that were handed to the request executor and not finished yet. The open
+     * connection holds one count itself; the close cleanup runs when the count drops to zero.
+     */
+    private static class SessionTasks {
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile Runnable cleanup;
+
+        private Admission acquire(int limit) {
+            int count;
+            do {
+                count = pending.get();
+                if (count == 0) {
+                    return Admission.CLOSED;
+                }
+                if (count - 1 >= limit) {
+                    return Admission.OVER_BUDGET;
+                }
+            } while (!pending.compareAndSet(count, count + 1));
+            return Admission.ACCEPTED;
+        }
+
+        private void release() {
+            if (pending.decrementAndGet() == 0) {
+                cleanup.run();
+            }
+        }
+
+        private void close(Runnable cleanup) {
+            if (closed.compareAndSet(false, true)) {
+                this.cleanup = cleanup;
+                release();
+            }
+        }
+    }
+
     @Autowired
     public void setSessionMonitor(SessionMonitor sessionMonitor) {
         this.sessionMonitor = sessionMonitor;
@@ -225,13 +348,18 @@ public class DeviceHiveWebSocketHandler extends TextWebSocketHandler {
     }
 
     @Autowired
-    public void setCommandService(DeviceCommandService commandService) {
-        this.commandService = commandService;
+    public void setSessionResumer(SessionResumer sessionResumer) {
+        this.sessionResumer = sessionResumer;
+    }
+
+    @Autowired
+    public void setSubscriptionRegistry(SubscriptionRegistry subscriptionRegistry) {
+        this.subscriptionRegistry = subscriptionRegistry;
     }
 
     @Autowired
-    public void setNotificationService(DeviceNotificationService notificationService) {
-        this.notificationService = notificationService;
+    public void setUnsubscribeAggregator(UnsubscribeAggregator unsubscribeAggregator) {
+        this.unsubscribeAggregator = unsubscribeAggregator;
     }
 
     @Autowired
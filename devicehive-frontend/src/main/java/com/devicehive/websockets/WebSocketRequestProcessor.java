@@ -33,6 +33,9 @@ import org.springframework.web.socket.WebSocketSession;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
 
 import static com.devicehive.configuration.Constants.DEVICE_ID;
 import static com.devicehive.configuration.Constants.DEVICE_TYPE_ID;
@@ -41,17 +44,8 @@ import static com.devicehive.configuration.Constants.NETWORK_ID;
 @Component
 public class WebSocketRequestProcessor {
 
-    private final CommonHandlers commonHandlers;
-    private final ApiInfoHandlers apiInfoHandlers;
-    private final ConfigurationHandlers configurationHandlers;
-    private final NotificationHandlers notificationHandlers;
-    private final CommandHandlers commandHandlers;
-    private final SubscriptionHandlers subscriptionHandlers;
-    private final DeviceHandlers deviceHandlers;
-    private final NetworkHandlers networkHandlers;
-    private final DeviceTypeHandlers deviceTypeHandlers;
-    private final UserHandlers userHandlers;
     private final Gson gson;
+    private final Map<WebsocketAction, ActionHandler> handlers = new EnumMap<>(WebsocketAction.class);
 
     @Autowired
     public WebSocketRequestProcessor(CommonHandlers commonHandlers,
@@ -65,197 +59,87 @@ public class WebSocketRequestProcessor {
                                      DeviceTypeHandlers deviceTypeHandlers,
                                      UserHandlers userHandlers,
                                      Gson gson) {
-        this.commonHandlers = commonHandlers;
-        this.apiInfoHandlers = apiInfoHandlers;
-        this.configurationHandlers = configurationHandlers;
-        this.notificationHandlers = notificationHandlers;
-        this.commandHandlers = commandHandlers;
-        this.subscriptionHandlers = subscriptionHandlers;
-        this.deviceHandlers = deviceHandlers;
-        this.networkHandlers = networkHandlers;
-        this.deviceTypeHandlers = deviceTypeHandlers;
-        this.userHandlers = userHandlers;
         this.gson = gson;
+
+        handlers.put(WebsocketAction.SERVER_INFO, apiInfoHandlers::processServerInfo);
+        handlers.put(WebsocketAction.SERVER_CACHE_INFO, apiInfoHandlers::processServerCacheInfo);
+        handlers.put(WebsocketAction.CLUSTER_CONFIG_INFO, apiInfoHandlers::processClusterConfigInfo);
+        handlers.put(WebsocketAction.AUTHENTICATE, commonHandlers::processAuthenticate);
+        handlers.put(WebsocketAction.TOKEN, commonHandlers::processLogin);
+        handlers.put(WebsocketAction.TOKEN_CREATE, commonHandlers::processTokenCreate);
+        handlers.put(WebsocketAction.TOKEN_REFRESH, commonHandlers::processRefresh);
+        handlers.put(WebsocketAction.CONFIGURATION_GET, configurationHandlers::processConfigurationGet);
+        handlers.put(WebsocketAction.CONFIGURATION_PUT, configurationHandlers::processConfigurationPut);
+        handlers.put(WebsocketAction.CONFIGURATION_DELETE, configurationHandlers::processConfigurationDelete);
+        handlers.put(WebsocketAction.NOTIFICATION_INSERT, (r, s) -> notificationHandlers.processNotificationInsert(deviceId(r), r, s));
+        handlers.put(WebsocketAction.NOTIFICATION_INSERT_BATCH, notificationHandlers::processNotificationInsertBatch);
+        handlers.put(WebsocketAction.NOTIFICATION_SUBSCRIBE, (r, s) -> notificationHandlers.processNotificationSubscribe(deviceId(r), r, s));
+        handlers.put(WebsocketAction.NOTIFICATION_UNSUBSCRIBE, notificationHandlers::processNotificationUnsubscribe);
+        handlers.put(WebsocketAction.NOTIFICATION_GET, notificationHandlers::processNotificationGet);
+        handlers.put(WebsocketAction.NOTIFICATION_LIST, notificationHandlers::processNotificationList);
+        handlers.put(WebsocketAction.COMMAND_INSERT, (r, s) -> commandHandlers.processCommandInsert(deviceId(r), r, s));
+        handlers.put(WebsocketAction.COMMAND_INSERT_BATCH, commandHandlers::processCommandInsertBatch);
+        handlers.put(WebsocketAction.COMMAND_UPDATE, (r, s) -> commandHandlers.processCommandUpdate(deviceId(r), r, s));
+        handlers.put(WebsocketAction.COMMAND_SUBSCRIBE, (r, s) -> commandHandlers.processCommandSubscribe(deviceId(r), r, s));
+        handlers.put(WebsocketAction.COMMAND_UNSUBSCRIBE, commandHandlers::processCommandUnsubscribe);
+        handlers.put(WebsocketAction.COMMAND_GET, (r, s) -> commandHandlers.processCommandGet(deviceId(r), r, s));
+        handlers.put(WebsocketAction.COMMAND_LIST, (r, s) -> commandHandlers.processCommandList(deviceId(r), r, s));
+        handlers.put(WebsocketAction.SUBSCRIPTION_LIST, subscriptionHandlers::processSubscribeList);
+        handlers.put(WebsocketAction.SUBSCRIPTION_RESUME, subscriptionHandlers::processSubscriptionResume);
+        handlers.put(WebsocketAction.DEVICE_GET, (r, s) -> deviceHandlers.processDeviceGet(deviceId(r), r, s));
+        handlers.put(WebsocketAction.DEVICE_LIST, deviceHandlers::processDeviceList);
+        handlers.put(WebsocketAction.DEVICE_COUNT, deviceHandlers::processDeviceCount);
+        handlers.put(WebsocketAction.DEVICE_SAVE, (r, s) -> deviceHandlers.processDeviceSave(deviceId(r), r, s));
+        handlers.put(WebsocketAction.DEVICE_DELETE, (r, s) -> deviceHandlers.processDeviceDelete(deviceId(r), r, s));
+        handlers.put(WebsocketAction.NETWORK_LIST, networkHandlers::processNetworkList);
+        handlers.put(WebsocketAction.NETWORK_COUNT, networkHandlers::processNetworkCount);
+        handlers.put(WebsocketAction.NETWORK_GET, (r, s) -> networkHandlers.processNetworkGet(networkId(r), r, s));
+        handlers.put(WebsocketAction.NETWORK_INSERT, networkHandlers::processNetworkInsert);
+        handlers.put(WebsocketAction.NETWORK_UPDATE, (r, s) -> networkHandlers.processNetworkUpdate(networkId(r), r, s));
+        handlers.put(WebsocketAction.NETWORK_DELETE, (r, s) -> networkHandlers.processNetworkDelete(networkId(r), r, s));
+        handlers.put(WebsocketAction.DEVICE_TYPE_LIST, deviceTypeHandlers::processDeviceTypeList);
+        handlers.put(WebsocketAction.DEVICE_TYPE_COUNT, deviceTypeHandlers::processDeviceTypeCount);
+        handlers.put(WebsocketAction.DEVICE_TYPE_GET, (r, s) -> deviceTypeHandlers.processDeviceTypeGet(deviceTypeId(r), r, s));
+        handlers.put(WebsocketAction.DEVICE_TYPE_INSERT, deviceTypeHandlers::processDeviceTypeInsert);
+        handlers.put(WebsocketAction.DEVICE_TYPE_UPDATE, (r, s) -> deviceTypeHandlers.processDeviceTypeUpdate(deviceTypeId(r), r, s));
+        handlers.put(WebsocketAction.DEVICE_TYPE_DELETE, (r, s) -> deviceTypeHandlers.processDeviceTypeDelete(deviceTypeId(r), r, s));
+        handlers.put(WebsocketAction.USER_LIST, userHandlers::processUserList);
+        handlers.put(WebsocketAction.USER_COUNT, userHandlers::processUserCount);
+        handlers.put(WebsocketAction.USER_GET, userHandlers::processUserGet);
+        handlers.put(WebsocketAction.USER_INSERT, userHandlers::processUserInsert);
+        handlers.put(WebsocketAction.USER_UPDATE, userHandlers::processUserUpdate);
+        handlers.put(WebsocketAction.USER_GET_CURRENT, userHandlers::processUserGetCurrent);
+        handlers.put(WebsocketAction.USER_UPDATE_CURRENT, userHandlers::processUserUpdateCurrent);
+        handlers.put(WebsocketAction.USER_DELETE, userHandlers::processUserDelete);
+        handlers.put(WebsocketAction.USER_GET_NETWORK, userHandlers::processUserGetNetwork);
+        handlers.put(WebsocketAction.USER_ASSIGN_NETWORK, userHandlers::processUserAssignNetwork);
+        handlers.put(WebsocketAction.USER_UNASSIGN_NETWORK, userHandlers::processUserUnassignNetwork);
+        handlers.put(WebsocketAction.USER_GET_DEVICE_TYPE, userHandlers::processUserGetDeviceType);
+        handlers.put(WebsocketAction.USER_GET_DEVICE_TYPES, userHandlers::processUserGetDeviceTypes);
+        handlers.put(WebsocketAction.USER_ASSIGN_DEVICE_TYPE, userHandlers::processUserAssignDeviceType);
+        handlers.put(WebsocketAction.USER_UNASSIGN_DEVICE_TYPE, userHandlers::processUserUnassignDeviceType);
+        handlers.put(WebsocketAction.USER_ALLOW_ALL_DEVICE_TYPES, userHandlers::processUserAllowAllDeviceTypes);
+        handlers.put(WebsocketAction.USER_DISALLOW_ALL_DEVICE_TYPES, userHandlers::processUserDisallowAllDeviceTypes);
     }
 
     public void process(JsonObject request, WebSocketSession session) throws InterruptedException, IOException, HiveException {
-        WebsocketAction action = getAction(request);
-        final String deviceId = gson.fromJson(request.get(DEVICE_ID), String.class);
-        final Long networkId = gson.fromJson(request.get(NETWORK_ID), Long.class);
-        final Long deviceTypeId = gson.fromJson(request.get(DEVICE_TYPE_ID), Long.class);
-        
-        switch (action) {
-            case SERVER_INFO:
-                apiInfoHandlers.processServerInfo(request, session);
-                break;
-            case SERVER_CACHE_INFO:
-                apiInfoHandlers.processServerCacheInfo(request, session);
-                break;
-            case CLUSTER_CONFIG_INFO:
-                apiInfoHandlers.processClusterConfigInfo(request, session);
-                break;    
-            case AUTHENTICATE:
-                commonHandlers.processAuthenticate(request, session);
-                break;
-            case TOKEN:
-                commonHandlers.processLogin(request, session);
-                break;
-            case TOKEN_CREATE:
-                commonHandlers.processTokenCreate(request, session);
-                break;
-            case TOKEN_REFRESH:
-                commonHandlers.processRefresh(request, session);
-                break;
-            case CONFIGURATION_GET:
-                configurationHandlers.processConfigurationGet(request, session);
-                break;
-            case CONFIGURATION_PUT:
-                configurationHandlers.processConfigurationPut(request, session);
-                break;
-            case CONFIGURATION_DELETE:
-                configurationHandlers.processConfigurationDelete(request, session);
-                break;    
-            case NOTIFICATION_INSERT:
-                notificationHandlers.processNotificationInsert(deviceId, request, session);
-                break;
-            case NOTIFICATION_SUBSCRIBE:
-                notificationHandlers.processNotificationSubscribe(deviceId, request, session);
-                break;
-            case NOTIFICATION_UNSUBSCRIBE:
-                notificationHandlers.processNotificationUnsubscribe(request, session);
-                break;
-            case NOTIFICATION_GET:
-                notificationHandlers.processNotificationGet(request, session);
-                break;
-            case NOTIFICATION_LIST:
-                notificationHandlers.processNotificationList(request, session);
-                break;
-            case COMMAND_INSERT:
-                commandHandlers.processCommandInsert(deviceId, request, session);
-                break;
-            case COMMAND_UPDATE:
-                commandHandlers.processCommandUpdate(deviceId, request, session);
-                break;
-            case COMMAND_SUBSCRIBE:
-                commandHandlers.processCommandSubscribe(deviceId, request, session);
-                break;
-            case COMMAND_UNSUBSCRIBE:
-                commandHandlers.processCommandUnsubscribe(request, session);
-                break;
-            case COMMAND_GET:
-                commandHandlers.processCommandGet(deviceId, request, session);
-                break;
-            case COMMAND_LIST:
-                commandHandlers.processCommandList(deviceId, request, session);
-                break;
-            case SUBSCRIPTION_LIST:
-                subscriptionHandlers.processSubscribeList(request, session);
-                break;
-            case DEVICE_GET:
-                deviceHandlers.processDeviceGet(deviceId, request, session);
-                break;
-            case DEVICE_LIST:
-                deviceHandlers.processDeviceList(request, session);
-                break;
-            case DEVICE_COUNT:
-                deviceHandlers.processDeviceCount(request, session);
-                break;
-            case DEVICE_SAVE:
-                deviceHandlers.processDeviceSave(deviceId, request, session);
-                break;
-            case DEVICE_DELETE:
-                deviceHandlers.processDeviceDelete(deviceId, request, session);
-                break;
-            case NETWORK_LIST:
-                networkHandlers.processNetworkList(request, session);
-                break;
-            case NETWORK_COUNT:
-                networkHandlers.processNetworkCount(request, session);
-                break;
-            case NETWORK_GET:
-                networkHandlers.processNetworkGet(networkId, request, session);
-                break;
-            case NETWORK_INSERT:
-                networkHandlers.processNetworkInsert(request, session);
-                break;
-            case NETWORK_UPDATE:
-                networkHandlers.processNetworkUpdate(networkId, request, session);
-                break;
-            case NETWORK_DELETE:
-                networkHandlers.processNetworkDelete(networkId, request, session);
-                break;
-            case DEVICE_TYPE_LIST:
-                deviceTypeHandlers.processDeviceTypeList(request, session);
-                break;
-            case DEVICE_TYPE_COUNT:
-                deviceTypeHandlers.processDeviceTypeCount(request, session);
-                break;
-            case DEVICE_TYPE_GET:
-                deviceTypeHandlers.processDeviceTypeGet(deviceTypeId, request, session);
-                break;
-            case DEVICE_TYPE_INSERT:
-                deviceTypeHandlers.processDeviceTypeInsert(request, session);
-                break;
-            case DEVICE_TYPE_UPDATE:
-                deviceTypeHandlers.processDeviceTypeUpdate(deviceTypeId, request, session);
-                break;
-            case DEVICE_TYPE_DELETE:
-                deviceTypeHandlers.processDeviceTypeDelete(deviceTypeId, request, session);
-                break;
-            case USER_LIST:
-                userHandlers.processUserList(request, session);
-                break;
-            case USER_COUNT:
-                userHandlers.processUserCount(request, session);
-                break;
-            case USER_GET:
-                userHandlers.processUserGet(request, session);
-                break;
-            case USER_INSERT:
-                userHandlers.processUserInsert(request, session);
-                break;
-            case USER_UPDATE:
-                userHandlers.processUserUpdate(request, session);
-                break;
-            case USER_GET_CURRENT:
-                userHandlers.processUserGetCurrent(request, session);
-                break;
-            case USER_UPDATE_CURRENT:
-                userHandlers.processUserUpdateCurrent(request, session);
-                break;
-            case USER_DELETE:
-                userHandlers.processUserDelete(request, session);
-                break;
-            case USER_GET_NETWORK:
-                userHandlers.processUserGetNetwork(request, session);
-                break;
-            case USER_ASSIGN_NETWORK:
-                userHandlers.processUserAssignNetwork(request, session);
-                break;
-            case USER_UNASSIGN_NETWORK:
-                userHandlers.processUserUnassignNetwork(request, session);
-                break;
-            case USER_GET_DEVICE_TYPE:
-                userHandlers.processUserGetDeviceType(request, session);
-                break;
-            case USER_GET_DEVICE_TYPES:
-                userHandlers.processUserGetDeviceTypes(request, session);
-                break;
-            case USER_ASSIGN_DEVICE_TYPE:
-                userHandlers.processUserAssignDeviceType(request, session);
-                break;
-            case USER_UNASSIGN_DEVICE_TYPE:
-                userHandlers.processUserUnassignDeviceType(request, session);
-                break;
-            case USER_ALLOW_ALL_DEVICE_TYPES:
-                userHandlers.processUserAllowAllDeviceTypes(request, session);
-                break;
-            case USER_DISALLOW_ALL_DEVICE_TYPES:
-                userHandlers.processUserDisallowAllDeviceTypes(request, session);
-                break;
-            case EMPTY: default:
-                throw new JsonParseException("'action' field could not be parsed to known endpoint");
+        ActionHandler handler = handlers.get(getAction(request));
+        if (handler == null) {
+            throw new JsonParseException("'action' field could not be parsed to known endpoint");
         }
+        handler.handle(request, session);
+    }
+
+    private String deviceId(JsonObject request) {
+        return gson.fromJson(request.get(DEVICE_ID), String.class);
+    }
+
+    private Long networkId(JsonObject request) {
+        return gson.fromJson(request.get(NETWORK_ID), Long.class);
+    }
+
+    private Long deviceTypeId(JsonObject request) {
+        return gson.fromJson(request.get(DEVICE_TYPE_ID), Long.class);
     }
 
     private WebsocketAction getAction(JsonObject request) {
@@ -278,17 +162,20 @@ public class WebSocketRequestProcessor {
         CONFIGURATION_PUT("configuration/put"),
         CONFIGURATION_DELETE("configuration/delete"),
         NOTIFICATION_INSERT("notification/insert"),
+        NOTIFICATION_INSERT_BATCH("notification/insert/batch"),
         NOTIFICATION_SUBSCRIBE("notification/subscribe"),
         NOTIFICATION_UNSUBSCRIBE("notification/unsubscribe"),
         NOTIFICATION_GET("notification/get"),
         NOTIFICATION_LIST("notification/list"),
         COMMAND_INSERT("command/insert"),
+        COMMAND_INSERT_BATCH("command/insert/batch"),
         COMMAND_SUBSCRIBE("command/subscribe"),
         COMMAND_UNSUBSCRIBE("command/unsubscribe"),
         COMMAND_UPDATE("command/update"),
         COMMAND_GET("command/get"),
         COMMAND_LIST("command/list"),
         SUBSCRIPTION_LIST("subscription/list"),
+        SUBSCRIPTION_RESUME("subscription/resume"),
         DEVICE_GET("device/get"),
         DEVICE_LIST("device/list"),
         DEVICE_COUNT("device/count"),
@@ -325,6 +212,14 @@ public class WebSocketRequestProcessor {
         USER_DISALLOW_ALL_DEVICE_TYPES("user/disallowAllDeviceTypes"),
         EMPTY("");
 
+        private static final Map<String, WebsocketAction> byName = new HashMap<>();
+
+        static {
+            for (WebsocketAction type : values()) {
+                byName.put(type.value, type);
+            }
+        }
+
         private String value;
 
         WebsocketAction(String method) {
@@ -332,13 +227,16 @@ public class WebSocketRequestProcessor {
         }
 
         public static WebsocketAction forName(String value) {
-            for (WebsocketAction type : values()) {
-                if (type.value.equals(value)) {
-                    return type;
-                }
+            WebsocketAction type = byName.get(value);
+            if (type == null) {
+                throw new HiveException("Illegal argument: " + value, HttpServletResponse.SC_BAD_REQUEST);
             }
-            throw new HiveException("Illegal argument: " + value, HttpServletResponse.SC_BAD_REQUEST);
-
+            return type;
         }
     }
+
+    @FunctionalInterface
+    private interface ActionHandler {
+        void handle(JsonObject request, WebSocketSession session) throws InterruptedException, IOException;
+    }
 }
@@ -20,6 +20,7 @@ package com.devicehive.websockets.handlers;
  * #L%
  */
 
+import com.devicehive.api.RpcMetrics;
 import com.devicehive.auth.websockets.HiveWebsocketAuth;
 import com.devicehive.configuration.Constants;
 import com.devicehive.messages.handler.WebSocketClientHandler;
@@ -58,6 +59,7 @@ public class ApiInfoHandlers {
     protected final WebSocketClientHandler clientHandler;
     private final Environment env;
     private final LocalContainerEntityManagerFactoryBean entityManagerFactory;
+    private final RpcMetrics rpcMetrics;
 
     @Value("${server.context-path}")
     private String contextPath;
@@ -66,11 +68,13 @@ public class ApiInfoHandlers {
     public ApiInfoHandlers(TimestampService timestampService,
             Environment env,
             WebSocketClientHandler clientHandler,
-            LocalContainerEntityManagerFactoryBean entityManagerFactory) {
+            LocalContainerEntityManagerFactoryBean entityManagerFactory,
+            RpcMetrics rpcMetrics) {
         this.timestampService = timestampService;
         this.clientHandler = clientHandler;
         this.env = env;
         this.entityManagerFactory = entityManagerFactory;
+        this.rpcMetrics = rpcMetrics;
     }
 
     @HiveWebsocketAuth
@@ -97,6 +101,7 @@ public class ApiInfoHandlers {
         CacheInfoVO cacheInfo = new CacheInfoVO();
         cacheInfo.setServerTimestamp(timestampService.getDate());
         cacheInfo.setCacheStats(getCacheStats());
+        cacheInfo.setRpcStats(rpcMetrics.getSnapshot());
         WebSocketResponse response = new WebSocketResponse();
         response.addValue(CACHE_INFO, cacheInfo, WEBSOCKET_SERVER_INFO);
         logger.debug("server/cacheI action completed. Session {}", session.getId());
@@ -25,6 +25,7 @@ import com.devicehive.auth.HivePrincipal;
 import com.devicehive.auth.websockets.HiveWebsocketAuth;
 import com.devicehive.configuration.Messages;
 import com.devicehive.exceptions.HiveException;
+import com.devicehive.json.GsonFactory;
 import com.devicehive.messages.handler.WebSocketClientHandler;
 import com.devicehive.model.DeviceCommand;
 import com.devicehive.model.SubscriptionInfo;
@@ -37,9 +38,12 @@ import com.devicehive.service.BaseFilterService;
 import com.devicehive.service.DeviceCommandService;
 import com.devicehive.service.DeviceService;
 import com.devicehive.vo.*;
+import com.devicehive.websockets.converters.JsonMessageBuilder;
 import com.devicehive.websockets.converters.WebSocketResponse;
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
+import com.devicehive.websockets.util.EventFrameFactory;
+import com.devicehive.websockets.util.SessionResumer;
+import com.devicehive.websockets.util.SubscriptionRegistry;
+import com.google.gson.*;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,7 +55,6 @@ import org.springframework.web.socket.WebSocketSession;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
@@ -60,7 +63,6 @@ import static com.devicehive.configuration.Messages.*;
 import static com.devicehive.json.strategies.JsonPolicyDef.Policy.*;
 import static com.devicehive.model.rpc.CommandSearchRequest.createCommandSearchRequest;
 import static com.devicehive.shim.api.Action.COMMAND_EVENT;
-import static com.devicehive.util.ServerResponsesFactory.createCommandMessage;
 import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static javax.servlet.http.HttpServletResponse.SC_FORBIDDEN;
 import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
@@ -71,30 +73,36 @@ public class CommandHandlers {
 
     private static final Logger logger = LoggerFactory.getLogger(CommandHandlers.class);
 
-    public static final String SUBSCRIPTION_SET_NAME = "commandSubscriptions";
-
     private final Gson gson;
     private final DeviceService deviceService;
     private final DeviceCommandService commandService;
     private final BaseFilterService filterService;
     private final WebSocketClientHandler clientHandler;
+    private final SubscriptionRegistry subscriptionRegistry;
+    private final SessionResumer sessionResumer;
+    private final EventFrameFactory eventFrameFactory;
 
     @Autowired
     public CommandHandlers(Gson gson,
                            DeviceService deviceService,
                            DeviceCommandService commandService,
                            BaseFilterService filterService,
-                           WebSocketClientHandler clientHandler) {
+                           WebSocketClientHandler clientHandler,
+                           SubscriptionRegistry subscriptionRegistry,
+                           SessionResumer sessionResumer,
+                           EventFrameFactory eventFrameFactory) {
         this.gson = gson;
         this.deviceService = deviceService;
         this.commandService = commandService;
         this.filterService = filterService;
         this.clientHandler = clientHandler;
+        this.subscriptionRegistry = subscriptionRegistry;
+        this.sessionResumer = sessionResumer;
+        this.eventFrameFactory = eventFrameFactory;
     }
 
     @HiveWebsocketAuth
     @PreAuthorize("isAuthenticated() and hasPermission(#deviceId, 'GET_DEVICE_COMMAND')")
-    @SuppressWarnings("unchecked")
     public void processCommandSubscribe(String deviceId, JsonObject request, WebSocketSession session)
             throws InterruptedException {
         final HiveAuthentication authentication = (HiveAuthentication) SecurityContextHolder.getContext().getAuthentication();
@@ -112,9 +120,9 @@ public class CommandHandlers {
         Set<Filter> filters = filterService.getFilterList(deviceId, networks, deviceTypes, COMMAND_EVENT.name(), names, authentication);
 
         if (!filters.isEmpty()) {
+            final String resumeToken = sessionResumer.register(session, (HivePrincipal) authentication.getPrincipal());
             BiConsumer<DeviceCommand, Long> callback = (command, subscriptionId) -> {
-                JsonObject json = createCommandMessage(command, subscriptionId, returnUpdated);
-                clientHandler.sendMessage(json, session);
+                sessionResumer.deliver(session, eventFrameFactory.createCommandFrame(command, subscriptionId, returnUpdated));
             };
 
             Pair<Long, CompletableFuture<List<DeviceCommand>>> pair = commandService
@@ -123,17 +131,16 @@ public class CommandHandlers {
             logger.debug("command/subscribe done for devices: {}. Networks: {}. Device types: {}. Timestamp: {}. Names {} Session: {}",
                     deviceId, networks, deviceTypes, timestamp, names, session.getId());
 
-            ((CopyOnWriteArraySet) session
-                    .getAttributes()
-                    .get(SUBSCRIPTION_SET_NAME))
-                    .add(new SubscriptionInfo(pair.getLeft(), COMMAND, deviceId, networks, deviceTypes, names, timestamp));
+            subscriptionRegistry.add(session.getId(),
+                    new SubscriptionInfo(pair.getLeft(), COMMAND, deviceId, networks, deviceTypes, names, timestamp));
 
             pair.getRight()
                     .thenAccept(collection -> {
                         WebSocketResponse response = new WebSocketResponse();
                         response.addValue(SUBSCRIPTION_ID, pair.getLeft(), null);
+                        response.addValue(RESUME_TOKEN, resumeToken, null);
                         clientHandler.sendMessage(request, response, session);
-                        collection.forEach(cmd -> clientHandler.sendMessage(createCommandMessage(cmd, pair.getLeft(), returnUpdated), session));
+                        collection.forEach(cmd -> sessionResumer.deliver(session, eventFrameFactory.createCommandFrame(cmd, pair.getLeft(), returnUpdated)));
                     });
         } else {
             throw new HiveException(NO_ACCESS_TO_DEVICE_TYPES_OR_NETWORKS, SC_FORBIDDEN);
@@ -142,28 +149,19 @@ public class CommandHandlers {
 
     @HiveWebsocketAuth
     @PreAuthorize("isAuthenticated() and hasPermission(null, 'GET_DEVICE_COMMAND')")
-    @SuppressWarnings("unchecked")
     public void processCommandUnsubscribe(JsonObject request, WebSocketSession session) {
         final Long subscriptionId = gson.fromJson(request.get(SUBSCRIPTION_ID), Long.class);
-        Set<SubscriptionInfo> sessionSubscriptions = ((CopyOnWriteArraySet) session
-                .getAttributes()
-                .get(SUBSCRIPTION_SET_NAME));
-        Set<Long> sessionSubIds = sessionSubscriptions.stream().map(SubscriptionInfo::getSubscriptionId).collect(Collectors.toSet());
-
         logger.debug("command/unsubscribe action. Session {} ", session.getId());
-        if (subscriptionId != null && !sessionSubIds.contains(subscriptionId)) {
-            throw new HiveException(String.format(Messages.SUBSCRIPTION_NOT_FOUND, subscriptionId), SC_NOT_FOUND);
-        }
-        
-        CompletableFuture<Set<Long>> future;
+        Set<Long> subscriptionIds;
         if (subscriptionId == null) {
-            future = commandService.sendUnsubscribeRequest(sessionSubIds);
-            sessionSubscriptions.clear();
+            subscriptionIds = subscriptionRegistry.removeAll(session.getId(), COMMAND);
+        } else if (subscriptionRegistry.remove(session.getId(), COMMAND, subscriptionId)) {
+            subscriptionIds = Collections.singleton(subscriptionId);
         } else {
-            future = commandService.sendUnsubscribeRequest(Collections.singleton(subscriptionId));
-            sessionSubscriptions.remove(new SubscriptionInfo(subscriptionId));
+            throw new HiveException(String.format(Messages.SUBSCRIPTION_NOT_FOUND, subscriptionId), SC_NOT_FOUND);
         }
-        
+        CompletableFuture<Set<Long>> future = commandService.sendUnsubscribeRequest(subscriptionIds);
+
         future.thenAccept(collection -> {
             logger.debug("command/unsubscribe completed for session {}", session.getId());
             clientHandler.sendMessage(request, new WebSocketResponse(), session);    
@@ -206,6 +204,95 @@ public class CommandHandlers {
                 });
     }
 
+    /**
+     * Inserts commands for several devices at once. The device set is checked once and all valid items go to
+     * backend in a single request; the response carries one result per item, in request order.
+     */
+    @HiveWebsocketAuth
+    @PreAuthorize("isAuthenticated() and hasPermission(null, 'CREATE_DEVICE_COMMAND')")
+    public void processCommandInsertBatch(JsonObject request, WebSocketSession session) {
+        HivePrincipal principal = (HivePrincipal) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        JsonElement itemsElement = request.get(COMMANDS);
+        if (itemsElement == null || !itemsElement.isJsonArray() || itemsElement.getAsJsonArray().size() == 0) {
+            throw new HiveException(Messages.EMPTY_COMMAND, SC_BAD_REQUEST);
+        }
+        JsonArray items = itemsElement.getAsJsonArray();
+        logger.debug("command/insert/batch requested. Session {}. Items {}", session.getId(), items.size());
+
+        Set<String> deviceIds = new HashSet<>();
+        items.forEach(item -> {
+            if (item.isJsonObject() && item.getAsJsonObject().get(DEVICE_ID) instanceof JsonPrimitive) {
+                deviceIds.add(item.getAsJsonObject().get(DEVICE_ID).getAsString());
+            }
+        });
+        Map<String, DeviceVO> devices = deviceIds.isEmpty() ? Collections.emptyMap() :
+                deviceService.getAllowedExistingDevices(deviceIds, principal).stream()
+                        .collect(Collectors.toMap(DeviceVO::getDeviceId, device -> device));
+        final UserVO user = principal.getUser();
+
+        JsonElement[] results = new JsonElement[items.size()];
+        List<DeviceCommand> accepted = new ArrayList<>();
+        List<Integer> acceptedIndexes = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            try {
+                if (!items.get(i).isJsonObject()) {
+                    throw new HiveException(Messages.EMPTY_COMMAND, SC_BAD_REQUEST);
+                }
+                JsonObject item = items.get(i).getAsJsonObject();
+                DeviceCommandWrapper commandSubmit = gson.fromJson(item, DeviceCommandWrapper.class);
+                if (commandSubmit == null || commandSubmit.getCommand() == null) {
+                    throw new HiveException(Messages.EMPTY_COMMAND, SC_BAD_REQUEST);
+                }
+                String deviceId = gson.fromJson(item.get(DEVICE_ID), String.class);
+                if (deviceId == null) {
+                    throw new HiveException(DEVICE_ID_REQUIRED, SC_BAD_REQUEST);
+                }
+                accepted.add(commandService.prepareForInsert(commandSubmit, devices.get(deviceId), user));
+                acceptedIndexes.add(i);
+            } catch (HiveException e) {
+                results[i] = JsonMessageBuilder.createError(e).build();
+            } catch (JsonParseException e) {
+                results[i] = JsonMessageBuilder.createErrorResponseBuilder(SC_BAD_REQUEST, e.getMessage()).build();
+            }
+        }
+
+        if (accepted.isEmpty()) {
+            sendBatchResponse(request, results, session);
+            return;
+        }
+        Gson resultGson = GsonFactory.createGson(COMMAND_TO_CLIENT);
+        List<CompletableFuture<DeviceCommand>> inserted = commandService.insertAll(accepted);
+        CompletableFuture.allOf(inserted.toArray(new CompletableFuture[inserted.size()]))
+                .whenComplete((done, failure) -> {
+                    if (failure != null) {
+                        logger.warn("Unable to insert part of command batch.", failure);
+                    }
+                    // a failed part marks only its own items, the other parts are stored already
+                    JsonObject error = JsonMessageBuilder
+                            .createErrorResponseBuilder(SC_INTERNAL_SERVER_ERROR, Messages.INTERNAL_SERVER_ERROR).build();
+                    for (int j = 0; j < inserted.size(); j++) {
+                        CompletableFuture<DeviceCommand> item = inserted.get(j);
+                        if (item.isCompletedExceptionally()) {
+                            results[acceptedIndexes.get(j)] = error;
+                            continue;
+                        }
+                        results[acceptedIndexes.get(j)] = JsonMessageBuilder.createSuccessResponseBuilder()
+                                .include(resultGson.toJsonTree(item.join()).getAsJsonObject())
+                                .build();
+                    }
+                    logger.debug("command/insert/batch proceed. Session {}. Accepted {}", session.getId(), inserted.size());
+                    sendBatchResponse(request, results, session);
+                });
+    }
+
+    private void sendBatchResponse(JsonObject request, JsonElement[] results, WebSocketSession session) {
+        JsonArray array = new JsonArray();
+        Arrays.stream(results).forEach(array::add);
+        WebSocketResponse response = new WebSocketResponse();
+        response.addValue(COMMANDS, array);
+        clientHandler.sendMessage(request, response, session);
+    }
+
     @HiveWebsocketAuth
     @PreAuthorize("isAuthenticated() and hasPermission(#deviceId, 'UPDATE_DEVICE_COMMAND')")
     public void processCommandUpdate(String deviceId, JsonObject request, WebSocketSession session) {
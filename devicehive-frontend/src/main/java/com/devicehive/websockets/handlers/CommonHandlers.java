@@ -106,6 +106,7 @@ public class CommonHandlers {
 
         SecurityContextHolder.getContext().setAuthentication(authentication);
         state.setHivePrincipal(principal);
+        clientHandler.negotiateCoalescing(request, session);
 
         clientHandler.sendMessage(request, new WebSocketResponse(), session);
     }
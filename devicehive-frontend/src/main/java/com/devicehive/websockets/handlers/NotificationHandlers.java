@@ -27,6 +27,7 @@ import com.devicehive.configuration.Constants;
 import com.devicehive.configuration.Messages;
 import com.devicehive.exceptions.HiveException;
 import com.devicehive.exceptions.IllegalParametersException;
+import com.devicehive.json.GsonFactory;
 import com.devicehive.messages.handler.WebSocketClientHandler;
 import com.devicehive.model.DeviceNotification;
 import com.devicehive.model.SubscriptionInfo;
@@ -38,12 +39,13 @@ import com.devicehive.resource.util.JsonTypes;
 import com.devicehive.service.BaseFilterService;
 import com.devicehive.service.DeviceNotificationService;
 import com.devicehive.service.DeviceService;
-import com.devicehive.util.ServerResponsesFactory;
 import com.devicehive.vo.*;
+import com.devicehive.websockets.converters.JsonMessageBuilder;
 import com.devicehive.websockets.converters.WebSocketResponse;
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParseException;
+import com.devicehive.websockets.util.EventFrameFactory;
+import com.devicehive.websockets.util.SessionResumer;
+import com.devicehive.websockets.util.SubscriptionRegistry;
+import com.google.gson.*;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,7 +58,6 @@ import org.springframework.web.socket.WebSocketSession;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
@@ -72,30 +73,36 @@ import static javax.servlet.http.HttpServletResponse.*;
 public class NotificationHandlers {
     private static final Logger logger = LoggerFactory.getLogger(NotificationHandlers.class);
 
-    public static final String SUBSCRIPTION_SET_NAME = "notificationSubscriptions";
-
     private final Gson gson;
     private final DeviceService deviceService;
     private final DeviceNotificationService notificationService;
     private final BaseFilterService filterService;
     private final WebSocketClientHandler clientHandler;
+    private final SubscriptionRegistry subscriptionRegistry;
+    private final SessionResumer sessionResumer;
+    private final EventFrameFactory eventFrameFactory;
 
     @Autowired
     public NotificationHandlers(Gson gson,
                                 DeviceService deviceService,
                                 DeviceNotificationService notificationService,
                                 BaseFilterService filterService,
-                                WebSocketClientHandler clientHandler) {
+                                WebSocketClientHandler clientHandler,
+                                SubscriptionRegistry subscriptionRegistry,
+                                SessionResumer sessionResumer,
+                                EventFrameFactory eventFrameFactory) {
         this.gson = gson;
         this.deviceService = deviceService;
         this.notificationService = notificationService;
         this.filterService = filterService;
         this.clientHandler = clientHandler;
+        this.subscriptionRegistry = subscriptionRegistry;
+        this.sessionResumer = sessionResumer;
+        this.eventFrameFactory = eventFrameFactory;
     }
 
     @HiveWebsocketAuth
     @PreAuthorize("isAuthenticated() and hasPermission(#deviceId, 'GET_DEVICE_NOTIFICATION')")
-    @SuppressWarnings("unchecked")
     public void processNotificationSubscribe(String deviceId, JsonObject request,
                                                           WebSocketSession session) throws InterruptedException, IOException {
         final HiveAuthentication authentication = (HiveAuthentication) SecurityContextHolder.getContext().getAuthentication();
@@ -110,9 +117,10 @@ public class NotificationHandlers {
         Set<Filter> filters = filterService.getFilterList(deviceId, networks, deviceTypes, NOTIFICATION_EVENT.name(), names, authentication);
 
         if (!filters.isEmpty()) {
+            clientHandler.negotiateCoalescing(request, session);
+            final String resumeToken = sessionResumer.register(session, (HivePrincipal) authentication.getPrincipal());
             BiConsumer<DeviceNotification, Long> callback = (notification, subscriptionId) -> {
-                JsonObject json = ServerResponsesFactory.createNotificationInsertMessage(notification, subscriptionId);
-                clientHandler.sendMessage(json, session);
+                sessionResumer.deliver(session, eventFrameFactory.createNotificationInsertFrame(notification, subscriptionId));
             };
 
             Pair<Long, CompletableFuture<List<DeviceNotification>>> pair = notificationService
@@ -121,18 +129,16 @@ public class NotificationHandlers {
             logger.debug("notification/subscribe done for devices: {}. Networks: {}. Device types: {}. Timestamp: {}. Names {} Session: {}",
                     deviceId, networks, deviceTypes, timestamp, names, session.getId());
 
-            ((CopyOnWriteArraySet) session
-                    .getAttributes()
-                    .get(SUBSCRIPTION_SET_NAME))
-                    .add(new SubscriptionInfo(pair.getLeft(), NOTIFICATION, deviceId, networks, deviceTypes, names, timestamp));
+            subscriptionRegistry.add(session.getId(),
+                    new SubscriptionInfo(pair.getLeft(), NOTIFICATION, deviceId, networks, deviceTypes, names, timestamp));
 
             pair.getRight().thenAccept(collection -> {
                 WebSocketResponse response = new WebSocketResponse();
                 response.addValue(SUBSCRIPTION_ID, pair.getLeft(), null);
+                response.addValue(RESUME_TOKEN, resumeToken, null);
                 clientHandler.sendMessage(request, response, session);
                 collection.forEach(notification -> {
-                    JsonObject json = ServerResponsesFactory.createNotificationInsertMessage(notification, pair.getLeft());
-                    clientHandler.sendMessage(json, session);
+                    sessionResumer.deliver(session, eventFrameFactory.createNotificationInsertFrame(notification, pair.getLeft()));
                 });
             });
         } else {
@@ -150,27 +156,19 @@ public class NotificationHandlers {
      */
     @HiveWebsocketAuth
     @PreAuthorize("isAuthenticated() and hasPermission(null, 'GET_DEVICE_NOTIFICATION')")
-    @SuppressWarnings("unchecked")
     public void processNotificationUnsubscribe(JsonObject request, WebSocketSession session) throws IOException {
         final Long subscriptionId = gson.fromJson(request.get(SUBSCRIPTION_ID), Long.class);
-        Set<SubscriptionInfo> sessionSubscriptions = ((CopyOnWriteArraySet) session
-                .getAttributes()
-                .get(SUBSCRIPTION_SET_NAME));
-        Set<Long> sessionSubIds = sessionSubscriptions.stream().map(SubscriptionInfo::getSubscriptionId).collect(Collectors.toSet());
-
         logger.debug("notification/unsubscribe action. Session {} ", session.getId());
-        if (subscriptionId != null && !sessionSubIds.contains(subscriptionId)) {
-            throw new HiveException(String.format(Messages.SUBSCRIPTION_NOT_FOUND, subscriptionId), SC_NOT_FOUND);
-        }
-        CompletableFuture<Set<Long>> future;
+        Set<Long> subscriptionIds;
         if (subscriptionId == null) {
-            future = notificationService.unsubscribe(sessionSubIds);
-            sessionSubscriptions.clear();
+            subscriptionIds = subscriptionRegistry.removeAll(session.getId(), NOTIFICATION);
+        } else if (subscriptionRegistry.remove(session.getId(), NOTIFICATION, subscriptionId)) {
+            subscriptionIds = Collections.singleton(subscriptionId);
         } else {
-            future = notificationService.unsubscribe(Collections.singleton(subscriptionId));
-            sessionSubscriptions.remove(new SubscriptionInfo(subscriptionId));
+            throw new HiveException(String.format(Messages.SUBSCRIPTION_NOT_FOUND, subscriptionId), SC_NOT_FOUND);
         }
-        
+        CompletableFuture<Set<Long>> future = notificationService.unsubscribe(subscriptionIds);
+
         future.thenAccept(collection -> {
             logger.debug("notification/unsubscribe completed for session {}", session.getId());
             clientHandler.sendMessage(request, new WebSocketResponse(), session);
@@ -218,6 +216,99 @@ public class NotificationHandlers {
                 });
     }
 
+    /**
+     * Inserts notifications of several devices at once. The device set is checked once and all valid items go to
+     * backend in a single request; the response carries one result per item, in request order.
+     */
+    @HiveWebsocketAuth
+    @PreAuthorize("isAuthenticated() and hasPermission(null, 'CREATE_DEVICE_NOTIFICATION')")
+    public void processNotificationInsertBatch(JsonObject request, WebSocketSession session) {
+        HivePrincipal principal = (HivePrincipal) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        JsonElement itemsElement = request.get(NOTIFICATIONS);
+        if (itemsElement == null || !itemsElement.isJsonArray() || itemsElement.getAsJsonArray().size() == 0) {
+            throw new HiveException(Messages.NOTIFICATION_REQUIRED, SC_BAD_REQUEST);
+        }
+        JsonArray items = itemsElement.getAsJsonArray();
+        logger.debug("notification/insert/batch requested. Session {}. Items {}", session.getId(), items.size());
+
+        Set<String> deviceIds = new HashSet<>();
+        items.forEach(item -> {
+            if (item.isJsonObject() && item.getAsJsonObject().get(DEVICE_ID) instanceof JsonPrimitive) {
+                deviceIds.add(item.getAsJsonObject().get(DEVICE_ID).getAsString());
+            }
+        });
+        Map<String, DeviceVO> devices = deviceIds.isEmpty() ? Collections.emptyMap() :
+                deviceService.getAllowedExistingDevices(deviceIds, principal).stream()
+                        .collect(Collectors.toMap(DeviceVO::getDeviceId, device -> device));
+
+        JsonElement[] results = new JsonElement[items.size()];
+        List<DeviceNotification> accepted = new ArrayList<>();
+        List<Integer> acceptedIndexes = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            try {
+                if (!items.get(i).isJsonObject()) {
+                    throw new HiveException(Messages.NOTIFICATION_REQUIRED, SC_BAD_REQUEST);
+                }
+                JsonObject item = items.get(i).getAsJsonObject();
+                DeviceNotificationWrapper notificationSubmit = gson.fromJson(item, DeviceNotificationWrapper.class);
+                if (notificationSubmit == null || notificationSubmit.getNotification() == null) {
+                    throw new HiveException(Messages.NOTIFICATION_REQUIRED, SC_BAD_REQUEST);
+                }
+                String deviceId = gson.fromJson(item.get(DEVICE_ID), String.class);
+                if (deviceId == null) {
+                    throw new HiveException(Messages.DEVICE_ID_REQUIRED, SC_BAD_REQUEST);
+                }
+                DeviceVO device = devices.get(deviceId);
+                if (device.getNetworkId() == null) {
+                    throw new HiveException(String.format(Messages.DEVICE_IS_NOT_CONNECTED_TO_NETWORK, deviceId), SC_FORBIDDEN);
+                }
+                accepted.add(notificationService.prepareForInsert(notificationSubmit, device));
+                acceptedIndexes.add(i);
+            } catch (HiveException e) {
+                results[i] = JsonMessageBuilder.createError(e).build();
+            } catch (JsonParseException e) {
+                results[i] = JsonMessageBuilder.createErrorResponseBuilder(SC_BAD_REQUEST, e.getMessage()).build();
+            }
+        }
+
+        if (accepted.isEmpty()) {
+            sendBatchResponse(request, results, session);
+            return;
+        }
+        Gson resultGson = GsonFactory.createGson(NOTIFICATION_TO_DEVICE);
+        List<CompletableFuture<DeviceNotification>> inserted = notificationService.insertAll(accepted);
+        CompletableFuture.allOf(inserted.toArray(new CompletableFuture[inserted.size()]))
+                .whenComplete((done, failure) -> {
+                    if (failure != null) {
+                        logger.warn("Unable to insert part of notification batch.", failure);
+                    }
+                    // a failed part marks only its own items, the other parts are stored already
+                    JsonObject error = JsonMessageBuilder
+                            .createErrorResponseBuilder(SC_INTERNAL_SERVER_ERROR, Messages.INTERNAL_SERVER_ERROR).build();
+                    for (int j = 0; j < inserted.size(); j++) {
+                        CompletableFuture<DeviceNotification> item = inserted.get(j);
+                        if (item.isCompletedExceptionally()) {
+                            results[acceptedIndexes.get(j)] = error;
+                            continue;
+                        }
+                        DeviceNotification notification = item.join();
+                        results[acceptedIndexes.get(j)] = JsonMessageBuilder.createSuccessResponseBuilder()
+                                .include(resultGson.toJsonTree(new InsertNotification(notification.getId(), notification.getTimestamp())).getAsJsonObject())
+                                .build();
+                    }
+                    logger.debug("notification/insert/batch proceed. Session {}. Accepted {}", session.getId(), inserted.size());
+                    sendBatchResponse(request, results, session);
+                });
+    }
+
+    private void sendBatchResponse(JsonObject request, JsonElement[] results, WebSocketSession session) {
+        JsonArray array = new JsonArray();
+        Arrays.stream(results).forEach(array::add);
+        WebSocketResponse response = new WebSocketResponse();
+        response.addValue(NOTIFICATIONS, array);
+        clientHandler.sendMessage(request, response, session);
+    }
+
     @HiveWebsocketAuth
     @PreAuthorize("isAuthenticated() and hasPermission(null, 'GET_DEVICE_NOTIFICATION')")
     public void processNotificationGet(JsonObject request, WebSocketSession session) {
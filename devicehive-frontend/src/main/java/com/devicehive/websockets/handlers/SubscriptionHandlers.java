@@ -27,8 +27,10 @@ import com.devicehive.messages.handler.WebSocketClientHandler;
 import com.devicehive.model.SubscriptionInfo;
 import com.devicehive.service.SubscriptionService;
 import com.devicehive.websockets.converters.WebSocketResponse;
+import com.devicehive.websockets.util.SessionResumer;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
+import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -49,14 +51,17 @@ public class SubscriptionHandlers {
     private final Gson gson;
     private final SubscriptionService subscriptionService;
     private final WebSocketClientHandler clientHandler;
+    private final SessionResumer sessionResumer;
 
     @Autowired
     public SubscriptionHandlers(Gson gson,
                                 SubscriptionService subscriptionService,
-                                WebSocketClientHandler clientHandler) {
+                                WebSocketClientHandler clientHandler,
+                                SessionResumer sessionResumer) {
         this.gson = gson;
         this.subscriptionService = subscriptionService;
         this.clientHandler = clientHandler;
+        this.sessionResumer = sessionResumer;
     }
 
     @HiveWebsocketAuth
@@ -74,4 +79,27 @@ public class SubscriptionHandlers {
         response.addValue(SUBSCRIPTIONS, subscriptions, JsonPolicyDef.Policy.SUBSCRIPTIONS_LISTED);
         clientHandler.sendMessage(request, response, session);
     }
+
+    /**
+     * Takes over the subscriptions of a dropped connection by its resume token. Events buffered while the client was
+     * away are sent before the response; {@code missed} tells how many did not fit into the buffer.
+     */
+    @HiveWebsocketAuth
+    @PreAuthorize("isAuthenticated() and (hasPermission(null, 'GET_DEVICE_COMMAND')" +
+            " or hasPermission(null, 'GET_DEVICE_NOTIFICATION'))")
+    public void processSubscriptionResume(JsonObject request, WebSocketSession session) {
+        final HivePrincipal principal = (HivePrincipal) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        final String resumeToken = gson.fromJson(request.get(RESUME_TOKEN), String.class);
+
+        Pair<Integer, Integer> replay = sessionResumer.resume(resumeToken, session, principal);
+        Set<SubscriptionInfo> subscriptions = subscriptionService.list(null, principal, session);
+
+        logger.debug("subscription/resume completed for session {}", session.getId());
+        WebSocketResponse response = new WebSocketResponse();
+        response.addValue(RESUME_TOKEN, resumeToken, null);
+        response.addValue(SUBSCRIPTIONS, subscriptions, JsonPolicyDef.Policy.SUBSCRIPTIONS_LISTED);
+        response.addValue(REPLAYED, replay.getLeft(), null);
+        response.addValue(MISSED, replay.getRight(), null);
+        clientHandler.sendMessage(request, response, session);
+    }
 }
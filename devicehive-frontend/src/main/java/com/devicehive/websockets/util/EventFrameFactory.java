@@ -0,0 +1,137 @@
+package com.devicehive.websockets.util;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.configuration.Constants;
+import com.devicehive.json.GsonFactory;
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.JsonStringWrapper;
+import com.devicehive.util.ServerResponsesFactory;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.devicehive.json.strategies.JsonPolicyDef.Policy.COMMAND_TO_DEVICE;
+import static com.devicehive.json.strategies.JsonPolicyDef.Policy.COMMAND_UPDATE_TO_CLIENT;
+import static com.devicehive.json.strategies.JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT;
+
+/**
+ * Builds subscription event frames from event bodies that are serialized once and shared by all subscriptions of
+ * this frontend. Every subscriber receives its own copy of an event from backend, so bodies are keyed by event
+ * content rather than by object: a command update is keyed by every field it carries, since the same command is
+ * updated many times. A frame without a subscription id leaves the field out.
+ */
+@Component
+public class EventFrameFactory {
+
+    @Value("${websocket.event-cache.max-size:4096}")
+    private long maxSize;
+
+    @Value("${websocket.event-cache.expire-ms:60000}")
+    private long expireMillis;
+
+    private Cache<List<Object>, String> encodedEvents;
+
+    @PostConstruct
+    public void start() {
+        encodedEvents = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Same message as {@link ServerResponsesFactory#createNotificationInsertMessage(DeviceNotification, Long)}.
+     */
+    public String createNotificationInsertFrame(DeviceNotification notification, Long subscriptionId) {
+        List<Object> key = notification.getId() != null && notification.getTimestamp() != null
+                ? Arrays.asList("n", notification.getId(), notification.getTimestamp().getTime())
+                : null;
+        String body = encode(key, () -> GsonFactory.createGson(NOTIFICATION_TO_CLIENT).toJsonTree(notification).toString());
+        return frame("notification/insert", Constants.NOTIFICATION, body, subscriptionId);
+    }
+
+    /**
+     * Same message as {@link ServerResponsesFactory#createCommandMessage(DeviceCommand, Long, Boolean)}.
+     */
+    public String createCommandFrame(DeviceCommand command, Long subscriptionId, Boolean returnUpdated) {
+        if (returnUpdated) {
+            List<Object> key = command.getId() != null
+                    ? Arrays.asList("cu", command.getId(), command.getCommand(), time(command.getTimestamp()),
+                    time(command.getLastUpdated()), command.getUserId(), command.getDeviceId(), command.getNetworkId(),
+                    command.getDeviceTypeId(), json(command.getParameters()), command.getLifetime(), command.getStatus(),
+                    json(command.getResult()))
+                    : null;
+            String body = encode(key, () -> GsonFactory.createGson(COMMAND_UPDATE_TO_CLIENT).toJsonTree(command).toString());
+            return frame("command/update", Constants.COMMAND, body, subscriptionId);
+        }
+        List<Object> key = command.getId() != null && command.getTimestamp() != null
+                ? Arrays.asList("ci", command.getId(), command.getTimestamp().getTime())
+                : null;
+        String body = encode(key, () -> GsonFactory.createGson(COMMAND_TO_DEVICE).toJsonTree(command, DeviceCommand.class).toString());
+        return frame("command/insert", Constants.COMMAND, body, subscriptionId);
+    }
+
+    /**
+     * @return number of event bodies currently cached
+     */
+    public long getCachedEvents() {
+        return encodedEvents.size();
+    }
+
+    private String encode(List<Object> key, Callable<String> encoder) {
+        try {
+            return key != null ? encodedEvents.get(key, encoder) : encoder.call();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Long time(Date date) {
+        return date != null ? date.getTime() : null;
+    }
+
+    private static String json(JsonStringWrapper wrapper) {
+        return wrapper != null ? wrapper.getJsonString() : null;
+    }
+
+    private static String frame(String action, String name, String body, Long subscriptionId) {
+        StringBuilder frame = new StringBuilder(body.length() + 64)
+                .append("{\"action\":\"").append(action)
+                .append("\",\"").append(name).append("\":").append(body);
+        if (subscriptionId != null) {
+            frame.append(",\"").append(Constants.SUBSCRIPTION_ID).append("\":").append(subscriptionId);
+        }
+        return frame.append('}').toString();
+    }
+}
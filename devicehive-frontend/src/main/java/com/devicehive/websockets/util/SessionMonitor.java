@@ -20,71 +20,207 @@ package com.devicehive.websockets.util;
  * #L%
  */
 
+import com.devicehive.api.LatencyHistogram;
+import com.devicehive.api.RpcMetrics;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.PingMessage;
 import org.springframework.web.socket.WebSocketSession;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.io.IOException;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Keeps track of open WebSocket sessions and their heartbeat. Sessions are split into shards whose ping sweeps are
+ * spread evenly over the ping interval, so a burst of pings never covers all sessions at once. A session that shows
+ * no activity (message or pong) for the idle timeout is closed. A sweep only decides what to do with each session;
+ * pings and closes are submitted to the heartbeat threads and run in parallel with the sweeps, so one slow socket
+ * holds up neither its shard nor the others. A session whose previous ping is still being written is skipped.
+ */
 @Component
 public class SessionMonitor {
 
     private static final Logger logger = LoggerFactory.getLogger(SessionMonitor.class);
 
-    private ConcurrentMap<String, WebSocketSession> sessionMap = new ConcurrentHashMap<>();
+    private final RpcMetrics rpcMetrics;
+
+    @Value("${websocket.heartbeat.interval-ms:30000}")
+    private long pingIntervalMillis;
+
+    @Value("${websocket.heartbeat.idle-timeout-ms:90000}")
+    private long idleTimeoutMillis;
+
+    @Value("${websocket.heartbeat.shards:8}")
+    private int shardCount;
+
+    @Value("${websocket.heartbeat.threads:2}")
+    private int threads;
+
+    private ConcurrentMap<String, TrackedSession>[] shards;
+    private ScheduledExecutorService heartbeat;
+
+    private final LatencyHistogram pingRoundTrip = new LatencyHistogram();
+    private final AtomicLong pingFailures = new AtomicLong();
+    private final AtomicLong reaped = new AtomicLong();
+
+    @Autowired
+    public SessionMonitor(RpcMetrics rpcMetrics) {
+        this.rpcMetrics = rpcMetrics;
+    }
+
+    @PostConstruct
+    @SuppressWarnings("unchecked")
+    public void start() {
+        shards = new ConcurrentMap[Math.max(1, shardCount)];
+        Arrays.setAll(shards, i -> new ConcurrentHashMap<>());
+        heartbeat = Executors.newScheduledThreadPool(Math.max(1, threads), new ThreadFactoryBuilder()
+                .setNameFormat("websocket-heartbeat-%d")
+                .setDaemon(true)
+                .build());
+        for (int i = 0; i < shards.length; i++) {
+            final int shard = i;
+            heartbeat.scheduleAtFixedRate(() -> sweep(shard),
+                    pingIntervalMillis * (i + 1) / shards.length, pingIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        rpcMetrics.registerGauge("websocket.sessions", this::getSessionCount);
+        rpcMetrics.registerGauge("websocket.ping.count", pingRoundTrip::getCount);
+        rpcMetrics.registerGauge("websocket.ping.p50Us", () -> pingRoundTrip.getPercentileMicros(50));
+        rpcMetrics.registerGauge("websocket.ping.p99Us", () -> pingRoundTrip.getPercentileMicros(99));
+        rpcMetrics.registerGauge("websocket.ping.failures", pingFailures::get);
+        rpcMetrics.registerGauge("websocket.reaped", reaped::get);
+    }
 
     public void registerSession(final WebSocketSession session) {
-        sessionMap.put(session.getId(), session);
+        shardOf(session.getId()).put(session.getId(), new TrackedSession(session));
     }
 
     public WebSocketSession getSession(String sessionId) {
-        WebSocketSession session = sessionMap.get(sessionId);
-        return session != null && session.isOpen() ? session : null;
+        TrackedSession tracked = shardOf(sessionId).get(sessionId);
+        return tracked != null && tracked.session.isOpen() ? tracked.session : null;
+    }
+
+    /**
+     * Records activity of the session; a session with recent activity is not reaped.
+     */
+    public void touch(String sessionId) {
+        TrackedSession tracked = shardOf(sessionId).get(sessionId);
+        if (tracked != null) {
+            tracked.lastActivity = System.nanoTime();
+        }
+    }
+
+    /**
+     * Records a pong of the session and the round trip time of the ping it answers.
+     */
+    public void onPong(String sessionId) {
+        TrackedSession tracked = shardOf(sessionId).get(sessionId);
+        if (tracked != null) {
+            long now = System.nanoTime();
+            long pingSentAt = tracked.pingSentAt;
+            if (pingSentAt != 0) {
+                pingRoundTrip.record(now - pingSentAt);
+                tracked.pingSentAt = 0;
+            }
+            tracked.lastActivity = now;
+        }
     }
 
     public void removeSession(String sessionId) throws IOException {
-        sessionMap.remove(sessionId);
-        WebSocketSession session = sessionMap.get(sessionId);
+        TrackedSession tracked = shardOf(sessionId).remove(sessionId);
         try {
-            if (session != null) session.close();
+            if (tracked != null) tracked.session.close();
         } catch (IOException ex) {
             logger.error("Error closing session", ex);
         }
     }
 
-    @Scheduled(cron = "0/30 * * * * *")
-    public synchronized void ping() {
-        try {
-            for (WebSocketSession session : sessionMap.values()) {
-                if (session.isOpen()) {
-                    logger.debug("Pinging session {}", session.getId());
-                    session.sendMessage(new PingMessage());
-                } else {
-                    logger.debug("Session {} is closed.", session.getId());
-                    sessionMap.remove(session.getId());
-                }
+    public int getSessionCount() {
+        return Arrays.stream(shards).mapToInt(ConcurrentMap::size).sum();
+    }
+
+    private void sweep(int shard) {
+        final long now = System.nanoTime();
+        final long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        for (TrackedSession tracked : shards[shard].values()) {
+            WebSocketSession session = tracked.session;
+            if (!session.isOpen()) {
+                logger.debug("Session {} is closed.", session.getId());
+                shards[shard].remove(session.getId(), tracked);
+            } else if (now - tracked.lastActivity > idleTimeoutNanos) {
+                heartbeat.execute(() -> reap(shard, tracked));
+            } else if (tracked.pinging.compareAndSet(false, true)) {
+                heartbeat.execute(() -> ping(tracked, now));
             }
-        } catch (IOException e) {
-            logger.error("Exception while ping session");
         }
     }
 
+    private void ping(TrackedSession tracked, long now) {
+        logger.debug("Pinging session {}", tracked.session.getId());
+        if (tracked.pingSentAt == 0) {
+            tracked.pingSentAt = now;
+        }
+        try {
+            tracked.session.sendMessage(new PingMessage());
+        } catch (IOException | RuntimeException e) {
+            pingFailures.incrementAndGet();
+            logger.debug("Exception while ping session {}: {}", tracked.session.getId(), e.getMessage());
+        } finally {
+            tracked.pinging.set(false);
+        }
+    }
+
+    private void reap(int shard, TrackedSession tracked) {
+        if (!shards[shard].remove(tracked.session.getId(), tracked)) {
+            return;
+        }
+        reaped.incrementAndGet();
+        logger.info("Closing session {}, no activity for {} ms", tracked.session.getId(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - tracked.lastActivity));
+        try {
+            tracked.session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException | RuntimeException ex) {
+            logger.error("Error closing session", ex);
+        }
+    }
+
+    private ConcurrentMap<String, TrackedSession> shardOf(String sessionId) {
+        return shards[(sessionId.hashCode() & Integer.MAX_VALUE) % shards.length];
+    }
+
     @PreDestroy
     public void closeAllSessions() {
-        for (WebSocketSession session : sessionMap.values()) {
-            try {
-                session.close(CloseStatus.SERVICE_RESTARTED);
-            } catch (IOException ex) {
-                logger.error("Error closing session", ex);
+        heartbeat.shutdownNow();
+        for (ConcurrentMap<String, TrackedSession> shard : shards) {
+            for (TrackedSession tracked : shard.values()) {
+                try {
+                    tracked.session.close(CloseStatus.SERVICE_RESTARTED);
+                } catch (IOException ex) {
+                    logger.error("Error closing session", ex);
+                }
             }
+            shard.clear();
+        }
+    }
+
+    private static class TrackedSession {
+        private final WebSocketSession session;
+        private volatile long lastActivity = System.nanoTime();
+        private volatile long pingSentAt;
+        private final AtomicBoolean pinging = new AtomicBoolean();
+
+        private TrackedSession(WebSocketSession session) {
+            this.session = session;
         }
-        sessionMap.clear();
     }
 }
@@ -0,0 +1,379 @@
+package com.devicehive.websockets.util;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RpcMetrics;
+import com.devicehive.auth.HivePrincipal;
+import com.devicehive.configuration.Messages;
+import com.devicehive.exceptions.HiveException;
+import com.devicehive.messages.handler.WebSocketClientHandler;
+import com.devicehive.model.SubscriptionInfo;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static javax.servlet.http.HttpServletResponse.SC_FORBIDDEN;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
+
+/**
+ * Lets a client pick up its subscriptions on a new connection. A session gets a resume token with its first
+ * subscription; when the connection drops, its subscriptions stay registered in backend for a grace period while
+ * events are kept in a bounded buffer (the oldest are dropped first). A new session presenting the token within the
+ * grace period takes the subscriptions over and receives the buffered events, without a new filter expansion or
+ * backend subscribe. When the grace period passes, the subscriptions are released as for a normal close. Only a
+ * principal with exactly the same identity and access restrictions may resume. Events are queued under the session
+ * lock and sent outside of it, one sender at a time, so they keep their order without a slow socket holding the lock.
+ * The queue is bounded: a session that cannot keep up is closed and may resume, learning how many events it missed.
+ * A sender hands the rest of a long queue over to the sender pool after a batch, so one busy session does not hold
+ * up the thread that delivers events of other sessions.
+ */
+@Component
+public class SessionResumer {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionResumer.class);
+
+    private final WebSocketClientHandler clientHandler;
+    private final SubscriptionRegistry subscriptionRegistry;
+    private final UnsubscribeAggregator unsubscribeAggregator;
+    private final RpcMetrics rpcMetrics;
+
+    @Value("${websocket.resume.grace-ms:30000}")
+    private long graceMillis;
+
+    @Value("${websocket.resume.buffer-size:256}")
+    private int bufferSize;
+
+    @Value("${websocket.resume.outgoing-limit:1024}")
+    private int outgoingLimit;
+
+    @Value("${websocket.resume.send-batch:64}")
+    private int sendBatch;
+
+    @Value("${websocket.resume.sender-threads:2}")
+    private int senderThreads;
+
+    private final ConcurrentMap<String, ResumableSession> bySession = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ResumableSession> byToken = new ConcurrentHashMap<>();
+    private final AtomicInteger parked = new AtomicInteger();
+    private final AtomicLong resumed = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong overflowed = new AtomicLong();
+    private ScheduledExecutorService expiry;
+    private ExecutorService senders;
+
+    @Autowired
+    public SessionResumer(WebSocketClientHandler clientHandler,
+                          SubscriptionRegistry subscriptionRegistry,
+                          UnsubscribeAggregator unsubscribeAggregator,
+                          RpcMetrics rpcMetrics) {
+        this.clientHandler = clientHandler;
+        this.subscriptionRegistry = subscriptionRegistry;
+        this.unsubscribeAggregator = unsubscribeAggregator;
+        this.rpcMetrics = rpcMetrics;
+    }
+
+    @PostConstruct
+    public void start() {
+        expiry = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("websocket-resume-expiry")
+                .setDaemon(true)
+                .build());
+        senders = Executors.newFixedThreadPool(senderThreads, new ThreadFactoryBuilder()
+                .setNameFormat("websocket-resume-sender-%d")
+                .setDaemon(true)
+                .build());
+
+        rpcMetrics.registerGauge("websocket.resume.parked", parked::get);
+        rpcMetrics.registerGauge("websocket.resume.resumed", resumed::get);
+        rpcMetrics.registerGauge("websocket.resume.expired", expired::get);
+        rpcMetrics.registerGauge("websocket.resume.overflowed", overflowed::get);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        expiry.shutdownNow();
+        senders.shutdownNow();
+    }
+
+    /**
+     * @return resume token of the session, issued on the first call, or null if the session is closed already
+     */
+    public String register(WebSocketSession session, HivePrincipal principal) {
+        if (!session.isOpen()) {
+            // its close cleanup may have run already, and nothing else would ever release the entry
+            return null;
+        }
+        return bySession.computeIfAbsent(session.getId(), id -> {
+            ResumableSession resumable = new ResumableSession(UUID.randomUUID().toString(), principal, session);
+            byToken.put(resumable.token, resumable);
+            return resumable;
+        }).token;
+    }
+
+    /**
+     * Sends a subscription event to the session that currently owns the subscriptions of {@code origin}, or buffers it
+     * while that session is parked. When the session has too many events queued already, the event is dropped and the
+     * session is closed, so the client can resume and learn how many events it missed.
+     */
+    public void deliver(WebSocketSession origin, String frame) {
+        ResumableSession resumable = bySession.get(origin.getId());
+        if (resumable == null) {
+            clientHandler.sendEvent(frame, origin);
+            return;
+        }
+        final WebSocketSession overloaded;
+        synchronized (resumable) {
+            if (resumable.session == null) {
+                buffer(resumable, frame);
+                return;
+            }
+            if (resumable.outgoing.size() < outgoingLimit) {
+                resumable.outgoing.addLast(frame);
+                overloaded = null;
+            } else {
+                resumable.dropped++;
+                overloaded = resumable.closing ? null : resumable.session;
+                resumable.closing = true;
+            }
+        }
+        if (overloaded != null) {
+            overflowed.incrementAndGet();
+            close(overloaded);
+            return;
+        }
+        send(resumable);
+    }
+
+    private void close(WebSocketSession session) {
+        logger.warn("Session {} does not keep up with its events, closing it", session.getId());
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException e) {
+            logger.warn("Unable to close session {}", session.getId(), e);
+        }
+    }
+
+    /**
+     * Sends queued events of the session. Only one thread sends at a time, others just leave their events in the
+     * queue.
+     */
+    private void send(ResumableSession resumable) {
+        synchronized (resumable) {
+            if (resumable.sending) {
+                return;
+            }
+            resumable.sending = true;
+        }
+        drain(resumable);
+    }
+
+    /**
+     * Sends at most one batch of queued events, until the queue is empty or the session is parked, and hands the
+     * rest over to the sender pool. Called by the thread that holds the sending flag.
+     */
+    private void drain(ResumableSession resumable) {
+        for (int sent = 0; ; sent++) {
+            String frame;
+            WebSocketSession target;
+            synchronized (resumable) {
+                target = resumable.session;
+                if (target == null || resumable.outgoing.isEmpty()) {
+                    resumable.sending = false;
+                    return;
+                }
+                if (sent >= sendBatch) {
+                    break;
+                }
+                frame = resumable.outgoing.pollFirst();
+            }
+            clientHandler.sendEvent(frame, target);
+        }
+        try {
+            senders.execute(() -> drain(resumable));
+        } catch (RejectedExecutionException e) {
+            synchronized (resumable) {
+                resumable.sending = false;
+            }
+        }
+    }
+
+    private void buffer(ResumableSession resumable, String frame) {
+        if (resumable.missed.size() >= bufferSize) {
+            resumable.missed.pollFirst();
+            resumable.dropped++;
+        }
+        resumable.missed.addLast(frame);
+    }
+
+    /**
+     * Keeps the subscriptions of a closed session for the grace period.
+     *
+     * @return false if the session is not resumable and its subscriptions have to be released right away
+     */
+    public boolean park(WebSocketSession session) {
+        ResumableSession resumable = bySession.get(session.getId());
+        if (resumable == null) {
+            return false;
+        }
+        synchronized (resumable) {
+            if (resumable.session == null || !session.getId().equals(resumable.ownerSessionId)) {
+                // already parked, or the subscriptions have been taken over by a newer session
+                return true;
+            }
+            if (graceMillis <= 0 || subscriptionRegistry.list(session.getId(), null).isEmpty()) {
+                discard(resumable);
+                return false;
+            }
+            resumable.session = null;
+            resumable.closing = false;
+            // events not sent yet wait for the resume like the ones that arrive from now on
+            resumable.outgoing.forEach(frame -> buffer(resumable, frame));
+            resumable.outgoing.clear();
+            resumable.expiry = expiry.schedule(() -> expire(resumable), graceMillis, TimeUnit.MILLISECONDS);
+        }
+        parked.incrementAndGet();
+        logger.debug("Session {} parked for {} ms", session.getId(), graceMillis);
+        return true;
+    }
+
+    /**
+     * Attaches the subscriptions of a parked session to {@code session} and replays the events buffered meanwhile.
+     * Subscriptions the session already has are kept; its own resume token is replaced by the resumed one.
+     *
+     * @return number of replayed events and number of events dropped because the buffer was full
+     */
+    public Pair<Integer, Integer> resume(String token, WebSocketSession session, HivePrincipal principal) {
+        ResumableSession resumable = token != null ? byToken.get(token) : null;
+        if (resumable == null) {
+            throw new HiveException(Messages.RESUME_TOKEN_NOT_FOUND, SC_NOT_FOUND);
+        }
+        final int replayed;
+        final int dropped;
+        synchronized (resumable) {
+            if (resumable.session != null) {
+                throw new HiveException(Messages.RESUME_TOKEN_NOT_FOUND, SC_NOT_FOUND);
+            }
+            if (!isSameOwner(resumable.principal, principal)) {
+                throw new HiveException(Messages.ACCESS_DENIED, SC_FORBIDDEN);
+            }
+            if (!resumable.expiry.cancel(false)) {
+                throw new HiveException(Messages.RESUME_TOKEN_NOT_FOUND, SC_NOT_FOUND);
+            }
+            ResumableSession current = bySession.put(session.getId(), resumable);
+            if (current != null && current != resumable) {
+                byToken.remove(current.token, current);
+            }
+            subscriptionRegistry.moveSession(resumable.ownerSessionId, session.getId());
+            resumable.ownerSessionId = session.getId();
+            resumable.sessionIds.add(session.getId());
+            resumable.session = session;
+            parked.decrementAndGet();
+            resumed.incrementAndGet();
+
+            replayed = resumable.missed.size();
+            dropped = resumable.dropped;
+            // replayed events go out ahead of anything delivered from now on
+            resumable.outgoing.addAll(resumable.missed);
+            resumable.missed.clear();
+            resumable.dropped = 0;
+        }
+        send(resumable);
+        logger.debug("Session {} resumed, {} events replayed, {} dropped", session.getId(), replayed, dropped);
+        return Pair.of(replayed, dropped);
+    }
+
+    private void expire(ResumableSession resumable) {
+        synchronized (resumable) {
+            if (resumable.session != null) {
+                return;
+            }
+            resumable.missed.clear();
+            resumable.outgoing.clear();
+        }
+        discard(resumable);
+        parked.decrementAndGet();
+        expired.incrementAndGet();
+        Collection<SubscriptionInfo> subscriptions = subscriptionRegistry.removeSession(resumable.ownerSessionId);
+        unsubscribeAggregator.add(subscriptions);
+        logger.debug("Resume grace period of session {} expired, {} subscriptions released",
+                resumable.ownerSessionId, subscriptions.size());
+    }
+
+    private void discard(ResumableSession resumable) {
+        byToken.remove(resumable.token, resumable);
+        resumable.sessionIds.forEach(sessionId -> bySession.remove(sessionId, resumable));
+    }
+
+    /**
+     * A token restricted to some networks, device types or actions must not resume subscriptions made with a wider
+     * one of the same user or plugin, so the whole access scope has to match, not only the identity.
+     */
+    private static boolean isSameOwner(HivePrincipal owner, HivePrincipal principal) {
+        if (owner == null || principal == null) {
+            return false;
+        }
+        return Objects.equals(owner.getUser() != null ? owner.getUser().getId() : null,
+                        principal.getUser() != null ? principal.getUser().getId() : null)
+                && Objects.equals(owner.getPlugin() != null ? owner.getPlugin().getId() : null,
+                        principal.getPlugin() != null ? principal.getPlugin().getId() : null)
+                && Objects.equals(owner.getActions(), principal.getActions())
+                && Objects.equals(owner.getNetworkIds(), principal.getNetworkIds())
+                && Objects.equals(owner.getDeviceTypeIds(), principal.getDeviceTypeIds())
+                && Objects.equals(owner.areAllNetworksAvailable(), principal.areAllNetworksAvailable())
+                && Objects.equals(owner.areAllDeviceTypesAvailable(), principal.areAllDeviceTypesAvailable());
+    }
+
+    private static class ResumableSession {
+        private final String token;
+        private final HivePrincipal principal;
+        private final Set<String> sessionIds = ConcurrentHashMap.newKeySet();
+        private final Deque<String> missed = new ArrayDeque<>();
+        private final Deque<String> outgoing = new ArrayDeque<>();
+        private boolean sending;
+        private boolean closing;
+        private String ownerSessionId;
+        private WebSocketSession session;
+        private ScheduledFuture<?> expiry;
+        private int dropped;
+
+        private ResumableSession(String token, HivePrincipal principal, WebSocketSession session) {
+            this.token = token;
+            this.principal = principal;
+            this.session = session;
+            this.ownerSessionId = session.getId();
+            this.sessionIds.add(session.getId());
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.devicehive.websockets.util;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RpcMetrics;
+import com.devicehive.model.SubscriptionInfo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.devicehive.configuration.Constants.COMMAND;
+import static com.devicehive.configuration.Constants.NOTIFICATION;
+
+/**
+ * Frontend-wide registry of WebSocket subscriptions, indexed by session and by subscription id. All operations on a
+ * single subscription are constant time; closing a session removes all its subscriptions at once.
+ */
+@Component
+public class SubscriptionRegistry {
+
+    private final ConcurrentMap<Long, Registration> bySubscriptionId = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Map<Long, SubscriptionInfo>> bySession = new ConcurrentHashMap<>();
+    private final AtomicInteger commandCount = new AtomicInteger();
+    private final AtomicInteger notificationCount = new AtomicInteger();
+
+    @Autowired
+    public SubscriptionRegistry(RpcMetrics rpcMetrics) {
+        rpcMetrics.registerGauge("websocket.subscriptions.command", commandCount::get);
+        rpcMetrics.registerGauge("websocket.subscriptions.notification", notificationCount::get);
+    }
+
+    public void add(String sessionId, SubscriptionInfo subscription) {
+        // fails on an unknown type before anything is registered
+        AtomicInteger counter = counterOf(subscription.getType());
+        bySubscriptionId.put(subscription.getSubscriptionId(), new Registration(sessionId, subscription));
+        bySession.compute(sessionId, (id, subscriptions) -> {
+            Map<Long, SubscriptionInfo> result = subscriptions != null ? subscriptions : new ConcurrentHashMap<>();
+            result.put(subscription.getSubscriptionId(), subscription);
+            return result;
+        });
+        counter.incrementAndGet();
+    }
+
+    /**
+     * Removes a subscription of the given type if it belongs to the session.
+     *
+     * @return true if the subscription was found and removed
+     */
+    public boolean remove(String sessionId, String type, Long subscriptionId) {
+        Registration registration = bySubscriptionId.get(subscriptionId);
+        if (registration == null || !registration.sessionId.equals(sessionId)
+                || !Objects.equals(type, registration.subscription.getType())) {
+            return false;
+        }
+        return unregister(subscriptionId) != null;
+    }
+
+    /**
+     * Removes all subscriptions of the given type of the session.
+     *
+     * @return ids of removed subscriptions
+     */
+    public Set<Long> removeAll(String sessionId, String type) {
+        Set<Long> removed = new HashSet<>();
+        list(sessionId, type).forEach(subscription -> {
+            if (unregister(subscription.getSubscriptionId()) != null) {
+                removed.add(subscription.getSubscriptionId());
+            }
+        });
+        return removed;
+    }
+
+    /**
+     * Removes all subscriptions of a closed session.
+     *
+     * @return removed subscriptions
+     */
+    public Collection<SubscriptionInfo> removeSession(String sessionId) {
+        Map<Long, SubscriptionInfo> subscriptions = bySession.remove(sessionId);
+        if (subscriptions == null) {
+            return Collections.emptyList();
+        }
+        List<SubscriptionInfo> removed = new ArrayList<>(subscriptions.size());
+        subscriptions.keySet().forEach(subscriptionId -> {
+            SubscriptionInfo subscription = unregister(subscriptionId);
+            if (subscription != null) {
+                removed.add(subscription);
+            }
+        });
+        return removed;
+    }
+
+    /**
+     * Hands all subscriptions of a session over to another session, e.g. when a client resumes on a new connection.
+     */
+    public void moveSession(String fromSessionId, String toSessionId) {
+        Map<Long, SubscriptionInfo> subscriptions = bySession.remove(fromSessionId);
+        if (subscriptions == null) {
+            return;
+        }
+        subscriptions.forEach((subscriptionId, subscription) -> bySubscriptionId.computeIfPresent(subscriptionId,
+                (id, registration) -> new Registration(toSessionId, subscription)));
+        bySession.merge(toSessionId, subscriptions, (current, moved) -> {
+            current.putAll(moved);
+            return current;
+        });
+    }
+
+    /**
+     * @param type subscription type, or null for subscriptions of any type
+     */
+    public List<SubscriptionInfo> list(String sessionId, String type) {
+        Map<Long, SubscriptionInfo> subscriptions = bySession.get(sessionId);
+        if (subscriptions == null) {
+            return Collections.emptyList();
+        }
+        List<SubscriptionInfo> result = new ArrayList<>(subscriptions.size());
+        subscriptions.values().forEach(subscription -> {
+            if (type == null || type.equals(subscription.getType())) {
+                result.add(subscription);
+            }
+        });
+        return result;
+    }
+
+    private SubscriptionInfo unregister(Long subscriptionId) {
+        Registration registration = bySubscriptionId.remove(subscriptionId);
+        if (registration == null) {
+            return null;
+        }
+        SubscriptionInfo subscription = registration.subscription;
+        bySession.computeIfPresent(registration.sessionId, (id, subscriptions) -> {
+            subscriptions.remove(subscriptionId);
+            return subscriptions.isEmpty() ? null : subscriptions;
+        });
+        counterOf(subscription.getType()).decrementAndGet();
+        return subscription;
+    }
+
+    private AtomicInteger counterOf(String type) {
+        if (COMMAND.equals(type)) {
+            return commandCount;
+        } else if (NOTIFICATION.equals(type)) {
+            return notificationCount;
+        }
+        throw new IllegalArgumentException("Unknown subscription type " + type);
+    }
+
+    private static class Registration {
+        private final String sessionId;
+        private final SubscriptionInfo subscription;
+
+        private Registration(String sessionId, SubscriptionInfo subscription) {
+            this.sessionId = sessionId;
+            this.subscription = subscription;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.devicehive.websockets.util;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RpcMetrics;
+import com.devicehive.model.SubscriptionInfo;
+import com.devicehive.service.DeviceCommandService;
+import com.devicehive.service.DeviceNotificationService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.devicehive.configuration.Constants.COMMAND;
+import static com.devicehive.configuration.Constants.NOTIFICATION;
+
+/**
+ * Collects subscription ids of closed WebSocket sessions and releases them in bulk. Instead of two unsubscribe
+ * requests per session, every flush window sends at most one command and one notification unsubscribe request, so a
+ * mass disconnect turns into a handful of backend requests rather than tens of thousands.
+ */
+@Component
+public class UnsubscribeAggregator {
+
+    private static final Logger logger = LoggerFactory.getLogger(UnsubscribeAggregator.class);
+
+    private final DeviceCommandService commandService;
+    private final DeviceNotificationService notificationService;
+    private final RpcMetrics rpcMetrics;
+
+    @Value("${websocket.unsubscribe.window-ms:100}")
+    private long windowMillis;
+
+    @Value("${websocket.unsubscribe.max-batch:5000}")
+    private int maxBatch;
+
+    @Value("${websocket.unsubscribe.max-retries:3}")
+    private int maxRetries;
+
+    private final Queue<Long> commandIds = new ConcurrentLinkedQueue<>();
+    private final Queue<Long> notificationIds = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean earlyFlushScheduled = new AtomicBoolean();
+    private final AtomicLong flushedRequests = new AtomicLong();
+    private final Map<Long, Integer> attempts = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flusher;
+
+    @Autowired
+    public UnsubscribeAggregator(DeviceCommandService commandService,
+                                 DeviceNotificationService notificationService,
+                                 RpcMetrics rpcMetrics) {
+        this.commandService = commandService;
+        this.notificationService = notificationService;
+        this.rpcMetrics = rpcMetrics;
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("websocket-unsubscribe-flusher")
+                .setDaemon(true)
+                .build());
+        flusher.scheduleWithFixedDelay(this::flush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+
+        rpcMetrics.registerGauge("websocket.unsubscribe.pending", pending::get);
+        rpcMetrics.registerGauge("websocket.unsubscribe.requests", flushedRequests::get);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        flush();
+    }
+
+    /**
+     * Queues subscriptions of a closed session for release with the next flush.
+     */
+    public void add(Collection<Long> commandSubscriptionIds, Collection<Long> notificationSubscriptionIds) {
+        commandIds.addAll(commandSubscriptionIds);
+        notificationIds.addAll(notificationSubscriptionIds);
+        int size = pending.addAndGet(commandSubscriptionIds.size() + notificationSubscriptionIds.size());
+        if (size >= maxBatch && earlyFlushScheduled.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                earlyFlushScheduled.set(false);
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Queues subscriptions removed from the registry for release with the next flush.
+     */
+    public void add(Collection<SubscriptionInfo> subscriptions) {
+        Map<Boolean, Set<Long>> byType = subscriptions.stream()
+                .collect(Collectors.partitioningBy(subscription -> COMMAND.equals(subscription.getType()),
+                        Collectors.mapping(SubscriptionInfo::getSubscriptionId, Collectors.toSet())));
+        add(byType.get(true), byType.get(false));
+    }
+
+    synchronized void flush() {
+        earlyFlushScheduled.set(false);
+        Set<Long> commands = drain(commandIds);
+        Set<Long> notifications = drain(notificationIds);
+        if (!commands.isEmpty()) {
+            release(commands, commandIds, COMMAND, commandService::sendUnsubscribeRequest);
+        }
+        if (!notifications.isEmpty()) {
+            // detaching is local; only ids that still have to be closed in backend go into the request and are retried
+            notificationService.detach(notifications).thenAccept(upstreamIds -> {
+                if (!upstreamIds.isEmpty()) {
+                    release(upstreamIds, notificationIds, NOTIFICATION, notificationService::sendUnsubscribeRequest);
+                }
+            });
+        }
+    }
+
+    /**
+     * Sends one unsubscribe request. The command and notification requests are released independently, so a failure of
+     * one does not hold back the other; ids of a failed request are queued for the next flush.
+     */
+    private void release(Set<Long> ids, Queue<Long> queue, String type,
+                         Function<Set<Long>, CompletableFuture<Set<Long>>> sender) {
+        final CompletableFuture<Set<Long>> future;
+        try {
+            future = sender.apply(ids);
+            flushedRequests.incrementAndGet();
+        } catch (Exception e) {
+            retry(ids, queue, type, e);
+            return;
+        }
+        future.whenComplete((released, ex) -> {
+            if (ex != null) {
+                retry(ids, queue, type, ex);
+            } else if (!attempts.isEmpty()) {
+                ids.forEach(attempts::remove);
+            }
+        });
+    }
+
+    private void retry(Set<Long> ids, Queue<Long> queue, String type, Throwable cause) {
+        int dropped = 0;
+        for (Long id : ids) {
+            if (attempts.merge(id, 1, Integer::sum) > maxRetries) {
+                attempts.remove(id);
+                dropped++;
+            } else {
+                queue.add(id);
+                pending.incrementAndGet();
+            }
+        }
+        if (dropped > 0) {
+            logger.error("Giving up on {} {} subscriptions of closed sessions after {} retries",
+                    dropped, type, maxRetries, cause);
+        } else {
+            logger.warn("Unable to release {} {} subscriptions of closed sessions, retrying with the next flush",
+                    ids.size(), type, cause);
+        }
+    }
+
+    private Set<Long> drain(Queue<Long> queue) {
+        Set<Long> ids = new HashSet<>();
+        Long id;
+        while ((id = queue.poll()) != null) {
+            pending.decrementAndGet();
+            ids.add(id);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,128 @@
+package com.devicehive.messages.handler;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CoalescingEventBufferTest {
+
+    private final WebSocketSession session = Mockito.mock(WebSocketSession.class);
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final List<Runnable> senderTasks = new ArrayList<>();
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void shouldSendLoneFrameAsIsAfterWindow() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        CoalescingEventBuffer buffer = new CoalescingEventBuffer(session, 10, 1024, scheduler, Runnable::run,
+                (frame, s) -> {
+                    sent.add(frame);
+                    latch.countDown();
+                });
+
+        buffer.add("{\"a\":1}");
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("{\"a\":1}"), sent);
+    }
+
+    @Test
+    public void shouldSendArrayFrameOnceBudgetIsReached() throws Exception {
+        CoalescingEventBuffer buffer = new CoalescingEventBuffer(session, 60000, 6, scheduler, Runnable::run,
+                (frame, s) -> sent.add(frame));
+
+        buffer.add("123");
+        assertTrue(sent.isEmpty());
+        buffer.add("456");
+
+        assertEquals(Collections.singletonList("[123,456]"), sent);
+    }
+
+    @Test
+    public void shouldNotSendOnAddingThread() throws Exception {
+        CoalescingEventBuffer buffer = new CoalescingEventBuffer(session, 60000, 1, scheduler, senderTasks::add,
+                (frame, s) -> sent.add(frame));
+
+        buffer.add("1");
+
+        assertTrue(sent.isEmpty());
+        assertEquals(1, senderTasks.size());
+        senderTasks.remove(0).run();
+        assertEquals(Collections.singletonList("1"), sent);
+    }
+
+    @Test
+    public void shouldKeepWindowFlushAheadOfLaterBudgetFlush() throws Exception {
+        CoalescingEventBuffer buffer = new CoalescingEventBuffer(session, 60000, 6, scheduler, senderTasks::add,
+                (frame, s) -> sent.add(frame));
+
+        buffer.add("1");
+        buffer.flush(); // what the window timer does
+        buffer.add("234");
+        buffer.add("567");
+
+        // both frames wait for the one sender task of the session, in the order they were cut
+        assertEquals(1, senderTasks.size());
+        senderTasks.remove(0).run();
+        assertEquals(Arrays.asList("1", "[234,567]"), sent);
+        assertTrue(senderTasks.isEmpty());
+    }
+
+    @Test
+    public void shouldStartNewSenderTaskForFramesCutAfterDrain() throws Exception {
+        CoalescingEventBuffer buffer = new CoalescingEventBuffer(session, 60000, 1, scheduler, senderTasks::add,
+                (frame, s) -> sent.add(frame));
+
+        buffer.add("1");
+        senderTasks.remove(0).run();
+        buffer.add("2");
+
+        assertEquals(1, senderTasks.size());
+        senderTasks.remove(0).run();
+        assertEquals(Arrays.asList("1", "2"), sent);
+    }
+}
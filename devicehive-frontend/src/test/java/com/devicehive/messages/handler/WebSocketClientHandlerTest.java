@@ -0,0 +1,95 @@
+package com.devicehive.messages.handler;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.exceptions.HiveException;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class WebSocketClientHandlerTest {
+
+    private final WebSocketClientHandler handler = new WebSocketClientHandler();
+    private final WebSocketSession session = Mockito.mock(WebSocketSession.class);
+    private final Map<String, Object> attributes = new HashMap<>();
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(handler, "defaultCoalesceWindowMillis", 10L);
+        ReflectionTestUtils.setField(handler, "maxCoalesceWindowMillis", 1000L);
+        ReflectionTestUtils.setField(handler, "maxCoalesceBytes", 65536);
+        ReflectionTestUtils.setField(handler, "coalesceSenderThreads", 1);
+        handler.start();
+        Mockito.when(session.getAttributes()).thenReturn(attributes);
+        Mockito.when(session.getId()).thenReturn("session");
+    }
+
+    @After
+    public void tearDown() {
+        handler.shutdown();
+    }
+
+    @Test
+    public void shouldCapRequestedWindow() throws Exception {
+        handler.negotiateCoalescing(request("{\"coalesce\": 5000}"), session);
+
+        CoalescingEventBuffer buffer = (CoalescingEventBuffer) attributes.get(CoalescingEventBuffer.class.getName());
+        assertEquals(1000, buffer.getWindowMillis());
+    }
+
+    @Test
+    public void shouldTurnCoalescingOff() throws Exception {
+        handler.negotiateCoalescing(request("{\"coalesce\": true}"), session);
+        handler.negotiateCoalescing(request("{\"coalesce\": false}"), session);
+
+        assertTrue(attributes.isEmpty());
+    }
+
+    @Test
+    public void shouldRejectNonNumericWindow() throws Exception {
+        assertBadRequest("{\"coalesce\": \"soon\"}");
+        assertBadRequest("{\"coalesce\": {\"ms\": 10}}");
+        assertTrue(attributes.isEmpty());
+    }
+
+    private void assertBadRequest(String json) {
+        try {
+            handler.negotiateCoalescing(request(json), session);
+            fail("Expected HiveException for " + json);
+        } catch (HiveException e) {
+            assertEquals(Integer.valueOf(400), e.getCode());
+        }
+    }
+
+    private static JsonObject request(String json) {
+        return new JsonParser().parse(json).getAsJsonObject();
+    }
+}
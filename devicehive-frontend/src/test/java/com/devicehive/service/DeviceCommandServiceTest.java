@@ -0,0 +1,141 @@
+package com.devicehive.service;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RequestResponseMatcher;
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.rpc.CommandInsertBatchRequest;
+import com.devicehive.model.rpc.CommandInsertBatchResponse;
+import com.devicehive.model.rpc.ErrorResponse;
+import com.devicehive.service.exception.BackendException;
+import com.devicehive.service.helpers.LongIdGenerator;
+import com.devicehive.service.time.TimestampService;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.Response;
+import com.devicehive.shim.api.client.RpcClient;
+import com.devicehive.util.HiveValidator;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+public class DeviceCommandServiceTest {
+
+    private final RpcClient rpcClient = Mockito.mock(RpcClient.class);
+    private final List<Request> requests = new ArrayList<>();
+    private final List<Consumer<Response>> callbacks = new ArrayList<>();
+    private DeviceCommandService commandService;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        doAnswer(invocation -> {
+            requests.add((Request) invocation.getArguments()[0]);
+            callbacks.add((Consumer<Response>) invocation.getArguments()[1]);
+            return null;
+        }).when(rpcClient).call(any(Request.class), any(Consumer.class));
+        // devices a and c share a partition
+        when(rpcClient.routeOf(any(Request.class))).thenAnswer(invocation ->
+                "b".equals(((Request) invocation.getArguments()[0]).getPartitionKey()) ? 1 : 0);
+        commandService = new DeviceCommandService(Mockito.mock(TimestampService.class),
+                Mockito.mock(HiveValidator.class), rpcClient, Mockito.mock(LongIdGenerator.class),
+                Mockito.mock(RequestResponseMatcher.class));
+    }
+
+    @Test
+    public void shouldRouteBatchByPartition() throws Exception {
+        List<DeviceCommand> commands = Arrays.asList(command("a", "1"), command("b", "2"), command("c", "3"),
+                command("a", "4"));
+
+        commandService.insertAll(commands);
+
+        assertEquals(2, requests.size());
+        assertEquals("a", requests.get(0).getPartitionKey());
+        assertEquals(Arrays.asList("1", "3", "4"), names(requests.get(0)));
+        assertEquals("b", requests.get(1).getPartitionKey());
+        assertEquals(Collections.singletonList("2"), names(requests.get(1)));
+    }
+
+    @Test
+    public void shouldReturnResultsInBatchOrder() throws Exception {
+        List<DeviceCommand> commands = Arrays.asList(command("a", "1"), command("b", "2"), command("a", "3"));
+
+        List<CompletableFuture<DeviceCommand>> futures = commandService.insertAll(commands);
+        // replies of the per-partition requests arrive in any order
+        reply(1);
+        assertFalse(futures.get(0).isDone());
+        assertEquals("2", futures.get(1).get().getCommand());
+        reply(0);
+
+        assertEquals(Arrays.asList("1", "2", "3"),
+                futures.stream().map(future -> future.join().getCommand()).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void shouldFailOnlyItemsOfFailedPart() throws Exception {
+        List<CompletableFuture<DeviceCommand>> futures = commandService.insertAll(
+                Arrays.asList(command("a", "1"), command("b", "2"), command("c", "3")));
+        reply(0);
+        callbacks.get(1).accept(Response.newBuilder().withBody(new ErrorResponse("no way")).buildFailed(500));
+
+        assertEquals("1", futures.get(0).get().getCommand());
+        assertEquals("3", futures.get(2).get().getCommand());
+        try {
+            futures.get(1).get();
+            fail("Command of the failed part must fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BackendException);
+        }
+    }
+
+    private void reply(int index) {
+        List<DeviceCommand> inserted = requests.get(index).getBody().cast(CommandInsertBatchRequest.class).getDeviceCommands();
+        callbacks.get(index).accept(Response.newBuilder()
+                .withBody(new CommandInsertBatchResponse(inserted))
+                .buildSuccess());
+    }
+
+    private static List<String> names(Request request) {
+        return request.getBody().cast(CommandInsertBatchRequest.class).getDeviceCommands().stream()
+                .map(DeviceCommand::getCommand)
+                .collect(Collectors.toList());
+    }
+
+    private static DeviceCommand command(String deviceId, String name) {
+        DeviceCommand command = new DeviceCommand();
+        command.setDeviceId(deviceId);
+        command.setCommand(name);
+        return command;
+    }
+}
@@ -0,0 +1,99 @@
+package com.devicehive.service;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RequestResponseMatcher;
+import com.devicehive.api.RpcMetrics;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.rpc.NotificationInsertBatchRequest;
+import com.devicehive.model.rpc.NotificationInsertBatchResponse;
+import com.devicehive.service.helpers.LongIdGenerator;
+import com.devicehive.service.time.TimestampService;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.Response;
+import com.devicehive.shim.api.client.RpcClient;
+import com.devicehive.util.HiveValidator;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+public class DeviceNotificationServiceTest {
+
+    private final RpcClient rpcClient = Mockito.mock(RpcClient.class);
+    private final List<Request> requests = new ArrayList<>();
+    private DeviceNotificationService notificationService;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        doAnswer(invocation -> {
+            Request request = (Request) invocation.getArguments()[0];
+            requests.add(request);
+            List<DeviceNotification> inserted = request.getBody().cast(NotificationInsertBatchRequest.class)
+                    .getDeviceNotifications();
+            ((Consumer<Response>) invocation.getArguments()[1]).accept(Response.newBuilder()
+                    .withBody(new NotificationInsertBatchResponse(inserted))
+                    .buildSuccess());
+            return null;
+        }).when(rpcClient).call(any(Request.class), any(Consumer.class));
+        // every device on a partition of its own
+        when(rpcClient.routeOf(any(Request.class))).thenAnswer(invocation ->
+                ((Request) invocation.getArguments()[0]).getPartitionKey());
+        notificationService = new DeviceNotificationService(Mockito.mock(TimestampService.class), rpcClient,
+                Mockito.mock(HiveValidator.class), Mockito.mock(LongIdGenerator.class),
+                Mockito.mock(RequestResponseMatcher.class), new RpcMetrics());
+    }
+
+    @Test
+    public void shouldRouteBatchByDeviceAndKeepOrder() throws Exception {
+        List<DeviceNotification> notifications = Arrays.asList(
+                notification("a", "1"), notification("b", "2"), notification("c", "3"), notification("b", "4"));
+
+        List<CompletableFuture<DeviceNotification>> futures = notificationService.insertAll(notifications);
+
+        assertEquals(Arrays.asList("a", "b", "c"),
+                requests.stream().map(Request::getPartitionKey).collect(Collectors.toList()));
+        requests.forEach(request -> request.getBody().cast(NotificationInsertBatchRequest.class)
+                .getDeviceNotifications()
+                .forEach(n -> assertEquals(request.getPartitionKey(), n.getDeviceId())));
+        assertEquals(Arrays.asList("1", "2", "3", "4"),
+                futures.stream().map(future -> future.join().getNotification()).collect(Collectors.toList()));
+    }
+
+    private static DeviceNotification notification(String deviceId, String name) {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setDeviceId(deviceId);
+        notification.setNotification(name);
+        return notification;
+    }
+}
@@ -0,0 +1,217 @@
+package com.devicehive.service;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RpcMetrics;
+import com.devicehive.auth.HiveAction;
+import com.devicehive.auth.HiveAuthentication;
+import com.devicehive.auth.HivePrincipal;
+import com.devicehive.vo.UserVO;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.core.Response;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class LongPollSubscriptionCacheTest {
+
+    private final CompletableFuture<BiConsumer<Date, Long>> callback = new CompletableFuture<>();
+    private final CompletableFuture<List<Date>> history = new CompletableFuture<>();
+    private final LongPollSubscriptionCache<Date> cache = new LongPollSubscriptionCache<>("test", 60000, 256,
+            Function.identity(), ids -> {}, new RpcMetrics());
+
+    @After
+    public void tearDown() {
+        cache.shutdown();
+    }
+
+    @Test
+    public void shouldAnswerConcurrentPollersWithTheirOwnLimitAndResponse() throws Exception {
+        // both wait while the subscription is still opening, the first one's limit must not apply to the second
+        CompletableFuture<Collection<Date>> limited = poll(new Date(0), 1);
+        CompletableFuture<Collection<Date>> unlimited = poll(new Date(0), null);
+
+        history.complete(events(1, 2, 3));
+
+        assertEquals(events(1), limited.get(5, TimeUnit.SECONDS));
+        assertEquals(events(1, 2, 3), unlimited.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shouldNotConsumeEventsOfOtherPollers() throws Exception {
+        CompletableFuture<Collection<Date>> first = poll(new Date(0), null);
+        history.complete(events(1, 2));
+        assertEquals(events(1, 2), first.get(5, TimeUnit.SECONDS));
+
+        assertEquals(events(1, 2), poll(new Date(0), null).get(5, TimeUnit.SECONDS));
+        assertEquals(events(1), poll(new Date(0), 1).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shouldAnswerEachPollFromItsOwnTimestamp() throws Exception {
+        poll(new Date(0), null);
+        history.complete(events(1, 2, 3));
+
+        assertEquals(events(2, 3), poll(event(1), null).get(5, TimeUnit.SECONDS));
+        assertEquals(events(3), poll(event(2), null).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shouldAnswerPollWithoutTimestampOnlyWithNewEvents() throws Exception {
+        poll(new Date(0), null);
+        history.complete(events(1));
+
+        CompletableFuture<Collection<Date>> fresh = poll(null, null);
+        assertFalse(fresh.isDone());
+        deliver(2);
+        assertEquals(events(2), fresh.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shouldKeepClientsApart() throws Exception {
+        HivePrincipal principal = new HivePrincipal(user(1L), Collections.singleton(HiveAction.GET_DEVICE_NOTIFICATION),
+                Collections.singleton(1L), null, null, false, true);
+
+        assertEquals(LongPollSubscriptionCache.clientKey(authentication(principal, "Bearer a")),
+                LongPollSubscriptionCache.clientKey(authentication(principal, "Bearer a")));
+        assertNotEquals(LongPollSubscriptionCache.clientKey(authentication(principal, "Bearer a")),
+                LongPollSubscriptionCache.clientKey(authentication(principal, "Bearer b")));
+    }
+
+    @Test(timeout = 30000)
+    public void shouldDeliverEveryEventToEveryConcurrentPoller() throws Exception {
+        int pollers = 8;
+        int count = 100;
+        ExecutorService executor = Executors.newFixedThreadPool(pollers + 1);
+        try {
+            List<Future<List<Date>>> seen = new ArrayList<>();
+            for (int i = 0; i < pollers; i++) {
+                seen.add(executor.submit(() -> {
+                    List<Date> received = new ArrayList<>();
+                    Date since = new Date(0);
+                    while (received.size() < count) {
+                        Collection<Date> answer = poll(since, 7).get(10, TimeUnit.SECONDS);
+                        received.addAll(answer);
+                        if (!answer.isEmpty()) {
+                            since = received.get(received.size() - 1);
+                        }
+                    }
+                    return received;
+                }));
+            }
+            history.complete(Collections.emptyList());
+            executor.submit(() -> {
+                for (int i = 1; i <= count; i++) {
+                    deliver(i);
+                }
+                return null;
+            }).get(10, TimeUnit.SECONDS);
+
+            List<Date> expected = new ArrayList<>();
+            for (int i = 1; i <= count; i++) {
+                expected.add(event(i));
+            }
+            for (Future<List<Date>> received : seen) {
+                assertEquals(expected, received.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private CompletableFuture<Collection<Date>> poll(Date since, Integer limit) {
+        CompletableFuture<Collection<Date>> answer = new CompletableFuture<>();
+        cache.poll("key", since, limit, 30, asyncResponse(answer), consumer -> {
+            callback.complete(consumer);
+            return Pair.of(1L, history);
+        }, events -> {
+            answer.complete(new ArrayList<>(events));
+            return null;
+        });
+        return answer;
+    }
+
+    private void deliver(int... timestamps) throws Exception {
+        BiConsumer<Date, Long> consumer = callback.get(5, TimeUnit.SECONDS);
+        for (int timestamp : timestamps) {
+            consumer.accept(event(timestamp), 1L);
+        }
+    }
+
+    private static AsyncResponse asyncResponse(CompletableFuture<?> answer) {
+        AsyncResponse asyncResponse = Mockito.mock(AsyncResponse.class);
+        List<CompletionCallback> callbacks = new ArrayList<>();
+        when(asyncResponse.isDone()).thenAnswer(invocation -> answer.isDone());
+        when(asyncResponse.register(any(CompletionCallback.class))).thenAnswer(invocation -> {
+            callbacks.add((CompletionCallback) invocation.getArguments()[0]);
+            return Collections.emptySet();
+        });
+        when(asyncResponse.resume(any(Object.class))).thenAnswer(invocation -> {
+            callbacks.forEach(callback -> callback.onComplete(null));
+            return true;
+        });
+        return asyncResponse;
+    }
+
+    private static HiveAuthentication authentication(HivePrincipal principal, String authorization) throws Exception {
+        HiveAuthentication authentication = new HiveAuthentication(principal);
+        authentication.setDetails(new HiveAuthentication.HiveAuthDetails(InetAddress.getLoopbackAddress(), null,
+                authorization));
+        return authentication;
+    }
+
+    private static UserVO user(Long id) {
+        UserVO user = new UserVO();
+        user.setId(id);
+        return user;
+    }
+
+    private static Date event(int timestamp) {
+        return new Date(timestamp * 1000L);
+    }
+
+    private static List<Date> events(int... timestamps) {
+        List<Date> events = new ArrayList<>();
+        Arrays.stream(timestamps).forEach(timestamp -> events.add(event(timestamp)));
+        return events;
+    }
+}
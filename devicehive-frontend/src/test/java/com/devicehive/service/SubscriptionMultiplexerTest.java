@@ -0,0 +1,173 @@
+package com.devicehive.service;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import static org.junit.Assert.*;
+
+public class SubscriptionMultiplexerTest {
+
+    private final AtomicLong ids = new AtomicLong();
+    private final SubscriptionMultiplexer<String, String> multiplexer = new SubscriptionMultiplexer<>(ids::incrementAndGet);
+
+    @Test
+    public void shouldNotHoldLockWhileOpening() throws Exception {
+        CountDownLatch opening = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> slow = executor.submit(() -> multiplexer.attach("slow", (event, id) -> {}, (upstreamId, fanOut) -> {
+                opening.countDown();
+                await(release);
+                return CompletableFuture.completedFuture(Collections.emptyList());
+            }));
+            assertTrue(opening.await(5, TimeUnit.SECONDS));
+
+            // another key can be opened and the multiplexer inspected while the slow opener runs
+            Pair<Long, CompletableFuture<List<String>>> fast = multiplexer.attach("fast", (event, id) -> {},
+                    (upstreamId, fanOut) -> CompletableFuture.completedFuture(Collections.singletonList("initial")));
+            assertEquals(Collections.singletonList("initial"), fast.getRight().get(5, TimeUnit.SECONDS));
+            assertEquals(2, multiplexer.getUpstreamCount());
+
+            release.countDown();
+            slow.get(5, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldJoinUpstreamThatIsStillOpening() throws Exception {
+        AtomicInteger opened = new AtomicInteger();
+        CompletableFuture<List<String>> initial = new CompletableFuture<>();
+        List<BiConsumer<String, Long>> fanOuts = new ArrayList<>();
+        List<String> received = new ArrayList<>();
+        Pair<Long, CompletableFuture<List<String>>> first = multiplexer.attach("key",
+                (event, id) -> received.add(id + ":" + event), (upstreamId, fanOut) -> {
+                    opened.incrementAndGet();
+                    fanOuts.add(fanOut);
+                    return initial;
+                });
+        Pair<Long, CompletableFuture<List<String>>> second = multiplexer.attach("key",
+                (event, id) -> received.add(id + ":" + event), (upstreamId, fanOut) -> {
+                    opened.incrementAndGet();
+                    return CompletableFuture.completedFuture(Collections.emptyList());
+                });
+
+        assertEquals(1, opened.get());
+        assertFalse(second.getRight().isDone());
+        initial.complete(Collections.singletonList("history"));
+        assertEquals(Collections.singletonList("history"), first.getRight().get());
+        assertEquals(Collections.emptyList(), second.getRight().get());
+
+        fanOuts.get(0).accept("event", 0L);
+        assertEquals(new HashSet<>(Arrays.asList(first.getLeft() + ":event", second.getLeft() + ":event")),
+                new HashSet<>(received));
+    }
+
+    @Test
+    public void shouldWaitForOpeningBeforeReportingUpstreamToClose() throws Exception {
+        CompletableFuture<List<String>> initial = new CompletableFuture<>();
+        List<Long> upstreamIds = new ArrayList<>();
+        Pair<Long, CompletableFuture<List<String>>> consumer = multiplexer.attach("key", (event, id) -> {},
+                (upstreamId, fanOut) -> {
+                    upstreamIds.add(upstreamId);
+                    return initial;
+                });
+
+        CompletableFuture<Set<Long>> detached = multiplexer.detach(Collections.singleton(consumer.getLeft()));
+
+        assertFalse(detached.isDone());
+        assertEquals(0, multiplexer.getUpstreamCount());
+        initial.complete(Collections.emptyList());
+        assertEquals(new HashSet<>(upstreamIds), detached.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shouldCloseUpstreamOnlyWithLastConsumer() throws Exception {
+        Pair<Long, CompletableFuture<List<String>>> first = multiplexer.attach("key", (event, id) -> {},
+                (upstreamId, fanOut) -> CompletableFuture.completedFuture(Collections.emptyList()));
+        Pair<Long, CompletableFuture<List<String>>> second = multiplexer.attach("key", (event, id) -> {},
+                (upstreamId, fanOut) -> CompletableFuture.completedFuture(Collections.emptyList()));
+
+        assertEquals(Collections.emptySet(), multiplexer.detach(Collections.singleton(first.getLeft())).get());
+        assertEquals(1, multiplexer.detach(Collections.singleton(second.getLeft())).get().size());
+        assertEquals(0, multiplexer.getConsumerCount());
+    }
+
+    @Test
+    public void shouldReturnUnknownIdsUnchanged() throws Exception {
+        assertEquals(Collections.singleton(42L), multiplexer.detach(Collections.singleton(42L)).get());
+    }
+
+    @Test
+    public void shouldFailAllConsumersAndForgetUpstreamWhenOpeningFails() throws Exception {
+        CompletableFuture<List<String>> initial = new CompletableFuture<>();
+        Pair<Long, CompletableFuture<List<String>>> first = multiplexer.attach("key", (event, id) -> {},
+                (upstreamId, fanOut) -> initial);
+        Pair<Long, CompletableFuture<List<String>>> second = multiplexer.attach("key", (event, id) -> {},
+                (upstreamId, fanOut) -> CompletableFuture.completedFuture(Collections.emptyList()));
+
+        initial.completeExceptionally(new IllegalStateException("backend is down"));
+
+        assertFailed(first.getRight());
+        assertFailed(second.getRight());
+        assertEquals(0, multiplexer.getUpstreamCount());
+        assertEquals(0, multiplexer.getConsumerCount());
+    }
+
+    private static void assertFailed(CompletableFuture<?> future) throws InterruptedException {
+        try {
+            future.get();
+            fail("Expected the future to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.devicehive.websockets;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.messages.handler.WebSocketClientHandler;
+import com.devicehive.websockets.util.SessionMonitor;
+import com.devicehive.websockets.util.SessionResumer;
+import com.devicehive.websockets.util.SubscriptionRegistry;
+import com.devicehive.websockets.util.UnsubscribeAggregator;
+import com.google.gson.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class DeviceHiveWebSocketHandlerTest {
+
+    private static final TextMessage REQUEST = new TextMessage("{\"action\":\"server/info\"}");
+
+    private final SessionMonitor sessionMonitor = mock(SessionMonitor.class);
+    private final WebSocketRequestProcessor requestProcessor = mock(WebSocketRequestProcessor.class);
+    private final SessionResumer sessionResumer = mock(SessionResumer.class);
+    private final UnsubscribeAggregator unsubscribeAggregator = mock(UnsubscribeAggregator.class);
+    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> processed = new ConcurrentHashMap<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private DeviceHiveWebSocketHandler handler;
+
+    @Before
+    public void setUp() throws Exception {
+        handler = new DeviceHiveWebSocketHandler();
+        handler.setSessionMonitor(sessionMonitor);
+        handler.setRequestProcessor(requestProcessor);
+        handler.setSessionResumer(sessionResumer);
+        handler.setSubscriptionRegistry(mock(SubscriptionRegistry.class));
+        handler.setUnsubscribeAggregator(unsubscribeAggregator);
+        handler.setWebSocketClientHandler(mock(WebSocketClientHandler.class));
+        ReflectionTestUtils.setField(handler, "requestThreads", 1);
+        ReflectionTestUtils.setField(handler, "sessionInFlightLimit", 2);
+        ReflectionTestUtils.setField(handler, "orderedRequests", true);
+        handler.startRequestExecutor();
+
+        when(sessionMonitor.getSession(anyString())).thenAnswer(invocation -> sessions.get(invocation.getArguments()[0]));
+        doAnswer(invocation -> {
+            WebSocketSession session = (WebSocketSession) invocation.getArguments()[1];
+            processed.computeIfAbsent(session.getId(), id -> new AtomicInteger()).incrementAndGet();
+            if ("busy".equals(session.getId())) {
+                release.await();
+            }
+            return null;
+        }).when(requestProcessor).process(any(JsonObject.class), any(WebSocketSession.class));
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        handler.stopRequestExecutor();
+    }
+
+    @Test(timeout = 10000)
+    public void shouldCloseOnlySessionOverItsOwnBudget() throws Exception {
+        WebSocketSession busy = open("busy");
+        WebSocketSession quiet = open("quiet");
+
+        handler.handleTextMessage(busy, REQUEST);
+        handler.handleTextMessage(busy, REQUEST);
+        verify(busy, never()).close(any(CloseStatus.class));
+        handler.handleTextMessage(busy, REQUEST);
+        verify(busy).close(CloseStatus.SERVICE_OVERLOAD);
+
+        // shares the only lane with the busy session, but is within its own budget
+        handler.handleTextMessage(quiet, REQUEST);
+        handler.handleTextMessage(quiet, REQUEST);
+        verify(quiet, never()).close(any(CloseStatus.class));
+
+        release.countDown();
+        awaitProcessed("quiet", 2);
+        assertEquals(2, processed.get("busy").get());
+    }
+
+    @Test(timeout = 10000)
+    public void shouldAdmitAgainOnceRequestsFinish() throws Exception {
+        WebSocketSession session = open("quiet");
+        for (int i = 0; i < 10; i++) {
+            handler.handleTextMessage(session, REQUEST);
+            awaitProcessed("quiet", i + 1);
+            // the count drops only after the task is done, which is just after the handler returns
+            Thread.sleep(5);
+        }
+        verify(session, never()).close(any(CloseStatus.class));
+    }
+
+    @Test(timeout = 10000)
+    public void shouldCleanUpOnlyAfterQueuedRequestsDrain() throws Exception {
+        WebSocketSession busy = open("busy");
+        CountDownLatch cleanedUp = new CountDownLatch(1);
+        when(sessionResumer.park(busy)).thenAnswer(invocation -> {
+            cleanedUp.countDown();
+            return true;
+        });
+        handler.handleTextMessage(busy, REQUEST);
+        handler.handleTextMessage(busy, REQUEST);
+        // the first request is running, the second one is queued behind it
+        awaitProcessed("busy", 1);
+
+        when(busy.isOpen()).thenReturn(false);
+        handler.afterConnectionClosed(busy, CloseStatus.NORMAL);
+        assertFalse("Requests still in flight", cleanedUp.await(100, TimeUnit.MILLISECONDS));
+        verify(sessionMonitor, never()).removeSession("busy");
+
+        release.countDown();
+        assertTrue(cleanedUp.await(5, TimeUnit.SECONDS));
+        verify(sessionMonitor, timeout(5000)).removeSession("busy");
+        // the queued request of the closed session is skipped
+        assertEquals(1, processed.get("busy").get());
+    }
+
+    private WebSocketSession open(String id) throws Exception {
+        WebSocketSession session = mock(WebSocketSession.class);
+        Map<String, Object> attributes = new HashMap<>();
+        when(session.getId()).thenReturn(id);
+        when(session.isOpen()).thenReturn(true);
+        when(session.getAttributes()).thenReturn(attributes);
+        handler.afterConnectionEstablished(session);
+        sessions.put(id, session);
+        return session;
+    }
+
+    private void awaitProcessed(String sessionId, int count) throws InterruptedException {
+        while (processed.getOrDefault(sessionId, new AtomicInteger()).get() < count) {
+            Thread.sleep(5);
+        }
+    }
+}
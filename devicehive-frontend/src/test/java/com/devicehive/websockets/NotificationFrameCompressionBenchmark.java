@@ -0,0 +1,113 @@
+package com.devicehive.websockets;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.JsonStringWrapper;
+import com.devicehive.websockets.util.EventFrameFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Measures the CPU cost and the bytes saved by permessage-deflate for typical notification/insert frames, for
+ * every compression level, with and without context takeover. Not part of the test suite; run its main method
+ * with the test classpath of this module.
+ */
+public class NotificationFrameCompressionBenchmark {
+
+    private static final int FRAMES = 20_000;
+    private static final int WARMUP_ROUNDS = 3;
+
+    public static void main(String[] args) {
+        List<byte[]> frames = frames();
+        long rawBytes = frames.stream().mapToLong(frame -> frame.length).sum();
+        System.out.printf("%d frames, %.1f bytes per frame on average%n", frames.size(), (double) rawBytes / frames.size());
+        System.out.printf("%-6s %-16s %12s %10s %12s%n", "level", "context", "bytes/frame", "ratio", "ns/frame");
+        for (boolean takeover : new boolean[]{true, false}) {
+            for (int level = 1; level <= 9; level++) {
+                for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                    compress(frames, level, takeover);
+                }
+                long start = System.nanoTime();
+                long compressed = compress(frames, level, takeover);
+                long elapsed = System.nanoTime() - start;
+                System.out.printf("%-6d %-16s %12.1f %10.3f %12d%n", level, takeover ? "takeover" : "no takeover",
+                        (double) compressed / frames.size(), (double) compressed / rawBytes, elapsed / frames.size());
+            }
+        }
+    }
+
+    /**
+     * Compresses frames the way a permessage-deflate sender does: every message ends with a sync flush, whose
+     * trailing 4 bytes are not sent. Without context takeover the deflater is reset before every message.
+     */
+    private static long compress(List<byte[]> frames, int level, boolean takeover) {
+        Deflater deflater = new Deflater(level, true);
+        byte[] out = new byte[64 * 1024];
+        long total = 0;
+        for (byte[] frame : frames) {
+            if (!takeover) {
+                deflater.reset();
+            }
+            deflater.setInput(frame);
+            int length;
+            do {
+                length = deflater.deflate(out, 0, out.length, Deflater.SYNC_FLUSH);
+                total += length;
+            } while (length == out.length);
+            total -= 4;
+        }
+        deflater.end();
+        return total;
+    }
+
+    private static List<byte[]> frames() {
+        Random random = new Random(42);
+        String[] names = {"temperature", "humidity", "battery", "location", "equipment-state"};
+        EventFrameFactory frameFactory = new EventFrameFactory();
+        ReflectionTestUtils.setField(frameFactory, "maxSize", 4096L);
+        ReflectionTestUtils.setField(frameFactory, "expireMillis", 60000L);
+        frameFactory.start();
+        List<byte[]> frames = new ArrayList<>(FRAMES);
+        for (int i = 0; i < FRAMES; i++) {
+            DeviceNotification notification = new DeviceNotification();
+            notification.setId((long) i);
+            notification.setNotification(names[random.nextInt(names.length)]);
+            notification.setDeviceId("e50d6085-2aba-48e9-b1c3-73c673e414be-" + random.nextInt(10));
+            notification.setNetworkId(1L);
+            notification.setDeviceTypeId(1L);
+            notification.setTimestamp(new Date(1500000000000L + i * 1000L));
+            notification.setParameters(new JsonStringWrapper(String.format(
+                    "{\"value\":%.2f,\"unit\":\"C\",\"sensor\":\"sensor-%d\",\"lat\":%.6f,\"lon\":%.6f}",
+                    20 + random.nextDouble() * 10, random.nextInt(4), 50 + random.nextDouble(), 30 + random.nextDouble())));
+            frames.add(frameFactory.createNotificationInsertFrame(notification, 1000L + random.nextInt(5))
+                    .getBytes(UTF_8));
+        }
+        return frames;
+    }
+}
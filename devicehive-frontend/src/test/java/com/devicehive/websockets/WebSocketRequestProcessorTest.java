@@ -0,0 +1,130 @@
+package com.devicehive.websockets;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.exceptions.HiveException;
+import com.devicehive.json.GsonFactory;
+import com.devicehive.websockets.WebSocketRequestProcessor.WebsocketAction;
+import com.devicehive.websockets.handlers.*;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.WebSocketSession;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class WebSocketRequestProcessorTest {
+
+    private final CommonHandlers commonHandlers = mock(CommonHandlers.class);
+    private final ApiInfoHandlers apiInfoHandlers = mock(ApiInfoHandlers.class);
+    private final ConfigurationHandlers configurationHandlers = mock(ConfigurationHandlers.class);
+    private final NotificationHandlers notificationHandlers = mock(NotificationHandlers.class);
+    private final CommandHandlers commandHandlers = mock(CommandHandlers.class);
+    private final SubscriptionHandlers subscriptionHandlers = mock(SubscriptionHandlers.class);
+    private final DeviceHandlers deviceHandlers = mock(DeviceHandlers.class);
+    private final NetworkHandlers networkHandlers = mock(NetworkHandlers.class);
+    private final DeviceTypeHandlers deviceTypeHandlers = mock(DeviceTypeHandlers.class);
+    private final UserHandlers userHandlers = mock(UserHandlers.class);
+    private final WebSocketSession session = mock(WebSocketSession.class);
+
+    private WebSocketRequestProcessor processor;
+
+    @Before
+    public void setUp() {
+        processor = new WebSocketRequestProcessor(commonHandlers, apiInfoHandlers, configurationHandlers,
+                notificationHandlers, commandHandlers, subscriptionHandlers, deviceHandlers, networkHandlers,
+                deviceTypeHandlers, userHandlers, GsonFactory.createGson());
+    }
+
+    @Test
+    public void shouldHaveHandlerForEveryAction() throws Exception {
+        for (WebsocketAction action : WebsocketAction.values()) {
+            if (action == WebsocketAction.EMPTY) {
+                continue;
+            }
+            try {
+                processor.process(request(nameOf(action)), session);
+            } catch (JsonParseException e) {
+                fail("No handler for " + action);
+            }
+        }
+    }
+
+    @Test
+    public void shouldLookUpActionsByName() {
+        for (WebsocketAction action : WebsocketAction.values()) {
+            assertEquals(action, WebsocketAction.forName(nameOf(action)));
+        }
+    }
+
+    @Test
+    public void shouldRejectUnknownAction() throws Exception {
+        try {
+            processor.process(request("notification/teleport"), session);
+            fail("Unknown action must be rejected");
+        } catch (HiveException e) {
+            assertEquals(400, e.getCode().intValue());
+        }
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void shouldRejectRequestWithoutAction() throws Exception {
+        processor.process(new JsonObject(), session);
+    }
+
+    @Test
+    public void shouldDecodeIdsOnlyForActionsThatUseThem() throws Exception {
+        JsonObject insert = request("notification/insert");
+        insert.addProperty("deviceId", "device-1");
+        processor.process(insert, session);
+        verify(notificationHandlers).processNotificationInsert("device-1", insert, session);
+
+        JsonObject network = request("network/get");
+        network.addProperty("networkId", 7L);
+        processor.process(network, session);
+        verify(networkHandlers).processNetworkGet(7L, network, session);
+
+        JsonObject deviceType = request("devicetype/get");
+        deviceType.addProperty("deviceTypeId", 9L);
+        processor.process(deviceType, session);
+        verify(deviceTypeHandlers).processDeviceTypeGet(9L, deviceType, session);
+
+        // a malformed id must not break actions that do not read it
+        JsonObject list = request("network/list");
+        list.addProperty("deviceId", "not-a-number");
+        list.add("networkId", new JsonObject());
+        processor.process(list, session);
+        verify(networkHandlers).processNetworkList(list, session);
+    }
+
+    private static JsonObject request(String action) {
+        JsonObject request = new JsonObject();
+        request.addProperty("action", action);
+        return request;
+    }
+
+    private static String nameOf(WebsocketAction action) {
+        return (String) ReflectionTestUtils.getField(action, "value");
+    }
+}
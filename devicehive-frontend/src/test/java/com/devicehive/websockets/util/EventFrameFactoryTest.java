@@ -0,0 +1,151 @@
+package com.devicehive.websockets.util;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.JsonStringWrapper;
+import com.devicehive.util.ServerResponsesFactory;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+public class EventFrameFactoryTest {
+
+    private EventFrameFactory frameFactory;
+
+    @Before
+    public void setUp() {
+        frameFactory = new EventFrameFactory();
+        ReflectionTestUtils.setField(frameFactory, "maxSize", 16L);
+        ReflectionTestUtils.setField(frameFactory, "expireMillis", 60000L);
+        frameFactory.start();
+    }
+
+    @Test
+    public void shouldBuildSameMessagesAsTree() {
+        DeviceNotification notification = notification(1L);
+        DeviceCommand command = command(2L, "Pending", "{\"progress\":0}");
+
+        for (Long subscriptionId : new Long[]{7L, null}) {
+            assertSameMessage(ServerResponsesFactory.createNotificationInsertMessage(notification, subscriptionId),
+                    frameFactory.createNotificationInsertFrame(notification, subscriptionId));
+            assertSameMessage(ServerResponsesFactory.createCommandMessage(command, subscriptionId, false),
+                    frameFactory.createCommandFrame(command, subscriptionId, false));
+            assertSameMessage(ServerResponsesFactory.createCommandMessage(command, subscriptionId, true),
+                    frameFactory.createCommandFrame(command, subscriptionId, true));
+        }
+    }
+
+    @Test
+    public void shouldOmitNullSubscriptionId() {
+        JsonObject frame = parse(frameFactory.createNotificationInsertFrame(notification(1L), null));
+
+        assertFalse(frame.has("subscriptionId"));
+        assertEquals("notification/insert", frame.get("action").getAsString());
+    }
+
+    @Test
+    public void shouldEncodeEveryUpdateOfCommand() {
+        DeviceCommand command = command(3L, "Done", "{\"progress\":50}");
+        String first = frameFactory.createCommandFrame(command, 1L, true);
+
+        // same status and update time, only the result differs
+        command.setResult(new JsonStringWrapper("{\"progress\":100}"));
+        String second = frameFactory.createCommandFrame(command, 1L, true);
+        command.setLifetime(10);
+        String third = frameFactory.createCommandFrame(command, 1L, true);
+
+        assertEquals("{\"progress\":50}", parse(first).getAsJsonObject("command").get("result").toString());
+        assertEquals("{\"progress\":100}", parse(second).getAsJsonObject("command").get("result").toString());
+        assertEquals(10, parse(third).getAsJsonObject("command").get("lifetime").getAsInt());
+        assertSameMessage(ServerResponsesFactory.createCommandMessage(command, 1L, true), third);
+    }
+
+    @Test
+    public void shouldShareBodyOfSameEvent() {
+        frameFactory.createNotificationInsertFrame(notification(1L), 1L);
+        frameFactory.createNotificationInsertFrame(notification(1L), 2L);
+
+        assertEquals(1, frameFactory.getCachedEvents());
+    }
+
+    @Test
+    public void shouldKeepCacheWithinMaxSize() {
+        ReflectionTestUtils.setField(frameFactory, "maxSize", 2L);
+        frameFactory.start();
+
+        for (long id = 0; id < 10; id++) {
+            frameFactory.createNotificationInsertFrame(notification(id), 1L);
+        }
+
+        assertTrue(frameFactory.getCachedEvents() <= 2);
+    }
+
+    private static void assertSameMessage(JsonObject expected, String frame) {
+        JsonObject message = parse(expected.toString());
+        if (message.get("subscriptionId").isJsonNull()) {
+            // frames leave a missing subscription id out rather than sending null
+            message.remove("subscriptionId");
+        }
+        assertEquals(message, parse(frame));
+    }
+
+    private static JsonObject parse(String frame) {
+        JsonElement element = new JsonParser().parse(frame);
+        return element.getAsJsonObject();
+    }
+
+    private static DeviceNotification notification(long id) {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(id);
+        notification.setNotification("temperature");
+        notification.setDeviceId("device");
+        notification.setNetworkId(1L);
+        notification.setDeviceTypeId(1L);
+        notification.setTimestamp(new Date(1500000000000L));
+        notification.setParameters(new JsonStringWrapper("{\"value\":20}"));
+        return notification;
+    }
+
+    private static DeviceCommand command(long id, String status, String result) {
+        DeviceCommand command = new DeviceCommand();
+        command.setId(id);
+        command.setCommand("switch");
+        command.setDeviceId("device");
+        command.setNetworkId(1L);
+        command.setDeviceTypeId(1L);
+        command.setUserId(1L);
+        command.setTimestamp(new Date(1500000000000L));
+        command.setLastUpdated(new Date(1500000001000L));
+        command.setParameters(new JsonStringWrapper("{\"on\":true}"));
+        command.setStatus(status);
+        command.setResult(new JsonStringWrapper(result));
+        return command;
+    }
+}
@@ -0,0 +1,131 @@
+package com.devicehive.websockets.util;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RpcMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class SessionMonitorTest {
+
+    private SessionMonitor monitor;
+
+    @Before
+    public void setUp() {
+        monitor = new SessionMonitor(new RpcMetrics());
+        ReflectionTestUtils.setField(monitor, "pingIntervalMillis", 50L);
+        ReflectionTestUtils.setField(monitor, "idleTimeoutMillis", 60000L);
+        ReflectionTestUtils.setField(monitor, "shardCount", 1);
+        ReflectionTestUtils.setField(monitor, "threads", 2);
+    }
+
+    @After
+    public void tearDown() {
+        monitor.closeAllSessions();
+    }
+
+    @Test
+    public void shouldPingOtherSessionsWhileOnePingIsStuck() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger stuckPings = new AtomicInteger();
+        WebSocketSession stuck = session("stuck");
+        doAnswer(invocation -> {
+            stuckPings.incrementAndGet();
+            release.await();
+            return null;
+        }).when(stuck).sendMessage(any(PingMessage.class));
+        CountDownLatch pinged = new CountDownLatch(3);
+        WebSocketSession healthy = session("healthy");
+        doAnswer(invocation -> {
+            pinged.countDown();
+            return null;
+        }).when(healthy).sendMessage(any(PingMessage.class));
+
+        monitor.start();
+        monitor.registerSession(stuck);
+        monitor.registerSession(healthy);
+
+        try {
+            assertTrue(pinged.await(5, TimeUnit.SECONDS));
+            // later sweeps skip the session whose ping has not been written yet
+            assertEquals(1, stuckPings.get());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void shouldCloseIdleSession() throws Exception {
+        ReflectionTestUtils.setField(monitor, "idleTimeoutMillis", 20L);
+        WebSocketSession idle = session("idle");
+        CountDownLatch closed = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            closed.countDown();
+            return null;
+        }).when(idle).close(CloseStatus.SESSION_NOT_RELIABLE);
+
+        monitor.start();
+        monitor.registerSession(idle);
+
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertEquals(0, monitor.getSessionCount());
+    }
+
+    @Test
+    public void shouldKeepSessionThatAnswersPings() throws Exception {
+        ReflectionTestUtils.setField(monitor, "idleTimeoutMillis", 200L);
+        WebSocketSession session = session("active");
+        CountDownLatch pinged = new CountDownLatch(10);
+        doAnswer(invocation -> {
+            monitor.onPong("active");
+            pinged.countDown();
+            return null;
+        }).when(session).sendMessage(any(PingMessage.class));
+
+        monitor.start();
+        monitor.registerSession(session);
+
+        assertTrue(pinged.await(5, TimeUnit.SECONDS));
+        verify(session, never()).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertSame(session, monitor.getSession("active"));
+    }
+
+    private static WebSocketSession session(String id) {
+        WebSocketSession session = Mockito.mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.isOpen()).thenReturn(true);
+        return session;
+    }
+}
@@ -0,0 +1,253 @@
+package com.devicehive.websockets.util;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RpcMetrics;
+import com.devicehive.auth.HiveAction;
+import com.devicehive.auth.HivePrincipal;
+import com.devicehive.exceptions.HiveException;
+import com.devicehive.messages.handler.WebSocketClientHandler;
+import com.devicehive.model.SubscriptionInfo;
+import com.devicehive.vo.UserVO;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static com.devicehive.configuration.Constants.NOTIFICATION;
+import static javax.servlet.http.HttpServletResponse.SC_FORBIDDEN;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class SessionResumerTest {
+
+    private WebSocketClientHandler clientHandler;
+    private SubscriptionRegistry subscriptionRegistry;
+    private SessionResumer resumer;
+
+    @Before
+    public void setUp() {
+        clientHandler = Mockito.mock(WebSocketClientHandler.class);
+        subscriptionRegistry = new SubscriptionRegistry(new RpcMetrics());
+        resumer = new SessionResumer(clientHandler, subscriptionRegistry, Mockito.mock(UnsubscribeAggregator.class),
+                new RpcMetrics());
+        ReflectionTestUtils.setField(resumer, "graceMillis", 60000L);
+        ReflectionTestUtils.setField(resumer, "bufferSize", 16);
+        ReflectionTestUtils.setField(resumer, "outgoingLimit", 2);
+        ReflectionTestUtils.setField(resumer, "sendBatch", 2);
+        ReflectionTestUtils.setField(resumer, "senderThreads", 1);
+        resumer.start();
+    }
+
+    @After
+    public void tearDown() {
+        resumer.shutdown();
+    }
+
+    @Test
+    public void shouldRefuseResumeWithNarrowerRestrictionsOfSameUser() {
+        WebSocketSession first = session("first");
+        String token = subscribe(first, principal(1L, new HashSet<>(Arrays.asList(1L, 2L)), false));
+        assertTrue(resumer.park(first));
+        when(first.isOpen()).thenReturn(false);
+
+        WebSocketSession second = session("second");
+        try {
+            resumer.resume(token, second, principal(1L, Collections.singleton(1L), false));
+            fail("Resume with other networks must be refused");
+        } catch (HiveException e) {
+            assertEquals(SC_FORBIDDEN, e.getCode().intValue());
+        }
+        try {
+            resumer.resume(token, second, principal(1L, new HashSet<>(Arrays.asList(1L, 2L)), true));
+            fail("Resume with other device type access must be refused");
+        } catch (HiveException e) {
+            assertEquals(SC_FORBIDDEN, e.getCode().intValue());
+        }
+    }
+
+    @Test
+    public void shouldReplayMissedEventsAheadOfNewOnes() {
+        WebSocketSession first = session("first");
+        String token = subscribe(first, principal(1L, Collections.singleton(1L), false));
+        assertTrue(resumer.park(first));
+        resumer.deliver(first, "a");
+        resumer.deliver(first, "b");
+
+        WebSocketSession second = session("second");
+        Pair<Integer, Integer> result = resumer.resume(token, second, principal(1L, Collections.singleton(1L), false));
+        resumer.deliver(first, "c");
+
+        assertEquals(Pair.of(2, 0), result);
+        verify(clientHandler, never()).sendEvent(anyString(), eq(first));
+        InOrder inOrder = inOrder(clientHandler);
+        inOrder.verify(clientHandler).sendEvent("a", second);
+        inOrder.verify(clientHandler).sendEvent("b", second);
+        inOrder.verify(clientHandler).sendEvent("c", second);
+    }
+
+    @Test(timeout = 10000)
+    public void shouldParkWhileSendIsStuck() throws Exception {
+        WebSocketSession first = session("first");
+        String token = subscribe(first, principal(1L, Collections.singleton(1L), false));
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            sending.countDown();
+            release.await();
+            return null;
+        }).when(clientHandler).sendEvent("stuck", first);
+
+        WebSocketSession second = session("second");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> resumer.deliver(first, "stuck"));
+            assertTrue(sending.await(5, TimeUnit.SECONDS));
+            // queued behind the stuck send, must wait for the resume instead of going to the closed session
+            resumer.deliver(first, "queued");
+            assertTrue(resumer.park(first));
+            release.countDown();
+
+            Pair<Integer, Integer> result = resumer.resume(token, second, principal(1L, Collections.singleton(1L), false));
+            assertEquals(Pair.of(1, 0), result);
+            verify(clientHandler, never()).sendEvent("queued", first);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+        verify(clientHandler).sendEvent("queued", second);
+    }
+
+    @Test(timeout = 10000)
+    public void shouldCloseSessionWhoseQueueOverflows() throws Exception {
+        WebSocketSession first = session("first");
+        String token = subscribe(first, principal(1L, Collections.singleton(1L), false));
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            sending.countDown();
+            release.await();
+            return null;
+        }).when(clientHandler).sendEvent("stuck", first);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> resumer.deliver(first, "stuck"));
+            assertTrue(sending.await(5, TimeUnit.SECONDS));
+            resumer.deliver(first, "a");
+            resumer.deliver(first, "b");
+            resumer.deliver(first, "c");
+            resumer.deliver(first, "d");
+            verify(first, times(1)).close(CloseStatus.SESSION_NOT_RELIABLE);
+
+            assertTrue(resumer.park(first));
+            release.countDown();
+            WebSocketSession second = session("second");
+            Pair<Integer, Integer> result = resumer.resume(token, second, principal(1L, Collections.singleton(1L), false));
+
+            assertEquals("a and b are replayed, c and d did not fit", Pair.of(2, 2), result);
+            InOrder inOrder = inOrder(clientHandler);
+            inOrder.verify(clientHandler).sendEvent("a", second);
+            inOrder.verify(clientHandler).sendEvent("b", second);
+            verify(clientHandler, never()).sendEvent(eq("c"), any(WebSocketSession.class));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void shouldHandRestOfQueueToSenderPoolAfterBatch() throws Exception {
+        ReflectionTestUtils.setField(resumer, "outgoingLimit", 16);
+        WebSocketSession first = session("first");
+        String token = subscribe(first, principal(1L, Collections.singleton(1L), false));
+        assertTrue(resumer.park(first));
+        for (String frame : Arrays.asList("a", "b", "c", "d", "e")) {
+            resumer.deliver(first, frame);
+        }
+        List<String> senders = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch sent = new CountDownLatch(5);
+        WebSocketSession second = session("second");
+        doAnswer(invocation -> {
+            senders.add(Thread.currentThread().getName());
+            sent.countDown();
+            return null;
+        }).when(clientHandler).sendEvent(anyString(), eq(second));
+
+        resumer.resume(token, second, principal(1L, Collections.singleton(1L), false));
+
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        InOrder inOrder = inOrder(clientHandler);
+        for (String frame : Arrays.asList("a", "b", "c", "d", "e")) {
+            inOrder.verify(clientHandler).sendEvent(frame, second);
+        }
+        String caller = Thread.currentThread().getName();
+        assertEquals(Arrays.asList(caller, caller), senders.subList(0, 2));
+        assertTrue(senders.subList(2, 5).stream().allMatch(name -> name.startsWith("websocket-resume-sender")));
+    }
+
+    @Test
+    public void shouldNotRegisterClosedSession() {
+        WebSocketSession closed = session("closed");
+        when(closed.isOpen()).thenReturn(false);
+        subscriptionRegistry.add(closed.getId(), subscription());
+
+        assertNull(resumer.register(closed, principal(1L, Collections.singleton(1L), false)));
+        assertFalse(resumer.park(closed));
+    }
+
+    private String subscribe(WebSocketSession session, HivePrincipal principal) {
+        String token = resumer.register(session, principal);
+        assertNotNull(token);
+        subscriptionRegistry.add(session.getId(), subscription());
+        return token;
+    }
+
+    private static SubscriptionInfo subscription() {
+        return new SubscriptionInfo(1L, NOTIFICATION, "device", null, null, null, null);
+    }
+
+    private static HivePrincipal principal(Long userId, Set<Long> networkIds, boolean allDeviceTypes) {
+        UserVO user = new UserVO();
+        user.setId(userId);
+        return new HivePrincipal(user, Collections.singleton(HiveAction.GET_DEVICE_NOTIFICATION), networkIds,
+                null, null, false, allDeviceTypes);
+    }
+
+    private static WebSocketSession session(String id) {
+        WebSocketSession session = Mockito.mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.isOpen()).thenReturn(true);
+        return session;
+    }
+}
@@ -0,0 +1,168 @@
+package com.devicehive.websockets.util;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RpcMetrics;
+import com.devicehive.model.SubscriptionInfo;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.devicehive.configuration.Constants.COMMAND;
+import static com.devicehive.configuration.Constants.NOTIFICATION;
+import static org.junit.Assert.*;
+
+public class SubscriptionRegistryTest {
+
+    private RpcMetrics rpcMetrics;
+    private SubscriptionRegistry registry;
+
+    @Before
+    public void setUp() {
+        rpcMetrics = new RpcMetrics();
+        registry = new SubscriptionRegistry(rpcMetrics);
+    }
+
+    @Test
+    public void shouldRemoveOnlyOwnSubscriptionOfRequestedType() {
+        registry.add("a", subscription(1L, COMMAND));
+        registry.add("b", subscription(2L, NOTIFICATION));
+
+        assertFalse("Subscription of another session", registry.remove("b", COMMAND, 1L));
+        assertFalse("Subscription of another type", registry.remove("a", NOTIFICATION, 1L));
+        assertFalse("Unknown subscription", registry.remove("a", COMMAND, 3L));
+        assertEquals(1, registry.list("a", null).size());
+        assertCounts(1, 1);
+
+        assertTrue(registry.remove("a", COMMAND, 1L));
+        assertFalse("Removed already", registry.remove("a", COMMAND, 1L));
+        assertTrue(registry.list("a", null).isEmpty());
+        assertCounts(0, 1);
+    }
+
+    @Test
+    public void shouldRemoveAllSubscriptionsOfType() {
+        registry.add("a", subscription(1L, COMMAND));
+        registry.add("a", subscription(2L, COMMAND));
+        registry.add("a", subscription(3L, NOTIFICATION));
+        registry.add("b", subscription(4L, COMMAND));
+
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L)), registry.removeAll("a", COMMAND));
+
+        assertEquals(Collections.singletonList(3L), ids(registry.list("a", null)));
+        assertEquals(Collections.singletonList(4L), ids(registry.list("b", COMMAND)));
+        assertCounts(1, 1);
+    }
+
+    @Test
+    public void shouldRemoveSession() {
+        registry.add("a", subscription(1L, COMMAND));
+        registry.add("a", subscription(2L, NOTIFICATION));
+        registry.add("b", subscription(3L, NOTIFICATION));
+
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L)), new HashSet<>(ids(registry.removeSession("a"))));
+
+        assertTrue(registry.list("a", null).isEmpty());
+        assertTrue(registry.removeSession("a").isEmpty());
+        assertFalse("Subscription of a closed session", registry.remove("a", COMMAND, 1L));
+        assertEquals(Collections.singletonList(3L), ids(registry.list("b", null)));
+        assertCounts(0, 1);
+    }
+
+    @Test
+    public void shouldMoveSession() {
+        registry.add("old", subscription(1L, COMMAND));
+        registry.add("old", subscription(2L, NOTIFICATION));
+        registry.add("new", subscription(3L, NOTIFICATION));
+
+        registry.moveSession("old", "new");
+
+        assertTrue(registry.list("old", null).isEmpty());
+        assertEquals(Arrays.asList(1L, 2L, 3L), sorted(ids(registry.list("new", null))));
+        assertEquals(Arrays.asList(2L, 3L), sorted(ids(registry.list("new", NOTIFICATION))));
+        assertFalse("Subscription moved away", registry.remove("old", COMMAND, 1L));
+        assertTrue(registry.remove("new", COMMAND, 1L));
+        assertEquals(new HashSet<>(Arrays.asList(2L, 3L)), new HashSet<>(ids(registry.removeSession("new"))));
+        assertCounts(0, 0);
+
+        // nothing to move
+        registry.moveSession("old", "other");
+        assertTrue(registry.list("other", null).isEmpty());
+    }
+
+    @Test
+    public void shouldRejectUnknownType() {
+        try {
+            registry.add("a", subscription(1L, "unknown"));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(registry.list("a", null).isEmpty());
+            assertCounts(0, 0);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void shouldKeepCountsUnderConcurrentChanges() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread < 4; thread++) {
+            final String sessionId = "session-" + thread;
+            final long base = thread * 10000L;
+            executor.execute(() -> {
+                for (long id = base; id < base + 1000; id++) {
+                    registry.add(sessionId, subscription(id, id % 2 == 0 ? COMMAND : NOTIFICATION));
+                }
+                for (long id = base; id < base + 1000; id += 4) {
+                    registry.remove(sessionId, COMMAND, id);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(20, TimeUnit.SECONDS));
+
+        assertCounts(4 * 250, 4 * 500);
+        registry.removeSession("session-0");
+        assertCounts(3 * 250, 3 * 500);
+    }
+
+    private void assertCounts(int commands, int notifications) {
+        assertEquals(commands, rpcMetrics.getGauges().get("websocket.subscriptions.command").intValue());
+        assertEquals(notifications, rpcMetrics.getGauges().get("websocket.subscriptions.notification").intValue());
+    }
+
+    private static SubscriptionInfo subscription(Long id, String type) {
+        return new SubscriptionInfo(id, type, "device", null, null, null, null);
+    }
+
+    private static List<Long> ids(Collection<SubscriptionInfo> subscriptions) {
+        List<Long> ids = new ArrayList<>();
+        subscriptions.forEach(subscription -> ids.add(subscription.getSubscriptionId()));
+        return ids;
+    }
+
+    private static List<Long> sorted(List<Long> ids) {
+        Collections.sort(ids);
+        return ids;
+    }
+}
@@ -0,0 +1,118 @@
+package com.devicehive.websockets.util;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RpcMetrics;
+import com.devicehive.service.DeviceCommandService;
+import com.devicehive.service.DeviceNotificationService;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Mockito.*;
+
+public class UnsubscribeAggregatorTest {
+
+    private final DeviceCommandService commandService = mock(DeviceCommandService.class);
+    private final DeviceNotificationService notificationService = mock(DeviceNotificationService.class);
+    private UnsubscribeAggregator aggregator;
+
+    @Before
+    public void setUp() {
+        aggregator = new UnsubscribeAggregator(commandService, notificationService, new RpcMetrics());
+        ReflectionTestUtils.setField(aggregator, "maxBatch", 1000);
+        ReflectionTestUtils.setField(aggregator, "maxRetries", 2);
+        when(notificationService.detach(anySetOf(Long.class)))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(invocation.getArguments()[0]));
+        when(commandService.sendUnsubscribeRequest(anySetOf(Long.class)))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(invocation.getArguments()[0]));
+        when(notificationService.sendUnsubscribeRequest(anySetOf(Long.class)))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(invocation.getArguments()[0]));
+    }
+
+    @Test
+    public void shouldReleaseCommandsWhenNotificationRequestFails() {
+        when(notificationService.sendUnsubscribeRequest(ids(2L))).thenReturn(failed());
+        aggregator.add(ids(1L), ids(2L));
+
+        aggregator.flush();
+        aggregator.flush();
+
+        verify(commandService).sendUnsubscribeRequest(ids(1L));
+        verify(notificationService, times(2)).sendUnsubscribeRequest(ids(2L));
+    }
+
+    @Test
+    public void shouldReleaseNotificationsWhenCommandRequestThrows() {
+        when(commandService.sendUnsubscribeRequest(ids(1L))).thenThrow(new IllegalStateException("Overloaded"));
+        aggregator.add(ids(1L), ids(2L));
+
+        aggregator.flush();
+
+        verify(notificationService).sendUnsubscribeRequest(ids(2L));
+        aggregator.flush();
+        verify(commandService, times(2)).sendUnsubscribeRequest(ids(1L));
+        verify(notificationService).sendUnsubscribeRequest(ids(2L));
+    }
+
+    @Test
+    public void shouldRetryUpstreamIdsOfFailedNotificationRequest() {
+        when(notificationService.detach(ids(10L))).thenReturn(CompletableFuture.completedFuture(ids(99L)));
+        when(notificationService.sendUnsubscribeRequest(ids(99L))).thenReturn(failed(), CompletableFuture.completedFuture(ids(99L)));
+        aggregator.add(Collections.emptySet(), ids(10L));
+
+        aggregator.flush();
+        aggregator.flush();
+        aggregator.flush();
+
+        // the local id is detached once, then the upstream id the request was about is sent again
+        verify(notificationService).detach(ids(10L));
+        verify(notificationService).detach(ids(99L));
+        verify(notificationService, times(2)).sendUnsubscribeRequest(ids(99L));
+    }
+
+    @Test
+    public void shouldGiveUpAfterMaxRetries() {
+        when(commandService.sendUnsubscribeRequest(ids(1L))).thenReturn(failed());
+        aggregator.add(ids(1L), Collections.emptySet());
+
+        for (int i = 0; i < 5; i++) {
+            aggregator.flush();
+        }
+
+        verify(commandService, times(3)).sendUnsubscribeRequest(ids(1L));
+    }
+
+    private static Set<Long> ids(Long id) {
+        return Collections.singleton(id);
+    }
+
+    private static CompletableFuture<Set<Long>> failed() {
+        CompletableFuture<Set<Long>> future = new CompletableFuture<>();
+        future.completeExceptionally(new IllegalStateException("Backend unavailable"));
+        return future;
+    }
+}
@@ -20,7 +20,17 @@ package com.devicehive.proxy.api;
  * #L%
  */
 
+import com.google.gson.JsonElement;
+
 public interface NotificationHandler {
 
     void handle(String message, ProxyClient client);
+
+    /**
+     * Handles a message the proxy delivered as a raw JSON value rather than as an encoded string. Handlers that
+     * bind messages with Gson should override it to bind the already parsed tree instead of its text.
+     */
+    default void handle(JsonElement message, ProxyClient client) {
+        handle(message.toString(), client);
+    }
 }
@@ -35,4 +35,11 @@ public abstract class ProxyClient {
     public abstract void shutdown();
 
     public abstract CompletableFuture<ProxyMessage> push(ProxyMessage message);
+
+    /**
+     * Sends a message without waiting for a reply. Implementations that track replies should not keep any state for it.
+     */
+    public void send(ProxyMessage message) {
+        push(message);
+    }
 }
@@ -20,6 +20,7 @@ package com.devicehive.proxy.api.payload;
  * #L%
  */
 
+import com.google.gson.JsonElement;
 import com.google.gson.annotations.SerializedName;
 
 public class MessagePayload implements Payload {
@@ -27,12 +28,25 @@ public class MessagePayload implements Payload {
     @SerializedName("m")
     protected String message;
 
+    /**
+     * Message delivered as a raw JSON value, {@code null} if it was delivered as a string.
+     */
+    protected transient JsonElement json;
+
     public MessagePayload(String message) {
         this.message = message;
     }
 
+    public MessagePayload(JsonElement json) {
+        this.json = json;
+    }
+
     public String getMessage() {
-        return message;
+        return message != null || json == null ? message : json.toString();
+    }
+
+    public JsonElement getJson() {
+        return json;
     }
 
     public void setMessage(String message) {
@@ -42,7 +56,7 @@ public class MessagePayload implements Payload {
     @Override
     public String toString() {
         return "Payload{" +
-                "message='" + message + '\'' +
+                "message='" + getMessage() + '\'' +
                 '}';
     }
 }
@@ -21,6 +21,7 @@ package com.devicehive.proxy;
  */
 
 import com.devicehive.api.RequestResponseMatcher;
+import com.devicehive.api.RpcMetrics;
 import com.devicehive.model.ServerEvent;
 import com.devicehive.proxy.api.NotificationHandler;
 import com.devicehive.proxy.api.ProxyClient;
@@ -29,6 +30,7 @@ import com.devicehive.proxy.api.payload.NotificationCreatePayload;
 import com.devicehive.proxy.api.payload.SubscribePayload;
 import com.devicehive.proxy.api.payload.TopicsPayload;
 import com.devicehive.proxy.client.WebSocketKafkaProxyClient;
+import com.devicehive.proxy.client.WebSocketKafkaProxyClientPool;
 import com.devicehive.proxy.config.WebSocketKafkaProxyConfig;
 import com.devicehive.shim.api.Request;
 import com.devicehive.shim.api.RequestType;
@@ -40,6 +42,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.*;
 import java.util.function.Consumer;
@@ -49,14 +52,17 @@ public class FrontendProxyClient implements RpcClient {
 
     private final String requestTopic;
     private final String replyToTopic;
-    private final WebSocketKafkaProxyClient client;
+    private final WebSocketKafkaProxyClientPool client;
     private final WebSocketKafkaProxyConfig proxyConfig;
     private final NotificationHandler notificationHandler;
     private final RequestResponseMatcher requestResponseMatcher;
     private final Gson gson;
     private final RingBuffer<ServerEvent> ringBuffer;
+    private final RpcMetrics rpcMetrics;
+    private final List<WebSocketKafkaProxyClient> replyClients = new CopyOnWriteArrayList<>();
 
-    public FrontendProxyClient(String requestTopic, String replyToTopic, WebSocketKafkaProxyConfig proxyConfig, NotificationHandler notificationHandler, RequestResponseMatcher requestResponseMatcher, Gson gson, RingBuffer<ServerEvent> ringBuffer) {
+    public FrontendProxyClient(String requestTopic, String replyToTopic, WebSocketKafkaProxyConfig proxyConfig, NotificationHandler notificationHandler, RequestResponseMatcher requestResponseMatcher, Gson gson, RingBuffer<ServerEvent> ringBuffer,
+                               RpcMetrics rpcMetrics) {
         this.requestTopic = requestTopic;
         this.replyToTopic = replyToTopic;
         this.proxyConfig = proxyConfig;
@@ -64,13 +70,13 @@ public class FrontendProxyClient implements RpcClient {
         this.requestResponseMatcher = requestResponseMatcher;
         this.gson = gson;
         this.ringBuffer = ringBuffer;
-        this.client = new WebSocketKafkaProxyClient((message, client) -> {});
-        client.setWebSocketKafkaProxyConfig(proxyConfig);
+        this.rpcMetrics = rpcMetrics;
+        this.client = new WebSocketKafkaProxyClientPool((message, client) -> {}, proxyConfig);
     }
 
     @Override
     public void call(Request request, Consumer<Response> callback) {
-        requestResponseMatcher.addRequestCallback(request.getCorrelationId(), callback);
+        requestResponseMatcher.addRequestCallback(request.getCorrelationId(), rpcMetrics.timeRoundTrip(request, callback));
         logger.debug("Request callback added for request: {}, correlationId: {}", request.getBody(), request.getCorrelationId());
 
         ringBuffer.publishEvent((serverEvent, sequence, response) -> serverEvent.set(response), request);
@@ -83,7 +89,7 @@ public class FrontendProxyClient implements RpcClient {
         }
         request.setReplyTo(replyToTopic);
 
-        client.push(ProxyMessageBuilder.notification(
+        client.send(ProxyMessageBuilder.notification(
                 new NotificationCreatePayload(requestTopic, gson.toJson(request), request.getPartitionKey())));
     }
 
@@ -98,6 +104,7 @@ public class FrontendProxyClient implements RpcClient {
             executionPool.execute(() -> {
                 WebSocketKafkaProxyClient client = new WebSocketKafkaProxyClient(notificationHandler);
                 client.setWebSocketKafkaProxyConfig(proxyConfig);
+                replyClients.add(client);
                 client.start();
                 client.push(ProxyMessageBuilder.subscribe(new SubscribePayload(replyToTopic, uuid.toString()))).join();
             });
@@ -111,6 +118,20 @@ public class FrontendProxyClient implements RpcClient {
         client.shutdown();
     }
 
+    /**
+     * @return number of successful reconnects of the request and reply sessions
+     */
+    public long getReconnects() {
+        return client.getReconnects() + replyClients.stream().mapToLong(WebSocketKafkaProxyClient::getReconnects).sum();
+    }
+
+    /**
+     * @return time the request and reply sessions together spent disconnected before a successful reconnect
+     */
+    public long getDowntimeMillis() {
+        return client.getDowntimeMillis() + replyClients.stream().mapToLong(WebSocketKafkaProxyClient::getDowntimeMillis).sum();
+    }
+
     private void pingServer() {
         Request request = Request.newBuilder().build();
         request.setReplyTo(replyToTopic);
@@ -125,7 +146,7 @@ public class FrontendProxyClient implements RpcClient {
             requestResponseMatcher.addRequestCallback(request.getCorrelationId(), pingFuture::complete);
             logger.debug("Request callback added for request: {}, correlationId: {}", request.getBody(), request.getCorrelationId());
 
-            client.push(ProxyMessageBuilder.notification(
+            client.send(ProxyMessageBuilder.notification(
                     new NotificationCreatePayload(requestTopic, gson.toJson(request), request.getPartitionKey())));
 
             Response response = null;
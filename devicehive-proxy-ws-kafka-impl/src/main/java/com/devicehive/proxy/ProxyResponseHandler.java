@@ -26,11 +26,12 @@ import com.devicehive.proxy.api.NotificationHandler;
 import com.devicehive.proxy.api.ProxyClient;
 import com.devicehive.proxy.api.ProxyMessageBuilder;
 import com.devicehive.proxy.api.payload.NotificationCreatePayload;
-import com.devicehive.proxy.client.WebSocketKafkaProxyClient;
+import com.devicehive.proxy.client.WebSocketKafkaProxyClientPool;
 import com.devicehive.proxy.config.WebSocketKafkaProxyConfig;
 import com.devicehive.shim.api.Request;
 import com.devicehive.shim.api.Response;
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 import com.lmax.disruptor.WorkHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,9 +53,7 @@ public class ProxyResponseHandler implements NotificationHandler, WorkHandler<Se
         this.requestTopic = requestTopic;
         this.replyToTopic = replyToTopic;
         this.requestResponseMatcher = requestResponseMatcher;
-        WebSocketKafkaProxyClient webSocketKafkaProxyClient = new WebSocketKafkaProxyClient((message, client) -> {});
-        webSocketKafkaProxyClient.setWebSocketKafkaProxyConfig(proxyConfig);
-        this.proxyClient = webSocketKafkaProxyClient;
+        this.proxyClient = new WebSocketKafkaProxyClientPool((message, client) -> {}, proxyConfig);
     }
 
     public void start() {
@@ -64,9 +63,13 @@ public class ProxyResponseHandler implements NotificationHandler, WorkHandler<Se
     @Override
     public void handle(String message, ProxyClient client) {
         logger.debug("Received message from proxy client: " + message);
-        final Response response = gson.fromJson(message, Response.class);
+        requestResponseMatcher.offerResponse(gson.fromJson(message, Response.class));
+    }
 
-        requestResponseMatcher.offerResponse(response);
+    @Override
+    public void handle(JsonElement message, ProxyClient client) {
+        logger.debug("Received message from proxy client: {}", message);
+        requestResponseMatcher.offerResponse(gson.fromJson(message, Response.class));
     }
 
     @Override
@@ -77,7 +80,7 @@ public class ProxyResponseHandler implements NotificationHandler, WorkHandler<Se
         }
         request.setReplyTo(replyToTopic);
 
-        proxyClient.push(ProxyMessageBuilder.notification(
+        proxyClient.send(ProxyMessageBuilder.notification(
                 new NotificationCreatePayload(requestTopic, gson.toJson(request), request.getPartitionKey())));
     }
 }
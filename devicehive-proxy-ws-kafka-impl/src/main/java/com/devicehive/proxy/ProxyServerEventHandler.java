@@ -26,7 +26,7 @@ import com.devicehive.proxy.api.ProxyClient;
 import com.devicehive.proxy.api.ProxyMessage;
 import com.devicehive.proxy.api.ProxyMessageBuilder;
 import com.devicehive.proxy.api.payload.NotificationCreatePayload;
-import com.devicehive.proxy.client.WebSocketKafkaProxyClient;
+import com.devicehive.proxy.client.WebSocketKafkaProxyClientPool;
 import com.devicehive.proxy.config.WebSocketKafkaProxyConfig;
 import com.devicehive.shim.api.Action;
 import com.devicehive.shim.api.Request;
@@ -56,9 +56,7 @@ public class ProxyServerEventHandler implements WorkHandler<ServerEvent> {
     public ProxyServerEventHandler(Gson gson, WebSocketKafkaProxyConfig proxyConfig, HandlersMapper requestHandlersMapper) {
         this.gson = gson;
         this.requestHandlersMapper = requestHandlersMapper;
-        WebSocketKafkaProxyClient webSocketKafkaProxyClient = new WebSocketKafkaProxyClient((message, client) -> {});
-        webSocketKafkaProxyClient.setWebSocketKafkaProxyConfig(proxyConfig);
-        this.proxyClient = webSocketKafkaProxyClient;
+        this.proxyClient = new WebSocketKafkaProxyClientPool((message, client) -> {}, proxyConfig);
         this.proxyClient.start();
     }
 
@@ -88,7 +86,7 @@ public class ProxyServerEventHandler implements WorkHandler<ServerEvent> {
         // set correlationId explicitly to prevent missing it in request
         response.setCorrelationId(request.getCorrelationId());
         ProxyMessage responseMessage = ProxyMessageBuilder.notification(new NotificationCreatePayload(replyTo, gson.toJson(response)));
-        proxyClient.push(responseMessage);
+        proxyClient.send(responseMessage);
     }
 
     private Response handleClientRequest(Request request) {
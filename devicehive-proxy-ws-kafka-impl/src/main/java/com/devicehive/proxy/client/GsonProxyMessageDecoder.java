@@ -23,31 +23,47 @@ package com.devicehive.proxy.client;
 import com.devicehive.proxy.api.ProxyMessage;
 import com.devicehive.proxy.api.payload.*;
 import com.google.gson.*;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import javax.websocket.DecodeException;
 import javax.websocket.Decoder;
 import javax.websocket.EndpointConfig;
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+/**
+ * Decodes proxy frames in a single pass over a pull parser. Envelope fields are read as they come and the payload
+ * is bound straight to its target type; only a payload that precedes the "t" and "s" fields it depends on, or a
+ * topic payload that precedes its "a" field, is buffered as a tree first.
+ */
 class GsonProxyMessageDecoder implements Decoder.Text<List<ProxyMessage>> {
 
-    private static final JsonParser parser = new JsonParser();
     private static final Gson gson = new Gson();
+    private static final TypeAdapter<JsonElement> treeAdapter = gson.getAdapter(JsonElement.class);
 
     @Override
     public List<ProxyMessage> decode(String s) throws DecodeException {
-        JsonElement object = parser.parse(s);
-        if (object instanceof JsonArray) {
-            List<ProxyMessage> list = new ArrayList<>();
-            object.getAsJsonArray().forEach(elem -> list.add(buildMessage(elem.getAsJsonObject())));
-            return list;
-        }
-        if (object instanceof JsonObject) {
-            return Collections.singletonList(buildMessage(object.getAsJsonObject()));
+        try {
+            JsonReader reader = new JsonReader(new StringReader(s));
+            JsonToken token = reader.peek();
+            if (token == JsonToken.BEGIN_ARRAY) {
+                List<ProxyMessage> list = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    list.add(readMessage(reader));
+                }
+                reader.endArray();
+                return list;
+            }
+            if (token == JsonToken.BEGIN_OBJECT) {
+                return Collections.singletonList(readMessage(reader));
+            }
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw new DecodeException(s, "Cannot deserialize ProxyMessage", e);
         }
         throw new JsonParseException(String.format("Cannot deserialize ProxyMessage from '%s'", s));
     }
@@ -67,47 +83,158 @@ class GsonProxyMessageDecoder implements Decoder.Text<List<ProxyMessage>> {
 
     }
 
-    @SuppressWarnings("unchecked")
-    private ProxyMessage buildMessage(JsonObject object) {
-        JsonElement t = object.get("t");
-        JsonElement a = object.get("a");
-        if (t == null) {
+    private ProxyMessage readMessage(JsonReader reader) throws IOException {
+        String id = null;
+        String type = null;
+        String action = null;
+        Integer status = null;
+        boolean statusRead = false;
+        boolean actionRead = false;
+        boolean boundWithoutAction = false;
+        Payload payload = null;
+        JsonElement bufferedPayload = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = nextString(reader);
+                    break;
+                case "t":
+                    type = nextString(reader);
+                    break;
+                case "a":
+                    action = nextString(reader);
+                    actionRead = true;
+                    break;
+                case "s":
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else {
+                        status = reader.nextInt();
+                    }
+                    statusRead = true;
+                    break;
+                case "p":
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else if (type != null && statusRead && (actionRead || !"topic".equals(type))) {
+                        payload = readPayload(reader, type, action, status);
+                        boundWithoutAction = !actionRead;
+                    } else {
+                        bufferedPayload = treeAdapter.read(reader);
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (type == null) {
             throw new JsonParseException("Cannot deserialize ProxyMessage because it does not define a field named 't'");
         }
-        String type = object.get("t").getAsString();
-        if (a != null) {
-            type += "/" + a.getAsString();
+        if (boundWithoutAction && action != null && payloadClass(type, action, status) == null) {
+            // only topic messages have a payload bound by action, any other message with an action has none
+            payload = null;
+        }
+        if (bufferedPayload != null) {
+            payload = bindPayload(bufferedPayload, type, action, status);
         }
+        return ProxyMessage.newBuilder()
+                .withId(id)
+                .withType(type)
+                .withAction(action)
+                .withStatus(status)
+                .withPayload(payload)
+                .build();
+    }
 
-        Integer status = object.get("s") != null ? object.get("s").getAsInt() : null;
-        ProxyMessage.Builder decoded = ProxyMessage.newBuilder()
-                .withId(object.get("id") != null ? object.get("id").getAsString() : null)
-                .withType(t.getAsString())
-                .withAction(a != null ? a.getAsString() : null)
-                .withStatus(status);
-        if (object.get("p") != null) {
-            if (status != null && status == 0) {
-                switch (type) {
-                    case "topic/create":
-                        decoded.withPayload(gson.fromJson(object.get("p"), TopicsPayload.class));
-                        break;
-                    case "topic/list":
-                        decoded.withPayload(gson.fromJson(object.get("p"), TopicsPayload.class));
-                        break;
-                    case "topic/subscribe":
-                        decoded.withPayload(gson.fromJson(object.get("p"), SubscribePayload.class));
-                        break;
-                    case "notif":
-                        decoded.withPayload(gson.fromJson(object.get("p"), MessagePayload.class));
-                        break;
-                    case "health":
-                        decoded.withPayload(gson.fromJson(object.get("p"), HealthPayload.class));
-                        break;
-                }
-            } else {
-                decoded.withPayload(gson.fromJson(object.get("p"), MessagePayload.class));
+    private Payload readPayload(JsonReader reader, String type, String action, Integer status) throws IOException {
+        if (isNotification(type, action, status)) {
+            return readMessagePayload(reader);
+        }
+        Class<? extends Payload> payloadClass = payloadClass(type, action, status);
+        if (payloadClass == null) {
+            reader.skipValue();
+            return null;
+        }
+        return gson.getAdapter(payloadClass).read(reader);
+    }
+
+    private Payload bindPayload(JsonElement payload, String type, String action, Integer status) {
+        if (isNotification(type, action, status)) {
+            JsonElement message = payload.isJsonObject() ? payload.getAsJsonObject().get("m") : null;
+            if (message != null && (message.isJsonObject() || message.isJsonArray())) {
+                return new MessagePayload(message);
             }
+            return gson.fromJson(payload, MessagePayload.class);
+        }
+        Class<? extends Payload> payloadClass = payloadClass(type, action, status);
+        return payloadClass != null ? gson.fromJson(payload, payloadClass) : null;
+    }
+
+    /**
+     * Reads a notification payload. A message sent as a string is taken as is; a message sent as a raw JSON value
+     * is kept as a tree, so the handler binds it without parsing its text again.
+     */
+    private MessagePayload readMessagePayload(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            return gson.getAdapter(MessagePayload.class).read(reader);
+        }
+        String message = null;
+        JsonElement json = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"m".equals(reader.nextName())) {
+                reader.skipValue();
+                continue;
+            }
+            switch (reader.peek()) {
+                case BEGIN_OBJECT:
+                case BEGIN_ARRAY:
+                    json = treeAdapter.read(reader);
+                    break;
+                case NULL:
+                    reader.nextNull();
+                    break;
+                case BOOLEAN:
+                    message = String.valueOf(reader.nextBoolean());
+                    break;
+                default:
+                    message = reader.nextString();
+            }
+        }
+        reader.endObject();
+        return json != null ? new MessagePayload(json) : new MessagePayload(message);
+    }
+
+    private static boolean isNotification(String type, String action, Integer status) {
+        return status != null && status == 0 && "notif".equals(type) && action == null;
+    }
+
+    private static Class<? extends Payload> payloadClass(String type, String action, Integer status) {
+        if (status == null || status != 0) {
+            return MessagePayload.class;
+        }
+        switch (action != null ? type + "/" + action : type) {
+            case "topic/create":
+            case "topic/list":
+                return TopicsPayload.class;
+            case "topic/subscribe":
+                return SubscribePayload.class;
+            case "health":
+                return HealthPayload.class;
+            default:
+                return null;
+        }
+    }
+
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
         }
-        return decoded.build();
+        return reader.nextString();
     }
 }
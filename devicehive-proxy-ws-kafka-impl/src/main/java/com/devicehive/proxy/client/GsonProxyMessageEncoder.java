@@ -21,25 +21,65 @@ package com.devicehive.proxy.client;
  */
 
 import com.devicehive.proxy.api.ProxyMessage;
-import com.devicehive.proxy.api.payload.Payload;
-import com.devicehive.proxy.api.payload.TopicsPayload;
+import com.devicehive.proxy.api.payload.NotificationCreatePayload;
 import com.google.gson.Gson;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
 
 import javax.websocket.EncodeException;
 import javax.websocket.Encoder;
 import javax.websocket.EndpointConfig;
-import java.util.List;
+import java.io.IOException;
+import java.io.StringWriter;
 
+/**
+ * Encodes proxy messages. Notifications carry an already serialized message, so their envelope is written by hand:
+ * with raw messages enabled the message is spliced into the frame as a JSON value and is not encoded again,
+ * otherwise it is written as a JSON string, which is what proxies that expect string messages understand.
+ */
 class GsonProxyMessageEncoder implements Encoder.Text<ProxyMessage> {
 
     private static Gson gson = new Gson();
 
+    private final boolean rawMessages;
+
+    public GsonProxyMessageEncoder() {
+        this(false);
+    }
+
+    GsonProxyMessageEncoder(boolean rawMessages) {
+        this.rawMessages = rawMessages;
+    }
+
     @Override
     public String encode(ProxyMessage message) throws EncodeException {
-        return gson.toJson(message);
+        if (!(message.getPayload() instanceof NotificationCreatePayload)) {
+            return gson.toJson(message);
+        }
+        final NotificationCreatePayload payload = (NotificationCreatePayload) message.getPayload();
+        final StringWriter out = new StringWriter(payload.getMessage() != null ? payload.getMessage().length() + 128 : 128);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.setSerializeNulls(false);
+            writer.beginObject();
+            writer.name("id").value(message.getId());
+            writer.name("t").value(message.getType());
+            writer.name("a").value(message.getAction());
+            if (message.getStatus() != null) {
+                writer.name("s").value(message.getStatus());
+            }
+            writer.name("p").beginObject();
+            writer.name("t").value(payload.getTopic());
+            if (rawMessages) {
+                writer.name("m").jsonValue(payload.getMessage());
+            } else {
+                writer.name("m").value(payload.getMessage());
+            }
+            writer.name("part").value(payload.getPartition());
+            writer.endObject();
+            writer.endObject();
+        } catch (IOException e) {
+            throw new EncodeException(message, "Unable to encode proxy message", e);
+        }
+        return out.toString();
     }
 
     @Override
@@ -0,0 +1,212 @@
+package com.devicehive.proxy.client;
+
+/*
+ * #%L
+ * DeviceHive Proxy WebSocket Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Gathers encoded proxy messages of one session and sends them as a single JSON array frame once
+ * {@code maxBatchSize} messages are queued or {@code lingerMillis} passed since the first of them was queued.
+ * A batch of one message is sent as a plain object. Frames are sent asynchronously and one at a time: the next
+ * frame goes out when the previous send completes, so the session never sees concurrent writes and no thread
+ * waits for the network.
+ */
+class ProxyMessageBatcher {
+    private static final Logger logger = LoggerFactory.getLogger(ProxyMessageBatcher.class);
+
+    // only triggers linger flushes, sends never run on it
+    private static final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "proxy-batch-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    interface FrameSender {
+        /**
+         * Starts sending a frame; the returned future completes once the frame is written or the write failed.
+         */
+        CompletableFuture<Void> send(String frame);
+    }
+
+    private final int maxBatchSize;
+    private final long lingerMillis;
+    private final FrameSender sender;
+    private final BiConsumer<List<String>, Throwable> onFailure;
+
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Queue<List<Entry>> frameQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean sending = new AtomicBoolean();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong messages = new AtomicLong();
+
+    /**
+     * @param onFailure receives ids of the messages of a frame that could not be sent
+     */
+    ProxyMessageBatcher(int maxBatchSize, long lingerMillis, FrameSender sender, BiConsumer<List<String>, Throwable> onFailure) {
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMillis = lingerMillis;
+        this.sender = sender;
+        this.onFailure = onFailure;
+    }
+
+    void add(String id, String message) {
+        queue.add(new Entry(id, message));
+        if (queued.incrementAndGet() >= maxBatchSize) {
+            flush();
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            flusher.schedule(this::scheduledFlush, lingerMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void scheduledFlush() {
+        flushScheduled.set(false);
+        flush();
+    }
+
+    /**
+     * Cuts all queued messages into frames and starts sending them; does not wait for the sends.
+     */
+    void flush() {
+        cut();
+        pump();
+    }
+
+    // frames are cut under the lock so that they are queued for sending in the order their messages were added
+    private synchronized void cut() {
+        while (true) {
+            final List<Entry> batch = new ArrayList<>(Math.min(maxBatchSize, Math.max(queued.get(), 1)));
+            Entry entry;
+            while (batch.size() < maxBatchSize && (entry = queue.poll()) != null) {
+                batch.add(entry);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            queued.addAndGet(-batch.size());
+            frameQueue.add(batch);
+            if (batch.size() < maxBatchSize) {
+                return;
+            }
+        }
+    }
+
+    private void pump() {
+        while (!frameQueue.isEmpty() && sending.compareAndSet(false, true)) {
+            final List<Entry> batch = frameQueue.poll();
+            if (batch == null) {
+                sending.set(false);
+                continue;
+            }
+            CompletableFuture<Void> sent;
+            try {
+                sent = sender.send(encode(batch));
+            } catch (RuntimeException e) {
+                sent = new CompletableFuture<>();
+                sent.completeExceptionally(e);
+            }
+            if (sent.isDone()) {
+                // completed in place, keep going in this loop instead of recursing from the callback
+                sent(batch, failureOf(sent));
+                sending.set(false);
+                continue;
+            }
+            sent.whenComplete((v, e) -> {
+                sent(batch, e);
+                sending.set(false);
+                pump();
+            });
+            return;
+        }
+    }
+
+    private void sent(List<Entry> batch, Throwable e) {
+        if (e == null) {
+            frames.incrementAndGet();
+            messages.addAndGet(batch.size());
+            return;
+        }
+        logger.error("Unable to send frame of {} proxy messages", batch.size(), e);
+        List<String> ids = new ArrayList<>(batch.size());
+        batch.forEach(failed -> ids.add(failed.id));
+        onFailure.accept(ids, e);
+    }
+
+    private static String encode(List<Entry> batch) {
+        if (batch.size() == 1) {
+            return batch.get(0).message;
+        }
+        final StringBuilder builder = new StringBuilder(batch.stream().mapToInt(e -> e.message.length() + 1).sum() + 1);
+        builder.append('[');
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(batch.get(i).message);
+        }
+        return builder.append(']').toString();
+    }
+
+    private static Throwable failureOf(CompletableFuture<Void> sent) {
+        try {
+            sent.get();
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (InterruptedException | RuntimeException e) {
+            return e;
+        }
+    }
+
+    long getFrameCount() {
+        return frames.get();
+    }
+
+    long getMessageCount() {
+        return messages.get();
+    }
+
+    private static class Entry {
+        private final String id;
+        private final String message;
+
+        private Entry(String id, String message) {
+            this.id = id;
+            this.message = message;
+        }
+    }
+}
@@ -24,7 +24,11 @@ import com.devicehive.exceptions.HiveException;
 import com.devicehive.proxy.api.NotificationHandler;
 import com.devicehive.proxy.api.ProxyClient;
 import com.devicehive.proxy.api.ProxyMessage;
+import com.devicehive.proxy.api.ProxyMessageBuilder;
 import com.devicehive.proxy.api.payload.MessagePayload;
+import com.devicehive.proxy.api.payload.Payload;
+import com.devicehive.proxy.api.payload.SubscribePayload;
+import com.devicehive.proxy.api.payload.TopicsPayload;
 import com.devicehive.proxy.config.WebSocketKafkaProxyConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,10 +36,13 @@ import org.slf4j.LoggerFactory;
 import javax.websocket.*;
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 @ClientEndpoint(
         decoders = GsonProxyMessageDecoder.class,
@@ -45,10 +52,37 @@ public class WebSocketKafkaProxyClient extends ProxyClient {
 
     private static final Logger logger = LoggerFactory.getLogger(WebSocketKafkaProxyClient.class);
 
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "proxy-client-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private WebSocketKafkaProxyConfig webSocketKafkaProxyConfig;
     private Map<String, CompletableFuture<ProxyMessage>> futureMap;
     private Map<String, Boolean> ackReceived;
-    private Session session;
+    private volatile Session session;
+    private GsonProxyMessageEncoder encoder;
+    private ProxyMessageBatcher batcher;
+    /**
+     * Runs reconnect attempts of this session only, so a slow connect never delays reply expiry of other sessions.
+     */
+    private ScheduledExecutorService reconnector;
+
+    /**
+     * Topic messages (create, subscribe) sent over this session, re-issued after every reconnect.
+     */
+    private final List<ProxyMessage> setupMessages = new CopyOnWriteArrayList<>();
+    /**
+     * Messages sent with {@link #send(ProxyMessage)} while the session was down, written after the next reconnect.
+     */
+    private final Queue<ProxyMessage> outbox = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger outboxSize = new AtomicInteger();
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong downtimeNanos = new AtomicLong();
+    private volatile boolean closing;
+    private volatile long disconnectedAt;
+    private volatile long backoffMillis;
 
     public WebSocketKafkaProxyClient(NotificationHandler notificationHandler) {
         super(notificationHandler);
@@ -56,38 +90,209 @@ public class WebSocketKafkaProxyClient extends ProxyClient {
 
     @Override
     public void start() {
+        this.futureMap = new ConcurrentHashMap<>();
+        this.encoder = new GsonProxyMessageEncoder(webSocketKafkaProxyConfig.getRawMessages());
+        // a batch size of 1 sends every message as its own frame, still one write at a time
+        this.batcher = new ProxyMessageBatcher(Math.max(1, webSocketKafkaProxyConfig.getBatchMaxSize()),
+                webSocketKafkaProxyConfig.getBatchLingerMillis(), this::sendFrame, this::failAll);
+        if (webSocketKafkaProxyConfig.getAckEnable()) {
+            this.ackReceived = new ConcurrentHashMap<>();
+        }
+        this.reconnector = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "proxy-client-reconnect");
+            thread.setDaemon(true);
+            return thread;
+        });
         try {
-            this.futureMap = new ConcurrentHashMap<>();
-            if (webSocketKafkaProxyConfig.getAckEnable()) {
-                this.ackReceived = new ConcurrentHashMap<>();
-            }
-            WebSocketContainer container = ContainerProvider.getWebSocketContainer();
-            this.session = container.connectToServer(this, new URI("ws://" + webSocketKafkaProxyConfig.getProxyConnect()));
+            connect();
         } catch (Exception e) {
             logger.error("Error during establishing connection: ", e);
             throw new RuntimeException(e);
         }
     }
 
+    void connect() throws Exception {
+        WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+        this.session = container.connectToServer(this, new URI("ws://" + webSocketKafkaProxyConfig.getProxyConnect()));
+    }
+
     @Override
     public void shutdown() {
+        closing = true;
+        reconnector.shutdown();
+        batcher.flush();
+        Session current = this.session;
+        if (current == null) {
+            // down between reconnect attempts, nothing to close and no reconnect will follow
+            failPending(new HiveException("WebSocket proxy client is shut down"));
+            return;
+        }
         try {
-            session.close();
+            current.close();
         } catch (IOException e) {
             logger.error("Error during closing connection: ", e);
         }
     }
 
+    /**
+     * Sends a message and returns a future of the reply. The future fails if no reply arrives within the reply
+     * timeout, or right away if the session is down or too many replies are pending already.
+     */
     @Override
     public CompletableFuture<ProxyMessage> push(ProxyMessage message) {
-        this.session.getAsyncRemote().sendObject(message);
+        if (!isConnected()) {
+            CompletableFuture<ProxyMessage> future = new CompletableFuture<>();
+            future.completeExceptionally(new HiveException("WebSocket session to proxy is not open"));
+            return future;
+        }
+        rememberSetupMessage(message);
+        return request(message);
+    }
 
+    private CompletableFuture<ProxyMessage> request(ProxyMessage message) {
         CompletableFuture<ProxyMessage> future = new CompletableFuture<>();
-        futureMap.put(message.getId(), future);
+        if (futureMap.size() >= webSocketKafkaProxyConfig.getMaxPendingReplies()) {
+            future.completeExceptionally(new HiveException("Too many messages are waiting for a reply from proxy"));
+            return future;
+        }
+        // register the future first, the reply may arrive before sendText returns
+        final String id = message.getId();
+        futureMap.put(id, future);
+        final ScheduledFuture<?> expiry = scheduler.schedule(() -> expire(id, future),
+                webSocketKafkaProxyConfig.getReplyTimeoutMillis(), TimeUnit.MILLISECONDS);
+        future.whenComplete((reply, e) -> expiry.cancel(false));
+        try {
+            write(message);
+        } catch (EncodeException | RuntimeException e) {
+            futureMap.remove(id);
+            future.completeExceptionally(e);
+            return future;
+        }
         logger.debug("Message {} was sent", message);
         return future;
     }
 
+    /**
+     * Sends a message nobody waits a reply for, so no future is kept for it. While the session is down the message
+     * is kept until the next reconnect, up to {@link WebSocketKafkaProxyConfig#getMaxPendingReplies()} messages;
+     * beyond that it is dropped.
+     */
+    @Override
+    public void send(ProxyMessage message) {
+        if (isConnected()) {
+            writeQuietly(message);
+            return;
+        }
+        if (closing) {
+            logger.warn("WebSocket proxy client is shut down, dropping message {}", message.getId());
+            return;
+        }
+        if (outboxSize.incrementAndGet() > webSocketKafkaProxyConfig.getMaxPendingReplies()) {
+            outboxSize.decrementAndGet();
+            logger.warn("WebSocket session to proxy is not open, dropping message {}", message.getId());
+            return;
+        }
+        outbox.add(message);
+        if (isConnected()) {
+            // reconnected meanwhile, the outbox may have been drained already
+            drainOutbox();
+        }
+    }
+
+    private void writeQuietly(ProxyMessage message) {
+        try {
+            write(message);
+            logger.debug("Message {} was sent", message);
+        } catch (EncodeException e) {
+            logger.error("Unable to encode message {} for proxy", message.getId(), e);
+        }
+    }
+
+    private void write(ProxyMessage message) throws EncodeException {
+        batcher.add(message.getId(), encoder.encode(message));
+    }
+
+    private void drainOutbox() {
+        ProxyMessage message;
+        while ((message = outbox.poll()) != null) {
+            outboxSize.decrementAndGet();
+            writeQuietly(message);
+        }
+    }
+
+    private boolean isConnected() {
+        Session current = this.session;
+        return current != null && current.isOpen();
+    }
+
+    private CompletableFuture<Void> sendFrame(String frame) {
+        CompletableFuture<Void> sent = new CompletableFuture<>();
+        // read the session once, a reconnect may replace or clear it meanwhile
+        Session current = this.session;
+        if (current == null || !current.isOpen()) {
+            sent.completeExceptionally(new IOException("WebSocket session to proxy is not open"));
+            return sent;
+        }
+        current.getAsyncRemote().sendText(frame, result -> {
+            if (result.isOK()) {
+                sent.complete(null);
+            } else {
+                sent.completeExceptionally(result.getException());
+            }
+        });
+        return sent;
+    }
+
+    private void expire(String id, CompletableFuture<ProxyMessage> future) {
+        if (futureMap.remove(id, future)) {
+            if (ackReceived != null) {
+                ackReceived.remove(id);
+            }
+            future.completeExceptionally(new TimeoutException("No reply from proxy for message " + id));
+        }
+    }
+
+    private synchronized void rememberSetupMessage(ProxyMessage message) {
+        if (!"topic".equals(message.getType())) {
+            return;
+        }
+        if ("create".equals(message.getAction()) || "subscribe".equals(message.getAction())) {
+            setupMessages.add(message);
+        } else if ("unsubscribe".equals(message.getAction())) {
+            List<String> topics = topicsOf(message.getPayload());
+            if (topics == null) {
+                // unsubscribe without topics ends all subscriptions of the session
+                setupMessages.removeIf(setup -> "subscribe".equals(setup.getAction()));
+                return;
+            }
+            for (ProxyMessage setup : setupMessages) {
+                if (!"subscribe".equals(setup.getAction()) || topicsOf(setup.getPayload()) == null) {
+                    continue;
+                }
+                List<String> remaining = new ArrayList<>(topicsOf(setup.getPayload()));
+                if (!remaining.removeAll(topics)) {
+                    continue;
+                }
+                setupMessages.remove(setup);
+                if (!remaining.isEmpty()) {
+                    String group = setup.getPayload() instanceof SubscribePayload
+                            ? ((SubscribePayload) setup.getPayload()).getSubscriptionGroup() : null;
+                    setupMessages.add(ProxyMessageBuilder.subscribe(new SubscribePayload(remaining, group)));
+                }
+            }
+        }
+    }
+
+    private static List<String> topicsOf(Payload payload) {
+        if (payload instanceof SubscribePayload) {
+            return ((SubscribePayload) payload).getTopics();
+        }
+        if (payload instanceof TopicsPayload) {
+            return ((TopicsPayload) payload).getTopics();
+        }
+        return null;
+    }
+
     @OnOpen
     public void onOpen(Session session) {
         this.session = session;
@@ -96,42 +301,103 @@ public class WebSocketKafkaProxyClient extends ProxyClient {
 
     @OnClose
     public void onClose(Session userSession, CloseReason reason) {
-        logger.info("WebSocket session {} closed, close code {}", session.getId(), reason.getCloseCode());
+        logger.info("WebSocket session {} closed, close code {}", userSession.getId(), reason.getCloseCode());
         this.session = null;
-        futureMap.clear();
-        if (webSocketKafkaProxyConfig.getAckEnable()) {
-            ackReceived.clear();
+        failPending(new HiveException("WebSocket session closed with code " + reason.getCloseCode()));
+        if (!closing) {
+            disconnectedAt = System.nanoTime();
+            backoffMillis = webSocketKafkaProxyConfig.getReconnectInitialBackoffMillis();
+            scheduleReconnect();
+        }
+    }
+
+    private void scheduleReconnect() {
+        logger.info("Reconnecting to WebSocket proxy in {} ms", backoffMillis);
+        try {
+            reconnector.schedule(this::reconnect, backoffMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            logger.debug("WebSocket proxy client is shut down, no reconnect scheduled");
+        }
+    }
+
+    private void reconnect() {
+        if (closing) {
+            return;
+        }
+        try {
+            connect();
+        } catch (Exception e) {
+            logger.warn("Unable to reconnect to WebSocket proxy: {}", e.getMessage());
+            backoffMillis = Math.min(backoffMillis * 2, webSocketKafkaProxyConfig.getReconnectMaxBackoffMillis());
+            scheduleReconnect();
+            return;
+        }
+        if (closing) {
+            shutdown();
+            return;
+        }
+        long downtime = System.nanoTime() - disconnectedAt;
+        reconnects.incrementAndGet();
+        downtimeNanos.addAndGet(downtime);
+        logger.info("Reconnected to WebSocket proxy after {} ms, re-issuing {} topic messages",
+                TimeUnit.NANOSECONDS.toMillis(downtime), setupMessages.size());
+        final Session current = this.session;
+        setupMessages.forEach(setup -> request(ProxyMessage.newBuilder()
+                .withType(setup.getType())
+                .withAction(setup.getAction())
+                .withPayload(setup.getPayload())
+                .build())
+                .whenComplete((reply, e) -> {
+                    if (e != null) {
+                        // a session missing its topics is useless, drop it and go through reconnect again
+                        logger.warn("Proxy did not confirm {} of {} after reconnect: {}", setup.getAction(),
+                                setup.getPayload(), e.getMessage());
+                        closeQuietly(current);
+                    }
+                }));
+        drainOutbox();
+    }
+
+    private static void closeQuietly(Session session) {
+        if (session == null || !session.isOpen()) {
+            return;
+        }
+        try {
+            session.close(new CloseReason(CloseReason.CloseCodes.GOING_AWAY, "Re-subscription failed"));
+        } catch (IOException e) {
+            logger.warn("Error during closing connection: {}", e.getMessage());
         }
     }
 
     @OnMessage
     public void onMessage(List<ProxyMessage> messages) {
         messages.forEach(message -> {
+            String id = message.getId();
             if (message.getStatus() == null || message.getStatus() != 0) {
                 MessagePayload payload = (MessagePayload) message.getPayload();
-                String msg = "Response message is failed: " + payload.getMessage();
+                String msg = "Response message is failed: " + (payload != null ? payload.getMessage() : null);
                 logger.warn(msg);
-                throw new HiveException(msg);
+                CompletableFuture<ProxyMessage> future = id != null ? futureMap.remove(id) : null;
+                if (future != null) {
+                    future.completeExceptionally(new HiveException(msg));
+                }
+                return;
             }
 
-            String id = message.getId();
             if (id != null) {
                 CompletableFuture<ProxyMessage> future = futureMap.get(id);
                 if (future != null) {
                     if (webSocketKafkaProxyConfig.getAckEnable() && "ack".equals(message.getType())) {
-                        if (message.getStatus() != 0) {
-                            throw new HiveException("Acknowledgement failed for request id " + id);
-                        }
                         ackReceived.put(id, true);
                         logger.debug("Acknowledgement message {} received for request id {}", message, id);
                     } else {
-                        if (webSocketKafkaProxyConfig.getAckEnable() && !ackReceived.getOrDefault(id, false)) {
-                            throw new HiveException("No acknowledgement received for request id " + id);
-                        }
-                        future.complete(message);
                         futureMap.remove(id);
-                        if (webSocketKafkaProxyConfig.getAckEnable()) {
-                            ackReceived.remove(id);
+                        if (webSocketKafkaProxyConfig.getAckEnable() && ackReceived.remove(id) == null) {
+                            logger.warn("No acknowledgement received for request id {}", id);
+                            future.completeExceptionally(
+                                    new HiveException("No acknowledgement received for request id " + id));
+                        } else {
+                            future.complete(message);
                         }
                     }
                 }
@@ -139,12 +405,68 @@ public class WebSocketKafkaProxyClient extends ProxyClient {
 
             if ("notif".equals(message.getType()) && message.getAction() == null) {
                 MessagePayload payload = (MessagePayload) message.getPayload();
-                notificationHandler.handle(payload.getMessage(), this);
+                if (payload.getJson() != null) {
+                    notificationHandler.handle(payload.getJson(), this);
+                } else {
+                    notificationHandler.handle(payload.getMessage(), this);
+                }
             }
             logger.debug("Message {} was received", message);
         });
     }
 
+    private void failPending(Throwable e) {
+        futureMap.values().forEach(future -> future.completeExceptionally(e));
+        futureMap.clear();
+        if (ackReceived != null) {
+            ackReceived.clear();
+        }
+    }
+
+    private void failAll(List<String> ids, Throwable e) {
+        ids.forEach(id -> {
+            CompletableFuture<ProxyMessage> future = futureMap.remove(id);
+            if (future != null) {
+                future.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * @return number of frames sent over this session
+     */
+    public long getBatchedFrameCount() {
+        return batcher == null ? 0 : batcher.getFrameCount();
+    }
+
+    /**
+     * @return number of messages sent over this session
+     */
+    public long getBatchedMessageCount() {
+        return batcher == null ? 0 : batcher.getMessageCount();
+    }
+
+    /**
+     * @return number of sent messages that are waiting for a reply
+     */
+    public int getInFlight() {
+        return futureMap != null ? futureMap.size() : 0;
+    }
+
+    /**
+     * @return number of successful reconnects of this session
+     */
+    public long getReconnects() {
+        return reconnects.get();
+    }
+
+    /**
+     * @return total time this session spent disconnected before a successful reconnect
+     */
+    public long getDowntimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(downtimeNanos.get());
+    }
+
     public void setWebSocketKafkaProxyConfig(WebSocketKafkaProxyConfig webSocketKafkaProxyConfig) {
         this.webSocketKafkaProxyConfig = webSocketKafkaProxyConfig;
     }
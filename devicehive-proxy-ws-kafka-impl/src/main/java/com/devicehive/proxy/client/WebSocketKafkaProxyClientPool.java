@@ -0,0 +1,175 @@
+package com.devicehive.proxy.client;
+
+/*
+ * #%L
+ * DeviceHive Proxy WebSocket Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.proxy.api.NotificationHandler;
+import com.devicehive.proxy.api.ProxyClient;
+import com.devicehive.proxy.api.ProxyMessage;
+import com.devicehive.proxy.config.WebSocketKafkaProxyConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Proxy client that spreads outbound messages over several WebSocket sessions. Every message goes to the least
+ * loaded session, starting the search from a rotating position so that equally loaded sessions take turns. A
+ * session accepts at most {@link WebSocketKafkaProxyConfig#getMaxInFlight()} messages awaiting a reply; when all
+ * sessions are full the returned future fails at once, unless
+ * {@link WebSocketKafkaProxyConfig#getAcquireTimeoutMillis()} allows the caller to wait for a free slot. Replies
+ * come back on the session that sent the message, so every session resolves the futures of its own messages. A
+ * slot is freed when the future completes, which it always does: on reply, on reply timeout or on session close.
+ */
+public class WebSocketKafkaProxyClientPool extends ProxyClient {
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketKafkaProxyClientPool.class);
+
+    private final WebSocketKafkaProxyConfig proxyConfig;
+    private final WebSocketKafkaProxyClient[] clients;
+    private final Semaphore[] permits;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public WebSocketKafkaProxyClientPool(NotificationHandler notificationHandler, WebSocketKafkaProxyConfig proxyConfig) {
+        this(notificationHandler, proxyConfig, () -> new WebSocketKafkaProxyClient(notificationHandler));
+    }
+
+    WebSocketKafkaProxyClientPool(NotificationHandler notificationHandler, WebSocketKafkaProxyConfig proxyConfig,
+                                  Supplier<WebSocketKafkaProxyClient> clientFactory) {
+        super(notificationHandler);
+        this.proxyConfig = proxyConfig;
+        final int size = Math.max(1, proxyConfig.getPoolSize());
+        this.clients = new WebSocketKafkaProxyClient[size];
+        this.permits = new Semaphore[size];
+        for (int i = 0; i < size; i++) {
+            clients[i] = clientFactory.get();
+            clients[i].setWebSocketKafkaProxyConfig(proxyConfig);
+            permits[i] = new Semaphore(proxyConfig.getMaxInFlight());
+        }
+    }
+
+    @Override
+    public void start() {
+        for (WebSocketKafkaProxyClient client : clients) {
+            client.start();
+        }
+        logger.info("Started {} WebSocket proxy sessions", clients.length);
+    }
+
+    @Override
+    public void shutdown() {
+        for (WebSocketKafkaProxyClient client : clients) {
+            client.shutdown();
+        }
+    }
+
+    @Override
+    public CompletableFuture<ProxyMessage> push(ProxyMessage message) {
+        final int index = leastLoaded();
+        final Semaphore sessionPermits = permits[index];
+        try {
+            final long timeout = proxyConfig.getAcquireTimeoutMillis();
+            if (!sessionPermits.tryAcquire() &&
+                    (timeout <= 0 || !sessionPermits.tryAcquire(timeout, TimeUnit.MILLISECONDS))) {
+                logger.warn("All {} proxy sessions are busy, dropping message {}", clients.length, message.getId());
+                return failed(new TimeoutException("No proxy session available for message " + message.getId()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failed(e);
+        }
+        final CompletableFuture<ProxyMessage> future;
+        try {
+            future = clients[index].push(message);
+        } catch (RuntimeException e) {
+            sessionPermits.release();
+            throw e;
+        }
+        future.whenComplete((reply, e) -> sessionPermits.release());
+        return future;
+    }
+
+    /**
+     * Sends a message nobody waits a reply for. It takes no in-flight permit, so it never waits for a busy session.
+     */
+    @Override
+    public void send(ProxyMessage message) {
+        clients[leastLoaded()].send(message);
+    }
+
+    /**
+     * @return number of messages awaiting a reply over all sessions
+     */
+    public int getInFlight() {
+        int inFlight = 0;
+        for (Semaphore sessionPermits : permits) {
+            inFlight += proxyConfig.getMaxInFlight() - sessionPermits.availablePermits();
+        }
+        return inFlight;
+    }
+
+    /**
+     * @return number of successful reconnects over all sessions
+     */
+    public long getReconnects() {
+        long total = 0;
+        for (WebSocketKafkaProxyClient client : clients) {
+            total += client.getReconnects();
+        }
+        return total;
+    }
+
+    /**
+     * @return time all sessions together spent disconnected before a successful reconnect
+     */
+    public long getDowntimeMillis() {
+        long total = 0;
+        for (WebSocketKafkaProxyClient client : clients) {
+            total += client.getDowntimeMillis();
+        }
+        return total;
+    }
+
+    public int getPoolSize() {
+        return clients.length;
+    }
+
+    private int leastLoaded() {
+        final int start = (next.getAndIncrement() & Integer.MAX_VALUE) % clients.length;
+        int best = start;
+        for (int i = 1; i < clients.length; i++) {
+            int index = (start + i) % clients.length;
+            if (permits[index].availablePermits() > permits[best].availablePermits()) {
+                best = index;
+            }
+        }
+        return best;
+    }
+
+    private static CompletableFuture<ProxyMessage> failed(Throwable e) {
+        CompletableFuture<ProxyMessage> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+}
@@ -21,6 +21,7 @@ package com.devicehive.proxy.config;
  */
 
 import com.devicehive.api.RequestResponseMatcher;
+import com.devicehive.api.RpcMetrics;
 import com.devicehive.model.ServerEvent;
 import com.devicehive.proxy.FrontendProxyClient;
 import com.devicehive.proxy.ProxyResponseHandler;
@@ -77,9 +78,12 @@ public class FrontendProxyClientConfig {
         }
     }
 
-    @Bean
-    public RequestResponseMatcher requestResponseMatcher() {
-        return new RequestResponseMatcher();
+    @Bean(destroyMethod = "shutdown")
+    public RequestResponseMatcher requestResponseMatcher(WebSocketKafkaProxyConfig proxyConfig, RpcMetrics rpcMetrics) {
+        RequestResponseMatcher matcher = new RequestResponseMatcher(proxyConfig.getCallbackLanes(), proxyConfig.getCallbackLaneCapacity());
+        rpcMetrics.registerGauge("client.correlationMap.size", matcher::getCorrelationMapSize);
+        rpcMetrics.registerGauge("client.callback.queueDepth", matcher.getCallbackExecutor()::getQueueDepth);
+        return matcher;
     }
 
     @Bean
@@ -105,10 +109,14 @@ public class FrontendProxyClientConfig {
     }
 
     @Bean
-    public RpcClient rpcClient(NotificationHandler notificationHandler, WebSocketKafkaProxyConfig proxyConfig, RequestResponseMatcher requestResponseMatcher, Gson gson, WorkerPool<ServerEvent> workerPool) {
+    public RpcClient rpcClient(NotificationHandler notificationHandler, WebSocketKafkaProxyConfig proxyConfig, RequestResponseMatcher requestResponseMatcher, Gson gson, WorkerPool<ServerEvent> workerPool,
+                               RpcMetrics rpcMetrics) {
         final ExecutorService execService = Executors.newFixedThreadPool(proxyConfig.getWorkerThreads());
         RingBuffer<ServerEvent> ringBuffer = workerPool.start(execService);
-        RpcClient client = new FrontendProxyClient(REQUEST_TOPIC, RESPONSE_TOPIC, proxyConfig, notificationHandler, requestResponseMatcher, gson, ringBuffer);
+        rpcMetrics.registerGauge("client.ringBuffer.remainingCapacity", ringBuffer::remainingCapacity);
+        FrontendProxyClient client = new FrontendProxyClient(REQUEST_TOPIC, RESPONSE_TOPIC, proxyConfig, notificationHandler, requestResponseMatcher, gson, ringBuffer, rpcMetrics);
+        rpcMetrics.registerGauge("client.proxy.reconnects", client::getReconnects);
+        rpcMetrics.registerGauge("client.proxy.downtimeMs", client::getDowntimeMillis);
         client.start();
         return client;
     }
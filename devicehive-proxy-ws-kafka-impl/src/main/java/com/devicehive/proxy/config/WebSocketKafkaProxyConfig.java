@@ -49,6 +49,42 @@ public class WebSocketKafkaProxyConfig {
     @Value("${proxy.ack.enable:false}")
     private boolean ackEnable;
 
+    @Value("${proxy.message.raw:false}")
+    private boolean rawMessages;
+
+    @Value("${proxy.connection.pool-size:1}")
+    private int poolSize;
+
+    @Value("${proxy.connection.max-in-flight:1024}")
+    private int maxInFlight;
+
+    @Value("${proxy.connection.acquire-timeout-ms:0}")
+    private long acquireTimeoutMillis;
+
+    @Value("${proxy.batch.max-size:1}")
+    private int batchMaxSize;
+
+    @Value("${proxy.batch.linger-ms:5}")
+    private long batchLingerMillis;
+
+    @Value("${proxy.reply.max-pending:10000}")
+    private int maxPendingReplies;
+
+    @Value("${proxy.reply.timeout-ms:30000}")
+    private long replyTimeoutMillis;
+
+    @Value("${proxy.reconnect.initial-backoff-ms:500}")
+    private long reconnectInitialBackoffMillis;
+
+    @Value("${proxy.reconnect.max-backoff-ms:30000}")
+    private long reconnectMaxBackoffMillis;
+
+    @Value("${proxy.callback.lanes:4}")
+    private int callbackLanes;
+
+    @Value("${proxy.callback.lane-capacity:1024}")
+    private int callbackLaneCapacity;
+
     public String getProxyConnect() {
         return proxyConnect;
     }
@@ -76,4 +112,64 @@ public class WebSocketKafkaProxyConfig {
     public boolean getAckEnable() {
         return ackEnable;
     }
+
+    /**
+     * @return whether messages are embedded in proxy frames as raw JSON values instead of JSON strings
+     */
+    public boolean getRawMessages() {
+        return rawMessages;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @return how long a push may wait for a free session slot, 0 fails the push at once when all sessions are full
+     */
+    public long getAcquireTimeoutMillis() {
+        return acquireTimeoutMillis;
+    }
+
+    /**
+     * @return max number of messages sent in one array frame, 1 disables batching
+     */
+    public int getBatchMaxSize() {
+        return batchMaxSize;
+    }
+
+    public long getBatchLingerMillis() {
+        return batchLingerMillis;
+    }
+
+    /**
+     * @return max number of messages a single session keeps waiting for a reply
+     */
+    public int getMaxPendingReplies() {
+        return maxPendingReplies;
+    }
+
+    public long getReplyTimeoutMillis() {
+        return replyTimeoutMillis;
+    }
+
+    public long getReconnectInitialBackoffMillis() {
+        return reconnectInitialBackoffMillis;
+    }
+
+    public long getReconnectMaxBackoffMillis() {
+        return reconnectMaxBackoffMillis;
+    }
+
+    public int getCallbackLanes() {
+        return callbackLanes;
+    }
+
+    public int getCallbackLaneCapacity() {
+        return callbackLaneCapacity;
+    }
 }
@@ -0,0 +1,272 @@
+package com.devicehive.proxy.client;
+
+/*
+ * #%L
+ * DeviceHive Proxy WebSocket Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.proxy.api.ProxyMessage;
+import com.devicehive.proxy.api.payload.*;
+import com.google.gson.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class GsonProxyMessageDecoderTest {
+
+    private static final Gson gson = new Gson();
+
+    private final GsonProxyMessageDecoder decoder = new GsonProxyMessageDecoder();
+
+    @Test
+    public void shouldDecodeEveryTypeAndStatusLikeTreeMapping() throws Exception {
+        List<List<String>> messages = Arrays.asList(
+                fields("topic", "create", "0", "{\"t\":[\"a\",\"b\"]}"),
+                fields("topic", "list", "0", "{\"t\":[\"a\"]}"),
+                fields("topic", "subscribe", "0", "{\"t\":[\"a\"],\"sg\":\"group\"}"),
+                fields("topic", "unsubscribe", "0", "{\"t\":[\"a\"]}"),
+                fields("health", null, "0", "{\"prx\":\"Available\",\"mb\":\"Available\",\"mbfp\":12.5,\"comm\":\"Available\"}"),
+                fields("notif", null, "0", "{\"m\":\"text\"}"),
+                fields("notif", null, "0", "{\"m\":{\"a\":1,\"b\":[1,\"2\",null]}}"),
+                fields("notif", null, "0", "{\"m\":[1,2]}"),
+                fields("notif", null, "0", "{\"m\":42}"),
+                fields("notif", null, "0", "{\"m\":true}"),
+                fields("notif", null, "0", "{\"m\":null}"),
+                fields("notif", null, "0", "{}"),
+                fields("notif", "create", "0", "{\"m\":\"text\"}"),
+                fields("ack", null, "0", "{\"m\":\"text\"}"),
+                fields("topic", "create", "1", "{\"m\":\"Topic exists\"}"),
+                fields("notif", null, "1", "{\"m\":\"Error\"}"),
+                fields("health", null, "500", "{\"m\":\"Unavailable\"}"),
+                fields("topic", "create", null, "{\"m\":\"No status\"}"),
+                fields("notif", null, null, "{\"m\":\"No status\"}"));
+
+        for (List<String> message : messages) {
+            forEachOrder(message, this::assertSameAsTreeMapping);
+        }
+    }
+
+    @Test
+    public void shouldSkipUnknownFieldsInAnyOrder() throws Exception {
+        List<List<String>> messages = Arrays.asList(
+                with(fields("topic", "subscribe", "0", "{\"x\":{\"y\":[1,{\"z\":null}]},\"t\":[\"a\"],\"sg\":\"g\",\"q\":1}"),
+                        "\"unknown\":{\"nested\":[1,{\"deep\":\"value\"}]}"),
+                with(fields("notif", null, "0", "{\"x\":[1],\"m\":{\"a\":1},\"y\":\"z\"}"), "\"u\":null"),
+                with(fields("notif", null, "0", "{\"x\":[1],\"m\":\"text\"}"), "\"u\":[\"a\",{\"b\":2}]"),
+                with(fields("health", null, "0", "{\"prx\":\"Available\",\"other\":false}"), "\"u\":3.5"));
+
+        for (List<String> message : messages) {
+            forEachOrder(message, this::assertSameAsTreeMapping);
+        }
+    }
+
+    @Test
+    public void shouldDecodeNullAndAbsentPayloads() throws Exception {
+        List<List<String>> messages = new ArrayList<>();
+        for (String[] envelope : new String[][]{{"topic", "create", "0"}, {"notif", null, "0"}, {"health", null, "0"},
+                {"topic", "subscribe", "1"}, {"notif", null, null}}) {
+            messages.add(fields(envelope[0], envelope[1], envelope[2], "null"));
+            messages.add(fields(envelope[0], envelope[1], envelope[2], null));
+        }
+        messages.add(Arrays.asList("\"t\":\"notif\"", "\"s\":0", "\"p\":{\"m\":\"no id\"}"));
+
+        for (List<String> message : messages) {
+            forEachOrder(message, frame -> {
+                assertSameAsTreeMapping(frame);
+                if (frame.contains("\"p\":null") || !frame.contains("\"p\"")) {
+                    assertNull(frame, decode(frame).get(0).getPayload());
+                }
+            });
+        }
+    }
+
+    @Test
+    public void shouldDecodeArrayFrames() throws Exception {
+        String frame = "[" + String.join(",",
+                object(fields("topic", "create", "0", "{\"t\":[\"a\"]}")),
+                object(fields("notif", null, "0", "{\"m\":{\"a\":1}}")),
+                object(Arrays.asList("\"p\":{\"m\":\"Error\"}", "\"s\":1", "\"t\":\"topic\"", "\"a\":\"subscribe\""))) + "]";
+
+        assertSameAsTreeMapping(frame);
+        assertEquals(3, decode(frame).size());
+        assertTrue(decoder.decode("[]").isEmpty());
+    }
+
+    @Test
+    public void shouldKeepRawMessageAsTree() throws Exception {
+        ProxyMessage payloadFirst = decode("{\"p\":{\"m\":{\"a\":[1,2]}},\"t\":\"notif\",\"s\":0}").get(0);
+        ProxyMessage payloadLast = decode("{\"t\":\"notif\",\"s\":0,\"p\":{\"m\":{\"a\":[1,2]}}}").get(0);
+        ProxyMessage string = decode("{\"t\":\"notif\",\"s\":0,\"p\":{\"m\":\"{\\\"a\\\":[1,2]}\"}}").get(0);
+
+        for (ProxyMessage message : Arrays.asList(payloadFirst, payloadLast)) {
+            MessagePayload payload = (MessagePayload) message.getPayload();
+            assertEquals(new JsonParser().parse("{\"a\":[1,2]}"), payload.getJson());
+            assertEquals("{\"a\":[1,2]}", payload.getMessage());
+        }
+        assertNull(((MessagePayload) string.getPayload()).getJson());
+        assertEquals("{\"a\":[1,2]}", ((MessagePayload) string.getPayload()).getMessage());
+    }
+
+    @Test
+    public void shouldRejectMessageWithoutType() {
+        for (String frame : Arrays.asList("{\"id\":\"1\",\"s\":0}", "[{\"t\":\"notif\",\"s\":0},{\"s\":0}]")) {
+            try {
+                decoder.decode(frame);
+                fail(frame);
+            } catch (Exception e) {
+                assertTrue(e.toString(), e instanceof JsonParseException);
+            }
+        }
+    }
+
+    private void assertSameAsTreeMapping(String frame) {
+        List<ProxyMessage> expected = treeMapping(frame);
+        List<ProxyMessage> actual = decode(frame);
+        assertEquals(frame, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(frame, describe(expected.get(i)), describe(actual.get(i)));
+        }
+    }
+
+    private List<ProxyMessage> decode(String frame) {
+        try {
+            return decoder.decode(frame);
+        } catch (Exception e) {
+            throw new AssertionError("Unable to decode " + frame, e);
+        }
+    }
+
+    private static String describe(ProxyMessage message) {
+        Payload payload = message.getPayload();
+        StringBuilder description = new StringBuilder()
+                .append(message.getId()).append('|')
+                .append(message.getType()).append('|')
+                .append(message.getAction()).append('|')
+                .append(message.getStatus()).append('|')
+                .append(payload != null ? payload.getClass().getSimpleName() : null).append('|')
+                .append(gson.toJson(payload));
+        if (payload instanceof MessagePayload) {
+            description.append('|').append(((MessagePayload) payload).getMessage())
+                    .append('|').append(((MessagePayload) payload).getJson());
+        }
+        return description.toString();
+    }
+
+    private static List<String> fields(String type, String action, String status, String payload) {
+        List<String> fields = new ArrayList<>();
+        fields.add("\"id\":\"" + type + "-" + action + "-" + status + "\"");
+        fields.add("\"t\":\"" + type + "\"");
+        if (action != null) {
+            fields.add("\"a\":\"" + action + "\"");
+        }
+        if (status != null) {
+            fields.add("\"s\":" + status);
+        }
+        if (payload != null) {
+            fields.add("\"p\":" + payload);
+        }
+        return fields;
+    }
+
+    private static List<String> with(List<String> fields, String field) {
+        List<String> extended = new ArrayList<>(fields);
+        extended.add(field);
+        return extended;
+    }
+
+    private static String object(List<String> fields) {
+        return "{" + String.join(",", fields) + "}";
+    }
+
+    /**
+     * Calls the check with the message fields in every possible order.
+     */
+    private static void forEachOrder(List<String> fields, Consumer<String> check) {
+        permute(new ArrayList<>(fields), 0, check);
+    }
+
+    private static void permute(List<String> fields, int from, Consumer<String> check) {
+        if (from == fields.size()) {
+            check.accept(object(fields));
+            return;
+        }
+        for (int i = from; i < fields.size(); i++) {
+            Collections.swap(fields, from, i);
+            permute(fields, from + 1, check);
+            Collections.swap(fields, from, i);
+        }
+    }
+
+    /**
+     * Mapping of the former decoder, which parsed the whole frame into a tree before binding it.
+     */
+    private static List<ProxyMessage> treeMapping(String frame) {
+        JsonElement element = new JsonParser().parse(frame);
+        List<ProxyMessage> list = new ArrayList<>();
+        if (element.isJsonArray()) {
+            element.getAsJsonArray().forEach(message -> list.add(treeMapping(message.getAsJsonObject())));
+        } else {
+            list.add(treeMapping(element.getAsJsonObject()));
+        }
+        return list;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ProxyMessage treeMapping(JsonObject object) {
+        JsonElement t = object.get("t");
+        JsonElement a = object.get("a");
+        String type = a != null ? t.getAsString() + "/" + a.getAsString() : t.getAsString();
+        Integer status = object.get("s") != null ? object.get("s").getAsInt() : null;
+        ProxyMessage.Builder decoded = ProxyMessage.newBuilder()
+                .withId(object.get("id") != null ? object.get("id").getAsString() : null)
+                .withType(t.getAsString())
+                .withAction(a != null ? a.getAsString() : null)
+                .withStatus(status);
+        JsonElement p = object.get("p");
+        if (p != null) {
+            if (status != null && status == 0) {
+                switch (type) {
+                    case "topic/create":
+                    case "topic/list":
+                        decoded.withPayload(gson.fromJson(p, TopicsPayload.class));
+                        break;
+                    case "topic/subscribe":
+                        decoded.withPayload(gson.fromJson(p, SubscribePayload.class));
+                        break;
+                    case "notif":
+                        JsonElement m = p.isJsonObject() ? p.getAsJsonObject().get("m") : null;
+                        decoded.withPayload(m != null && (m.isJsonObject() || m.isJsonArray())
+                                ? new MessagePayload(m) : gson.fromJson(p, MessagePayload.class));
+                        break;
+                    case "health":
+                        decoded.withPayload(gson.fromJson(p, HealthPayload.class));
+                        break;
+                }
+            } else {
+                decoded.withPayload(gson.fromJson(p, MessagePayload.class));
+            }
+        }
+        return decoded.build();
+    }
+}
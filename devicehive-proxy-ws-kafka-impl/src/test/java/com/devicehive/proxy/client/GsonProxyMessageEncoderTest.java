@@ -0,0 +1,129 @@
+package com.devicehive.proxy.client;
+
+/*
+ * #%L
+ * DeviceHive Proxy WebSocket Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.proxy.api.ProxyMessage;
+import com.devicehive.proxy.api.ProxyMessageBuilder;
+import com.devicehive.proxy.api.payload.NotificationCreatePayload;
+import com.devicehive.proxy.api.payload.SubscribePayload;
+import com.devicehive.proxy.api.payload.TopicsPayload;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GsonProxyMessageEncoderTest {
+
+    private static final Gson gson = new Gson();
+    private static final JsonParser parser = new JsonParser();
+
+    private static final List<String> MESSAGES = Arrays.asList(
+            "{\"action\":\"notification/insert\",\"notification\":{\"id\":1,\"parameters\":{\"t\":21.5}}}",
+            "[1,2.5,true,null,\"x\"]",
+            "{\"quote\":\"say \\\"hi\\\"\",\"slash\":\"a\\\\b\\/c\",\"control\":\"line\\nbreak\\ttab\\u0001\"}",
+            "{\"html\":\"<b>&amp;</b> = 'x'\",\"unicode\":\"é中😀\",\"escaped\":\"\\u2028\\u2029\"}",
+            "{\"nested\":{\"deep\":[{\"a\":{}},[]]},\"empty\":\"\"}",
+            "\"plain string\"",
+            "42");
+
+    private final GsonProxyMessageEncoder stringEncoder = new GsonProxyMessageEncoder(false);
+    private final GsonProxyMessageEncoder rawEncoder = new GsonProxyMessageEncoder(true);
+
+    @Test
+    public void shouldEncodeNotificationLikeGson() throws Exception {
+        for (ProxyMessage message : notifications()) {
+            assertEquals(gson.toJson(message), parser.parse(gson.toJson(message)),
+                    parser.parse(stringEncoder.encode(message)));
+        }
+    }
+
+    @Test
+    public void shouldEncodePlainNotificationToSameText() throws Exception {
+        ProxyMessage message = ProxyMessage.newBuilder()
+                .withId("id")
+                .withType("notif")
+                .withAction("create")
+                .withPayload(new NotificationCreatePayload("topic", "{\"a\":[1,\"b\"]}", "3"))
+                .build();
+
+        assertEquals(gson.toJson(message), stringEncoder.encode(message));
+    }
+
+    @Test
+    public void shouldSpliceRawMessageAsJsonValue() throws Exception {
+        for (ProxyMessage message : notifications()) {
+            NotificationCreatePayload payload = (NotificationCreatePayload) message.getPayload();
+            JsonObject expected = parser.parse(gson.toJson(message)).getAsJsonObject();
+            if (payload.getMessage() != null) {
+                // the only difference to the string form is the message embedded as a value
+                expected.getAsJsonObject("p").add("m", parser.parse(payload.getMessage()));
+            }
+
+            String encoded = rawEncoder.encode(message);
+            assertEquals(encoded, expected, parser.parse(encoded));
+            if (payload.getMessage() != null) {
+                assertTrue(encoded, encoded.contains("\"m\":" + payload.getMessage()));
+            }
+        }
+    }
+
+    @Test
+    public void shouldEncodeOtherMessagesWithGson() throws Exception {
+        List<ProxyMessage> messages = Arrays.asList(
+                ProxyMessageBuilder.create(new TopicsPayload(Arrays.asList("a", "b"))),
+                ProxyMessageBuilder.subscribe(new SubscribePayload("a", "group")),
+                ProxyMessageBuilder.unsubscribe(),
+                ProxyMessageBuilder.list(),
+                ProxyMessageBuilder.health());
+
+        for (ProxyMessage message : messages) {
+            assertEquals(gson.toJson(message), stringEncoder.encode(message));
+            assertEquals(gson.toJson(message), rawEncoder.encode(message));
+        }
+    }
+
+    private static List<ProxyMessage> notifications() {
+        List<ProxyMessage> notifications = new ArrayList<>();
+        List<String> messages = new ArrayList<>(MESSAGES);
+        messages.add(null);
+        for (String message : messages) {
+            notifications.add(ProxyMessageBuilder.notification(new NotificationCreatePayload("topic", message)));
+            notifications.add(ProxyMessage.newBuilder()
+                    .withType("notif")
+                    .withAction("create")
+                    .withStatus(0)
+                    .withPayload(new NotificationCreatePayload("topic", message, null))
+                    .build());
+            notifications.add(ProxyMessage.newBuilder()
+                    .withId(null)
+                    .withType("notif")
+                    .withPayload(new NotificationCreatePayload(null, message, "7"))
+                    .build());
+        }
+        return notifications;
+    }
+}
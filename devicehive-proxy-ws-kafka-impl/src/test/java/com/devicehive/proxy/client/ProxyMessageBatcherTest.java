@@ -0,0 +1,140 @@
+package com.devicehive.proxy.client;
+
+/*
+ * #%L
+ * DeviceHive Proxy WebSocket Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ProxyMessageBatcherTest {
+
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final List<CompletableFuture<Void>> pending = new CopyOnWriteArrayList<>();
+    private final List<String> failedIds = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void shouldSendFullBatchAsArrayFrame() throws Exception {
+        ProxyMessageBatcher batcher = new ProxyMessageBatcher(3, 60000, completedSender(), this::failed);
+
+        batcher.add("1", "{\"a\":1}");
+        batcher.add("2", "{\"a\":2}");
+        assertTrue(sent.isEmpty());
+        batcher.add("3", "{\"a\":3}");
+
+        assertEquals(Collections.singletonList("[{\"a\":1},{\"a\":2},{\"a\":3}]"), sent);
+        assertEquals(1, batcher.getFrameCount());
+        assertEquals(3, batcher.getMessageCount());
+    }
+
+    @Test
+    public void shouldSendSingleMessageAsPlainObjectAfterLinger() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        ProxyMessageBatcher batcher = new ProxyMessageBatcher(10, 10, frame -> {
+            sent.add(frame);
+            latch.countDown();
+            return CompletableFuture.completedFuture(null);
+        }, this::failed);
+
+        batcher.add("1", "{\"a\":1}");
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("{\"a\":1}"), sent);
+    }
+
+    @Test
+    public void shouldKeepOneFrameInFlightAndPreserveOrder() throws Exception {
+        ProxyMessageBatcher batcher = new ProxyMessageBatcher(2, 60000, frame -> {
+            sent.add(frame);
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            pending.add(future);
+            return future;
+        }, this::failed);
+
+        for (int i = 1; i <= 6; i++) {
+            batcher.add(String.valueOf(i), String.valueOf(i));
+        }
+        // the adding thread returned although no send has completed
+        assertEquals(Collections.singletonList("[1,2]"), sent);
+
+        pending.get(0).complete(null);
+        assertEquals(Arrays.asList("[1,2]", "[3,4]"), sent);
+        pending.get(1).complete(null);
+        pending.get(2).complete(null);
+
+        assertEquals(Arrays.asList("[1,2]", "[3,4]", "[5,6]"), sent);
+        assertEquals(3, batcher.getFrameCount());
+        assertEquals(6, batcher.getMessageCount());
+    }
+
+    @Test
+    public void shouldReportMessagesOfFailedFrameAndGoOn() throws Exception {
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        CompletableFuture<Void> failure = new CompletableFuture<>();
+        failure.completeExceptionally(new IllegalStateException("session is closed"));
+        results.add(failure);
+        results.add(CompletableFuture.completedFuture(null));
+        ProxyMessageBatcher batcher = new ProxyMessageBatcher(2, 60000, frame -> {
+            sent.add(frame);
+            return results.remove(0);
+        }, this::failed);
+
+        batcher.add("1", "1");
+        batcher.add("2", "2");
+        batcher.add("3", "3");
+        batcher.add("4", "4");
+
+        assertEquals(Arrays.asList("1", "2"), failedIds);
+        assertEquals(Arrays.asList("[1,2]", "[3,4]"), sent);
+        assertEquals(1, batcher.getFrameCount());
+    }
+
+    @Test
+    public void shouldTreatThrowingSenderAsFailedFrame() throws Exception {
+        ProxyMessageBatcher batcher = new ProxyMessageBatcher(1, 60000, frame -> {
+            throw new NullPointerException();
+        }, this::failed);
+
+        batcher.add("1", "1");
+
+        assertEquals(Collections.singletonList("1"), failedIds);
+        assertEquals(0, batcher.getFrameCount());
+    }
+
+    private ProxyMessageBatcher.FrameSender completedSender() {
+        return frame -> {
+            sent.add(frame);
+            return CompletableFuture.completedFuture(null);
+        };
+    }
+
+    private void failed(List<String> ids, Throwable e) {
+        failedIds.addAll(ids);
+    }
+}
@@ -0,0 +1,185 @@
+package com.devicehive.proxy.client;
+
+/*
+ * #%L
+ * DeviceHive Proxy WebSocket Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.proxy.api.NotificationHandler;
+import com.devicehive.proxy.api.ProxyMessage;
+import com.devicehive.proxy.api.ProxyMessageBuilder;
+import com.devicehive.proxy.config.WebSocketKafkaProxyConfig;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class WebSocketKafkaProxyClientPoolTest {
+
+    private final WebSocketKafkaProxyConfig config = new WebSocketKafkaProxyConfig();
+    private final List<WebSocketKafkaProxyClient> clients = new ArrayList<>();
+    private final List<List<CompletableFuture<ProxyMessage>>> replies = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(config, "poolSize", 3);
+        ReflectionTestUtils.setField(config, "maxInFlight", 2);
+        ReflectionTestUtils.setField(config, "acquireTimeoutMillis", 0L);
+    }
+
+    @Test
+    public void shouldPickLeastLoadedSession() {
+        WebSocketKafkaProxyClientPool pool = pool();
+
+        for (int i = 0; i < 3; i++) {
+            pool.push(ProxyMessageBuilder.health());
+        }
+        // equally loaded sessions take turns
+        for (List<CompletableFuture<ProxyMessage>> sessionReplies : replies) {
+            assertEquals(1, sessionReplies.size());
+        }
+
+        // whatever the rotating start, the only idle session gets the next message
+        replies.get(1).get(0).complete(ProxyMessageBuilder.health());
+        pool.push(ProxyMessageBuilder.health());
+
+        assertEquals(1, replies.get(0).size());
+        assertEquals(2, replies.get(1).size());
+        assertEquals(1, replies.get(2).size());
+        assertEquals(3, pool.getInFlight());
+    }
+
+    @Test
+    public void shouldReleasePermitWhenReplyCompletes() {
+        ReflectionTestUtils.setField(config, "poolSize", 1);
+        WebSocketKafkaProxyClientPool pool = pool();
+
+        CompletableFuture<ProxyMessage> replied = pool.push(ProxyMessageBuilder.health());
+        CompletableFuture<ProxyMessage> failed = pool.push(ProxyMessageBuilder.health());
+        assertEquals(2, pool.getInFlight());
+
+        replies.get(0).get(0).complete(ProxyMessageBuilder.health());
+        assertEquals(1, pool.getInFlight());
+        replies.get(0).get(1).completeExceptionally(new TimeoutException("No reply"));
+        assertEquals(0, pool.getInFlight());
+        assertTrue(replied.isDone() && !replied.isCompletedExceptionally());
+        assertTrue(failed.isCompletedExceptionally());
+    }
+
+    @Test
+    public void shouldReleasePermitWhenSessionThrows() {
+        ReflectionTestUtils.setField(config, "poolSize", 1);
+        WebSocketKafkaProxyClientPool pool = pool();
+        when(clients.get(0).push(any(ProxyMessage.class))).thenThrow(new IllegalStateException("Encoder failed"));
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                pool.push(ProxyMessageBuilder.health());
+                fail();
+            } catch (IllegalStateException e) {
+                assertEquals(0, pool.getInFlight());
+            }
+        }
+    }
+
+    @Test
+    public void shouldFailFastWhenAllSessionsAreBusy() throws Exception {
+        WebSocketKafkaProxyClientPool pool = pool();
+        for (int i = 0; i < 6; i++) {
+            pool.push(ProxyMessageBuilder.health());
+        }
+
+        CompletableFuture<ProxyMessage> rejected = pool.push(ProxyMessageBuilder.health());
+
+        assertTrue(rejected.isCompletedExceptionally());
+        try {
+            rejected.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        clients.forEach(client -> verify(client, times(2)).push(any(ProxyMessage.class)));
+        assertEquals(6, pool.getInFlight());
+    }
+
+    @Test(timeout = 10000)
+    public void shouldWaitForFreeSlotWithinAcquireTimeout() throws Exception {
+        ReflectionTestUtils.setField(config, "poolSize", 1);
+        ReflectionTestUtils.setField(config, "maxInFlight", 1);
+        ReflectionTestUtils.setField(config, "acquireTimeoutMillis", 5000L);
+        WebSocketKafkaProxyClientPool pool = pool();
+        pool.push(ProxyMessageBuilder.health());
+
+        CompletableFuture<CompletableFuture<ProxyMessage>> waiting =
+                CompletableFuture.supplyAsync(() -> pool.push(ProxyMessageBuilder.health()));
+        Thread.sleep(50);
+        assertFalse(waiting.isDone());
+        replies.get(0).get(0).complete(ProxyMessageBuilder.health());
+
+        assertFalse(waiting.get().isCompletedExceptionally());
+        assertEquals(2, replies.get(0).size());
+    }
+
+    @Test
+    public void shouldSendWithoutPermit() {
+        ReflectionTestUtils.setField(config, "maxInFlight", 1);
+        WebSocketKafkaProxyClientPool pool = pool();
+        for (int i = 0; i < 3; i++) {
+            pool.push(ProxyMessageBuilder.health());
+        }
+
+        ProxyMessage message = ProxyMessageBuilder.health();
+        pool.send(message);
+
+        assertEquals(3, pool.getInFlight());
+        assertEquals(1, clients.stream().filter(client -> {
+            try {
+                verify(client).send(message);
+                return true;
+            } catch (AssertionError e) {
+                return false;
+            }
+        }).count());
+    }
+
+    private WebSocketKafkaProxyClientPool pool() {
+        return new WebSocketKafkaProxyClientPool(mock(NotificationHandler.class), config, () -> {
+            WebSocketKafkaProxyClient client = mock(WebSocketKafkaProxyClient.class);
+            List<CompletableFuture<ProxyMessage>> sessionReplies = new CopyOnWriteArrayList<>();
+            when(client.push(any(ProxyMessage.class))).thenAnswer(invocation -> {
+                CompletableFuture<ProxyMessage> reply = new CompletableFuture<>();
+                sessionReplies.add(reply);
+                return reply;
+            });
+            clients.add(client);
+            replies.add(sessionReplies);
+            return client;
+        });
+    }
+}
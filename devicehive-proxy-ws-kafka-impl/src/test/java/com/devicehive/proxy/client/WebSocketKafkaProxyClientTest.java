@@ -0,0 +1,255 @@
+package com.devicehive.proxy.client;
+
+/*
+ * #%L
+ * DeviceHive Proxy WebSocket Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.exceptions.HiveException;
+import com.devicehive.proxy.api.NotificationHandler;
+import com.devicehive.proxy.api.ProxyMessage;
+import com.devicehive.proxy.api.ProxyMessageBuilder;
+import com.devicehive.proxy.api.payload.NotificationCreatePayload;
+import com.devicehive.proxy.api.payload.SubscribePayload;
+import com.devicehive.proxy.api.payload.TopicsPayload;
+import com.devicehive.proxy.config.WebSocketKafkaProxyConfig;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.websocket.CloseReason;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+
+public class WebSocketKafkaProxyClientTest {
+
+    private final WebSocketKafkaProxyConfig config = new WebSocketKafkaProxyConfig();
+    private final List<List<String>> frames = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean proxyDown = new AtomicBoolean();
+    private TestClient client;
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(config, "proxyConnect", "localhost:3000");
+        ReflectionTestUtils.setField(config, "batchMaxSize", 1);
+        ReflectionTestUtils.setField(config, "batchLingerMillis", 5L);
+        ReflectionTestUtils.setField(config, "maxPendingReplies", 100);
+        ReflectionTestUtils.setField(config, "replyTimeoutMillis", 30000L);
+        ReflectionTestUtils.setField(config, "reconnectInitialBackoffMillis", 10L);
+        ReflectionTestUtils.setField(config, "reconnectMaxBackoffMillis", 20L);
+        client = new TestClient();
+        client.setWebSocketKafkaProxyConfig(config);
+    }
+
+    @After
+    public void tearDown() {
+        client.shutdown();
+    }
+
+    @Test(timeout = 10000)
+    public void shouldReplayOutboxAfterReconnect() throws Exception {
+        client.start();
+        proxyDown.set(true);
+        client.drop();
+
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ProxyMessage message = ProxyMessageBuilder.notification(new NotificationCreatePayload("topic", "m" + i));
+            ids.add(message.getId());
+            client.send(message);
+        }
+        assertEquals(1, frames.size());
+        assertTrue(frames.get(0).isEmpty());
+
+        proxyDown.set(false);
+        await(() -> client.getReconnects() == 1);
+        await(() -> frames.size() == 2 && frames.get(1).size() == 3);
+
+        assertEquals(ids, idsOf(frames.get(1)));
+    }
+
+    @Test(timeout = 10000)
+    public void shouldReissueTopicMessagesAfterReconnect() throws Exception {
+        client.start();
+        ProxyMessage create = ProxyMessageBuilder.create(new TopicsPayload(Arrays.asList("a", "b")));
+        ProxyMessage subscribe = ProxyMessageBuilder.subscribe(new SubscribePayload(Arrays.asList("a", "b"), "g"));
+        ProxyMessage unsubscribe = ProxyMessage.newBuilder()
+                .withType("topic")
+                .withAction("unsubscribe")
+                .withPayload(new TopicsPayload(Collections.singletonList("a")))
+                .build();
+        reply(client.push(create), create);
+        reply(client.push(subscribe), subscribe);
+        reply(client.push(unsubscribe), unsubscribe);
+
+        client.drop();
+        await(() -> client.getReconnects() == 1);
+        await(() -> frames.size() == 2 && frames.get(1).size() == 2);
+
+        JsonObject createFrame = parse(frames.get(1).get(0));
+        assertEquals("create", createFrame.get("a").getAsString());
+        assertEquals("[\"a\",\"b\"]", createFrame.getAsJsonObject("p").get("t").toString());
+        assertNotEquals(create.getId(), createFrame.get("id").getAsString());
+        // the unsubscribe narrowed the subscription down to the remaining topic
+        JsonObject subscribeFrame = parse(frames.get(1).get(1));
+        assertEquals("subscribe", subscribeFrame.get("a").getAsString());
+        assertEquals("[\"b\"]", subscribeFrame.getAsJsonObject("p").get("t").toString());
+        assertEquals("g", subscribeFrame.getAsJsonObject("p").get("sg").getAsString());
+    }
+
+    @Test(timeout = 10000)
+    public void shouldFailRepliesDuringOutageAndReconnectAgainWhenReissueExpires() throws Exception {
+        ReflectionTestUtils.setField(config, "replyTimeoutMillis", 100L);
+        client.start();
+        reply(client.push(ProxyMessageBuilder.subscribe(new SubscribePayload("a"))), null);
+        CompletableFuture<ProxyMessage> pending = client.push(ProxyMessageBuilder.health());
+
+        proxyDown.set(true);
+        client.drop();
+        assertFailure(pending, HiveException.class);
+        assertFailure(client.push(ProxyMessageBuilder.health()), HiveException.class);
+        assertEquals(0, client.getInFlight());
+
+        // the proxy is back but never confirms the re-issued subscription, so the new session is dropped again
+        proxyDown.set(false);
+        await(() -> client.getReconnects() >= 2);
+        assertTrue(frames.size() >= 3);
+        assertEquals("subscribe", parse(frames.get(1).get(0)).get("a").getAsString());
+    }
+
+    private void reply(CompletableFuture<ProxyMessage> future, ProxyMessage request) throws Exception {
+        String id = request != null ? request.getId() : parse(last()).get("id").getAsString();
+        client.onMessage(Collections.singletonList(ProxyMessage.newBuilder()
+                .withId(id)
+                .withType("topic")
+                .withStatus(0)
+                .build()));
+        future.get(5, TimeUnit.SECONDS);
+    }
+
+    private String last() {
+        List<String> current = frames.get(frames.size() - 1);
+        return current.get(current.size() - 1);
+    }
+
+    private static void assertFailure(CompletableFuture<ProxyMessage> future, Class<? extends Throwable> type)
+            throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected " + type.getSimpleName());
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().toString(), type.isInstance(e.getCause()));
+        } catch (TimeoutException e) {
+            fail("Future was not completed");
+        }
+    }
+
+    private static List<String> idsOf(List<String> sent) {
+        List<String> ids = new ArrayList<>();
+        sent.forEach(frame -> ids.add(parse(frame).get("id").getAsString()));
+        return ids;
+    }
+
+    private static JsonObject parse(String frame) {
+        return new JsonParser().parse(frame).getAsJsonObject();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        while (!condition.getAsBoolean()) {
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Connects to mocked sessions that record sent frames and report a send as done right away.
+     */
+    private class TestClient extends WebSocketKafkaProxyClient {
+
+        private volatile Session current;
+
+        TestClient() {
+            super(Mockito.mock(NotificationHandler.class));
+        }
+
+        @Override
+        void connect() throws Exception {
+            if (proxyDown.get()) {
+                throw new java.io.IOException("Connection refused");
+            }
+            List<String> sent = new CopyOnWriteArrayList<>();
+            AtomicBoolean open = new AtomicBoolean(true);
+            Session session = Mockito.mock(Session.class);
+            RemoteEndpoint.Async remote = Mockito.mock(RemoteEndpoint.Async.class);
+            Mockito.when(session.getId()).thenReturn(String.valueOf(frames.size()));
+            Mockito.when(session.isOpen()).thenAnswer(invocation -> open.get());
+            Mockito.when(session.getAsyncRemote()).thenReturn(remote);
+            Mockito.doAnswer(invocation -> {
+                sent.add((String) invocation.getArguments()[0]);
+                ((SendHandler) invocation.getArguments()[1]).onResult(new SendResult());
+                return null;
+            }).when(remote).sendText(anyString(), any(SendHandler.class));
+            Mockito.doAnswer(invocation -> {
+                close(session, open, (CloseReason) invocation.getArguments()[0]);
+                return null;
+            }).when(session).close(any(CloseReason.class));
+            Mockito.doAnswer(invocation -> {
+                close(session, open, new CloseReason(CloseReason.CloseCodes.NORMAL_CLOSURE, null));
+                return null;
+            }).when(session).close();
+            frames.add(sent);
+            current = session;
+            onOpen(session);
+        }
+
+        void drop() {
+            Session session = current;
+            try {
+                session.close(new CloseReason(CloseReason.CloseCodes.CLOSED_ABNORMALLY, "Proxy went away"));
+            } catch (java.io.IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void close(Session session, AtomicBoolean open, CloseReason reason) {
+            if (open.compareAndSet(true, false)) {
+                onClose(session, reason);
+            }
+        }
+    }
+}
@@ -78,5 +78,11 @@ public enum Action {
     DEVICE_DELETE_REQUEST,
     DEVICE_DELETE_RESPONSE,
 
-    COUNT_RESPONSE
+    COUNT_RESPONSE,
+
+    // appended to keep the ordinals of existing actions, which are used as type ids on the wire
+    NOTIFICATION_INSERT_BATCH_REQUEST,
+    NOTIFICATION_INSERT_BATCH_RESPONSE,
+    COMMAND_INSERT_BATCH_REQUEST,
+    COMMAND_INSERT_BATCH_RESPONSE
 }
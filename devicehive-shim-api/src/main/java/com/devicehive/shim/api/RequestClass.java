@@ -0,0 +1,89 @@
+package com.devicehive.shim.api;
+
+/*
+ * #%L
+ * DeviceHive Shim  API Interfaces
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static com.devicehive.shim.api.Action.*;
+
+/**
+ * Priority class of a request. The RPC server consumes the request topic of every class; clients send to the topic of
+ * the class only when asked to, see {@code rpc.client.request-topic-per-class}. With priority lanes enabled the server
+ * also gives every class its own consumers and pool of workers, so heavy queries issued by admin tools do not delay
+ * real-time traffic like notification and command inserts.
+ */
+public enum RequestClass {
+    /**
+     * Device traffic: message inserts and updates, subscriptions. Any action without explicit class falls here.
+     */
+    REALTIME,
+    /**
+     * Searches over messages and devices.
+     */
+    QUERY,
+    /**
+     * Listing and counting of users, networks, device types and plugins, device and plugin management.
+     */
+    ADMIN;
+
+    private static final Map<Action, RequestClass> CLASSES = new EnumMap<>(Action.class);
+
+    static {
+        register(QUERY, NOTIFICATION_SEARCH_REQUEST, COMMAND_SEARCH_REQUEST, LIST_DEVICE_REQUEST, COUNT_DEVICE_REQUEST);
+        register(ADMIN, LIST_USER_REQUEST, COUNT_USER_REQUEST, LIST_NETWORK_REQUEST, COUNT_NETWORK_REQUEST,
+                LIST_DEVICE_TYPE_REQUEST, COUNT_DEVICE_TYPE_REQUEST, LIST_PLUGIN_REQUEST, COUNT_PLUGIN_REQUEST,
+                DEVICE_DELETE_REQUEST, PLUGIN_SUBSCRIBE_REQUEST, PLUGIN_UNSUBSCRIBE_REQUEST);
+    }
+
+    private static void register(RequestClass requestClass, Action... actions) {
+        for (Action action : actions) {
+            CLASSES.put(action, requestClass);
+        }
+    }
+
+    /**
+     * @return request topic of this class: real-time requests use the base topic, other classes a topic of their own
+     */
+    public String topic(String requestTopic) {
+        return this == REALTIME ? requestTopic : requestTopic + "_" + name().toLowerCase();
+    }
+
+    /**
+     * @return request topics of all classes
+     */
+    public static List<String> topics(String requestTopic) {
+        return Arrays.stream(values())
+                .map(requestClass -> requestClass.topic(requestTopic))
+                .collect(Collectors.toList());
+    }
+
+    public static RequestClass of(Action action) {
+        return action == null ? REALTIME : CLASSES.getOrDefault(action, REALTIME);
+    }
+
+    public static RequestClass of(Request request) {
+        return request.getBody() == null ? REALTIME : of(request.getBody().getAction());
+    }
+}
@@ -32,6 +32,15 @@ public interface RpcClient {
 
     void push(Request request);
 
+    /**
+     * Tells which requests travel the same way: requests with equal routes are handled by the same consumer in order,
+     * like requests with equal partition keys, so they may be combined into one request. By default every partition
+     * key is a route of its own.
+     */
+    default Object routeOf(Request request) {
+        return request.getPartitionKey();
+    }
+
     default void start() { }
 
     default void shutdown() { }
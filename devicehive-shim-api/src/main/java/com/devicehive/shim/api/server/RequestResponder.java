@@ -0,0 +1,83 @@
+package com.devicehive.shim.api.server;
+
+/*
+ * #%L
+ * DeviceHive Shim  API Interfaces
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+
+/**
+ * Turns a request taken by an {@link RpcServer} into the response to send back, whatever transport carries them:
+ * client requests go to the {@link RequestHandler}, pings are answered right away and anything else is refused.
+ * A handler failure becomes a failed response instead of an exception.
+ */
+public class RequestResponder {
+    private static final Logger logger = LoggerFactory.getLogger(RequestResponder.class);
+
+    private final RequestHandler requestHandler;
+
+    public RequestResponder(RequestHandler requestHandler) {
+        this.requestHandler = requestHandler;
+    }
+
+    public Response respond(Request request) {
+        Response response;
+
+        switch (request.getType()) {
+            case clientRequest:
+                logger.debug("Client request received {}", request);
+                response = handleClientRequest(request);
+                break;
+            case ping:
+                logger.info("Ping request received from {}", request.getReplyTo());
+                response = Response.newBuilder().buildSuccess();
+                break;
+            default:
+                logger.warn("Unknown type of request received {} from client {}, correlationId = {}",
+                        request.getType(), request.getReplyTo(), request.getCorrelationId());
+                response = Response.newBuilder()
+                        .buildFailed(404);
+        }
+
+        // set correlationId explicitly to prevent missing it in request
+        response.setCorrelationId(request.getCorrelationId());
+        return response;
+    }
+
+    private Response handleClientRequest(Request request) {
+        Response response;
+        try {
+            response = Optional.ofNullable(requestHandler.handle(request))
+                    .orElseThrow(() -> new NullPointerException("Response must not be null"));
+        } catch (Exception e) {
+            logger.error("Unexpected exception occurred during request handling (action='{}', handler='{}')",
+                    request.getBody().getAction().name(), requestHandler.getClass().getCanonicalName(), e);
+
+            response = Response.newBuilder()
+                    .withLast(request.isSingleReplyExpected())
+                    .buildFailed(500);
+        }
+        return response;
+    }
+}
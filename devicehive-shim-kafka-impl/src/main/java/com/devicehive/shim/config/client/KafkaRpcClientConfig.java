@@ -21,10 +21,12 @@ package com.devicehive.shim.config.client;
  */
 
 import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.RequestClass;
 import com.devicehive.shim.api.client.RpcClient;
 import com.devicehive.shim.config.KafkaRpcConfig;
 import com.devicehive.shim.kafka.client.KafkaRpcClient;
 import com.devicehive.api.RequestResponseMatcher;
+import com.devicehive.api.RpcMetrics;
 import com.devicehive.shim.kafka.client.ServerResponseListener;
 import com.devicehive.shim.kafka.serializer.RequestSerializer;
 import com.devicehive.shim.kafka.serializer.ResponseSerializer;
@@ -85,7 +87,7 @@ public class KafkaRpcClientConfig {
             RESPONSE_TOPIC = responseTopicPrefix + UUID.randomUUID().toString();
         }
 
-        kafkaTopicService.createTopic(REQUEST_TOPIC);
+        RequestClass.topics(REQUEST_TOPIC).forEach(kafkaTopicService::createTopic);
         kafkaTopicService.createTopic(RESPONSE_TOPIC);
     }
 
@@ -101,9 +103,21 @@ public class KafkaRpcClientConfig {
     @Value("${rpc.client.response-consumer.threads:3}")
     private int responseConsumerThreads;
 
-    @Bean
-    public RequestResponseMatcher requestResponseMatcher() {
-        return new RequestResponseMatcher();
+    @Value("${rpc.client.request-topic-per-class:false}")
+    private boolean requestTopicPerClass;
+
+    @Value("${rpc.client.callback.lanes:4}")
+    private int callbackLanes;
+
+    @Value("${rpc.client.callback.lane-capacity:1024}")
+    private int callbackLaneCapacity;
+
+    @Bean(destroyMethod = "shutdown")
+    public RequestResponseMatcher requestResponseMatcher(RpcMetrics rpcMetrics) {
+        RequestResponseMatcher matcher = new RequestResponseMatcher(callbackLanes, callbackLaneCapacity);
+        rpcMetrics.registerGauge("client.correlationMap.size", matcher::getCorrelationMapSize);
+        rpcMetrics.registerGauge("client.callback.queueDepth", matcher.getCallbackExecutor()::getQueueDepth);
+        return matcher;
     }
 
     @Bean
@@ -114,8 +128,9 @@ public class KafkaRpcClientConfig {
     @Profile("!test")
     @Bean(destroyMethod = "shutdown")
     public RpcClient rpcClient(Producer<String, Request> requestProducer, RequestResponseMatcher responseMatcher,
-                               ServerResponseListener responseListener) {
-        KafkaRpcClient client = new KafkaRpcClient(REQUEST_TOPIC, RESPONSE_TOPIC, requestProducer, responseMatcher, responseListener);
+                               ServerResponseListener responseListener, RpcMetrics rpcMetrics) {
+        KafkaRpcClient client = new KafkaRpcClient(REQUEST_TOPIC, RESPONSE_TOPIC, requestProducer, responseMatcher, responseListener,
+                rpcMetrics, requestTopicPerClass);
         client.start();
         return client;
     }
@@ -128,8 +143,9 @@ public class KafkaRpcClientConfig {
     @DependsOn("rpcServer")
     @Bean(destroyMethod = "shutdown")
     public RpcClient testRpcClient(Producer<String, Request> requestProducer, RequestResponseMatcher responseMatcher,
-                               ServerResponseListener responseListener) {
-        KafkaRpcClient client = new KafkaRpcClient(REQUEST_TOPIC, RESPONSE_TOPIC, requestProducer, responseMatcher, responseListener);
+                               ServerResponseListener responseListener, RpcMetrics rpcMetrics) {
+        KafkaRpcClient client = new KafkaRpcClient(REQUEST_TOPIC, RESPONSE_TOPIC, requestProducer, responseMatcher, responseListener,
+                rpcMetrics, requestTopicPerClass);
         client.start();
         return client;
     }
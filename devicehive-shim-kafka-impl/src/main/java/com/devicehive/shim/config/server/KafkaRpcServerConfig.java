@@ -20,18 +20,17 @@ package com.devicehive.shim.config.server;
  * #L%
  */
 
+import com.devicehive.api.RpcMetrics;
 import com.devicehive.model.eventbus.FilterRegistry;
+import com.devicehive.shim.api.RequestClass;
 import com.devicehive.shim.api.Response;
 import com.devicehive.shim.api.server.RequestHandler;
 import com.devicehive.shim.api.server.RpcServer;
 import com.devicehive.shim.kafka.eventbus.DistributedRpcFilterRegistry;
 import com.devicehive.shim.kafka.serializer.RequestSerializer;
 import com.devicehive.shim.kafka.serializer.ResponseSerializer;
-import com.devicehive.shim.kafka.server.KafkaRpcServer;
 import com.devicehive.shim.config.KafkaRpcConfig;
-import com.devicehive.shim.kafka.server.RequestConsumer;
-import com.devicehive.model.ServerEvent;
-import com.devicehive.shim.kafka.server.ServerEventHandler;
+import com.devicehive.shim.kafka.server.*;
 import com.devicehive.shim.kafka.topic.KafkaTopicService;
 import com.google.gson.Gson;
 import com.lmax.disruptor.*;
@@ -47,6 +46,8 @@ import org.springframework.context.annotation.*;
 import org.springframework.core.env.Environment;
 
 import javax.annotation.PostConstruct;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.stream.IntStream;
 
 import static com.devicehive.configuration.Constants.REQUEST_TOPIC;
@@ -73,6 +74,30 @@ public class KafkaRpcServerConfig {
     @Value("${rpc.server.worker.threads:1}")
     private int workerThreads;
 
+    @Value("${rpc.server.worker.dispatch:shared}")
+    private String dispatchMode;
+
+    @Value("${rpc.server.worker.priority-lanes:false}")
+    private boolean priorityLanes;
+
+    @Value("${rpc.server.worker.query.threads:1}")
+    private int queryWorkerThreads;
+
+    @Value("${rpc.server.worker.admin.threads:1}")
+    private int adminWorkerThreads;
+
+    @Value("${rpc.server.request-consumer.pause.high-watermark:0.9}")
+    private double pauseHighWatermark;
+
+    @Value("${rpc.server.request-consumer.pause.low-watermark:0.5}")
+    private double pauseLowWatermark;
+
+    @Value("${rpc.server.request-decoder.threads:0}")
+    private int decoderThreads;
+
+    @Value("${rpc.server.response-encoder.threads:0}")
+    private int encoderThreads;
+
     @Value("${lmax.buffer-size:1024}")
     private int bufferSize;
 
@@ -81,7 +106,7 @@ public class KafkaRpcServerConfig {
 
     @PostConstruct
     private void initializeTopics() {
-        kafkaTopicService.createTopic(REQUEST_TOPIC);
+        RequestClass.topics(REQUEST_TOPIC).forEach(kafkaTopicService::createTopic);
     }
 
     @Bean(name = "server-producer")
@@ -89,18 +114,39 @@ public class KafkaRpcServerConfig {
         return new KafkaProducer<>(kafkaRpcConfig.producerProps(), new StringSerializer(), new ResponseSerializer(gson));
     }
 
-    @Bean
-    public WorkerPool<ServerEvent> workerPool(@Qualifier("request-dispatcher") RequestHandler requestHandler,
-                                              @Qualifier("server-producer") Producer<String, Response> responseProducer) {
-        final ServerEventHandler[] workHandlers = new ServerEventHandler[workerThreads];
-        IntStream.range(0, workerThreads).forEach(
-                nbr -> workHandlers[nbr] = new ServerEventHandler(requestHandler, responseProducer)
+    /**
+     * With priority lanes enabled real-time requests keep the configured dispatch mode and worker count, while
+     * queries and admin requests get their own ring buffers, workers and request consumers.
+     */
+    private Map<RequestClass, ServerEventPool> serverEventPools(RequestHandler requestHandler,
+                                                                ResponseEncoder responseEncoder,
+                                                                RpcMetrics rpcMetrics) {
+        logger.info("RPC server dispatch mode: {}, priority lanes: {}", dispatchMode, priorityLanes);
+        final Map<RequestClass, ServerEventPool> pools = new EnumMap<>(RequestClass.class);
+        final ServerEventHandler[] workHandlers = workHandlers(workerThreads, requestHandler, responseEncoder, rpcMetrics);
+        final ServerEventPool realtimePool = "sharded".equals(dispatchMode)
+                ? new ShardedServerEventPool(workHandlers, bufferSize, getWaitStrategy())
+                : new WorkerServerEventPool(workHandlers, bufferSize, getWaitStrategy());
+        pools.put(RequestClass.REALTIME, realtimePool);
+        if (priorityLanes) {
+            pools.put(RequestClass.QUERY, new WorkerServerEventPool(
+                    workHandlers(queryWorkerThreads, requestHandler, responseEncoder, rpcMetrics), bufferSize, getWaitStrategy()));
+            pools.put(RequestClass.ADMIN, new WorkerServerEventPool(
+                    workHandlers(adminWorkerThreads, requestHandler, responseEncoder, rpcMetrics), bufferSize, getWaitStrategy()));
+        } else {
+            pools.put(RequestClass.QUERY, realtimePool);
+            pools.put(RequestClass.ADMIN, realtimePool);
+        }
+        return pools;
+    }
+
+    private ServerEventHandler[] workHandlers(int threads, RequestHandler requestHandler,
+                                              ResponseEncoder responseEncoder, RpcMetrics rpcMetrics) {
+        final ServerEventHandler[] workHandlers = new ServerEventHandler[threads];
+        IntStream.range(0, threads).forEach(
+                nbr -> workHandlers[nbr] = new ServerEventHandler(requestHandler, responseEncoder, rpcMetrics)
         );
-        final RingBuffer<ServerEvent> ringBuffer = RingBuffer.createMultiProducer(ServerEvent::new, bufferSize, getWaitStrategy());
-        final SequenceBarrier barrier = ringBuffer.newBarrier();
-        WorkerPool<ServerEvent> workerPool = new WorkerPool<>(ringBuffer, barrier, new FatalExceptionHandler(), workHandlers);
-        ringBuffer.addGatingSequences(workerPool.getWorkerSequences());
-        return workerPool;
+        return workHandlers;
     }
 
     private WaitStrategy getWaitStrategy() {
@@ -127,21 +173,47 @@ public class KafkaRpcServerConfig {
         return strategy;
     }
 
+    @Bean
+    public ResponseEncoder responseEncoder(@Qualifier("server-producer") Producer<String, Response> responseProducer,
+                                           RpcMetrics rpcMetrics) {
+        logger.info("RPC server response encoder threads: {}", encoderThreads);
+        return new ResponseEncoder(responseProducer, rpcMetrics, encoderThreads, bufferSize);
+    }
+
     @Bean
     public ServerEventHandler serverEventHandler(@Qualifier("request-dispatcher") RequestHandler requestHandler,
-                                                 @Qualifier("server-producer") Producer<String, Response> responseProducer) {
-        return new ServerEventHandler(requestHandler, responseProducer);
+                                                 ResponseEncoder responseEncoder, RpcMetrics rpcMetrics) {
+        return new ServerEventHandler(requestHandler, responseEncoder, rpcMetrics);
     }
 
     @Bean
-    public RequestConsumer requestConsumer(Gson gson) {
-        return new RequestConsumer(REQUEST_TOPIC, kafkaRpcConfig.serverConsumerProps(), consumerThreads, new RequestSerializer(gson));
+    public RingBufferBackpressure ringBufferBackpressure() {
+        return new RingBufferBackpressure(pauseHighWatermark, pauseLowWatermark);
     }
 
     @Bean
-    public RpcServer rpcServer(WorkerPool<ServerEvent> workerPool, RequestConsumer requestConsumer, ServerEventHandler eventHandler) {
-        RpcServer server = new KafkaRpcServer(workerPool, requestConsumer, eventHandler, workerThreads);
+    public RequestConsumer requestConsumer(Gson gson, RpcMetrics rpcMetrics, RingBufferBackpressure ringBufferBackpressure) {
+        logger.info("RPC server request decoder threads: {}", decoderThreads);
+        return new RequestConsumer(REQUEST_TOPIC, kafkaRpcConfig.serverConsumerProps(), consumerThreads,
+                () -> new RequestDecoder(new RequestSerializer(gson), rpcMetrics, decoderThreads, bufferSize),
+                ringBufferBackpressure);
+    }
+
+    @Bean
+    public RpcServer rpcServer(@Qualifier("request-dispatcher") RequestHandler requestHandler, ResponseEncoder responseEncoder,
+                               RequestConsumer requestConsumer, ServerEventHandler eventHandler, RpcMetrics rpcMetrics) {
+        KafkaRpcServer server = new KafkaRpcServer(serverEventPools(requestHandler, responseEncoder, rpcMetrics),
+                requestConsumer, eventHandler);
         server.start();
+        rpcMetrics.registerGauge("server.decoder.queueDepth", requestConsumer::getDecoderQueueDepth);
+        rpcMetrics.registerGauge("server.encoder.queueDepth", responseEncoder::getQueueDepth);
+        rpcMetrics.registerGauge("server.ringBuffer.remainingCapacity", () -> server.getRingBuffer().remainingCapacity());
+        if (priorityLanes) {
+            rpcMetrics.registerGauge("server.ringBuffer.query.remainingCapacity",
+                    () -> server.getRingBuffer(RequestClass.QUERY).remainingCapacity());
+            rpcMetrics.registerGauge("server.ringBuffer.admin.remainingCapacity",
+                    () -> server.getRingBuffer(RequestClass.ADMIN).remainingCapacity());
+        }
         return server;
     }
 
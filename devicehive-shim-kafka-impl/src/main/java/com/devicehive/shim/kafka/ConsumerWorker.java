@@ -37,12 +37,16 @@ import java.util.concurrent.CountDownLatch;
 public abstract class ConsumerWorker<T> implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(ConsumerWorker.class);
 
-    private String topic;
+    private Collection<String> topics;
     private KafkaConsumer<String, T> consumer;
     private CountDownLatch latch;
 
     public ConsumerWorker(String topic, KafkaConsumer<String, T> consumer, CountDownLatch latch) {
-        this.topic = topic;
+        this(Collections.singletonList(topic), consumer, latch);
+    }
+
+    public ConsumerWorker(Collection<String> topics, KafkaConsumer<String, T> consumer, CountDownLatch latch) {
+        this.topics = topics;
         this.consumer = consumer;
         this.latch = latch;
     }
@@ -50,18 +54,15 @@ public abstract class ConsumerWorker<T> implements Runnable {
     @Override
     public void run() {
         try {
-            consumer.subscribe(Collections.singletonList(topic), new NoOpConsumerRebalanceListener() {
+            consumer.subscribe(topics, new NoOpConsumerRebalanceListener() {
                 @Override
                 public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
                     latch.countDown();
                 }
             });
             while (!Thread.currentThread().isInterrupted()) {
-                ConsumerRecords<String, T> records = consumer.poll(Long.MAX_VALUE);
-                records.forEach(record -> {
-                    logger.trace("Topic {}, partition {}, offset {}", record.topic(), record.partition(), record.offset());
-                    process(record);
-                });
+                beforePoll();
+                process(consumer.poll(getPollTimeout()));
             }
         }  catch (WakeupException e) {
             logger.warn("Kafka consumer thread is shutting down");
@@ -74,6 +75,26 @@ public abstract class ConsumerWorker<T> implements Runnable {
 
     public abstract void process(ConsumerRecord<String, T> record);
 
+    /**
+     * Processes one polled batch, by default record by record.
+     */
+    protected void process(ConsumerRecords<String, T> records) {
+        records.forEach(record -> {
+            logger.trace("Topic {}, partition {}, offset {}", record.topic(), record.partition(), record.offset());
+            process(record);
+        });
+    }
+
+    /**
+     * Called from the polling thread before every poll, so the worker may safely pause or resume the consumer here.
+     */
+    protected void beforePoll() {
+    }
+
+    protected long getPollTimeout() {
+        return Long.MAX_VALUE;
+    }
+
     public void shutdown() {
         consumer.wakeup();
     }
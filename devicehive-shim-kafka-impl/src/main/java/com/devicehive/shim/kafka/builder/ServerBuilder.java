@@ -24,12 +24,8 @@ import com.devicehive.shim.api.Request;
 import com.devicehive.shim.api.Response;
 import com.devicehive.shim.api.server.RequestHandler;
 import com.devicehive.shim.api.server.RpcServer;
-import com.devicehive.shim.kafka.server.KafkaRpcServer;
-import com.devicehive.shim.kafka.server.RequestConsumer;
-import com.devicehive.model.ServerEvent;
-import com.devicehive.shim.kafka.server.ServerEventHandler;
-import com.lmax.disruptor.FatalExceptionHandler;
-import com.lmax.disruptor.WorkerPool;
+import com.devicehive.shim.kafka.server.*;
+import com.lmax.disruptor.BlockingWaitStrategy;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.common.serialization.Deserializer;
@@ -53,6 +49,8 @@ public class ServerBuilder {
 
     private RequestHandler requestHandler;
 
+    private boolean shardedDispatch;
+
     public ServerBuilder withTopic(String topic) {
         this.topic = topic;
         return this;
@@ -88,6 +86,11 @@ public class ServerBuilder {
         return this;
     }
 
+    public ServerBuilder withShardedDispatch(boolean shardedDispatch) {
+        this.shardedDispatch = shardedDispatch;
+        return this;
+    }
+
     public RpcServer build() {
         final int workerThreads = 3;
         Producer<String, Response> responseProducer = new KafkaProducer<>(producerProps, new StringSerializer(), producerValueSerializer);
@@ -95,10 +98,12 @@ public class ServerBuilder {
         IntStream.range(0, workerThreads).forEach(
                 nbr -> workHandlers[nbr] = new ServerEventHandler(requestHandler, responseProducer)
         );
-        final WorkerPool<ServerEvent> workerPool = new WorkerPool<>(ServerEvent::new, new FatalExceptionHandler(), workHandlers);
+        final ServerEventPool eventPool = shardedDispatch
+                ? new ShardedServerEventPool(workHandlers, 1024, new BlockingWaitStrategy())
+                : new WorkerServerEventPool(workHandlers, 1024, new BlockingWaitStrategy());
 
         RequestConsumer requestConsumer = new RequestConsumer(topic, consumerProps, consumerThreads, consumerValueDeserializer);
-        return new KafkaRpcServer(workerPool, requestConsumer, new ServerEventHandler(requestHandler, responseProducer), workerThreads);
+        return new KafkaRpcServer(eventPool, requestConsumer, new ServerEventHandler(requestHandler, responseProducer));
     }
 
 }
@@ -21,15 +21,21 @@ package com.devicehive.shim.kafka.client;
  */
 
 import com.devicehive.api.RequestResponseMatcher;
+import com.devicehive.api.RpcMetrics;
 import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.RequestClass;
 import com.devicehive.shim.api.RequestType;
 import com.devicehive.shim.api.Response;
 import com.devicehive.shim.api.client.RpcClient;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -44,14 +50,35 @@ public class KafkaRpcClient implements RpcClient {
     private Producer<String, Request> requestProducer;
     private RequestResponseMatcher requestResponseMatcher;
     private ServerResponseListener responseListener;
+    private RpcMetrics rpcMetrics;
+    private boolean topicPerClass;
 
     public KafkaRpcClient(String requestTopic, String replyToTopic, Producer<String, Request> requestProducer,
                           RequestResponseMatcher requestResponseMatcher, ServerResponseListener responseListener) {
+        this(requestTopic, replyToTopic, requestProducer, requestResponseMatcher, responseListener, new RpcMetrics());
+    }
+
+    public KafkaRpcClient(String requestTopic, String replyToTopic, Producer<String, Request> requestProducer,
+                          RequestResponseMatcher requestResponseMatcher, ServerResponseListener responseListener,
+                          RpcMetrics rpcMetrics) {
+        this(requestTopic, replyToTopic, requestProducer, requestResponseMatcher, responseListener, rpcMetrics, false);
+    }
+
+    /**
+     * @param topicPerClass whether requests go to the topic of their {@link RequestClass} instead of the base request
+     *                      topic. Servers consume both, but servers older than the topics split read only the base one,
+     *                      so turn it on only once every backend of the cluster has been upgraded.
+     */
+    public KafkaRpcClient(String requestTopic, String replyToTopic, Producer<String, Request> requestProducer,
+                          RequestResponseMatcher requestResponseMatcher, ServerResponseListener responseListener,
+                          RpcMetrics rpcMetrics, boolean topicPerClass) {
         this.requestTopic = requestTopic;
         this.replyToTopic = replyToTopic;
         this.requestProducer = requestProducer;
         this.requestResponseMatcher = requestResponseMatcher;
         this.responseListener = responseListener;
+        this.rpcMetrics = rpcMetrics;
+        this.topicPerClass = topicPerClass;
     }
 
     @Override
@@ -62,7 +89,7 @@ public class KafkaRpcClient implements RpcClient {
 
     @Override
     public void call(Request request, Consumer<Response> callback) {
-        requestResponseMatcher.addRequestCallback(request.getCorrelationId(), callback);
+        requestResponseMatcher.addRequestCallback(request.getCorrelationId(), rpcMetrics.timeRoundTrip(request, callback));
         logger.debug("Request callback added for request: {}, correlationId: {}", request.getBody(), request.getCorrelationId());
 
         push(request);
@@ -75,7 +102,8 @@ public class KafkaRpcClient implements RpcClient {
         }
 
         request.setReplyTo(replyToTopic);
-        requestProducer.send(new ProducerRecord<>(requestTopic, request.getPartitionKey(), request),
+        String topic = topicOf(request);
+        requestProducer.send(new ProducerRecord<>(topic, request.getPartitionKey(), request),
                 (recordMetadata, e) -> {
                     if (e != null) {
                         logger.error("Send request failed", e);
@@ -86,6 +114,28 @@ public class KafkaRpcClient implements RpcClient {
                 });
     }
 
+    /**
+     * @return topic and partition the default partitioner picks for the request's key, the same way the producer does
+     */
+    @Override
+    public Object routeOf(Request request) {
+        String key = request.getPartitionKey();
+        if (key == null) {
+            return null;
+        }
+        String topic = topicOf(request);
+        List<PartitionInfo> partitions = requestProducer.partitionsFor(topic);
+        if (partitions == null || partitions.isEmpty()) {
+            return key;
+        }
+        int partition = (Utils.murmur2(key.getBytes(StandardCharsets.UTF_8)) & 0x7fffffff) % partitions.size();
+        return topic + "-" + partition;
+    }
+
+    String topicOf(Request request) {
+        return topicPerClass ? RequestClass.of(request).topic(requestTopic) : requestTopic;
+    }
+
     @Override
     public void shutdown() {
         requestProducer.close();
@@ -21,48 +21,93 @@ package com.devicehive.shim.kafka.server;
  */
 
 import com.devicehive.model.ServerEvent;
+import com.devicehive.shim.api.RequestClass;
 import com.devicehive.shim.api.server.MessageDispatcher;
 import com.devicehive.shim.api.server.RpcServer;
 import com.lmax.disruptor.RingBuffer;
-import com.lmax.disruptor.WorkerPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class KafkaRpcServer implements RpcServer {
     private static final Logger logger = LoggerFactory.getLogger(KafkaRpcServer.class);
 
-    private WorkerPool<ServerEvent> workerPool;
+    private Map<RequestClass, ServerEventPool> eventPools;
     private RequestConsumer requestConsumer;
     private ServerEventHandler eventHandler;
-    private int workerThreads;
+    private volatile Map<RequestClass, RingBuffer<ServerEvent>> ringBuffers;
 
-    public KafkaRpcServer(WorkerPool<ServerEvent> workerPool, RequestConsumer requestConsumer, ServerEventHandler eventHandler,
-                          int workerThreads) {
-        this.workerPool = workerPool;
+    public KafkaRpcServer(ServerEventPool eventPool, RequestConsumer requestConsumer, ServerEventHandler eventHandler) {
+        this(sharedPool(eventPool), requestConsumer, eventHandler);
+    }
+
+    /**
+     * @param eventPools event pool per request class; classes may share the same pool
+     */
+    public KafkaRpcServer(Map<RequestClass, ServerEventPool> eventPools, RequestConsumer requestConsumer,
+                          ServerEventHandler eventHandler) {
+        for (RequestClass requestClass : RequestClass.values()) {
+            if (!eventPools.containsKey(requestClass)) {
+                throw new IllegalArgumentException("No event pool for request class " + requestClass);
+            }
+        }
+        this.eventPools = new EnumMap<>(eventPools);
         this.requestConsumer = requestConsumer;
         this.eventHandler = eventHandler;
-        this.workerThreads = workerThreads;
     }
 
     @Override
     public void start() {
-        final ExecutorService execService = Executors.newFixedThreadPool(workerThreads);
-        RingBuffer<ServerEvent> ringBuffer = workerPool.start(execService);
-        logger.info("LMAX Disruptor started. Buffer size: {}", ringBuffer.getBufferSize());
-        requestConsumer.startConsumers(ringBuffer);
+        final Map<ServerEventPool, RingBuffer<ServerEvent>> started = new IdentityHashMap<>();
+        final Map<RequestClass, RingBuffer<ServerEvent>> buffers = new EnumMap<>(RequestClass.class);
+        eventPools.forEach((requestClass, pool) -> {
+            RingBuffer<ServerEvent> ringBuffer = started.computeIfAbsent(pool, this::startPool);
+            buffers.put(requestClass, ringBuffer);
+            logger.info("LMAX Disruptor for {} requests started. Buffer size: {}, threads: {}", requestClass,
+                    ringBuffer.getBufferSize(), pool.getThreads());
+        });
+        ringBuffers = buffers;
+        requestConsumer.startConsumers(buffers);
     }
 
     @Override
     public void shutdown() {
         requestConsumer.shutdownConsumers();
-        workerPool.drainAndHalt();
+        distinctPools().forEach(ServerEventPool::drainAndHalt);
     }
 
     @Override
     public MessageDispatcher getDispatcher() {
         return eventHandler;
     }
+
+    public RingBuffer<ServerEvent> getRingBuffer() {
+        return getRingBuffer(RequestClass.REALTIME);
+    }
+
+    public RingBuffer<ServerEvent> getRingBuffer(RequestClass requestClass) {
+        return ringBuffers.get(requestClass);
+    }
+
+    private RingBuffer<ServerEvent> startPool(ServerEventPool pool) {
+        final ExecutorService execService = Executors.newFixedThreadPool(pool.getThreads());
+        return pool.start(execService);
+    }
+
+    private Collection<ServerEventPool> distinctPools() {
+        Set<ServerEventPool> pools = Collections.newSetFromMap(new IdentityHashMap<>());
+        pools.addAll(eventPools.values());
+        return pools;
+    }
+
+    private static Map<RequestClass, ServerEventPool> sharedPool(ServerEventPool eventPool) {
+        Map<RequestClass, ServerEventPool> pools = new EnumMap<>(RequestClass.class);
+        for (RequestClass requestClass : RequestClass.values()) {
+            pools.put(requestClass, eventPool);
+        }
+        return pools;
+    }
 }
@@ -22,8 +22,11 @@ package com.devicehive.shim.kafka.server;
 
 import com.devicehive.model.ServerEvent;
 import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.RequestClass;
 import com.lmax.disruptor.RingBuffer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.apache.kafka.common.serialization.Deserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.slf4j.Logger;
@@ -34,37 +37,97 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+/**
+ * Consumes the request topics of all {@link RequestClass}es. Classes that share a ring buffer are read by one set of
+ * consumers. A class with a ring buffer of its own gets its own consumers, consumer group and decoder, so when its
+ * buffer fills up only its consumers pause and the other classes keep flowing.
+ */
 public class RequestConsumer {
     private static final Logger logger = LoggerFactory.getLogger(RequestConsumer.class);
 
     private String topic;
     private Properties consumerProps;
     private int consumerThreads;
-    private Deserializer<Request> deserializer;
+    private Supplier<RequestDecoder> decoderFactory;
+    private RingBufferBackpressure backpressure;
 
     private ExecutorService consumerExecutor;
     private List<RequestConsumerWorker> workers;
+    private List<RequestDecoder> decoders;
 
     public RequestConsumer(String topic, Properties consumerProps, int consumerThreads, Deserializer<Request> deserializer) {
+        this(topic, consumerProps, consumerThreads, deserializer, new RingBufferBackpressure(0.9, 0.5));
+    }
+
+    public RequestConsumer(String topic, Properties consumerProps, int consumerThreads, Deserializer<Request> deserializer,
+                           RingBufferBackpressure backpressure) {
+        this(topic, consumerProps, consumerThreads, () -> new RequestDecoder(deserializer), backpressure);
+    }
+
+    /**
+     * @param topic           base request topic, see {@link RequestClass#topic(String)}
+     * @param consumerThreads consumers of the real-time ring buffer; every other ring buffer gets one consumer
+     * @param decoderFactory  creates a decoder per ring buffer
+     */
+    public RequestConsumer(String topic, Properties consumerProps, int consumerThreads,
+                           Supplier<RequestDecoder> decoderFactory, RingBufferBackpressure backpressure) {
         this.topic = topic;
         this.consumerProps = consumerProps;
         this.consumerThreads = consumerThreads;
-        this.deserializer = deserializer;
+        this.decoderFactory = decoderFactory;
+        this.backpressure = backpressure;
     }
 
     public void startConsumers(RingBuffer<ServerEvent> ringBuffer) {
         assert ringBuffer != null;
-
-        workers = new ArrayList<>(consumerThreads);
-        consumerExecutor = Executors.newFixedThreadPool(consumerThreads);
-        CountDownLatch latch = new CountDownLatch(consumerThreads);
-        for (int i = 0; i < consumerThreads; i++) {
-            KafkaConsumer<String, Request> consumer = new KafkaConsumer<>(consumerProps, new StringDeserializer(), deserializer);
-            RequestConsumerWorker worker = new RequestConsumerWorker(this.topic, consumer, ringBuffer, latch);
-            consumerExecutor.submit(worker);
-            workers.add(worker);
+        Map<RequestClass, RingBuffer<ServerEvent>> ringBuffers = new EnumMap<>(RequestClass.class);
+        for (RequestClass requestClass : RequestClass.values()) {
+            ringBuffers.put(requestClass, ringBuffer);
         }
+        startConsumers(ringBuffers);
+    }
+
+    /**
+     * Starts consumers that publish the requests of every {@link RequestClass} to its ring buffer.
+     */
+    public void startConsumers(Map<RequestClass, RingBuffer<ServerEvent>> ringBuffers) {
+        assert ringBuffers.size() == RequestClass.values().length;
+
+        Map<RingBuffer<ServerEvent>, List<RequestClass>> classesByRingBuffer = new IdentityHashMap<>();
+        ringBuffers.forEach((requestClass, ringBuffer) ->
+                classesByRingBuffer.computeIfAbsent(ringBuffer, rb -> new ArrayList<>()).add(requestClass));
+
+        int totalThreads = classesByRingBuffer.values().stream()
+                .mapToInt(classes -> classes.contains(RequestClass.REALTIME) ? consumerThreads : 1)
+                .sum();
+        workers = new ArrayList<>(totalThreads);
+        decoders = new ArrayList<>(classesByRingBuffer.size());
+        consumerExecutor = Executors.newFixedThreadPool(totalThreads);
+        CountDownLatch latch = new CountDownLatch(totalThreads);
+        classesByRingBuffer.forEach((ringBuffer, classes) -> {
+            boolean realtime = classes.contains(RequestClass.REALTIME);
+            List<String> topics = classes.stream().map(requestClass -> requestClass.topic(topic)).collect(Collectors.toList());
+            Properties props = new Properties();
+            props.putAll(consumerProps);
+            if (!realtime) {
+                // a group of its own, so rebalances of other classes do not stop these consumers
+                props.put(ConsumerConfig.GROUP_ID_CONFIG, consumerProps.getProperty(ConsumerConfig.GROUP_ID_CONFIG)
+                        + "-" + classes.stream().map(requestClass -> requestClass.name().toLowerCase()).collect(Collectors.joining("-")));
+            }
+            RequestDecoder decoder = decoderFactory.get();
+            decoders.add(decoder);
+            int threads = realtime ? consumerThreads : 1;
+            logger.info("Starting {} request consumers for topics {}", threads, topics);
+            for (int i = 0; i < threads; i++) {
+                KafkaConsumer<String, byte[]> consumer = new KafkaConsumer<>(props, new StringDeserializer(), new ByteArrayDeserializer());
+                RequestConsumerWorker worker = new RequestConsumerWorker(topics, consumer, decoder, ringBuffer, backpressure, latch);
+                consumerExecutor.submit(worker);
+                workers.add(worker);
+            }
+        });
         try {
             latch.await();
             logger.info("RpcServer request consumers started");
@@ -73,6 +136,14 @@ public class RequestConsumer {
         }
     }
 
+    public int getDecoderQueueDepth() {
+        return decoders == null ? 0 : decoders.stream().mapToInt(RequestDecoder::getQueueDepth).sum();
+    }
+
+    public RingBufferBackpressure getBackpressure() {
+        return backpressure;
+    }
+
     public void shutdownConsumers() {
         workers.forEach(RequestConsumerWorker::shutdown);
         consumerExecutor.shutdown();
@@ -81,5 +152,6 @@ public class RequestConsumer {
         } catch (InterruptedException e) {
             logger.error("Error while waiting for server consumers to subscribe", e);
         }
+        decoders.forEach(RequestDecoder::shutdown);
     }
 }
@@ -23,25 +23,135 @@ package com.devicehive.shim.kafka.server;
 import com.devicehive.model.ServerEvent;
 import com.devicehive.shim.api.Request;
 import com.devicehive.shim.kafka.ConsumerWorker;
+import com.lmax.disruptor.EventTranslatorOneArg;
 import com.lmax.disruptor.RingBuffer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
 import java.util.concurrent.CountDownLatch;
 
 
-public class RequestConsumerWorker extends ConsumerWorker<Request> {
+public class RequestConsumerWorker extends ConsumerWorker<byte[]> {
+    private static final Logger logger = LoggerFactory.getLogger(RequestConsumerWorker.class);
 
+    private static final long PAUSED_POLL_TIMEOUT_MS = 100;
+
+    private static final EventTranslatorOneArg<ServerEvent, Request> TRANSLATOR =
+            (serverEvent, sequence, request) -> serverEvent.set(request, System.nanoTime());
+
+    private KafkaConsumer<String, byte[]> consumer;
+    private RequestDecoder decoder;
     private RingBuffer<ServerEvent> ringBuffer;
+    private RingBufferBackpressure backpressure;
+
+    private boolean paused;
+    private long pausedAt;
 
-    RequestConsumerWorker(String topic, KafkaConsumer<String, Request> consumer,
-                          RingBuffer<ServerEvent> ringBuffer, CountDownLatch latch) {
-        super(topic, consumer, latch);
+    /**
+     * @param topics     request topics of the classes served by the ring buffer
+     * @param decoder    decoder used by this ring buffer's consumers only
+     * @param ringBuffer the only ring buffer this worker feeds and watches, so other classes can never stall it
+     */
+    RequestConsumerWorker(Collection<String> topics, KafkaConsumer<String, byte[]> consumer, RequestDecoder decoder,
+                          RingBuffer<ServerEvent> ringBuffer, RingBufferBackpressure backpressure, CountDownLatch latch) {
+        super(topics, consumer, latch);
+        this.consumer = consumer;
+        this.decoder = decoder;
         this.ringBuffer = ringBuffer;
+        this.backpressure = backpressure;
+    }
+
+    /**
+     * Hands the polled records over without ever blocking the polling thread. Once a record does not fit, it and
+     * everything after it in the batch is rewound and the consumer pauses; paused partitions are fetched again from
+     * the rewound offsets after the buffers have drained.
+     */
+    @Override
+    protected void process(ConsumerRecords<String, byte[]> records) {
+        boolean full = false;
+        for (TopicPartition partition : records.partitions()) {
+            for (ConsumerRecord<String, byte[]> record : records.records(partition)) {
+                if (full || !offer(record)) {
+                    full = true;
+                    consumer.seek(partition, record.offset());
+                    break;
+                }
+            }
+        }
+        if (full) {
+            pause();
+        }
+    }
+
+    @Override
+    public void process(ConsumerRecord<String, byte[]> record) {
+        if (!offer(record)) {
+            consumer.seek(new TopicPartition(record.topic(), record.partition()), record.offset());
+            pause();
+        }
+    }
+
+    /**
+     * @return false if the record could not be taken without blocking and has to be consumed again
+     */
+    private boolean offer(ConsumerRecord<String, byte[]> record) {
+        if (!decoder.isInline()) {
+            return decoder.tryDecode(record, this::publish);
+        }
+        Request request = decoder.decode(record);
+        return request == null || ringBuffer.tryPublishEvent(TRANSLATOR, request);
+    }
+
+    /**
+     * Called on a decoder lane, where waiting for a free slot does not hold up polling.
+     */
+    private void publish(Request request) {
+        ringBuffer.publishEvent(TRANSLATOR, request);
+    }
+
+    @Override
+    protected void beforePoll() {
+        if (isAboveHighWatermark()) {
+            pause();
+        } else if (paused && isBelowLowWatermark()) {
+            resume();
+        }
+    }
+
+    private boolean isAboveHighWatermark() {
+        return backpressure.isAboveHighWatermark(decoder.getUsage()) || backpressure.isAboveHighWatermark(ringBuffer);
+    }
+
+    private boolean isBelowLowWatermark() {
+        return backpressure.isBelowLowWatermark(decoder.getUsage()) && backpressure.isBelowLowWatermark(ringBuffer);
     }
 
     @Override
-    public void process(ConsumerRecord<String, Request> record) {
-        ringBuffer.publishEvent((serverEvent, sequence, response) -> serverEvent.set(response), record.value());
+    protected long getPollTimeout() {
+        // keep polling while paused, otherwise we would neither heartbeat nor notice that the buffer has drained
+        return paused ? PAUSED_POLL_TIMEOUT_MS : super.getPollTimeout();
+    }
+
+    private void pause() {
+        // partitions assigned by a rebalance are not paused yet, so pause the whole assignment every time
+        consumer.pause(consumer.assignment());
+        if (!paused) {
+            paused = true;
+            pausedAt = System.nanoTime();
+            backpressure.onPause();
+            logger.warn("Ring buffer remaining capacity is {}, pausing partitions {}", ringBuffer.remainingCapacity(), consumer.assignment());
+        }
+    }
+
+    private void resume() {
+        consumer.resume(consumer.paused());
+        paused = false;
+        backpressure.onResume(System.nanoTime() - pausedAt);
+        logger.info("Ring buffer remaining capacity is {}, resuming partitions {}", ringBuffer.remainingCapacity(), consumer.assignment());
     }
 }
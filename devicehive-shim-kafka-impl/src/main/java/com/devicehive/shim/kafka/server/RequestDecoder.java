@@ -0,0 +1,117 @@
+package com.devicehive.shim.kafka.server;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RpcMetrics;
+import com.devicehive.api.StripedExecutor;
+import com.devicehive.shim.api.Request;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.Consumer;
+
+/**
+ * Decode stage between request consumers and ring buffers. Consumers hand over raw records and go on polling,
+ * while a pool of decoder lanes deserializes them in parallel. Records with the same key are decoded by the same
+ * lane, so requests of one device still reach the ring buffer in the order they were consumed. Without decoder
+ * threads consumers decode records on the polling thread with {@link #decode(ConsumerRecord)}.
+ */
+public class RequestDecoder {
+    private static final Logger logger = LoggerFactory.getLogger(RequestDecoder.class);
+
+    private final Deserializer<Request> deserializer;
+    private final RpcMetrics rpcMetrics;
+    private final StripedExecutor executor;
+    private final int laneCapacity;
+
+    public RequestDecoder(Deserializer<Request> deserializer) {
+        this(deserializer, new RpcMetrics(), 0, 0);
+    }
+
+    public RequestDecoder(Deserializer<Request> deserializer, RpcMetrics rpcMetrics, int threads, int laneCapacity) {
+        this.deserializer = deserializer;
+        this.rpcMetrics = rpcMetrics;
+        this.executor = threads > 0 ? new StripedExecutor("rpc-request-decoder", threads, laneCapacity) : null;
+        this.laneCapacity = laneCapacity;
+    }
+
+    /**
+     * @return true if records are decoded on the polling thread
+     */
+    public boolean isInline() {
+        return executor == null;
+    }
+
+    /**
+     * Decodes the record on the calling thread.
+     *
+     * @return the request, or null if the record cannot be decoded and should be skipped
+     */
+    public Request decode(ConsumerRecord<String, byte[]> record) {
+        final long decodeStart = System.nanoTime();
+        final Request request;
+        try {
+            request = deserializer.deserialize(record.topic(), record.value());
+        } catch (RuntimeException e) {
+            logger.error("Unable to decode request from topic {}, partition {}, offset {}",
+                    record.topic(), record.partition(), record.offset(), e);
+            return null;
+        }
+        rpcMetrics.record(RpcMetrics.DECODE, request, System.nanoTime() - decodeStart);
+        return request;
+    }
+
+    /**
+     * Decodes the record on a decoder lane and passes the request to the publisher there. Never blocks the calling
+     * polling thread.
+     *
+     * @return false if the lane of the record is full, the record is not taken then
+     */
+    public boolean tryDecode(ConsumerRecord<String, byte[]> record, Consumer<Request> publisher) {
+        // records without key are spread across lanes by offset
+        Object key = record.key() != null ? record.key() : record.offset();
+        return executor.tryExecute(key, () -> {
+            Request request = decode(record);
+            if (request != null) {
+                publisher.accept(request);
+            }
+        });
+    }
+
+    /**
+     * @return share of the fullest decoder lane that is in use, 0 when decoding on the polling thread
+     */
+    public double getUsage() {
+        return executor == null ? 0 : (double) executor.getMaxLaneQueueDepth() / laneCapacity;
+    }
+
+    public int getQueueDepth() {
+        return executor == null ? 0 : executor.getQueueDepth();
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
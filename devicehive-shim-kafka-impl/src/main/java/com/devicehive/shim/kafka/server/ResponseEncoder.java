@@ -0,0 +1,79 @@
+package com.devicehive.shim.kafka.server;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RpcMetrics;
+import com.devicehive.api.StripedExecutor;
+import com.devicehive.shim.api.Action;
+import com.devicehive.shim.api.Response;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+
+/**
+ * Encode and produce stage for responses. {@link Producer#send} serializes the response on the calling thread, so
+ * with encoder threads workers only enqueue the response and return to the ring buffer, while encoder lanes do the
+ * serialization. Responses with the same correlation id are sent by the same lane and keep their order. Without
+ * encoder threads responses are sent from the calling thread.
+ */
+public class ResponseEncoder {
+
+    private final Producer<String, Response> responseProducer;
+    private final RpcMetrics rpcMetrics;
+    private final StripedExecutor executor;
+
+    public ResponseEncoder(Producer<String, Response> responseProducer, RpcMetrics rpcMetrics) {
+        this(responseProducer, rpcMetrics, 0, 0);
+    }
+
+    public ResponseEncoder(Producer<String, Response> responseProducer, RpcMetrics rpcMetrics, int threads, int laneCapacity) {
+        this.responseProducer = responseProducer;
+        this.rpcMetrics = rpcMetrics;
+        this.executor = threads > 0 ? new StripedExecutor("rpc-response-encoder", threads, laneCapacity) : null;
+    }
+
+    public void send(Action action, String replyTo, Response response) {
+        if (executor == null) {
+            produce(action, replyTo, response);
+        } else {
+            executor.execute(response.getCorrelationId(), () -> produce(action, replyTo, response));
+        }
+    }
+
+    private void produce(Action action, String replyTo, Response response) {
+        final long sendStart = System.nanoTime();
+        responseProducer.send(new ProducerRecord<>(replyTo, response.getCorrelationId(), response), (metadata, e) -> {
+            if (e == null) {
+                rpcMetrics.record(RpcMetrics.PRODUCE, action, System.nanoTime() - sendStart);
+            }
+        });
+        rpcMetrics.record(RpcMetrics.SERIALIZE, action, System.nanoTime() - sendStart);
+    }
+
+    public int getQueueDepth() {
+        return executor == null ? 0 : executor.getQueueDepth();
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.devicehive.shim.kafka.server;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.lmax.disruptor.RingBuffer;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watermarks and statistics shared by all request consumer workers. A worker pauses its partitions once ring buffer
+ * usage reaches the high watermark and resumes them when usage drops to the low watermark, so the polling thread
+ * never blocks inside {@link RingBuffer#publishEvent} and keeps its consumer group membership under load.
+ */
+@ManagedResource(objectName = "com.devicehive:type=RpcServer,name=RequestConsumerBackpressure",
+        description = "Pause/resume statistics of rpc server request consumers")
+public class RingBufferBackpressure {
+
+    private final double highWatermark;
+    private final double lowWatermark;
+
+    private final AtomicLong pauseCount = new AtomicLong();
+    private final AtomicLong resumeCount = new AtomicLong();
+    private final AtomicLong pausedNanos = new AtomicLong();
+    private final AtomicInteger pausedConsumers = new AtomicInteger();
+
+    public RingBufferBackpressure(double highWatermark, double lowWatermark) {
+        if (lowWatermark < 0 || lowWatermark > highWatermark || highWatermark > 1) {
+            throw new IllegalArgumentException("Watermarks must satisfy 0 <= low <= high <= 1");
+        }
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+    }
+
+    public boolean isAboveHighWatermark(RingBuffer<?> ringBuffer) {
+        return isAboveHighWatermark(usage(ringBuffer));
+    }
+
+    public boolean isBelowLowWatermark(RingBuffer<?> ringBuffer) {
+        return isBelowLowWatermark(usage(ringBuffer));
+    }
+
+    /**
+     * @param usage share of a bounded queue that is in use, from 0 to 1
+     */
+    public boolean isAboveHighWatermark(double usage) {
+        return usage >= highWatermark;
+    }
+
+    public boolean isBelowLowWatermark(double usage) {
+        return usage <= lowWatermark;
+    }
+
+    void onPause() {
+        pauseCount.incrementAndGet();
+        pausedConsumers.incrementAndGet();
+    }
+
+    void onResume(long pausedForNanos) {
+        resumeCount.incrementAndGet();
+        pausedConsumers.decrementAndGet();
+        pausedNanos.addAndGet(pausedForNanos);
+    }
+
+    @ManagedAttribute
+    public long getPauseCount() {
+        return pauseCount.get();
+    }
+
+    @ManagedAttribute
+    public long getResumeCount() {
+        return resumeCount.get();
+    }
+
+    @ManagedAttribute
+    public int getPausedConsumers() {
+        return pausedConsumers.get();
+    }
+
+    @ManagedAttribute
+    public long getPausedTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(pausedNanos.get());
+    }
+
+    private static double usage(RingBuffer<?> ringBuffer) {
+        return 1 - (double) ringBuffer.remainingCapacity() / ringBuffer.getBufferSize();
+    }
+}
@@ -20,76 +20,61 @@ package com.devicehive.shim.kafka.server;
  * #L%
  */
 
+import com.devicehive.api.RpcMetrics;
 import com.devicehive.model.ServerEvent;
+import com.devicehive.shim.api.Action;
 import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.RequestType;
 import com.devicehive.shim.api.Response;
 import com.devicehive.shim.api.server.MessageDispatcher;
 import com.devicehive.shim.api.server.RequestHandler;
+import com.devicehive.shim.api.server.RequestResponder;
 import com.lmax.disruptor.WorkHandler;
 import org.apache.kafka.clients.producer.Producer;
-import org.apache.kafka.clients.producer.ProducerRecord;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.util.Optional;
 
 public class ServerEventHandler implements MessageDispatcher, WorkHandler<ServerEvent> {
-    private static final Logger logger = LoggerFactory.getLogger(ServerEventHandler.class);
 
-    private RequestHandler requestHandler;
-    private Producer<String, Response> responseProducer;
+    private RequestResponder responder;
+    private ResponseEncoder responseEncoder;
+    private RpcMetrics rpcMetrics;
 
     public ServerEventHandler(RequestHandler requestHandler, Producer<String, Response> responseProducer) {
-        this.requestHandler = requestHandler;
-        this.responseProducer = responseProducer;
+        this(requestHandler, responseProducer, new RpcMetrics());
+    }
+
+    public ServerEventHandler(RequestHandler requestHandler, Producer<String, Response> responseProducer, RpcMetrics rpcMetrics) {
+        this(requestHandler, new ResponseEncoder(responseProducer, rpcMetrics), rpcMetrics);
+    }
+
+    public ServerEventHandler(RequestHandler requestHandler, ResponseEncoder responseEncoder, RpcMetrics rpcMetrics) {
+        this.responder = new RequestResponder(requestHandler);
+        this.responseEncoder = responseEncoder;
+        this.rpcMetrics = rpcMetrics;
     }
 
     @Override
     public void onEvent(ServerEvent event) throws Exception {
         final Request request = event.get();
         final String replyTo = request.getReplyTo();
-
-        Response response;
-
-        switch (request.getType()) {
-            case clientRequest:
-                logger.debug("Client request received {}", request);
-                response = handleClientRequest(request);
-                break;
-            case ping:
-                logger.info("Ping request received from {}", replyTo);
-                response = Response.newBuilder().buildSuccess();
-                break;
-            default:
-                logger.warn("Unknown type of request received {} from client with topic {}, correlationId = {}",
-                        request.getType(), replyTo, request.getCorrelationId());
-                response = Response.newBuilder()
-                        .buildFailed(404);
+        final Action action = request.getBody() != null ? request.getBody().getAction() : null;
+        if (event.getPublishedAt() != 0) {
+            rpcMetrics.record(RpcMetrics.QUEUE_WAIT, action, System.nanoTime() - event.getPublishedAt());
         }
 
-        // set correlationId explicitly to prevent missing it in request
-        response.setCorrelationId(request.getCorrelationId());
-        send(replyTo, response);
-    }
-
-    private Response handleClientRequest(Request request) {
-        Response response;
-        try {
-            response = Optional.ofNullable(requestHandler.handle(request))
-                    .orElseThrow(() -> new NullPointerException("Response must not be null"));
-        } catch (Exception e) {
-            logger.error("Unexpected exception occurred during request handling (action='{}', handler='{}')",
-                    request.getBody().getAction().name(), requestHandler.getClass().getCanonicalName(), e);
-
-            response = Response.newBuilder()
-                    .withLast(request.isSingleReplyExpected())
-                    .buildFailed(500);
+        long handleStart = System.nanoTime();
+        Response response = responder.respond(request);
+        if (request.getType() == RequestType.clientRequest) {
+            rpcMetrics.record(RpcMetrics.HANDLE, action, System.nanoTime() - handleStart);
         }
-        return response;
+        send(action, replyTo, response);
     }
 
     @Override
     public void send(String replyTo, Response response) {
-        responseProducer.send(new ProducerRecord<>(replyTo, response.getCorrelationId(), response));
+        send(response.getBody() != null ? response.getBody().getAction() : null, replyTo, response);
+    }
+
+    private void send(Action action, String replyTo, Response response) {
+        responseEncoder.send(action, replyTo, response);
     }
 }
@@ -0,0 +1,49 @@
+package com.devicehive.shim.kafka.server;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.ServerEvent;
+import com.lmax.disruptor.RingBuffer;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Group of Disruptor event processors that consume {@link ServerEvent}s from a single ring buffer.
+ */
+public interface ServerEventPool {
+
+    /**
+     * Starts event processors on the given executor.
+     *
+     * @return ring buffer that request consumers should publish to
+     */
+    RingBuffer<ServerEvent> start(Executor executor);
+
+    /**
+     * Waits until all published events are processed and stops event processors.
+     */
+    void drainAndHalt();
+
+    /**
+     * @return number of threads required to run all event processors
+     */
+    int getThreads();
+}
@@ -0,0 +1,99 @@
+package com.devicehive.shim.kafka.server;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.ServerEvent;
+import com.devicehive.shim.api.Request;
+import com.lmax.disruptor.*;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * Sharded dispatch mode. Every {@link ServerEventHandler} owns one lane and only handles events whose
+ * {@link Request#getPartitionKey()} hashes to that lane, so requests for the same device are processed one by one
+ * and in the order they were consumed, without any global locking. Requests without partition key are spread
+ * across lanes by their sequence number.
+ */
+public class ShardedServerEventPool implements ServerEventPool {
+
+    private final RingBuffer<ServerEvent> ringBuffer;
+    private final BatchEventProcessor<ServerEvent>[] processors;
+
+    @SuppressWarnings("unchecked")
+    public ShardedServerEventPool(ServerEventHandler[] handlers, int bufferSize, WaitStrategy waitStrategy) {
+        this.ringBuffer = RingBuffer.createMultiProducer(ServerEvent::new, bufferSize, waitStrategy);
+        SequenceBarrier barrier = ringBuffer.newBarrier();
+        this.processors = new BatchEventProcessor[handlers.length];
+        for (int lane = 0; lane < handlers.length; lane++) {
+            processors[lane] = new BatchEventProcessor<>(ringBuffer, barrier,
+                    new LaneEventHandler(handlers[lane], lane, handlers.length));
+            processors[lane].setExceptionHandler(new FatalExceptionHandler());
+            ringBuffer.addGatingSequences(processors[lane].getSequence());
+        }
+    }
+
+    @Override
+    public RingBuffer<ServerEvent> start(Executor executor) {
+        Arrays.stream(processors).forEach(executor::execute);
+        return ringBuffer;
+    }
+
+    @Override
+    public void drainAndHalt() {
+        while (ringBuffer.getMinimumGatingSequence() < ringBuffer.getCursor()) {
+            Thread.yield();
+        }
+        Arrays.stream(processors).forEach(BatchEventProcessor::halt);
+    }
+
+    @Override
+    public int getThreads() {
+        return processors.length;
+    }
+
+    static int laneOf(String partitionKey, long sequence, int lanes) {
+        if (partitionKey == null) {
+            return (int) (sequence % lanes);
+        }
+        return (partitionKey.hashCode() & Integer.MAX_VALUE) % lanes;
+    }
+
+    private static class LaneEventHandler implements EventHandler<ServerEvent> {
+
+        private final ServerEventHandler delegate;
+        private final int lane;
+        private final int lanes;
+
+        LaneEventHandler(ServerEventHandler delegate, int lane, int lanes) {
+            this.delegate = delegate;
+            this.lane = lane;
+            this.lanes = lanes;
+        }
+
+        @Override
+        public void onEvent(ServerEvent event, long sequence, boolean endOfBatch) throws Exception {
+            if (laneOf(event.get().getPartitionKey(), sequence, lanes) == lane) {
+                delegate.onEvent(event);
+            }
+        }
+    }
+}
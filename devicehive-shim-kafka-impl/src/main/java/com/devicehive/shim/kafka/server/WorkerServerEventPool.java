@@ -0,0 +1,59 @@
+package com.devicehive.shim.kafka.server;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.ServerEvent;
+import com.lmax.disruptor.*;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Shared dispatch mode. Any {@link ServerEventHandler} may take any event, so requests are processed in parallel
+ * regardless of their partition key.
+ */
+public class WorkerServerEventPool implements ServerEventPool {
+
+    private final WorkerPool<ServerEvent> workerPool;
+    private final int threads;
+
+    public WorkerServerEventPool(ServerEventHandler[] workHandlers, int bufferSize, WaitStrategy waitStrategy) {
+        RingBuffer<ServerEvent> ringBuffer = RingBuffer.createMultiProducer(ServerEvent::new, bufferSize, waitStrategy);
+        SequenceBarrier barrier = ringBuffer.newBarrier();
+        this.workerPool = new WorkerPool<>(ringBuffer, barrier, new FatalExceptionHandler(), workHandlers);
+        ringBuffer.addGatingSequences(workerPool.getWorkerSequences());
+        this.threads = workHandlers.length;
+    }
+
+    @Override
+    public RingBuffer<ServerEvent> start(Executor executor) {
+        return workerPool.start(executor);
+    }
+
+    @Override
+    public void drainAndHalt() {
+        workerPool.drainAndHalt();
+    }
+
+    @Override
+    public int getThreads() {
+        return threads;
+    }
+}
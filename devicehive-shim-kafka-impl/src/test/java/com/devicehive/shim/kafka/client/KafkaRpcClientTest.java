@@ -0,0 +1,112 @@
+package com.devicehive.shim.kafka.client;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RequestResponseMatcher;
+import com.devicehive.api.RpcMetrics;
+import com.devicehive.shim.api.Action;
+import com.devicehive.shim.api.Body;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.RequestClass;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class KafkaRpcClientTest {
+
+    private static final String TOPIC = "request_topic";
+
+    @Test
+    public void shouldClassifyActions() {
+        assertEquals(RequestClass.REALTIME, RequestClass.of(Action.NOTIFICATION_INSERT_REQUEST));
+        assertEquals(RequestClass.QUERY, RequestClass.of(Action.NOTIFICATION_SEARCH_REQUEST));
+        assertEquals(RequestClass.ADMIN, RequestClass.of(Action.LIST_USER_REQUEST));
+        assertEquals(RequestClass.REALTIME, RequestClass.of((Action) null));
+        assertEquals(RequestClass.REALTIME, RequestClass.of(Request.newBuilder().build()));
+    }
+
+    @Test
+    public void shouldKeepBaseTopicForRealtimeRequests() {
+        assertEquals(TOPIC, RequestClass.REALTIME.topic(TOPIC));
+        assertEquals("request_topic_query", RequestClass.QUERY.topic(TOPIC));
+        assertEquals("request_topic_admin", RequestClass.ADMIN.topic(TOPIC));
+        assertEquals(Arrays.asList(TOPIC, "request_topic_query", "request_topic_admin"), RequestClass.topics(TOPIC));
+    }
+
+    @Test
+    public void shouldSendEveryRequestToBaseTopicByDefault() {
+        Producer<String, Request> producer = producer();
+        KafkaRpcClient client = client(producer, false);
+
+        client.push(request(Action.NOTIFICATION_INSERT_REQUEST));
+        client.push(request(Action.NOTIFICATION_SEARCH_REQUEST));
+        client.push(request(Action.LIST_USER_REQUEST));
+
+        assertEquals(Arrays.asList(TOPIC, TOPIC, TOPIC), sentTopics(producer, 3));
+    }
+
+    @Test
+    public void shouldSendRequestToTopicOfItsClassWhenEnabled() {
+        Producer<String, Request> producer = producer();
+        KafkaRpcClient client = client(producer, true);
+
+        client.push(request(Action.NOTIFICATION_INSERT_REQUEST));
+        client.push(request(Action.NOTIFICATION_SEARCH_REQUEST));
+        client.push(request(Action.LIST_USER_REQUEST));
+
+        assertEquals(Arrays.asList(TOPIC, "request_topic_query", "request_topic_admin"), sentTopics(producer, 3));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Producer<String, Request> producer() {
+        return Mockito.mock(Producer.class);
+    }
+
+    private static KafkaRpcClient client(Producer<String, Request> producer, boolean topicPerClass) {
+        return new KafkaRpcClient(TOPIC, "reply_topic", producer, new RequestResponseMatcher(),
+                Mockito.mock(ServerResponseListener.class), new RpcMetrics(), topicPerClass);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> sentTopics(Producer<String, Request> producer, int count) {
+        ArgumentCaptor<ProducerRecord> captor = ArgumentCaptor.forClass(ProducerRecord.class);
+        Mockito.verify(producer, Mockito.times(count)).send(captor.capture(), Matchers.any());
+        return captor.getAllValues().stream()
+                .map(record -> ((ProducerRecord<String, Request>) record).topic())
+                .collect(Collectors.toList());
+    }
+
+    private static Request request(Action action) {
+        return Request.newBuilder()
+                .withBody(new Body(action) {})
+                .withPartitionKey("device")
+                .build();
+    }
+}
@@ -0,0 +1,164 @@
+package com.devicehive.shim.kafka.server;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RpcMetrics;
+import com.devicehive.model.ServerEvent;
+import com.devicehive.shim.api.Request;
+import com.lmax.disruptor.RingBuffer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RequestDecoderTest {
+
+    private static final String TOPIC = "request_topic";
+    private static final TopicPartition PARTITION = new TopicPartition(TOPIC, 0);
+
+    private final CountDownLatch blockerStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseBlocker = new CountDownLatch(1);
+    private final List<String> published = Collections.synchronizedList(new ArrayList<>());
+
+    private final RequestDecoder decoder = new RequestDecoder(new BlockingDeserializer(), new RpcMetrics(), 1, 1);
+
+    @After
+    public void tearDown() {
+        releaseBlocker.countDown();
+        decoder.shutdown();
+    }
+
+    @Test(timeout = 10000)
+    public void shouldRefuseRecordWhenLaneIsFull() throws Exception {
+        occupyLane();
+
+        assertTrue(decoder.tryDecode(record(0, "first"), request -> published.add(request.getPartitionKey())));
+        assertFalse(decoder.tryDecode(record(1, "second"), request -> published.add(request.getPartitionKey())));
+        assertEquals(1.0, decoder.getUsage(), 0);
+
+        releaseBlocker.countDown();
+        awaitDrained();
+        assertEquals(Arrays.asList("blocker", "first"), published);
+    }
+
+    @Test
+    public void shouldSkipUndecodableRecord() {
+        assertNull(decoder.decode(record(0, "broken")));
+        assertEquals("device", decoder.decode(record(1, "device")).getPartitionKey());
+    }
+
+    @Test(timeout = 10000)
+    public void shouldRewindAndPauseWhenDecoderIsFullAndResumeOnceDrained() throws Exception {
+        @SuppressWarnings("unchecked")
+        KafkaConsumer<String, byte[]> consumer = Mockito.mock(KafkaConsumer.class);
+        Set<TopicPartition> assignment = Collections.singleton(PARTITION);
+        Mockito.when(consumer.assignment()).thenReturn(assignment);
+        Mockito.when(consumer.paused()).thenReturn(assignment);
+        RingBuffer<ServerEvent> ringBuffer = RingBuffer.createMultiProducer(ServerEvent::new, 16);
+        RingBufferBackpressure backpressure = new RingBufferBackpressure(0.9, 0.5);
+        RequestConsumerWorker worker = new RequestConsumerWorker(Collections.singletonList(TOPIC), consumer, decoder,
+                ringBuffer, backpressure, new CountDownLatch(1));
+        occupyLane();
+
+        worker.process(new ConsumerRecords<>(Collections.singletonMap(PARTITION,
+                Arrays.asList(record(10, "first"), record(11, "second"), record(12, "third")))));
+
+        // the refused record and everything after it is fetched again after resume
+        Mockito.verify(consumer).seek(PARTITION, 11);
+        Mockito.verify(consumer).pause(assignment);
+        assertEquals(1, backpressure.getPauseCount());
+        assertEquals(1, backpressure.getPausedConsumers());
+
+        worker.beforePoll();
+        assertEquals("Still full, stays paused", 1, backpressure.getPauseCount());
+        Mockito.verify(consumer, Mockito.never()).resume(Mockito.anyCollectionOf(TopicPartition.class));
+
+        releaseBlocker.countDown();
+        while (ringBuffer.getCursor() < 0) {
+            Thread.sleep(10);
+        }
+        worker.beforePoll();
+
+        Mockito.verify(consumer).resume(assignment);
+        assertEquals(1, backpressure.getResumeCount());
+        assertEquals(0, backpressure.getPausedConsumers());
+        assertEquals("first", ringBuffer.get(0).get().getPartitionKey());
+    }
+
+    /**
+     * Keeps the only decoder lane busy until {@link #releaseBlocker} is counted down, so its queue of one slot is
+     * all that is left.
+     */
+    private void occupyLane() throws InterruptedException {
+        assertTrue(decoder.tryDecode(record(0, "blocker"), request -> published.add(request.getPartitionKey())));
+        assertTrue(blockerStarted.await(5, TimeUnit.SECONDS));
+    }
+
+    private void awaitDrained() throws InterruptedException {
+        while (decoder.getQueueDepth() > 0 || published.size() < 2) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static ConsumerRecord<String, byte[]> record(long offset, String value) {
+        // the same key for every record, so all of them land on one lane
+        return new ConsumerRecord<>(TOPIC, 0, offset, "device", value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private class BlockingDeserializer implements Deserializer<Request> {
+
+        @Override
+        public void configure(Map<String, ?> configs, boolean isKey) {
+        }
+
+        @Override
+        public Request deserialize(String topic, byte[] data) {
+            String value = new String(data, StandardCharsets.UTF_8);
+            if ("broken".equals(value)) {
+                throw new IllegalArgumentException("Malformed request");
+            }
+            if ("blocker".equals(value)) {
+                blockerStarted.countDown();
+                try {
+                    releaseBlocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return Request.newBuilder().withPartitionKey(value).build();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.devicehive.shim.kafka.server;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RpcMetrics;
+import com.devicehive.model.ServerEvent;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.Response;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.RingBuffer;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ShardedServerEventPoolTest {
+
+    private final Map<String, Set<String>> threadsByKey = new ConcurrentHashMap<>();
+    private final Map<String, List<Integer>> ordersByKey = new ConcurrentHashMap<>();
+    private final Map<Request, Integer> orders = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final Set<String> threads = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger handled = new AtomicInteger();
+
+    @Test(timeout = 30000)
+    public void shouldHandleEveryKeyOnOneLaneInOrder() throws Exception {
+        ShardedServerEventPool pool = new ShardedServerEventPool(handlers(4), 64, new BlockingWaitStrategy());
+        ExecutorService executor = Executors.newFixedThreadPool(pool.getThreads());
+        try {
+            RingBuffer<ServerEvent> ringBuffer = pool.start(executor);
+            for (int i = 0; i < 1000; i++) {
+                publish(ringBuffer, "device-" + (i % 10), i);
+            }
+            pool.drainAndHalt();
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1000, handled.get());
+        assertEquals(10, threadsByKey.size());
+        threadsByKey.forEach((key, threads) -> assertEquals("Lanes of " + key, 1, threads.size()));
+        ordersByKey.forEach((key, orders) -> {
+            List<Integer> sorted = new ArrayList<>(orders);
+            Collections.sort(sorted);
+            assertEquals("Order of " + key, sorted, orders);
+        });
+    }
+
+    @Test(timeout = 30000)
+    public void shouldHandleEventsWithoutKeyExactlyOnce() throws Exception {
+        ShardedServerEventPool pool = new ShardedServerEventPool(handlers(3), 16, new BlockingWaitStrategy());
+        ExecutorService executor = Executors.newFixedThreadPool(pool.getThreads());
+        try {
+            RingBuffer<ServerEvent> ringBuffer = pool.start(executor);
+            for (int i = 0; i < 100; i++) {
+                publish(ringBuffer, null, i);
+            }
+            pool.drainAndHalt();
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(100, handled.get());
+        // keyless requests fall back to their correlation id, so they are spread over all lanes
+        assertEquals(100, threadsByKey.size());
+        assertEquals(3, threads.size());
+    }
+
+    @Test
+    public void shouldMapKeyToStableLane() {
+        int lane = ShardedServerEventPool.laneOf("device", 0, 8);
+        for (long sequence = 1; sequence < 100; sequence++) {
+            assertEquals(lane, ShardedServerEventPool.laneOf("device", sequence, 8));
+        }
+        assertEquals(3, ShardedServerEventPool.laneOf(null, 11, 8));
+        assertEquals(4, ShardedServerEventPool.laneOf(null, 12, 8));
+    }
+
+    private ServerEventHandler[] handlers(int count) {
+        ServerEventHandler[] handlers = new ServerEventHandler[count];
+        for (int i = 0; i < count; i++) {
+            handlers[i] = new ServerEventHandler(request -> {
+                String key = request.getPartitionKey();
+                threadsByKey.computeIfAbsent(String.valueOf(key), k -> ConcurrentHashMap.newKeySet())
+                        .add(Thread.currentThread().getName());
+                ordersByKey.computeIfAbsent(String.valueOf(key), k -> Collections.synchronizedList(new ArrayList<>()))
+                        .add(orders.get(request));
+                threads.add(Thread.currentThread().getName());
+                handled.incrementAndGet();
+                return Response.newBuilder().buildSuccess();
+            }, Mockito.mock(ResponseEncoder.class), new RpcMetrics());
+        }
+        return handlers;
+    }
+
+    private void publish(RingBuffer<ServerEvent> ringBuffer, String partitionKey, int order) {
+        Request request = Request.newBuilder()
+                .withPartitionKey(partitionKey)
+                .build();
+        orders.put(request, order);
+        long sequence = ringBuffer.next();
+        ringBuffer.get(sequence).set(request);
+        ringBuffer.publish(sequence);
+    }
+}
@@ -0,0 +1,132 @@
+package com.devicehive.shim.config.local;
+
+/*
+ * #%L
+ * DeviceHive Shim In-JVM Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RequestResponseMatcher;
+import com.devicehive.api.RpcMetrics;
+import com.devicehive.model.ServerEvent;
+import com.devicehive.model.eventbus.FilterRegistry;
+import com.devicehive.model.eventbus.LocalFilterRegistry;
+import com.devicehive.shim.api.client.RpcClient;
+import com.devicehive.shim.api.server.MessageDispatcher;
+import com.devicehive.shim.api.server.RequestHandler;
+import com.devicehive.shim.local.client.LocalRpcClient;
+import com.devicehive.shim.local.server.LocalMessageDispatcher;
+import com.devicehive.shim.local.server.LocalRpcServer;
+import com.devicehive.shim.local.server.LocalServerEventHandler;
+import com.lmax.disruptor.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.util.stream.IntStream;
+
+/**
+ * In-JVM transport for deployments that run frontend and backend logic in one process. Requests and responses are
+ * passed by reference through the Disruptor ring buffer and {@link RequestResponseMatcher}. The context has to
+ * provide both the backend's {@code request-dispatcher} handler and the RpcClient consumers, which neither the
+ * frontend nor the backend application does on its own; neither of them includes this module.
+ */
+@Configuration
+@Profile("rpc-local")
+public class LocalRpcConfig {
+    private static final Logger logger = LoggerFactory.getLogger(LocalRpcConfig.class);
+
+    @Value("${rpc.local.worker.threads:3}")
+    private int workerThreads;
+
+    @Value("${rpc.client.callback.lanes:4}")
+    private int callbackLanes;
+
+    @Value("${rpc.client.callback.lane-capacity:1024}")
+    private int callbackLaneCapacity;
+
+    @Value("${lmax.buffer-size:1024}")
+    private int bufferSize;
+
+    @Value("${lmax.wait.strategy:blocking}")
+    private String waitStrategy;
+
+    @Bean(destroyMethod = "shutdown")
+    public RequestResponseMatcher requestResponseMatcher(RpcMetrics rpcMetrics) {
+        RequestResponseMatcher matcher = new RequestResponseMatcher(callbackLanes, callbackLaneCapacity);
+        rpcMetrics.registerGauge("client.correlationMap.size", matcher::getCorrelationMapSize);
+        rpcMetrics.registerGauge("client.callback.queueDepth", matcher.getCallbackExecutor()::getQueueDepth);
+        return matcher;
+    }
+
+    @Bean
+    public MessageDispatcher messageDispatcher(RequestResponseMatcher requestResponseMatcher) {
+        return new LocalMessageDispatcher(requestResponseMatcher);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public LocalRpcServer rpcServer(@Qualifier("request-dispatcher") RequestHandler requestHandler, MessageDispatcher messageDispatcher) {
+        final LocalServerEventHandler[] workHandlers = new LocalServerEventHandler[workerThreads];
+        IntStream.range(0, workerThreads).forEach(
+                nbr -> workHandlers[nbr] = new LocalServerEventHandler(requestHandler, messageDispatcher)
+        );
+        final RingBuffer<ServerEvent> ringBuffer = RingBuffer.createMultiProducer(ServerEvent::new, bufferSize, getWaitStrategy());
+        final SequenceBarrier barrier = ringBuffer.newBarrier();
+        WorkerPool<ServerEvent> workerPool = new WorkerPool<>(ringBuffer, barrier, new FatalExceptionHandler(), workHandlers);
+        ringBuffer.addGatingSequences(workerPool.getWorkerSequences());
+
+        LocalRpcServer server = new LocalRpcServer(workerPool, messageDispatcher, workerThreads);
+        server.start();
+        return server;
+    }
+
+    @Bean
+    public RpcClient rpcClient(LocalRpcServer rpcServer, RequestResponseMatcher requestResponseMatcher, RpcMetrics rpcMetrics) {
+        rpcMetrics.registerGauge("server.ringBuffer.remainingCapacity", () -> rpcServer.getRingBuffer().remainingCapacity());
+        return new LocalRpcClient(rpcServer, requestResponseMatcher, rpcMetrics);
+    }
+
+    @Bean
+    public FilterRegistry filterRegistry() {
+        return new LocalFilterRegistry();
+    }
+
+    private WaitStrategy getWaitStrategy() {
+        logger.info("In-JVM RPC wait strategy: {}", waitStrategy);
+        WaitStrategy strategy;
+
+        switch (waitStrategy) {
+            case "sleeping":
+                strategy = new SleepingWaitStrategy();
+                break;
+            case "yielding":
+                strategy = new YieldingWaitStrategy();
+                break;
+            case "busyspin":
+                strategy = new BusySpinWaitStrategy();
+                break;
+            default:
+                strategy = new BlockingWaitStrategy();
+                break;
+        }
+        return strategy;
+    }
+}
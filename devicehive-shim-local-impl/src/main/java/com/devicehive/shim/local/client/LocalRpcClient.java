@@ -0,0 +1,67 @@
+package com.devicehive.shim.local.client;
+
+/*
+ * #%L
+ * DeviceHive Shim In-JVM Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RequestResponseMatcher;
+import com.devicehive.api.RpcMetrics;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.Response;
+import com.devicehive.shim.api.client.RpcClient;
+import com.devicehive.shim.local.server.LocalRpcServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.Consumer;
+
+public class LocalRpcClient implements RpcClient {
+    private static final Logger logger = LoggerFactory.getLogger(LocalRpcClient.class);
+
+    private LocalRpcServer server;
+    private RequestResponseMatcher requestResponseMatcher;
+    private RpcMetrics rpcMetrics;
+
+    public LocalRpcClient(LocalRpcServer server, RequestResponseMatcher requestResponseMatcher) {
+        this(server, requestResponseMatcher, new RpcMetrics());
+    }
+
+    public LocalRpcClient(LocalRpcServer server, RequestResponseMatcher requestResponseMatcher, RpcMetrics rpcMetrics) {
+        this.server = server;
+        this.requestResponseMatcher = requestResponseMatcher;
+        this.rpcMetrics = rpcMetrics;
+    }
+
+    @Override
+    public void call(Request request, Consumer<Response> callback) {
+        requestResponseMatcher.addRequestCallback(request.getCorrelationId(), rpcMetrics.timeRoundTrip(request, callback));
+        logger.debug("Request callback added for request: {}, correlationId: {}", request.getBody(), request.getCorrelationId());
+
+        push(request);
+    }
+
+    @Override
+    public void push(Request request) {
+        if (request.getBody() == null) {
+            throw new NullPointerException("Request body must not be null.");
+        }
+
+        server.getRingBuffer().publishEvent((serverEvent, sequence, req) -> serverEvent.set(req), request);
+    }
+}
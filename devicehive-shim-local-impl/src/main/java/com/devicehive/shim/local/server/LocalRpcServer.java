@@ -0,0 +1,78 @@
+package com.devicehive.shim.local.server;
+
+/*
+ * #%L
+ * DeviceHive Shim In-JVM Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.ServerEvent;
+import com.devicehive.shim.api.server.MessageDispatcher;
+import com.devicehive.shim.api.server.RpcServer;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.WorkerPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * RpcServer for single-process deployments. Requests are published by {@link com.devicehive.shim.local.client.LocalRpcClient}
+ * straight into the ring buffer of this server, so no broker and no serialization is involved.
+ */
+public class LocalRpcServer implements RpcServer {
+    private static final Logger logger = LoggerFactory.getLogger(LocalRpcServer.class);
+
+    private WorkerPool<ServerEvent> workerPool;
+    private MessageDispatcher dispatcher;
+    private int workerThreads;
+
+    private volatile RingBuffer<ServerEvent> ringBuffer;
+    private ExecutorService execService;
+
+    public LocalRpcServer(WorkerPool<ServerEvent> workerPool, MessageDispatcher dispatcher, int workerThreads) {
+        this.workerPool = workerPool;
+        this.dispatcher = dispatcher;
+        this.workerThreads = workerThreads;
+    }
+
+    @Override
+    public void start() {
+        execService = Executors.newFixedThreadPool(workerThreads);
+        ringBuffer = workerPool.start(execService);
+        logger.info("In-JVM RpcServer started. Buffer size: {}", ringBuffer.getBufferSize());
+    }
+
+    @Override
+    public void shutdown() {
+        workerPool.drainAndHalt();
+        execService.shutdown();
+    }
+
+    @Override
+    public MessageDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    public RingBuffer<ServerEvent> getRingBuffer() {
+        if (ringBuffer == null) {
+            throw new IllegalStateException("In-JVM RpcServer is not started");
+        }
+        return ringBuffer;
+    }
+}
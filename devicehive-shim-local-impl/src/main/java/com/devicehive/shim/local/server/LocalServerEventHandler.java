@@ -0,0 +1,45 @@
+package com.devicehive.shim.local.server;
+
+/*
+ * #%L
+ * DeviceHive Shim In-JVM Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.ServerEvent;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.server.MessageDispatcher;
+import com.devicehive.shim.api.server.RequestHandler;
+import com.devicehive.shim.api.server.RequestResponder;
+import com.lmax.disruptor.WorkHandler;
+
+public class LocalServerEventHandler implements WorkHandler<ServerEvent> {
+
+    private final RequestResponder responder;
+    private final MessageDispatcher dispatcher;
+
+    public LocalServerEventHandler(RequestHandler requestHandler, MessageDispatcher dispatcher) {
+        this.responder = new RequestResponder(requestHandler);
+        this.dispatcher = dispatcher;
+    }
+
+    @Override
+    public void onEvent(ServerEvent event) throws Exception {
+        final Request request = event.get();
+        dispatcher.send(request.getReplyTo(), responder.respond(request));
+    }
+}
@@ -0,0 +1,127 @@
+package com.devicehive.shim.local.test;
+
+/*
+ * #%L
+ * DeviceHive Shim In-JVM Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RequestResponseMatcher;
+import com.devicehive.model.ServerEvent;
+import com.devicehive.shim.api.Action;
+import com.devicehive.shim.api.Body;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.Response;
+import com.devicehive.shim.api.client.RpcClient;
+import com.devicehive.shim.api.server.RequestHandler;
+import com.devicehive.shim.local.client.LocalRpcClient;
+import com.devicehive.shim.local.server.LocalMessageDispatcher;
+import com.devicehive.shim.local.server.LocalRpcServer;
+import com.devicehive.shim.local.server.LocalServerEventHandler;
+import com.lmax.disruptor.FatalExceptionHandler;
+import com.lmax.disruptor.WorkerPool;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LocalRpcClientServerCommunicationTest {
+
+    private static volatile RequestHandler handler;
+
+    private static RequestResponseMatcher requestResponseMatcher;
+    private static LocalRpcServer server;
+    private static RpcClient client;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        requestResponseMatcher = new RequestResponseMatcher(2, 16);
+        LocalMessageDispatcher dispatcher = new LocalMessageDispatcher(requestResponseMatcher);
+        LocalServerEventHandler[] workHandlers = {
+                new LocalServerEventHandler(request -> handler.handle(request), dispatcher),
+                new LocalServerEventHandler(request -> handler.handle(request), dispatcher)
+        };
+        WorkerPool<ServerEvent> workerPool = new WorkerPool<>(ServerEvent::new, new FatalExceptionHandler(), workHandlers);
+
+        server = new LocalRpcServer(workerPool, dispatcher, workHandlers.length);
+        server.start();
+        client = new LocalRpcClient(server, requestResponseMatcher);
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        server.shutdown();
+        requestResponseMatcher.shutdown();
+    }
+
+    @Test
+    public void shouldPassRequestAndResponseWithoutCopying() throws Exception {
+        Response serverResponse = Response.newBuilder()
+                .withBody(new TestBody())
+                .withLast(true)
+                .buildSuccess();
+        CompletableFuture<Request> receivedRequest = new CompletableFuture<>();
+        handler = request -> {
+            receivedRequest.complete(request);
+            return serverResponse;
+        };
+
+        Request request = Request.newBuilder()
+                .withBody(new TestBody())
+                .withSingleReply(true)
+                .build();
+
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        client.call(request, future::complete);
+
+        Response response = future.get(10, TimeUnit.SECONDS);
+        assertSame(request, receivedRequest.get());
+        assertSame(serverResponse, response);
+        assertEquals(request.getCorrelationId(), response.getCorrelationId());
+        assertFalse(response.isFailed());
+    }
+
+    @Test
+    public void shouldSendErrorToClient() throws Exception {
+        handler = request -> {
+            throw new RuntimeException("Something went wrong");
+        };
+
+        Request request = Request.newBuilder()
+                .withBody(new TestBody())
+                .withSingleReply(true)
+                .build();
+
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        client.call(request, future::complete);
+
+        Response response = future.get(10, TimeUnit.SECONDS);
+        assertEquals(request.getCorrelationId(), response.getCorrelationId());
+        assertTrue(response.isLast());
+        assertTrue(response.isFailed());
+    }
+
+    private static class TestBody extends Body {
+        TestBody() {
+            super(Action.EMPTY);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.devicehive.shim.config.tcp;
+
+/*
+ * #%L
+ * DeviceHive Shim TCP Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RequestResponseMatcher;
+import com.devicehive.api.RpcMetrics;
+import com.devicehive.shim.api.client.RpcClient;
+import com.devicehive.shim.tcp.client.TcpRpcClient;
+import com.google.gson.Gson;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.annotation.PropertySource;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Configuration
+@Profile("rpc-tcp-client")
+@PropertySource("classpath:tcp-rpc.properties")
+public class TcpRpcClientConfig {
+
+    @Value("${rpc.tcp.servers:localhost:9300}")
+    private String servers;
+
+    @Value("${rpc.tcp.client.io.threads:0}")
+    private int ioThreads;
+
+    @Value("${rpc.tcp.max-frame-length:10485760}")
+    private int maxFrameLength;
+
+    @Value("${rpc.client.callback.lanes:4}")
+    private int callbackLanes;
+
+    @Value("${rpc.client.callback.lane-capacity:1024}")
+    private int callbackLaneCapacity;
+
+    @Bean(destroyMethod = "shutdown")
+    public RequestResponseMatcher requestResponseMatcher(RpcMetrics rpcMetrics) {
+        RequestResponseMatcher matcher = new RequestResponseMatcher(callbackLanes, callbackLaneCapacity);
+        rpcMetrics.registerGauge("client.correlationMap.size", matcher::getCorrelationMapSize);
+        rpcMetrics.registerGauge("client.callback.queueDepth", matcher.getCallbackExecutor()::getQueueDepth);
+        return matcher;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public RpcClient rpcClient(RequestResponseMatcher requestResponseMatcher, Gson gson, RpcMetrics rpcMetrics) {
+        List<InetSocketAddress> addresses = parseServers();
+        if (addresses.size() > 1) {
+            // every backend matches events only against the subscriptions it received itself, so a subscription
+            // without a device partition key would miss the events of devices routed to the other backends
+            throw new IllegalStateException("rpc.tcp.servers lists " + addresses.size()
+                    + " backends, but subscriptions are not shared between backends; configure a single backend");
+        }
+        RpcClient client = new TcpRpcClient(addresses, ioThreads, maxFrameLength, gson, requestResponseMatcher, rpcMetrics);
+        client.start();
+        return client;
+    }
+
+    private List<InetSocketAddress> parseServers() {
+        return Arrays.stream(servers.split(","))
+                .map(String::trim)
+                .filter(server -> !server.isEmpty())
+                .map(server -> {
+                    int separator = server.lastIndexOf(':');
+                    return InetSocketAddress.createUnresolved(server.substring(0, separator),
+                            Integer.parseInt(server.substring(separator + 1)));
+                })
+                .collect(Collectors.toList());
+    }
+}
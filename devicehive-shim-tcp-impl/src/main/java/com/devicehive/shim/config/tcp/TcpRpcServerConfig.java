@@ -0,0 +1,92 @@
+package com.devicehive.shim.config.tcp;
+
+/*
+ * #%L
+ * DeviceHive Shim TCP Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.ServerEvent;
+import com.devicehive.model.eventbus.FilterRegistry;
+import com.devicehive.model.eventbus.LocalFilterRegistry;
+import com.devicehive.shim.api.server.RequestHandler;
+import com.devicehive.shim.api.server.RpcServer;
+import com.devicehive.shim.tcp.server.TcpMessageDispatcher;
+import com.devicehive.shim.tcp.server.TcpRpcServer;
+import com.devicehive.shim.tcp.server.TcpServerEventHandler;
+import com.google.gson.Gson;
+import com.lmax.disruptor.*;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.annotation.PropertySource;
+
+import java.util.stream.IntStream;
+
+@Configuration
+@Profile("rpc-tcp-server")
+@PropertySource("classpath:tcp-rpc.properties")
+public class TcpRpcServerConfig {
+
+    @Value("${rpc.tcp.server.port:9300}")
+    private int port;
+
+    @Value("${rpc.tcp.server.io.threads:0}")
+    private int ioThreads;
+
+    @Value("${rpc.tcp.max-frame-length:10485760}")
+    private int maxFrameLength;
+
+    @Value("${rpc.server.worker.threads:1}")
+    private int workerThreads;
+
+    @Value("${lmax.buffer-size:1024}")
+    private int bufferSize;
+
+    @Bean
+    public TcpMessageDispatcher messageDispatcher(FilterRegistry filterRegistry) {
+        return new TcpMessageDispatcher(filterRegistry::unregisterReplyTo);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public RpcServer rpcServer(@Qualifier("request-dispatcher") RequestHandler requestHandler,
+                               TcpMessageDispatcher messageDispatcher, Gson gson) {
+        final TcpServerEventHandler[] workHandlers = new TcpServerEventHandler[workerThreads];
+        IntStream.range(0, workerThreads).forEach(
+                nbr -> workHandlers[nbr] = new TcpServerEventHandler(requestHandler, messageDispatcher)
+        );
+        final RingBuffer<ServerEvent> ringBuffer = RingBuffer.createMultiProducer(ServerEvent::new, bufferSize, new BlockingWaitStrategy());
+        final SequenceBarrier barrier = ringBuffer.newBarrier();
+        WorkerPool<ServerEvent> workerPool = new WorkerPool<>(ringBuffer, barrier, new FatalExceptionHandler(), workHandlers);
+        ringBuffer.addGatingSequences(workerPool.getWorkerSequences());
+
+        RpcServer server = new TcpRpcServer(port, ioThreads, maxFrameLength, gson, workerPool, workerThreads, messageDispatcher);
+        server.start();
+        return server;
+    }
+
+    /**
+     * Subscriptions are matched only on the backend that received them, so the rpc client refuses to start with
+     * more than one backend configured.
+     */
+    @Bean
+    public FilterRegistry filterRegistry() {
+        return new LocalFilterRegistry();
+    }
+}
@@ -0,0 +1,51 @@
+package com.devicehive.shim.tcp.client;
+
+/*
+ * #%L
+ * DeviceHive Shim TCP Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RequestResponseMatcher;
+import com.devicehive.shim.api.Response;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+@ChannelHandler.Sharable
+public class ResponseChannelHandler extends SimpleChannelInboundHandler<Response> {
+    private static final Logger logger = LoggerFactory.getLogger(ResponseChannelHandler.class);
+
+    private final RequestResponseMatcher requestResponseMatcher;
+
+    ResponseChannelHandler(RequestResponseMatcher requestResponseMatcher) {
+        this.requestResponseMatcher = requestResponseMatcher;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, Response response) throws Exception {
+        requestResponseMatcher.offerResponse(response);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        logger.error("Unexpected exception in connection with {}, closing it", ctx.channel().remoteAddress(), cause);
+        ctx.close();
+    }
+}
@@ -0,0 +1,268 @@
+package com.devicehive.shim.tcp.client;
+
+/*
+ * #%L
+ * DeviceHive Shim TCP Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RequestResponseMatcher;
+import com.devicehive.api.RpcMetrics;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.Response;
+import com.devicehive.shim.api.client.RpcClient;
+import com.devicehive.shim.tcp.codec.GsonFrameCodec;
+import com.google.gson.Gson;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * RpcClient that keeps one long-lived TCP connection to every configured backend and multiplexes all requests over
+ * them by correlation id. Requests with a partition key always go to the same backend while it is connected,
+ * requests without one are balanced round robin. Lost connections are re-established in the background. A backend
+ * drops the subscriptions of a client whose connection closes, so subscription requests are remembered per backend
+ * and sent again once the connection to it is back.
+ */
+public class TcpRpcClient implements RpcClient {
+    private static final Logger logger = LoggerFactory.getLogger(TcpRpcClient.class);
+
+    private static final long RECONNECT_DELAY_MS = 1000;
+    private static final long PRUNE_INTERVAL_MS = 60000;
+    private static final int SERVICE_UNAVAILABLE = 503;
+
+    private final List<InetSocketAddress> servers;
+    private final int ioThreads;
+    private final int maxFrameLength;
+    private final Gson gson;
+    private final RequestResponseMatcher requestResponseMatcher;
+    private final RpcMetrics rpcMetrics;
+
+    private final String clientId = "tcp-client-" + UUID.randomUUID();
+    private final AtomicReferenceArray<Channel> channels;
+    private final List<Map<String, Request>> subscriptions;
+    private final AtomicInteger nextChannel = new AtomicInteger();
+
+    private EventLoopGroup group;
+    private Bootstrap bootstrap;
+    private volatile boolean running;
+
+    public TcpRpcClient(List<InetSocketAddress> servers, int ioThreads, int maxFrameLength, Gson gson,
+                        RequestResponseMatcher requestResponseMatcher) {
+        this(servers, ioThreads, maxFrameLength, gson, requestResponseMatcher, new RpcMetrics());
+    }
+
+    public TcpRpcClient(List<InetSocketAddress> servers, int ioThreads, int maxFrameLength, Gson gson,
+                        RequestResponseMatcher requestResponseMatcher, RpcMetrics rpcMetrics) {
+        if (servers.isEmpty()) {
+            throw new IllegalArgumentException("At least one RpcServer address is required");
+        }
+        this.servers = servers;
+        this.ioThreads = ioThreads;
+        this.maxFrameLength = maxFrameLength;
+        this.gson = gson;
+        this.requestResponseMatcher = requestResponseMatcher;
+        this.rpcMetrics = rpcMetrics;
+        this.channels = new AtomicReferenceArray<>(servers.size());
+        this.subscriptions = IntStream.range(0, servers.size())
+                .mapToObj(i -> new ConcurrentHashMap<String, Request>())
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void start() {
+        ResponseChannelHandler responseChannelHandler = new ResponseChannelHandler(requestResponseMatcher);
+        group = new NioEventLoopGroup(ioThreads);
+        bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) throws Exception {
+                        GsonFrameCodec.addTo(ch.pipeline(), maxFrameLength, gson, Response.class, Request.class);
+                        ch.pipeline().addLast(responseChannelHandler);
+                    }
+                });
+        running = true;
+        group.scheduleWithFixedDelay(this::pruneSubscriptions, PRUNE_INTERVAL_MS, PRUNE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        List<ChannelFuture> futures = IntStream.range(0, servers.size())
+                .mapToObj(this::connect)
+                .collect(Collectors.toList());
+        futures.forEach(ChannelFuture::awaitUninterruptibly);
+        int connected = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            if (futures.get(i).isSuccess()) {
+                // connect listeners may not have run yet when the future is done
+                channels.compareAndSet(i, null, futures.get(i).channel());
+                connected++;
+            }
+        }
+        if (connected == 0) {
+            logger.error("Unable to connect to any of RpcServers {}", servers);
+            shutdown();
+            throw new RuntimeException("RpcServer is not reachable");
+        }
+        logger.info("Connected to {} of {} RpcServers", connected, servers.size());
+    }
+
+    @Override
+    public void call(Request request, Consumer<Response> callback) {
+        requestResponseMatcher.addRequestCallback(request.getCorrelationId(), rpcMetrics.timeRoundTrip(request, callback));
+        logger.debug("Request callback added for request: {}, correlationId: {}", request.getBody(), request.getCorrelationId());
+
+        push(request);
+    }
+
+    @Override
+    public void push(Request request) {
+        if (request.getBody() == null) {
+            throw new NullPointerException("Request body must not be null.");
+        }
+
+        request.setReplyTo(clientId);
+        int index = selectChannel(request.getPartitionKey());
+        Channel channel = index < 0 ? null : channels.get(index);
+        if (channel == null) {
+            logger.warn("No RpcServer is connected, request {} is rejected", request.getCorrelationId());
+            fail(request);
+            return;
+        }
+        if (!request.isSingleReplyExpected()) {
+            subscriptions.get(index).put(request.getCorrelationId(), request);
+        }
+        channel.writeAndFlush(request).addListener(future -> {
+            if (!future.isSuccess()) {
+                logger.error("Send request failed", future.cause());
+                subscriptions.get(index).remove(request.getCorrelationId());
+                fail(request);
+            }
+        });
+    }
+
+    @Override
+    public void shutdown() {
+        running = false;
+        if (group != null) {
+            group.shutdownGracefully();
+        }
+    }
+
+    private ChannelFuture connect(int index) {
+        InetSocketAddress address = servers.get(index);
+        return bootstrap.connect(address).addListener((ChannelFuture future) -> {
+            if (future.isSuccess()) {
+                Channel channel = future.channel();
+                channels.set(index, channel);
+                logger.info("Connected to RpcServer {}", address);
+                resubscribe(index, channel);
+                channel.closeFuture().addListener(closeFuture -> {
+                    channels.compareAndSet(index, channel, null);
+                    logger.warn("Connection to RpcServer {} is lost", address);
+                    scheduleReconnect(index);
+                });
+            } else {
+                logger.warn("Unable to connect to RpcServer {}: {}", address, future.cause().getMessage());
+                scheduleReconnect(index);
+            }
+        });
+    }
+
+    private void scheduleReconnect(int index) {
+        if (running) {
+            group.schedule(() -> connect(index), RECONNECT_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends the subscriptions that are still alive to a backend the client has just reconnected to.
+     */
+    private void resubscribe(int index, Channel channel) {
+        Map<String, Request> serverSubscriptions = subscriptions.get(index);
+        serverSubscriptions.values().removeIf(request -> !requestResponseMatcher.hasRequestCallback(request.getCorrelationId()));
+        if (serverSubscriptions.isEmpty()) {
+            return;
+        }
+        logger.info("Renewing {} subscriptions at RpcServer {}", serverSubscriptions.size(), servers.get(index));
+        serverSubscriptions.values().forEach(request -> channel.writeAndFlush(request).addListener(future -> {
+            if (!future.isSuccess()) {
+                logger.error("Unable to renew subscription {}", request.getCorrelationId(), future.cause());
+            }
+        }));
+    }
+
+    /**
+     * @return index of the backend the request would go to now, or the partition key while none is connected
+     */
+    @Override
+    public Object routeOf(Request request) {
+        if (request.getPartitionKey() == null) {
+            return null;
+        }
+        int index = selectChannel(request.getPartitionKey());
+        return index >= 0 ? index : request.getPartitionKey();
+    }
+
+    /**
+     * Forgets subscription requests that have been unsubscribed meanwhile.
+     */
+    private void pruneSubscriptions() {
+        subscriptions.forEach(serverSubscriptions -> serverSubscriptions.values()
+                .removeIf(request -> !requestResponseMatcher.hasRequestCallback(request.getCorrelationId())));
+    }
+
+    /**
+     * @return index of the connected backend for the partition key, -1 if none is connected
+     */
+    private int selectChannel(String partitionKey) {
+        int size = channels.length();
+        int start = partitionKey != null ? partitionKey.hashCode() : nextChannel.getAndIncrement();
+        for (int i = 0; i < size; i++) {
+            int index = ((start + i) & Integer.MAX_VALUE) % size;
+            Channel channel = channels.get(index);
+            if (channel != null && channel.isActive()) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private void fail(Request request) {
+        requestResponseMatcher.offerResponse(Response.newBuilder()
+                .withCorrelationId(request.getCorrelationId())
+                .withLast(true)
+                .buildFailed(SERVICE_UNAVAILABLE));
+    }
+}
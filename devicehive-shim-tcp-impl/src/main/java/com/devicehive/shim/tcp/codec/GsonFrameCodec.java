@@ -0,0 +1,70 @@
+package com.devicehive.shim.tcp.codec;
+
+/*
+ * #%L
+ * DeviceHive Shim TCP Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.gson.Gson;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.codec.MessageToMessageCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Converts frame payloads to objects of inbound type and objects of outbound type to frame payloads using Gson.
+ * Every frame on the wire is a 4-byte big-endian length followed by UTF-8 encoded JSON.
+ */
+public class GsonFrameCodec<I, O> extends MessageToMessageCodec<ByteBuf, O> {
+
+    private static final int LENGTH_FIELD_SIZE = 4;
+
+    private final Gson gson;
+    private final Class<I> inboundType;
+
+    public GsonFrameCodec(Gson gson, Class<I> inboundType, Class<O> outboundType) {
+        super(ByteBuf.class, outboundType);
+        this.gson = gson;
+        this.inboundType = inboundType;
+    }
+
+    /**
+     * Adds length-prefixed framing and JSON conversion to the end of the pipeline.
+     */
+    public static <I, O> void addTo(ChannelPipeline pipeline, int maxFrameLength, Gson gson, Class<I> inboundType, Class<O> outboundType) {
+        pipeline.addLast(new LengthFieldBasedFrameDecoder(maxFrameLength, 0, LENGTH_FIELD_SIZE, 0, LENGTH_FIELD_SIZE));
+        pipeline.addLast(new LengthFieldPrepender(LENGTH_FIELD_SIZE));
+        pipeline.addLast(new GsonFrameCodec<>(gson, inboundType, outboundType));
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, O msg, List<Object> out) throws Exception {
+        out.add(ByteBufUtil.writeUtf8(ctx.alloc(), gson.toJson(msg)));
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
+        out.add(gson.fromJson(msg.toString(StandardCharsets.UTF_8), inboundType));
+    }
+}
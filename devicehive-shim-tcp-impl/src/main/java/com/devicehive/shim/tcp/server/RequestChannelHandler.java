@@ -0,0 +1,110 @@
+package com.devicehive.shim.tcp.server;
+
+/*
+ * #%L
+ * DeviceHive Shim TCP Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.ServerEvent;
+import com.devicehive.shim.api.Request;
+import com.lmax.disruptor.EventTranslatorOneArg;
+import com.lmax.disruptor.RingBuffer;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.AttributeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes requests to the ring buffer without ever blocking the event loop. When the ring buffer is full, the
+ * request is parked in a per-connection backlog and reading from that connection stops until the backlog has been
+ * published, so TCP flow control slows the client down.
+ */
+@ChannelHandler.Sharable
+public class RequestChannelHandler extends SimpleChannelInboundHandler<Request> {
+    private static final Logger logger = LoggerFactory.getLogger(RequestChannelHandler.class);
+
+    private static final long RETRY_DELAY_MS = 10;
+    private static final AttributeKey<Deque<Request>> BACKLOG = AttributeKey.valueOf("requestBacklog");
+    private static final EventTranslatorOneArg<ServerEvent, Request> TRANSLATOR =
+            (serverEvent, sequence, request) -> serverEvent.set(request);
+
+    private final RingBuffer<ServerEvent> ringBuffer;
+    private final TcpMessageDispatcher dispatcher;
+
+    RequestChannelHandler(RingBuffer<ServerEvent> ringBuffer, TcpMessageDispatcher dispatcher) {
+        this.ringBuffer = ringBuffer;
+        this.dispatcher = dispatcher;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, Request request) throws Exception {
+        dispatcher.register(request.getReplyTo(), ctx.channel());
+        Deque<Request> backlog = ctx.channel().attr(BACKLOG).get();
+        if (backlog == null) {
+            if (ringBuffer.tryPublishEvent(TRANSLATOR, request)) {
+                return;
+            }
+            logger.warn("Ring buffer is full, pausing reads from {}", ctx.channel().remoteAddress());
+            backlog = new ArrayDeque<>();
+            ctx.channel().attr(BACKLOG).set(backlog);
+            ctx.channel().config().setAutoRead(false);
+            scheduleDrain(ctx);
+        }
+        // frames decoded before reads stopped still arrive, they queue up behind the first rejected one
+        backlog.addLast(request);
+    }
+
+    /**
+     * Runs on the event loop of the connection, like {@link #channelRead0}, so the backlog needs no locking.
+     */
+    private void drain(ChannelHandlerContext ctx) {
+        Deque<Request> backlog = ctx.channel().attr(BACKLOG).get();
+        if (!ctx.channel().isActive()) {
+            logger.warn("Connection with {} is closed, dropping {} unpublished requests", ctx.channel().remoteAddress(),
+                    backlog.size());
+            ctx.channel().attr(BACKLOG).set(null);
+            return;
+        }
+        while (!backlog.isEmpty() && ringBuffer.tryPublishEvent(TRANSLATOR, backlog.peekFirst())) {
+            backlog.pollFirst();
+        }
+        if (backlog.isEmpty()) {
+            ctx.channel().attr(BACKLOG).set(null);
+            ctx.channel().config().setAutoRead(true);
+            logger.info("Ring buffer has room again, resuming reads from {}", ctx.channel().remoteAddress());
+        } else {
+            scheduleDrain(ctx);
+        }
+    }
+
+    private void scheduleDrain(ChannelHandlerContext ctx) {
+        ctx.executor().schedule(() -> drain(ctx), RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        logger.error("Unexpected exception in connection with {}, closing it", ctx.channel().remoteAddress(), cause);
+        ctx.close();
+    }
+}
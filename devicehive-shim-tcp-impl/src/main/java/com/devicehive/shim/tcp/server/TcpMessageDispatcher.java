@@ -0,0 +1,81 @@
+package com.devicehive.shim.tcp.server;
+
+/*
+ * #%L
+ * DeviceHive Shim TCP Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.shim.api.Response;
+import com.devicehive.shim.api.server.MessageDispatcher;
+import io.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Keeps track of client connections by the client id that clients put into {@code replyTo} of every request, and
+ * pushes responses and subscription events back over the same connection. When a connection closes, the
+ * subscriptions of its client are released through the disconnect listener; clients subscribe again after
+ * reconnecting.
+ */
+public class TcpMessageDispatcher implements MessageDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(TcpMessageDispatcher.class);
+
+    private final ConcurrentHashMap<String, Channel> clients = new ConcurrentHashMap<>();
+    private final Consumer<String> disconnectListener;
+
+    public TcpMessageDispatcher() {
+        this(clientId -> {});
+    }
+
+    /**
+     * @param disconnectListener called with the client id once the last connection of a client is closed
+     */
+    public TcpMessageDispatcher(Consumer<String> disconnectListener) {
+        this.disconnectListener = disconnectListener;
+    }
+
+    void register(String clientId, Channel channel) {
+        if (clientId != null && clients.put(clientId, channel) != channel) {
+            logger.info("RpcClient {} connected from {}", clientId, channel.remoteAddress());
+            channel.closeFuture().addListener(future -> {
+                // a client that has already reconnected over a new channel keeps its subscriptions
+                if (clients.remove(clientId, channel)) {
+                    logger.info("RpcClient {} disconnected", clientId);
+                    disconnectListener.accept(clientId);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void send(String to, Response response) {
+        Channel channel = clients.get(to);
+        if (channel == null || !channel.isActive()) {
+            logger.warn("RpcClient {} is not connected, response {} is dropped", to, response.getCorrelationId());
+            return;
+        }
+        channel.writeAndFlush(response);
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+}
@@ -0,0 +1,126 @@
+package com.devicehive.shim.tcp.server;
+
+/*
+ * #%L
+ * DeviceHive Shim TCP Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.ServerEvent;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.Response;
+import com.devicehive.shim.api.server.MessageDispatcher;
+import com.devicehive.shim.api.server.RpcServer;
+import com.devicehive.shim.tcp.codec.GsonFrameCodec;
+import com.google.gson.Gson;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.WorkerPool;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * RpcServer that accepts long-lived multiplexed TCP connections from {@link com.devicehive.shim.tcp.client.TcpRpcClient}s.
+ * Requests are handled on Disruptor workers, responses and subscription events are written back to the connection
+ * the client has sent its requests over.
+ */
+public class TcpRpcServer implements RpcServer {
+    private static final Logger logger = LoggerFactory.getLogger(TcpRpcServer.class);
+
+    private final int port;
+    private final int ioThreads;
+    private final int maxFrameLength;
+    private final Gson gson;
+    private final WorkerPool<ServerEvent> workerPool;
+    private final int workerThreads;
+    private final TcpMessageDispatcher dispatcher;
+
+    private ExecutorService execService;
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup ioGroup;
+    private Channel serverChannel;
+
+    public TcpRpcServer(int port, int ioThreads, int maxFrameLength, Gson gson, WorkerPool<ServerEvent> workerPool,
+                        int workerThreads, TcpMessageDispatcher dispatcher) {
+        this.port = port;
+        this.ioThreads = ioThreads;
+        this.maxFrameLength = maxFrameLength;
+        this.gson = gson;
+        this.workerPool = workerPool;
+        this.workerThreads = workerThreads;
+        this.dispatcher = dispatcher;
+    }
+
+    @Override
+    public void start() {
+        execService = Executors.newFixedThreadPool(workerThreads);
+        RingBuffer<ServerEvent> ringBuffer = workerPool.start(execService);
+        logger.info("LMAX Disruptor started. Buffer size: {}", ringBuffer.getBufferSize());
+
+        RequestChannelHandler requestChannelHandler = new RequestChannelHandler(ringBuffer, dispatcher);
+        bossGroup = new NioEventLoopGroup(1);
+        ioGroup = new NioEventLoopGroup(ioThreads);
+        serverChannel = new ServerBootstrap()
+                .group(bossGroup, ioGroup)
+                .channel(NioServerSocketChannel.class)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childOption(ChannelOption.SO_KEEPALIVE, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) throws Exception {
+                        GsonFrameCodec.addTo(ch.pipeline(), maxFrameLength, gson, Request.class, Response.class);
+                        ch.pipeline().addLast(requestChannelHandler);
+                    }
+                })
+                .bind(port)
+                .syncUninterruptibly()
+                .channel();
+        logger.info("TCP RpcServer is listening on {}", serverChannel.localAddress());
+    }
+
+    @Override
+    public void shutdown() {
+        serverChannel.close().syncUninterruptibly();
+        bossGroup.shutdownGracefully();
+        ioGroup.shutdownGracefully();
+        workerPool.drainAndHalt();
+        execService.shutdown();
+    }
+
+    @Override
+    public MessageDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * @return port the server is bound to, useful when it was started on an ephemeral port
+     */
+    public int getPort() {
+        return ((InetSocketAddress) serverChannel.localAddress()).getPort();
+    }
+}
@@ -0,0 +1,286 @@
+package com.devicehive.shim.tcp.test;
+
+/*
+ * #%L
+ * DeviceHive Shim TCP Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RequestResponseMatcher;
+import com.devicehive.json.adapters.RuntimeTypeAdapterFactory;
+import com.devicehive.model.ServerEvent;
+import com.devicehive.shim.api.Action;
+import com.devicehive.shim.api.Body;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.Response;
+import com.devicehive.shim.api.client.RpcClient;
+import com.devicehive.shim.api.server.MessageDispatcher;
+import com.devicehive.shim.tcp.client.TcpRpcClient;
+import com.devicehive.shim.tcp.server.TcpMessageDispatcher;
+import com.devicehive.shim.tcp.server.TcpRpcServer;
+import com.devicehive.shim.tcp.server.TcpServerEventHandler;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.lmax.disruptor.FatalExceptionHandler;
+import com.lmax.disruptor.WorkerPool;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TcpRpcClientServerCommunicationTest {
+
+    private static final int MAX_FRAME_LENGTH = 1024 * 1024;
+
+    private static volatile TestHandler handler;
+    private static final Set<String> disconnectedClients = ConcurrentHashMap.newKeySet();
+
+    private static Gson gson;
+    private static RequestResponseMatcher requestResponseMatcher;
+    private static List<TcpRpcServer> servers = new ArrayList<>();
+    private static RpcClient client;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        gson = new GsonBuilder()
+                .registerTypeAdapterFactory(RuntimeTypeAdapterFactory.of(Body.class, "a")
+                        .registerSubtype(TestBody.class, 0))
+                .create();
+
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            TcpRpcServer server = startServer("server-" + i, 0);
+            servers.add(server);
+            addresses.add(new InetSocketAddress("localhost", server.getPort()));
+        }
+
+        requestResponseMatcher = new RequestResponseMatcher(2, 64);
+        client = new TcpRpcClient(addresses, 1, MAX_FRAME_LENGTH, gson, requestResponseMatcher);
+        client.start();
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        client.shutdown();
+        servers.forEach(TcpRpcServer::shutdown);
+        requestResponseMatcher.shutdown();
+    }
+
+    @Test
+    public void shouldSuccessfullyReplyToRequest() throws Exception {
+        handler = (request, serverName, dispatcher) -> Response.newBuilder()
+                .withBody(new TestBody("ResponseFromServer"))
+                .withLast(true)
+                .buildSuccess();
+
+        Request request = Request.newBuilder()
+                .withBody(new TestBody("RequestResponseTest"))
+                .withSingleReply(true)
+                .build();
+
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        client.call(request, future::complete);
+
+        Response response = future.get(10, TimeUnit.SECONDS);
+        assertEquals(request.getCorrelationId(), response.getCorrelationId());
+        assertEquals("ResponseFromServer", ((TestBody) response.getBody()).getValue());
+        assertTrue(response.isLast());
+        assertFalse(response.isFailed());
+    }
+
+    @Test
+    public void shouldSendErrorToClient() throws Exception {
+        handler = (request, serverName, dispatcher) -> {
+            throw new RuntimeException("Something went wrong");
+        };
+
+        Request request = Request.newBuilder()
+                .withBody(new TestBody("RequestResponseTest"))
+                .withSingleReply(true)
+                .build();
+
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        client.call(request, future::complete);
+
+        Response response = future.get(10, TimeUnit.SECONDS);
+        assertEquals(request.getCorrelationId(), response.getCorrelationId());
+        assertTrue(response.isLast());
+        assertTrue(response.isFailed());
+    }
+
+    @Test
+    public void shouldPushEventsToSubscriber() throws Exception {
+        int events = 10;
+        handler = (request, serverName, dispatcher) -> {
+            for (int i = 0; i < events; i++) {
+                dispatcher.send(request.getReplyTo(), Response.newBuilder()
+                        .withBody(new TestBody("Event " + i))
+                        .withCorrelationId(request.getCorrelationId())
+                        .withLast(false)
+                        .buildSuccess());
+            }
+            return Response.newBuilder()
+                    .withLast(false)
+                    .buildSuccess();
+        };
+
+        Request request = Request.newBuilder()
+                .withBody(new TestBody("Subscribe"))
+                .withSingleReply(false)
+                .build();
+
+        CountDownLatch latch = new CountDownLatch(events + 1);
+        client.call(request, response -> latch.countDown());
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shouldRouteRequestsWithSamePartitionKeyToSameServer() throws Exception {
+        handler = (request, serverName, dispatcher) -> Response.newBuilder()
+                .withBody(new TestBody(serverName))
+                .withLast(true)
+                .buildSuccess();
+
+        Set<String> serversForKey = new HashSet<>();
+        Set<String> allServers = new HashSet<>();
+        for (int i = 0; i < 20; i++) {
+            serversForKey.add(call("device-1"));
+            allServers.add(call("device-" + i));
+        }
+        assertEquals(1, serversForKey.size());
+        assertEquals(servers.size(), allServers.size());
+    }
+
+    @Test
+    public void shouldReleaseClientOnDisconnect() throws Exception {
+        CompletableFuture<String> clientId = new CompletableFuture<>();
+        handler = (request, serverName, dispatcher) -> {
+            clientId.complete(request.getReplyTo());
+            return Response.newBuilder()
+                    .withLast(true)
+                    .buildSuccess();
+        };
+
+        RequestResponseMatcher matcher = new RequestResponseMatcher(1, 16);
+        RpcClient otherClient = new TcpRpcClient(Collections.singletonList(new InetSocketAddress("localhost", servers.get(0).getPort())),
+                1, MAX_FRAME_LENGTH, gson, matcher);
+        otherClient.start();
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        otherClient.call(Request.newBuilder().withBody(new TestBody("Hello")).build(), future::complete);
+        future.get(10, TimeUnit.SECONDS);
+        otherClient.shutdown();
+        matcher.shutdown();
+
+        String id = clientId.get(10, TimeUnit.SECONDS);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!disconnectedClients.contains(id) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(disconnectedClients.contains(id));
+    }
+
+    @Test
+    public void shouldRenewSubscriptionsAfterReconnect() throws Exception {
+        CountDownLatch subscribed = new CountDownLatch(2);
+        handler = (request, serverName, dispatcher) -> {
+            if (((TestBody) request.getBody()).getValue().equals("Renewed")) {
+                subscribed.countDown();
+            }
+            return Response.newBuilder()
+                    .withLast(false)
+                    .buildSuccess();
+        };
+
+        TcpRpcServer server = startServer("restarted", 0);
+        int port = server.getPort();
+        RequestResponseMatcher matcher = new RequestResponseMatcher(1, 16);
+        RpcClient otherClient = new TcpRpcClient(Collections.singletonList(new InetSocketAddress("localhost", port)),
+                1, MAX_FRAME_LENGTH, gson, matcher);
+        otherClient.start();
+        try {
+            CountDownLatch firstResponse = new CountDownLatch(1);
+            otherClient.call(Request.newBuilder().withBody(new TestBody("Renewed")).withSingleReply(false).build(),
+                    response -> firstResponse.countDown());
+            assertTrue(firstResponse.await(10, TimeUnit.SECONDS));
+
+            server.shutdown();
+            server = startServer("restarted", port);
+            assertTrue(subscribed.await(10, TimeUnit.SECONDS));
+        } finally {
+            otherClient.shutdown();
+            server.shutdown();
+            matcher.shutdown();
+        }
+    }
+
+    private static TcpRpcServer startServer(String serverName, int port) {
+        TcpMessageDispatcher dispatcher = new TcpMessageDispatcher(disconnectedClients::add);
+        TcpServerEventHandler[] workHandlers = {
+                new TcpServerEventHandler(request -> handler.handle(request, serverName, dispatcher), dispatcher)
+        };
+        WorkerPool<ServerEvent> workerPool = new WorkerPool<>(ServerEvent::new, new FatalExceptionHandler(), workHandlers);
+        TcpRpcServer server = new TcpRpcServer(port, 1, MAX_FRAME_LENGTH, gson, workerPool, workHandlers.length, dispatcher);
+        server.start();
+        return server;
+    }
+
+    private static String call(String partitionKey) throws Exception {
+        Request request = Request.newBuilder()
+                .withBody(new TestBody("PartitionTest"))
+                .withPartitionKey(partitionKey)
+                .withSingleReply(true)
+                .build();
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        client.call(request, future::complete);
+        return ((TestBody) future.get(10, TimeUnit.SECONDS).getBody()).getValue();
+    }
+
+    private interface TestHandler {
+        Response handle(Request request, String serverName, MessageDispatcher dispatcher);
+    }
+
+    public static class TestBody extends Body {
+
+        private String value;
+
+        public TestBody() {
+            super(Action.EMPTY);
+        }
+
+        TestBody(String value) {
+            super(Action.EMPTY);
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+    }
+}
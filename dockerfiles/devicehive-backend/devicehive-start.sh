@@ -80,6 +80,12 @@ java -server -Xms1g -Xmx2g -XX:+UseG1GC -XX:MaxGCPauseMillis=20 -XX:+DisableExpl
 -Droot.log.level="${ROOT_LOG_LEVEL:-WARN}" \
 -Drpc.server.request-consumer.threads="${DH_RPC_SERVER_REQ_CONS_THREADS:-3}" \
 -Drpc.server.worker.threads="${DH_RPC_SERVER_WORKER_THREADS:-3}" \
+-Drpc.server.worker.dispatch="${DH_RPC_SERVER_WORKER_DISPATCH:-shared}" \
+-Drpc.server.request-decoder.threads="${DH_RPC_SERVER_REQ_DECODER_THREADS:-0}" \
+-Drpc.server.response-encoder.threads="${DH_RPC_SERVER_RESP_ENCODER_THREADS:-0}" \
+-Drpc.server.worker.priority-lanes="${DH_RPC_SERVER_WORKER_PRIORITY_LANES:-false}" \
+-Drpc.server.worker.query.threads="${DH_RPC_SERVER_WORKER_QUERY_THREADS:-2}" \
+-Drpc.server.worker.admin.threads="${DH_RPC_SERVER_WORKER_ADMIN_THREADS:-1}" \
 -Dspring.datasource.url="jdbc:postgresql://${DH_POSTGRES_ADDRESS}:${DH_POSTGRES_PORT}/${DH_POSTGRES_DB}" \
 -Dspring.datasource.username="${DH_POSTGRES_USERNAME}" \
 -Dspring.datasource.password="${DH_POSTGRES_PASSWORD}" \
@@ -81,6 +81,7 @@ java -server -Xms1g -Xmx2g -XX:+UseG1GC -XX:MaxGCPauseMillis=20 -XX:+DisableExpl
 -Dreplication.factor="${DH_REPLICATION_FACTOR:-1}" \
 -Droot.log.level="${ROOT_LOG_LEVEL:-WARN}" \
 -Drpc.client.response-consumer.threads="${DH_RPC_CLIENT_RES_CONS_THREADS:-3}" \
+-Drpc.client.request-topic-per-class="${DH_RPC_CLIENT_REQUEST_TOPIC_PER_CLASS:-false}" \
 -Dserver.context-path=/api \
 -Dserver.port=8080 \
 -Dauth.base.url="${DH_AUTH_URL}" \